@@ -0,0 +1,24 @@
+package VoteChain;
+
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.zkp.VoteProof;
+
+/**
+ * A vote submitted to the VoteChain: the encrypted vote, its validity proof and the voter signature
+ * on encrVote + proof
+ */
+public class Ballot {
+    public final SchnorrPK pkSig;
+    public final SchnorrSig sig;
+    public final ElGamalCT encrVote;
+    public final VoteProof proof;
+
+    public Ballot(SchnorrPK pkSig, SchnorrSig sig, ElGamalCT encrVote, VoteProof proof) {
+        this.pkSig = pkSig;
+        this.sig = sig;
+        this.encrVote = encrVote;
+        this.proof = proof;
+    }
+}
@@ -0,0 +1,270 @@
+package VoteChain;
+
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Off-heap store of the accepted ballots. Every ballot takes a slot of the same size in direct
+ * buffers allocated in chunks: the voter index, the timestamp, the block hash, the ciphertext and
+ * the signature as raw unsigned big-endian bytes. The heap keeps no object per ballot, so its use and
+ * the garbage collection pauses do not grow with the election; a BallotView decodes a slot on demand.
+ * Not thread safe: slots are appended by the thread appending the blocks. A slot is never written
+ * again, so a frozen view can be read by another thread while the arena grows.
+ */
+public class BallotArena {
+
+    private static final int CHUNK_BYTES = 16 << 20;
+    private static final int HASH_BYTES = 32;
+    private static final byte WITH_BLOCK = 1; // the hash and the signature are stored (not for ballots restored from a snapshot)
+
+    // layout of a slot, the ciphertext and the signature follow
+    private static final int VOTER = 0;
+    private static final int FLAGS = 4;
+    private static final int SECONDS = 5;
+    private static final int NANOS = 13;
+    private static final int HASH = 17;
+    private static final int CIPHERTEXT = HASH + HASH_BYTES;
+
+    private final int elementBytes; // C and C2
+    private final int signatureBytes; // a, e and z
+    private final int stride;
+    private final int slotsPerChunk;
+    private final List<ByteBuffer> chunks;
+    private int size;
+
+    /**
+     * @param elementBytes the size of an element of the election group
+     * @param signatureBytes the size of an element of the group of the voters signatures
+     */
+    public BallotArena(int elementBytes, int signatureBytes) {
+        this.elementBytes = elementBytes;
+        this.signatureBytes = signatureBytes;
+        this.stride = CIPHERTEXT + 2 * elementBytes + 3 * signatureBytes;
+        this.slotsPerChunk = Math.max(1, CHUNK_BYTES / stride);
+        this.chunks = new ArrayList<>();
+    }
+
+    private BallotArena(BallotArena arena) {
+        this.elementBytes = arena.elementBytes;
+        this.signatureBytes = arena.signatureBytes;
+        this.stride = arena.stride;
+        this.slotsPerChunk = arena.slotsPerChunk;
+        this.chunks = new ArrayList<>(arena.chunks);
+        this.size = arena.size;
+    }
+
+    /**
+     * @return a read-only view of the slots stored so far, sharing their memory: only the list of the
+     * chunks is copied, so the view can be handed to another thread (e.g. a snapshot writer)
+     */
+    public BallotArena frozen() {
+        return new BallotArena(this);
+    }
+
+    /**
+     * @return true if the ciphertext and the signature fit the slots of this arena
+     */
+    public boolean fits(ElGamalCT ciphertext, SchnorrSig sig) {
+        return length(ciphertext.C) <= elementBytes && length(ciphertext.C2) <= elementBytes
+                && (sig == null || length(sig.getA()) <= signatureBytes && length(sig.getE()) <= signatureBytes
+                && length(sig.getZ()) <= signatureBytes);
+    }
+
+    /**
+     * @return a copy of this arena with larger slots, for a ballot that does not fit
+     */
+    public BallotArena widen(ElGamalCT ciphertext, SchnorrSig sig) {
+        int element = Math.max(elementBytes, Math.max(length(ciphertext.C), length(ciphertext.C2)));
+        int signature = sig == null ? signatureBytes : Math.max(signatureBytes,
+                Math.max(length(sig.getA()), Math.max(length(sig.getE()), length(sig.getZ()))));
+        BallotArena wider = new BallotArena(element, signature);
+        for (int slot = 0; slot < size; slot++) {
+            BallotView ballot = view(slot);
+            wider.append(ballot.getVoter(), ballot.getTimeStamp(), ballot.getHash(), ballot.getCiphertext(), ballot.getSignature());
+        }
+        return wider;
+    }
+
+    /**
+     * Store a ballot
+     *
+     * @param voter the index of the voter in the registration block
+     * @param timeStamp the timestamp of the block
+     * @param hash the hash of the block, null if unknown
+     * @param ciphertext the encrypted vote
+     * @param sig the signature of the voter, null if unknown
+     * @return the slot of the ballot
+     * @throws IllegalArgumentException if the ballot does not fit, see widen
+     */
+    public int append(int voter, LocalDateTime timeStamp, String hash, ElGamalCT ciphertext, SchnorrSig sig) {
+        if (!fits(ciphertext, sig))
+            throw new IllegalArgumentException("the ballot does not fit the slots of the arena");
+        int slot = size;
+        if (slot / slotsPerChunk == chunks.size())
+            chunks.add(ByteBuffer.allocateDirect(slotsPerChunk * stride));
+        ByteBuffer chunk = chunks.get(slot / slotsPerChunk);
+        int base = (slot % slotsPerChunk) * stride;
+
+        boolean withBlock = hash != null && sig != null;
+        chunk.putInt(base + VOTER, voter);
+        chunk.put(base + FLAGS, withBlock ? WITH_BLOCK : 0);
+        chunk.putLong(base + SECONDS, timeStamp.toEpochSecond(ZoneOffset.UTC));
+        chunk.putInt(base + NANOS, timeStamp.getNano());
+        chunk.put(base + HASH, withBlock ? HexFormat.of().parseHex(hash) : new byte[HASH_BYTES]);
+        int at = base + CIPHERTEXT;
+        at = put(chunk, at, ciphertext.C, elementBytes);
+        at = put(chunk, at, ciphertext.C2, elementBytes);
+        at = put(chunk, at, withBlock ? sig.getA() : BigInteger.ZERO, signatureBytes);
+        at = put(chunk, at, withBlock ? sig.getE() : BigInteger.ZERO, signatureBytes);
+        put(chunk, at, withBlock ? sig.getZ() : BigInteger.ZERO, signatureBytes);
+        size++;
+        return slot;
+    }
+
+    /**
+     * @return the number of stored ballots
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes of direct memory allocated by the arena
+     */
+    public long offHeapBytes() {
+        return (long) chunks.size() * slotsPerChunk * stride;
+    }
+
+    /**
+     * @return the ciphertext of a slot, the only field needed by the tally
+     */
+    public ElGamalCT ciphertext(int slot) {
+        int at = offset(slot) + CIPHERTEXT;
+        ByteBuffer chunk = chunk(slot);
+        return new ElGamalCT(get(chunk, at, elementBytes), get(chunk, at + elementBytes, elementBytes));
+    }
+
+    /**
+     * @return the timestamp of the block of a slot
+     */
+    public LocalDateTime timeStamp(int slot) {
+        ByteBuffer chunk = chunk(slot);
+        int base = offset(slot);
+        return LocalDateTime.ofEpochSecond(chunk.getLong(base + SECONDS), chunk.getInt(base + NANOS), ZoneOffset.UTC);
+    }
+
+    /**
+     * @return a view decoding the fields of a slot
+     */
+    public BallotView view(int slot) {
+        if (slot < 0 || slot >= size)
+            throw new IndexOutOfBoundsException("slot " + slot + " of " + size);
+        return new BallotView(slot);
+    }
+
+    private ByteBuffer chunk(int slot) {
+        return chunks.get(slot / slotsPerChunk);
+    }
+
+    private int offset(int slot) {
+        return (slot % slotsPerChunk) * stride;
+    }
+
+    private static int length(BigInteger value) {
+        return (value.bitLength() + 7) / 8;
+    }
+
+    /**
+     * Write a non-negative value as width unsigned big-endian bytes
+     */
+    private static int put(ByteBuffer chunk, int at, BigInteger value, int width) {
+        byte[] bytes = value.toByteArray();
+        int skip = bytes.length > width ? bytes.length - width : 0; // the sign byte
+        int pad = width - (bytes.length - skip);
+        for (int i = 0; i < pad; i++) {
+            chunk.put(at + i, (byte) 0);
+        }
+        chunk.put(at + pad, bytes, skip, bytes.length - skip);
+        return at + width;
+    }
+
+    private static BigInteger get(ByteBuffer chunk, int at, int width) {
+        byte[] bytes = new byte[width];
+        chunk.get(at, bytes);
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     * A ballot block as stored in the arena, decoded field by field when asked
+     */
+    public class BallotView {
+        private final int slot;
+
+        private BallotView(int slot) {
+            this.slot = slot;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        /**
+         * @return the index of the voter in the registration block
+         */
+        public int getVoter() {
+            return chunk(slot).getInt(offset(slot) + VOTER);
+        }
+
+        public LocalDateTime getTimeStamp() {
+            return timeStamp(slot);
+        }
+
+        /**
+         * @return the hash of the block, null if the ballot was restored from a snapshot
+         */
+        public String getHash() {
+            ByteBuffer chunk = chunk(slot);
+            int base = offset(slot);
+            if (chunk.get(base + FLAGS) != WITH_BLOCK)
+                return null;
+            byte[] hash = new byte[HASH_BYTES];
+            chunk.get(base + HASH, hash);
+            return HexFormat.of().formatHex(hash);
+        }
+
+        public ElGamalCT getCiphertext() {
+            return ciphertext(slot);
+        }
+
+        /**
+         * @return the signature of the voter, null if the ballot was restored from a snapshot
+         */
+        public SchnorrSig getSignature() {
+            ByteBuffer chunk = chunk(slot);
+            int base = offset(slot);
+            if (chunk.get(base + FLAGS) != WITH_BLOCK)
+                return null;
+            int at = base + CIPHERTEXT + 2 * elementBytes;
+            return new SchnorrSig(get(chunk, at, signatureBytes), get(chunk, at + signatureBytes, signatureBytes),
+                    get(chunk, at + 2 * signatureBytes, signatureBytes));
+        }
+
+        @Override
+        public String toString() {
+            return "BallotView{" +
+                    "slot=" + slot +
+                    ", voter=" + getVoter() +
+                    ", hash='" + getHash() + '\'' +
+                    ", timeStamp=" + getTimeStamp() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package VoteChain;
+
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.zkp.VoteProof;
+
+/**
+ * Payload of a vote transaction carrying, beside the ciphertext, the proof that it encrypts a valid vote
+ */
+public class BallotPayload extends CiphertextPayload {
+    private final VoteProof proof;
+
+    public BallotPayload(ElGamalCT ciphertext, VoteProof proof) {
+        super(ciphertext);
+        this.proof = proof;
+    }
+
+    public VoteProof getProof() {
+        return proof;
+    }
+}
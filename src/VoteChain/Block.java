@@ -29,9 +29,17 @@ public class Block {
      * @throws NoSuchAlgorithmException if digest algorithm is invalid
      */
     public String calculateBlockHash() throws NoSuchAlgorithmException {
+        BlockHashEvent event = new BlockHashEvent();
+        event.begin();
         String dataToHash = previousHash + timeStamp + transaction;
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] bytes = digest.digest(dataToHash.getBytes());
+        byte[] data = dataToHash.getBytes();
+        byte[] bytes = digest.digest(data);
+        event.end();
+        if(event.shouldCommit()){
+            event.inputBits = 8L * data.length;
+            event.commit();
+        }
         return Utils.bytesToHexString(bytes);
     }
 
@@ -43,6 +51,14 @@ public class Block {
         return transaction;
     }
 
+    public String getPreviousHash() {
+        return previousHash;
+    }
+
+    public LocalDateTime getTimeStamp() {
+        return timeStamp;
+    }
+
     @Override
     public String toString() {
         return "Block{" +
@@ -0,0 +1,17 @@
+package VoteChain;
+
+import jdk.jfr.*;
+
+/**
+ * A Java Flight Recorder event around the computation of a block hash
+ */
+@Name("evote.BlockHash")
+@Label("Block Hash")
+@Category({"EVote", "VoteChain"})
+@StackTrace(false)
+class BlockHashEvent extends Event {
+
+    @Label("Input Bits")
+    @Description("Bit length of the hashed block content")
+    long inputBits;
+}
@@ -0,0 +1,18 @@
+package VoteChain;
+
+import crypto.utils.thresholdElGamal.ElGamalCT;
+
+/**
+ * Payload of a vote transaction: the ElGamal ciphertext of the vote
+ */
+public class CiphertextPayload implements TransactionPayload {
+    private final ElGamalCT ciphertext;
+
+    public CiphertextPayload(ElGamalCT ciphertext) {
+        this.ciphertext = ciphertext;
+    }
+
+    public ElGamalCT getCiphertext() {
+        return ciphertext;
+    }
+}
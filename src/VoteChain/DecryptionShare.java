@@ -0,0 +1,28 @@
+package VoteChain;
+
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.zkp.DecryptionShareProof;
+
+import java.math.BigInteger;
+
+/**
+ * A decryption contribute published by an authority: wj, the proof that it matches the authority
+ * ElGamal key pkAj, and the authority signature on wj + proof
+ */
+public class DecryptionShare {
+    public final SchnorrPK pkSig;
+    public final SchnorrSig sig;
+    public final BigInteger wj;
+    public final DecryptionShareProof proof;
+    public final ElGamalPK pkAj;
+
+    public DecryptionShare(SchnorrPK pkSig, SchnorrSig sig, BigInteger wj, DecryptionShareProof proof, ElGamalPK pkAj) {
+        this.pkSig = pkSig;
+        this.sig = sig;
+        this.wj = wj;
+        this.proof = proof;
+        this.pkAj = pkAj;
+    }
+}
@@ -0,0 +1,18 @@
+package VoteChain;
+
+import java.math.BigInteger;
+
+/**
+ * Payload of a decryption contribute transaction: the share wj of an authority
+ */
+public class DecryptionSharePayload implements TransactionPayload {
+    private final BigInteger wj;
+
+    public DecryptionSharePayload(BigInteger wj) {
+        this.wj = wj;
+    }
+
+    public BigInteger getWj() {
+        return wj;
+    }
+}
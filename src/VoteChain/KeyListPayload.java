@@ -0,0 +1,18 @@
+package VoteChain;
+
+import java.math.BigInteger;
+
+/**
+ * Payload of a registration transaction: the signature public keys of the subscribed voters
+ */
+public class KeyListPayload implements TransactionPayload {
+    private final BigInteger[] keys;
+
+    public KeyListPayload(BigInteger[] keys) {
+        this.keys = keys;
+    }
+
+    public BigInteger[] getKeys() {
+        return keys;
+    }
+}
@@ -0,0 +1,364 @@
+package VoteChain;
+
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.thresholdElGamal.DiscreteLog;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+import crypto.utils.zkp.VoteProof;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.Decrypt;
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.Homomorphism;
+
+/**
+ * An election split over K independent VoteChains. Voters are partitioned by a hash of their
+ * signature key, and each shard has its own chain file, registration block, voting window and state,
+ * so the ballots of different shards are checked and appended in parallel. The shard tallies are
+ * combined into the election tally with one homomorphic product.
+ * The tally phase (the merged tally, its decryption contributes and the result) is published on
+ * shard 0, so an auditor can check the merged tally against the ballots of all the shards.
+ * Every append to a shard holds the monitor of its VoteChain, so a lifecycle transaction may be
+ * inserted while other threads are still voting.
+ */
+public class ShardedVoteChain {
+
+    private final VoteChain[] shards;
+    private final ExecutorService workers; // one thread per shard, a shard is never used by two threads at once
+
+    /**
+     * @param blockchainName the blockchain file, each shard has its own file named after it (see shardFileName)
+     * @param shardCount the number of shards
+     */
+    public ShardedVoteChain(String blockchainName, int shardCount) {
+        if (shardCount < 1)
+            throw new IllegalArgumentException("at least one shard is needed");
+        shards = new VoteChain[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new VoteChain(shardFileName(blockchainName, i));
+        }
+        workers = Executors.newFixedThreadPool(shardCount, r -> {
+            Thread t = new Thread(r, "votechain-shard");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @return the file of a shard: VotingBlockchain.txt becomes VotingBlockchain.shard{i}.txt
+     */
+    public static String shardFileName(String blockchainName, int shard) {
+        int dot = blockchainName.lastIndexOf('.');
+        if (dot <= blockchainName.lastIndexOf('/') + 1)
+            return blockchainName + ".shard" + shard;
+        return blockchainName.substring(0, dot) + ".shard" + shard + blockchainName.substring(dot);
+    }
+
+    /**
+     * @param voterKey the signature public key h of a voter
+     * @return the index of the shard of the voter
+     */
+    public int shardOf(BigInteger voterKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(voterKey.toString().getBytes(StandardCharsets.UTF_8));
+            long prefix = 0;
+            for (int i = 0; i < 8; i++) {
+                prefix = (prefix << 8) | (digest[i] & 0xff);
+            }
+            return (int) Long.remainderUnsigned(prefix, shards.length);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the chain of the shard, to be used by one thread at a time
+     */
+    public VoteChain getShard(int shard) {
+        return shards[shard];
+    }
+
+    /**
+     * @param voterKey the signature public key h of a voter
+     * @return the chain on which the voter is registered and votes
+     */
+    public VoteChain getShardOf(BigInteger voterKey) {
+        return shards[shardOf(voterKey)];
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Split the subscribed voters among the shards: each list is the content of the registration
+     * block of a shard, to be signed by the authorities
+     *
+     * @param votersPk the signature public keys of the voters
+     * @return the voters of each shard, in the original order
+     */
+    public List<List<BigInteger>> partition(List<BigInteger> votersPk) {
+        List<List<BigInteger>> partition = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            partition.add(new ArrayList<>());
+        }
+        for (BigInteger pk : votersPk) {
+            partition.get(shardOf(pk)).add(pk);
+        }
+        return partition;
+    }
+
+    /**
+     * Set the candidates of the election on every shard, before the voting starts
+     *
+     * @see VoteChain#setBallotEncoding
+     */
+    public void setBallotEncoding(PackedEncoding encoding, ElGamalPK pk) {
+        for (VoteChain shard : shards) {
+            synchronized (shard) {
+                shard.setBallotEncoding(encoding, pk);
+            }
+        }
+    }
+
+    public PackedEncoding getBallotEncoding() {
+        return shards[0].getBallotEncoding();
+    }
+
+    /**
+     * Add the genesis block to every shard
+     *
+     * @see VoteChain#insertGenesisBlock
+     */
+    public void insertGenesisBlock(ElGamalPK pkA, SchnorrPK jointPK, SchnorrSig jointSig) throws IOException, NoSuchAlgorithmException {
+        for (VoteChain shard : shards) {
+            synchronized (shard) {
+                shard.insertGenesisBlock(pkA, jointPK, jointSig);
+            }
+        }
+    }
+
+    /**
+     * Add the registration block of a shard
+     *
+     * @param shard the index of the shard
+     * @param jointPK the Schnorr signature public key of the authorities
+     * @param jointSig the joint signature of the voters of the shard
+     * @param votersPk the voters of the shard, as returned by partition
+     * @throws IllegalArgumentException if a voter belongs to another shard
+     */
+    public void insertPKTransactions(int shard, SchnorrPK jointPK, SchnorrSig jointSig, List<BigInteger> votersPk) throws IOException, NoSuchAlgorithmException {
+        for (BigInteger pk : votersPk) {
+            if (shardOf(pk) != shard)
+                throw new IllegalArgumentException("voter " + pk + " belongs to shard " + shardOf(pk));
+        }
+        synchronized (shards[shard]) {
+            shards[shard].insertPKTransactions(jointPK, jointSig, votersPk);
+        }
+    }
+
+    /**
+     * Add the start vote transaction to every shard
+     */
+    public void insertStartTransaction(SchnorrPK startvotejointpk, SchnorrSig startvotejointSig, String message) throws IOException, NoSuchAlgorithmException {
+        for (VoteChain shard : shards) {
+            synchronized (shard) {
+                shard.insertStartTransaction(startvotejointpk, startvotejointSig, message);
+            }
+        }
+    }
+
+    /**
+     * Add the stop vote transaction to every shard
+     */
+    public void insertStopTransaction(SchnorrPK stopvotejointpk, SchnorrSig stopvotejointSig, String message) throws IOException, NoSuchAlgorithmException {
+        for (VoteChain shard : shards) {
+            synchronized (shard) {
+                shard.insertStopTransaction(stopvotejointpk, stopvotejointSig, message);
+            }
+        }
+    }
+
+    /**
+     * Add a vote transaction to the shard of the voter
+     *
+     * @return true if the vote has been accepted
+     * @see VoteChain#insertVoteTransaction(ElGamalPK, SchnorrPK, SchnorrSig, ElGamalCT, VoteProof)
+     */
+    public boolean insertVoteTransaction(ElGamalPK pka, SchnorrPK pk, SchnorrSig sig, ElGamalCT encrVote, VoteProof proof) throws IOException, NoSuchAlgorithmException {
+        VoteChain shard = getShardOf(pk.getH());
+        synchronized (shard) {
+            return shard.insertVoteTransaction(pka, pk, sig, encrVote, proof);
+        }
+    }
+
+    /**
+     * Add many vote transactions: the ballots are split by shard and each shard checks and appends
+     * its own ones in parallel with the others, keeping their relative order
+     *
+     * @return the number of accepted votes
+     * @see VoteChain#insertVoteTransactions
+     */
+    public int insertVoteTransactions(ElGamalPK pka, List<Ballot> ballots) throws IOException, NoSuchAlgorithmException {
+        List<List<Ballot>> byShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Ballot ballot : ballots) {
+            byShard.get(shardOf(ballot.pkSig.getH())).add(ballot);
+        }
+
+        List<Future<Integer>> accepted = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            VoteChain shard = shards[i];
+            List<Ballot> batch = byShard.get(i);
+            if (batch.isEmpty())
+                continue;
+            accepted.add(workers.submit(() -> {
+                synchronized (shard) {
+                    return shard.insertVoteTransactions(pka, batch);
+                }
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> f : accepted) {
+            total += join(f);
+        }
+        return total;
+    }
+
+    /**
+     * Count the votes of every shard in parallel and merge the shard tallies
+     *
+     * @param pk the ElGamal pk used to encrypt the votes
+     * @return a ElGamalCT encrypting the packed tally of the whole election
+     */
+    public ElGamalCT countVotes(ElGamalPK pk) throws IOException {
+        List<Future<ElGamalCT>> counts = new ArrayList<>(shards.length);
+        for (VoteChain shard : shards) {
+            counts.add(workers.submit(() -> {
+                synchronized (shard) {
+                    return shard.countVotes(pk);
+                }
+            }));
+        }
+        List<ElGamalCT> tallies = new ArrayList<>(shards.length);
+        for (Future<ElGamalCT> f : counts) {
+            tallies.add(join(f));
+        }
+        return Homomorphism(pk, tallies);
+    }
+
+    /**
+     * @return the number of ballots in the tally of the whole election
+     */
+    public long getCountedBallots() {
+        long ballots = 0;
+        for (VoteChain shard : shards) {
+            synchronized (shard) {
+                ballots += shard.getCountedBallots();
+            }
+        }
+        return ballots;
+    }
+
+    /**
+     * Publish on shard 0 the merged tally signed by the authorities, before its decryption contributes
+     *
+     * @param pk the Schnorr signature public key of the authorities
+     * @param sig the joint signature of total.toString()
+     * @param total the merged tally, as returned by countVotes
+     */
+    public void insertTallyTransaction(SchnorrPK pk, SchnorrSig sig, ElGamalCT total) throws IOException, NoSuchAlgorithmException {
+        synchronized (shards[0]) {
+            shards[0].insertSignedTransaction(pk, sig, total.toString());
+        }
+    }
+
+    /**
+     * Add the decryption contributes of the merged tally to shard 0
+     *
+     * @see VoteChain#insertDecContributeTransactions
+     */
+    public int insertDecContributeTransactions(BigInteger uj, List<DecryptionShare> shares) throws IOException, NoSuchAlgorithmException {
+        synchronized (shards[0]) {
+            return shards[0].insertDecContributeTransactions(uj, shares);
+        }
+    }
+
+    /**
+     * Add the signed result of the election to shard 0
+     */
+    public void insertSignedTransaction(SchnorrPK pk, SchnorrSig sig, String message) throws IOException, NoSuchAlgorithmException {
+        synchronized (shards[0]) {
+            shards[0].insertSignedTransaction(pk, sig, message);
+        }
+    }
+
+    public BigInteger[] getAuthorityDecryptContributes() {
+        synchronized (shards[0]) {
+            return shards[0].getAuthorityDecryptContributes();
+        }
+    }
+
+    /**
+     * @return g^m, where m is the packed tally of the election
+     */
+    public BigInteger decryptVotes(ElGamalPK pk, ElGamalCT total, BigInteger[] W) {
+        return Decrypt(pk, total, W);
+    }
+
+    /**
+     * Recover the number of votes of each candidate from the decrypted merged tally
+     *
+     * @return the votes of each candidate, null if the tally is not a valid packing of the counted ballots
+     * @see VoteChain#decodeTally
+     */
+    public long[] decodeTally(ElGamalPK pk, BigInteger decrypted) {
+        PackedEncoding encoding = getBallotEncoding();
+        long ballots = getCountedBallots();
+        BigInteger m = DiscreteLog.Solve(pk.params.group, pk.params.g, decrypted, encoding.bound(ballots));
+        if (m.signum() < 0)
+            return null;
+        try {
+            return encoding.decode(m, ballots);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stop the shard threads
+     */
+    public void close() {
+        workers.shutdown();
+    }
+
+    private static <T> T join(Future<T> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for a shard", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IOException("shard failure", cause);
+        }
+    }
+}
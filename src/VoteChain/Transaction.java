@@ -10,6 +10,7 @@ public class Transaction {
      SchnorrPK pkSig;
      SchnorrSig sig;
      String message;
+     TransactionPayload payload; // typed content of the message, null for plain messages
 
 
     public Transaction(SchnorrPK pkSig, SchnorrSig sig, String message) {
@@ -18,6 +19,23 @@ public class Transaction {
         this.message = message;
     }
 
+    public Transaction(SchnorrPK pkSig, SchnorrSig sig, String message, TransactionPayload payload) {
+        this(pkSig, sig, message);
+        this.payload = payload;
+    }
+
+    public TransactionPayload getPayload() {
+        return payload;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public SchnorrPK getPkSig() {
+        return pkSig;
+    }
+
     @Override
     public String toString() {
         return "Transaction{" +
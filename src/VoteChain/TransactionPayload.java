@@ -0,0 +1,8 @@
+package VoteChain;
+
+/**
+ * The typed content of a transaction, kept in binary form beside the textual message
+ * so that tallying never needs to parse the message strings
+ */
+public interface TransactionPayload {
+}
@@ -14,6 +14,11 @@ public class TransactionWithProof extends Transaction{
         this.ZKProof = ZKProof;
     }
 
+    public TransactionWithProof(SchnorrPK pkSig, SchnorrSig sig, String message, String ZKProof, TransactionPayload payload) {
+        super(pkSig, sig, message, payload);
+        this.ZKProof = ZKProof;
+    }
+
     @Override
     public String toString() {
         return "TransactionWithProof{" +
@@ -1,21 +1,45 @@
 package VoteChain;
 
-import crypto.utils.Schnorr.Schnorr;
 import crypto.utils.Schnorr.SchnorrPK;
 import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.Schnorr.SignatureCache;
 import crypto.utils.Utils;
+import crypto.utils.group.Group;
+import crypto.utils.group.ZpGroup;
 import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.DiscreteLog;
 import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+import crypto.utils.zkp.ChaumPedersen;
+import crypto.utils.zkp.DecryptionShareProof;
+import crypto.utils.zkp.VoteProof;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import VoteChain.archive.ChainArchiver;
+import VoteChain.audit.ChainRecord;
+import VoteChain.events.ChainEventPublisher;
+import VoteChain.tally.StreamingTally;
+import VoteChain.metrics.MetricsMBean;
+import VoteChain.metrics.VoteChainMetrics;
+import VoteChain.receipt.BallotReceipt;
+import VoteChain.receipt.ReceiptIndex;
+
+import java.io.*;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
 
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.Decrypt;
 import static crypto.utils.thresholdElGamal.ThresholdElGamal.Homomorphism;
 
 /**
@@ -26,32 +50,493 @@ public class VoteChain {
     // the blockchain file used for simulations
     private final File blockchainDescriptor;
 
-    private final List<Block> blocks;
-    private final Map<BigInteger, Integer> votersPkMap; // the map with subscribed voters pks
-    private final Map<BigInteger, LocalDateTime> voterLastTransactionTime; // map containing last transaction time for each voter
+    private Block lastBlock; // the older blocks are only in the blockchain file and, for the ballots, in the arena
+    private Map<BigInteger, Integer> votersPkMap; // the map with subscribed voters pks, replaced (not modified) by each registration block
+    private BallotArena ballots; // the accepted ballots off-heap, created by the first one
+    private int[] lastBallots = new int[0]; // slot of the last accepted ballot of each voter index, -1 if none: the running tally inputs
+    private long countedBallots; // voters with a ballot
+    private int ballotElementBytes; // the element size of the election group, 0 if not known yet
+    private final List<BigInteger> decryptionContributes; // the wj published by the authorities after the voting
+
+    private long height; // number of blocks of the chain
+    private String lastBlockHash; // hash of the last block, "0" for the empty chain
+    private long chainFileLength; // bytes of the blockchain file written up to the last block
+    private long lastBlockOffset; // where the last block starts in the blockchain file
+    private static final int OFFSET_INTERVAL = 256; // blocks between two entries of the offset index
+    // file offset of every OFFSET_INTERVAL-th block, filled by the appends and the reads; guarded by itself
+    private final TreeMap<Long, Long> blockOffsets = new TreeMap<>(Map.of(0L, 0L));
+
+    private Path snapshotDirectory; // where periodic snapshots are written, null if disabled
+    private long snapshotInterval; // number of blocks between two snapshots
+    private ExecutorService snapshotWriter;
+
+    private ChainArchiver archiver; // writes the compressed segments, null if disabled
+
+    private final Object receiptLock = new Object(); // guards the receipt fields, never held while appending
+    private Path receiptDirectory; // where the receipt index is kept, null if disabled
+    private ReceiptIndex.Builder receiptBuilder; // the records of the next index, following the appended blocks
+    private ReceiptIndex receiptIndex; // the last sealed index, answering the queries
+
+    private final VoteChainMetrics metrics = new VoteChainMetrics(); // latencies and rejections of the hot paths
+    private SignatureCache signatures = SignatureCache.shared(); // verified signatures and frequent voter keys
+    private final List<BlockListener> blockListeners = new CopyOnWriteArrayList<>();
+    private ChainEventPublisher eventPublisher; // created by the first subscriber
+
+    private PackedEncoding ballotEncoding = PackedEncoding.BINARY; // the candidates and how the ballots pack them
+    private BigInteger[] ballotMessages = ballotEncoding.messages(); // the valid plaintexts of a ballot
 
     private boolean votingInProgress; // true if voting is in progress, false otherwise
-    private int indexOfStartVotingBlock, indexOfEndVotingBlock;
+    private long indexOfStartVotingBlock, indexOfEndVotingBlock;
     private final Duration allowedTransactionInterval = Duration.ofMillis(500); // minimum voting interval for each voter, 1 hour in reality, 500 ms in test
 
-    public VoteChain(String blockchainName) {
-        this.blocks = new LinkedList<>();
+    public static final String START_VOTING_MESSAGE = "inizio votazione"; // message of the t_votestart transaction
+    public static final String STOP_VOTING_MESSAGE = "fine votazione"; // message of the t_voteend transaction
+
+    /**
+     * Observer of the blocks appended to the chain
+     */
+    public interface BlockListener {
+        /**
+         * @param height the position of the block in the chain
+         * @param block the appended block
+         */
+        void blockAppended(long height, Block block);
+    }
 
+    public VoteChain(String blockchainName) {
         votingInProgress = false;
         indexOfStartVotingBlock = -1;
         indexOfEndVotingBlock = -1;
 
         votersPkMap = new HashMap<>();
-        voterLastTransactionTime = new HashMap<>();
+        decryptionContributes = new ArrayList<>();
         blockchainDescriptor = new File(blockchainName);
 
+        height = 0;
+        lastBlockHash = "0";
+        chainFileLength = blockchainDescriptor.length();
+    }
+
+    /**
+     * Rebuild a VoteChain after a restart: the derived state is loaded from the latest snapshot,
+     * then only the blocks appended to the chain file after the snapshot are replayed.
+     * The snapshot also restores the ballot encoding and the last block; without a snapshot the whole
+     * chain is replayed and the encoding must be set again with setBallotEncoding.
+     *
+     * @param blockchainName the blockchain file
+     * @param snapshotDirectory the directory of the snapshots
+     * @return the restored VoteChain
+     * @throws IOException if the chain file does not continue the snapshot or cannot be read
+     * @throws NoSuchAlgorithmException
+     */
+    public static VoteChain restore(String blockchainName, Path snapshotDirectory) throws IOException, NoSuchAlgorithmException {
+        VoteChain chain = new VoteChain(blockchainName);
+        VoteChainSnapshot snapshot = VoteChainSnapshot.loadLatest(snapshotDirectory);
+
+        chain.chainFileLength = 0;
+        if(snapshot != null){
+            chain.height = snapshot.height;
+            chain.lastBlockHash = snapshot.lastBlockHash;
+            chain.chainFileLength = snapshot.chainFileLength;
+            chain.votingInProgress = snapshot.votingInProgress;
+            chain.indexOfStartVotingBlock = snapshot.indexOfStartVotingBlock;
+            chain.indexOfEndVotingBlock = snapshot.indexOfEndVotingBlock;
+            chain.votersPkMap = new HashMap<>(snapshot.votersPkMap);
+            chain.lastBallots = new int[chain.votersPkMap.size()];
+            Arrays.fill(chain.lastBallots, -1);
+            for (Map.Entry<BigInteger, ElGamalCT> e : snapshot.lastBallots.entrySet()) {
+                // the snapshot keeps the ciphertext and the time of the ballot, not its block
+                chain.storeBallot(e.getKey(), snapshot.voterLastTransactionTime.get(e.getKey()), null, e.getValue(), null, 0);
+            }
+            chain.decryptionContributes.addAll(snapshot.decryptionContributes);
+            chain.lastBlockOffset = snapshot.lastBlockOffset;
+            chain.ballotEncoding = snapshot.ballotEncoding;
+            chain.ballotMessages = snapshot.ballotEncoding.messages();
+            chain.ballotElementBytes = snapshot.ballotElementBytes;
+            if (snapshot.height > 0)
+                chain.lastBlock = chain.readLastBlock();
+        }
+
+        chain.replayTail();
+        return chain;
+    }
+
+    /**
+     * Rebuild the last block of a restored chain from the chain file, at the offset kept by the snapshot
+     *
+     * @throws IOException if the block at that offset is not the last block of the snapshot
+     */
+    private Block readLastBlock() throws IOException, NoSuchAlgorithmException {
+        synchronized (blockOffsets) {
+            blockOffsets.put(height - 1, lastBlockOffset);
+        }
+        ChainRecord record;
+        try {
+            record = ChainRecord.parse(height - 1, readBlocks(height - 1, 1).get(0));
+        } catch (RuntimeException e) {
+            throw new IOException("unreadable block at height " + (height - 1), e);
+        }
+        if (!record.hash.equals(lastBlockHash))
+            throw new IOException("the blockchain file does not continue the snapshot at height " + (height - 1));
+        // the flags after the last block still tell the type of its transaction
+        return replayBlock(record, record.previousHash, indexOfStartVotingBlock < 0, votingInProgress);
+    }
+
+    /**
+     * Replay the blocks of the chain file written after chainFileLength
+     */
+    private void replayTail() throws IOException, NoSuchAlgorithmException {
+        if(!blockchainDescriptor.exists())
+            return;
+        try (InputStream in = new FileInputStream(blockchainDescriptor)) {
+            try {
+                in.skipNBytes(chainFileLength);
+            } catch (EOFException e) {
+                throw new IOException("the blockchain file is shorter than the snapshot", e);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()));
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.isEmpty()) {
+                    chainFileLength++;
+                    continue;
+                }
+                ChainRecord record;
+                try {
+                    record = ChainRecord.parse(height, line);
+                } catch (RuntimeException e) {
+                    throw new IOException("unreadable block at height " + height, e);
+                }
+                Block block = replayBlock(record, lastBlockHash, indexOfStartVotingBlock < 0, votingInProgress);
+                indexOffset(height, chainFileLength);
+
+                lastBlock = block;
+                lastBlockOffset = chainFileLength;
+                applyToState(block);
+                lastBlockHash = block.getHash();
+                height++;
+                chainFileLength += line.getBytes(Charset.defaultCharset()).length + 1;
+            }
+        }
+    }
+
+    /**
+     * Rebuild a block written by this or another node, checking that it continues the chain
+     *
+     * @param record the parsed block
+     * @param previousHash the hash of the block before it
+     * @param registryOpen whether the voting has not started yet, so a list of keys is the voter registry
+     * @param voting whether the voting is in progress at this block
+     * @throws IOException if the block does not link to the previous block or its hash does not match its content
+     */
+    private Block replayBlock(ChainRecord record, String previousHash, boolean registryOpen, boolean voting) throws IOException, NoSuchAlgorithmException {
+        if (!record.previousHash.equals(previousHash))
+            throw new IOException("block at height " + record.height + " does not link to the chain");
+        Block block = new Block(replayTransaction(record, registryOpen, voting), record.previousHash, LocalDateTime.parse(record.timeStamp));
+        if (!block.getHash().equals(record.hash))
+            throw new IOException("block at height " + record.height + " has an invalid hash");
+        return block;
+    }
+
+    /**
+     * Rebuild the transaction of a replayed block, with the typed payload of its message
+     */
+    private Transaction replayTransaction(ChainRecord record, boolean registryOpen, boolean voting) {
+        if (!record.withProof) {
+            TransactionPayload payload = null;
+            if (registryOpen && record.message.startsWith("[")) {
+                List<BigInteger> votersPk = new ArrayList<>();
+                for (String key : record.message.substring(1, record.message.length() - 1).split(",")) {
+                    if (!key.isBlank())
+                        votersPk.add(new BigInteger(key.trim()));
+                }
+                payload = new KeyListPayload(votersPk.toArray(new BigInteger[0]));
+            }
+            return new Transaction(record.pkSig, record.sig, record.message, payload);
+        }
+
+        TransactionPayload payload;
+        if (voting && record.ZKProof.startsWith("{A0=")) {
+            payload = new BallotPayload(new ElGamalCT(record.message), new VoteProof(record.ZKProof));
+        } else if (voting) {
+            payload = new CiphertextPayload(new ElGamalCT(record.message));
+        } else {
+            payload = new DecryptionSharePayload(new BigInteger(record.message));
+        }
+        return new TransactionWithProof(record.pkSig, record.sig, record.message, record.ZKProof, payload);
+    }
+
+    /**
+     * Update the state derived from the chain with a block being appended (or replayed),
+     * before any snapshot can observe it
+     *
+     * @param block the block at position height
+     */
+    private void applyToState(Block block) {
+        Transaction transaction = block.getTransaction();
+        TransactionPayload payload = transaction.payload;
+
+        if (payload instanceof CiphertextPayload) {
+            storeBallot(transaction.pkSig.getH(), block.getTimeStamp(), block.getHash(),
+                    ((CiphertextPayload) payload).getCiphertext(), transaction.sig, transaction.pkSig.getGroup().getElementBytes());
+        } else if (payload instanceof DecryptionSharePayload) {
+            decryptionContributes.add(((DecryptionSharePayload) payload).getWj());
+        } else if (payload instanceof KeyListPayload) {
+            // a new map, the snapshots being written may still read the previous one
+            Map<BigInteger, Integer> voters = new HashMap<>(votersPkMap);
+            for (BigInteger voterPk : ((KeyListPayload) payload).getKeys())
+                voters.put(voterPk, voters.size());
+            votersPkMap = voters;
+            int registered = lastBallots.length;
+            lastBallots = Arrays.copyOf(lastBallots, votersPkMap.size());
+            Arrays.fill(lastBallots, registered, lastBallots.length, -1);
+        } else if (transaction.message.equals(START_VOTING_MESSAGE)) {
+            votingInProgress = true; // votazione è iniziata
+            indexOfStartVotingBlock = height;
+        } else if (transaction.message.equals(STOP_VOTING_MESSAGE)) {
+            votingInProgress = false; // votazione è terminata
+            indexOfEndVotingBlock = height;
+        }
     }
 
     /**
-     * @return the last added block
+     * Store a ballot in the arena as the last one of its voter
+     *
+     * @param hash the hash of the block, null if unknown
+     * @param sig the signature of the voter, null if unknown
+     * @param signatureBytes the element size of the group of the signature
+     */
+    private void storeBallot(BigInteger voterPk, LocalDateTime timeStamp, String hash, ElGamalCT ciphertext, SchnorrSig sig, int signatureBytes) {
+        Integer voter = votersPkMap.get(voterPk);
+        if (voter == null)
+            return; // never accepted by insertVoteTransaction, the auditor reports it
+        if (ballots == null)
+            ballots = new BallotArena(ballotElementBytes, signatureBytes);
+        if (!ballots.fits(ciphertext, sig))
+            ballots = ballots.widen(ciphertext, sig); // only while the group sizes are not known
+        if (lastBallots[voter] < 0)
+            countedBallots++;
+        lastBallots[voter] = ballots.append(voter, timeStamp, hash, ciphertext, sig);
+    }
+
+    /**
+     * @return the last accepted ballots of each voter, decoded from the arena one at a time
+     */
+    private Iterable<ElGamalCT> lastBallotCiphertexts() {
+        return () -> Arrays.stream(lastBallots).filter(slot -> slot >= 0).mapToObj(ballots::ciphertext).iterator();
+    }
+
+    /**
+     * @param voterPk the signature key of a voter
+     * @return the last accepted ballot of the voter, read from the off-heap arena, null if none
+     */
+    public BallotArena.BallotView getLastBallot(BigInteger voterPk) {
+        Integer voter = votersPkMap.get(voterPk);
+        return voter == null || lastBallots[voter] < 0 ? null : ballots.view(lastBallots[voter]);
+    }
+
+    /**
+     * @return the bytes of direct memory holding the accepted ballots
+     */
+    public long getBallotArenaBytes() {
+        return ballots == null ? 0 : ballots.offHeapBytes();
+    }
+
+    /**
+     * Write a snapshot of the derived state every interval blocks.
+     * The state is copied when the block is appended and the file is written by a background thread.
+     *
+     * @param directory the snapshot directory
+     * @param interval number of blocks between two snapshots
+     * @throws IllegalArgumentException if interval is less than 1
+     */
+    public void enableSnapshots(Path directory, long interval) {
+        if (interval < 1)
+            throw new IllegalArgumentException("the snapshot interval must be at least one block");
+        this.snapshotDirectory = directory;
+        this.snapshotInterval = interval;
+        if (snapshotWriter == null) {
+            snapshotWriter = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "votechain-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Capture the derived state and write it in background
+     *
+     * @return the pending write, which completes with the snapshot path
+     */
+    public Future<Path> writeSnapshot() {
+        if (snapshotWriter == null)
+            throw new IllegalStateException("snapshots are not enabled");
+        VoteChainSnapshot snapshot = captureSnapshot();
+        Path directory = snapshotDirectory;
+        return snapshotWriter.submit(() -> snapshot.writeTo(directory));
+    }
+
+    /**
+     * Wait for the pending snapshots and stop the background writer
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void closeSnapshots() throws InterruptedException {
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdown();
+            snapshotWriter.awaitTermination(1, TimeUnit.MINUTES);
+            snapshotWriter = null;
+        }
+    }
+
+    /**
+     * Archive the chain in compressed segments of segmentBlocks blocks, written in background as they
+     * are sealed. The blocks already in the chain are archived too.
+     *
+     * @param directory the directory of the segments
+     * @param segmentBlocks the blocks of a segment
+     * @return the archiver, for its statistics
+     * @throws IOException if the directory cannot be created
+     */
+    public synchronized ChainArchiver enableArchive(Path directory, int segmentBlocks) throws IOException {
+        if (archiver != null)
+            throw new IllegalStateException("the chain is already archived");
+        archiver = new ChainArchiver(blockchainDescriptor.toPath(), directory, segmentBlocks, height);
+        addBlockListener(archiver);
+        return archiver;
+    }
+
+    /**
+     * Seal the last blocks in a final segment and stop archiving
+     *
+     * @throws IOException if a segment could not be written
+     */
+    public synchronized void closeArchive() throws IOException {
+        if (archiver != null) {
+            blockListeners.remove(archiver);
+            archiver.close();
+            archiver = null;
+        }
+    }
+
+    /**
+     * Answer receipt queries from a persistent index kept in the directory. The chain file is read
+     * once here, then the records of the index follow the appended blocks and the index file is
+     * written only by sealReceipts. An index left by a previous run is reused if it covers exactly
+     * the current chain. Like enableArchive, it is called while no block is being appended.
+     *
+     * @param directory the receipt index directory
+     * @throws IOException if the chain file cannot be read
+     */
+    public synchronized void enableReceipts(Path directory) throws IOException {
+        ReceiptIndex.Builder builder = ReceiptIndex.Builder.scan(blockchainDescriptor.toPath());
+        ReceiptIndex previous = ReceiptIndex.open(directory);
+        if (previous != null && (previous.getHeight() != builder.getHeight() || !previous.getLastBlockHash().equals(builder.getLastBlockHash()))) {
+            previous.close();
+            previous = null;
+        }
+        synchronized (receiptLock) {
+            if (receiptBuilder != null)
+                throw new IllegalStateException("receipts are already enabled");
+            receiptDirectory = directory;
+            receiptBuilder = builder;
+            receiptIndex = previous;
+        }
+        addBlockListener(builder);
+    }
+
+    /**
+     * Write the receipt index of the blocks appended so far, e.g. once the voting is closed, and
+     * answer the next queries from it. Neither the chain nor the appenders wait for the writing.
+     *
+     * @return the number of blocks covered by the index
+     * @throws IOException if the index cannot be written
+     */
+    public long sealReceipts() throws IOException {
+        synchronized (receiptLock) {
+            if (receiptDirectory == null)
+                throw new IllegalStateException("receipts are not enabled");
+            ReceiptIndex sealed = receiptBuilder.write(receiptDirectory);
+            if (receiptIndex != null)
+                receiptIndex.close();
+            receiptIndex = sealed;
+            return sealed.getHeight();
+        }
+    }
+
+    /**
+     * Look up the last ballot of a voter: its height, whether it enters the tally and the
+     * Merkle inclusion proof of its block, as of the last sealed index (the first query seals
+     * one if needed). Each lookup is a few binary searches of the persistent index.
+     *
+     * @param voterKey the signature public key h of the voter
+     * @return the receipt, null if the voter has not voted
+     * @throws IOException if the index cannot be written or read
+     */
+    public BallotReceipt getReceipt(BigInteger voterKey) throws IOException {
+        long start = System.nanoTime();
+        BallotReceipt receipt;
+        synchronized (receiptLock) {
+            receipt = receipts().findByVoter(voterKey);
+        }
+        metrics.receiptLookup.recordSince(start);
+        return receipt;
+    }
+
+    /**
+     * Look up a ballot by its hash, see {@link BallotReceipt#ballotHash(ElGamalCT)}, as of the
+     * last sealed index
+     *
+     * @param ballotHash the hexadecimal hash of the ballot
+     * @return the receipt, with counted false if a later ballot of the same voter replaced it;
+     * null if the ballot is not in the chain
+     * @throws IOException if the index cannot be written or read
+     */
+    public BallotReceipt getReceipt(String ballotHash) throws IOException {
+        long start = System.nanoTime();
+        BallotReceipt receipt;
+        synchronized (receiptLock) {
+            receipt = receipts().findByBallotHash(ballotHash);
+        }
+        metrics.receiptLookup.recordSince(start);
+        return receipt;
+    }
+
+    /**
+     * @return the last sealed receipt index, sealing the chain as appended so far if there is none;
+     * called with the receipt lock held
+     */
+    private ReceiptIndex receipts() throws IOException {
+        if (receiptDirectory == null)
+            throw new IllegalStateException("receipts are not enabled");
+        if (receiptIndex == null)
+            receiptIndex = receiptBuilder.write(receiptDirectory);
+        return receiptIndex;
+    }
+
+    /**
+     * @return a copy of the state derived from the chain up to the last block. Only the slots of the
+     * last ballots and the list of the arena chunks are copied here; the ballots are decoded from the
+     * arena when the snapshot is written.
+     */
+    public VoteChainSnapshot captureSnapshot() {
+        return new VoteChainSnapshot(height, lastBlockHash, chainFileLength, lastBlockOffset, votingInProgress,
+                indexOfStartVotingBlock, indexOfEndVotingBlock, ballotEncoding, ballotElementBytes, votersPkMap,
+                lastBallots.clone(), ballots == null ? null : ballots.frozen(), new ArrayList<>(decryptionContributes));
+    }
+
+    /**
+     * @return the last added block, null for the empty chain
      */
     public Block getLastBlock(){
-        return blocks.get(blocks.size() - 1);
+        return lastBlock;
+    }
+
+    /**
+     * @return the number of blocks of the chain
+     */
+    public long getHeight() {
+        return height;
     }
 
     /**
@@ -77,8 +562,12 @@ public class VoteChain {
      * @throws NoSuchAlgorithmException
      */
     public void insertPKTransactions(SchnorrPK jointPK, SchnorrSig jointSig, List<BigInteger> votersPk) throws IOException, NoSuchAlgorithmException {
-        votersPk.forEach(voterPk -> votersPkMap.put(voterPk, votersPkMap.size()));
-        insertSignedTransaction(jointPK,jointSig,votersPk.toString());
+        // the voters map is updated when the block is appended
+        Transaction transaction = new Transaction(jointPK, jointSig, votersPk.toString(),
+                new KeyListPayload(votersPk.toArray(new BigInteger[0])));
+        if(signatures.verify(transaction.sig, transaction.pkSig, transaction.message)) {
+            addTransaction(transaction);
+        }
     }
 
 
@@ -91,21 +580,163 @@ public class VoteChain {
      * @throws IOException
      */
     public void addTransaction(Transaction transaction) throws NoSuchAlgorithmException, IOException {
+        // if the chain is empty the previous hash is 0
+        Block block = new Block(transaction, lastBlockHash, LocalDateTime.now());
+        // updates the blockchain file
+        String line = block.toString() + '\n';
+        long start = System.nanoTime();
         FileWriter writer = new FileWriter(blockchainDescriptor, true);
+        writer.write(line);
+        writer.close();
+        metrics.appendIO.recordSince(start);
+
+        appended(block, line);
+    }
+
+    /**
+     * Append blocks created by another node, e.g. the leader of a replicated chain: each block keeps
+     * its timestamp and hash, and must link to the previous one. The blocks are checked first, then
+     * written with a single file write, and only then applied and passed to the listeners.
+     *
+     * @param lines the blocks, in their textual form
+     * @return the height of the chain after the append
+     * @throws IOException if a block is unreadable or does not continue the chain, the blocks before it are kept
+     * @throws NoSuchAlgorithmException
+     */
+    public long appendBlocks(List<String> lines) throws IOException, NoSuchAlgorithmException {
+        List<Block> blocks = new ArrayList<>(lines.size());
+        StringBuilder written = new StringBuilder();
+        IOException invalid = null;
+        // each block is checked against the chain as the blocks before it in the batch will leave it
+        String previousHash = lastBlockHash;
+        boolean registryOpen = indexOfStartVotingBlock < 0, voting = votingInProgress;
+        for (String line : lines) {
+            long blockHeight = height + blocks.size();
+            Block block;
+            try {
+                ChainRecord record;
+                try {
+                    record = ChainRecord.parse(blockHeight, line);
+                } catch (RuntimeException e) {
+                    throw new IOException("unreadable block at height " + blockHeight, e);
+                }
+                block = replayBlock(record, previousHash, registryOpen, voting);
+            } catch (IOException e) {
+                invalid = e;
+                break;
+            }
+            blocks.add(block);
+            written.append(line).append('\n');
+            previousHash = block.getHash();
+            Transaction transaction = block.getTransaction();
+            if (transaction.payload == null && transaction.message.equals(START_VOTING_MESSAGE)) {
+                registryOpen = false;
+                voting = true;
+            } else if (transaction.payload == null && transaction.message.equals(STOP_VOTING_MESSAGE)) {
+                voting = false;
+            }
+        }
 
-        String prevBlockHash;
-        // if the chain is empty set prevBlock to 0
-        if(blocks.size() > 0){
-            prevBlockHash = getLastBlock().getHash();
-        }else{
-            prevBlockHash = "0";
+        if (!blocks.isEmpty()) {
+            long start = System.nanoTime();
+            try (FileWriter writer = new FileWriter(blockchainDescriptor, true)) {
+                writer.write(written.toString());
+            }
+            metrics.appendIO.recordSince(start);
+            for (int i = 0; i < blocks.size(); i++) {
+                appended(blocks.get(i), lines.get(i) + '\n');
+            }
         }
+        if (invalid != null)
+            throw invalid;
+        return height;
+    }
 
-        blocks.add(new Block(transaction, prevBlockHash, LocalDateTime.now()));
-        // updates the blockchain file
-        writer.write(blocks.get(blocks.size()-1).toString());
-        writer.write('\n');
-        writer.close();
+    /**
+     * Read blocks already written to the chain file, e.g. for a replica lagging behind
+     *
+     * @param from the height of the first block
+     * @param count the number of blocks, all below the height of the chain
+     * @return the blocks in their textual form, as accepted by appendBlocks
+     * @throws IOException if the file cannot be read or holds fewer blocks
+     */
+    public List<String> readBlocks(long from, int count) throws IOException {
+        List<String> lines = new ArrayList<>(count);
+        Map.Entry<Long, Long> start;
+        synchronized (blockOffsets) {
+            start = blockOffsets.floorEntry(from);
+        }
+        // from the closest indexed block, so at most OFFSET_INTERVAL blocks are skipped
+        try (FileInputStream in = new FileInputStream(blockchainDescriptor)) {
+            in.getChannel().position(start.getValue());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()));
+            long h = start.getKey(), offset = start.getValue();
+            for (String line; lines.size() < count && (line = reader.readLine()) != null; ) {
+                long length = line.getBytes(Charset.defaultCharset()).length + 1;
+                if (!line.isEmpty()) {
+                    indexOffset(h, offset);
+                    if (h++ >= from)
+                        lines.add(line);
+                }
+                offset += length;
+            }
+        }
+        if (lines.size() < count)
+            throw new IOException("the blockchain file ends before height " + (from + count));
+        return lines;
+    }
+
+    /**
+     * Remember where a block starts in the chain file, if it is one of the indexed blocks
+     */
+    private void indexOffset(long blockHeight, long offset) {
+        if (blockHeight % OFFSET_INTERVAL == 0) {
+            synchronized (blockOffsets) {
+                blockOffsets.put(blockHeight, offset);
+            }
+        }
+    }
+
+    /**
+     * Update the chain with a block just written to the blockchain file
+     */
+    private void appended(Block block, String line) {
+        indexOffset(height, chainFileLength);
+        lastBlock = block;
+        lastBlockOffset = chainFileLength;
+        applyToState(block);
+        lastBlockHash = block.getHash();
+        height++;
+        long lineLength = line.getBytes(Charset.defaultCharset()).length;
+        chainFileLength += lineLength;
+        metrics.blocksAppended.increment();
+        metrics.bytesAppended.add(lineLength);
+
+        if(snapshotDirectory != null && height % snapshotInterval == 0)
+            writeSnapshot();
+        for (BlockListener listener : blockListeners)
+            listener.blockAppended(height - 1, block);
+    }
+
+    /**
+     * @return the publisher of the blocks appended to the chain, lifecycle transitions and decryption
+     * contributes included; subscribers can also start from an earlier height
+     */
+    public synchronized ChainEventPublisher getEventPublisher() {
+        if (eventPublisher == null) {
+            eventPublisher = new ChainEventPublisher(blockchainDescriptor.toPath(), height);
+            addBlockListener(eventPublisher);
+        }
+        return eventPublisher;
+    }
+
+    /**
+     * Register a listener called, in the appending thread, after each block is written and applied
+     *
+     * @param listener the listener
+     */
+    public void addBlockListener(BlockListener listener) {
+        blockListeners.add(listener);
     }
 
     /**
@@ -119,7 +750,7 @@ public class VoteChain {
      */
     public void insertSignedTransaction(SchnorrPK pk, SchnorrSig sig, String message) throws IOException, NoSuchAlgorithmException {
         Transaction transaction = new Transaction(pk,sig, message);
-        if(Schnorr.Verify(transaction.sig, transaction.pkSig, transaction.message)) {
+        if(signatures.verify(transaction.sig, transaction.pkSig, transaction.message)) {
             addTransaction(transaction);
         }
     }
@@ -135,9 +766,29 @@ public class VoteChain {
      * @throws NoSuchAlgorithmException
      */
     public void insertSignedTransactionWithProof(SchnorrPK pk, SchnorrSig sig, String message, String ZKProof) throws IOException, NoSuchAlgorithmException {
-        TransactionWithProof transaction = new TransactionWithProof(pk,sig, message,ZKProof);
-        if(Schnorr.Verify(transaction.sig, transaction.pkSig, transaction.message+transaction.getZKProof()))
+        insertSignedTransactionWithProof(pk, sig, message, ZKProof, null);
+    }
+
+    /**
+     * Add a transaction to the blockchain specifying signature, message, a ZK proof and the typed payload of the message
+     *
+     * @param pk the signature pk
+     * @param sig the signature for the message
+     * @param message the message to include into the transaction
+     * @param ZKProof the ZKProof to include into the transaction
+     * @param payload the binary content of the message
+     * @return true if the signature is valid and the transaction has been added
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public boolean insertSignedTransactionWithProof(SchnorrPK pk, SchnorrSig sig, String message, String ZKProof,
+                                                    TransactionPayload payload) throws IOException, NoSuchAlgorithmException {
+        TransactionWithProof transaction = new TransactionWithProof(pk,sig, message,ZKProof, payload);
+        if(signatures.verify(transaction.sig, transaction.pkSig, transaction.message+transaction.getZKProof())) {
             addTransaction(transaction);
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -155,8 +806,51 @@ public class VoteChain {
      */
     public void insertDecContributeTransaction(SchnorrPK pk, SchnorrSig sig, String message, String ZKProof,
                                                BigInteger wj, BigInteger uj, ElGamalPK pkAj) throws IOException, NoSuchAlgorithmException {
-        if(verifyZKProofOfDecryption(ZKProof, wj, pkAj, uj))
-            insertSignedTransactionWithProof(pk, sig, message, ZKProof);
+        long start = System.nanoTime();
+        boolean validProof = verifyZKProofOfDecryption(ZKProof, wj, pkAj, uj);
+        metrics.shareProofs.recordSince(start);
+        if(validProof)
+            insertSignedTransactionWithProof(pk, sig, message, ZKProof, new DecryptionSharePayload(wj));
+        else
+            metrics.rejectedShares.increment();
+    }
+
+    /**
+     * Add the decryption contributes of many authorities, in order. All the proofs are checked
+     * with one multi-exponentiation, and each of them separately only if the batch fails.
+     *
+     * @param uj the randomness ciphertext part, common to all the contributes
+     * @param shares the contributes
+     * @return the number of contributes added
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public int insertDecContributeTransactions(BigInteger uj, List<DecryptionShare> shares) throws IOException, NoSuchAlgorithmException {
+        int n = shares.size();
+        ElGamalPK[] pks = new ElGamalPK[n];
+        BigInteger[] W = new BigInteger[n];
+        DecryptionShareProof[] proofs = new DecryptionShareProof[n];
+        for (int j = 0; j < n; j++) {
+            pks[j] = shares.get(j).pkAj;
+            W[j] = shares.get(j).wj;
+            proofs[j] = shares.get(j).proof;
+        }
+        long start = System.nanoTime();
+        boolean[] valid = ChaumPedersen.VerifyDecryptionShares(pks, uj, W, proofs);
+        metrics.shareProofs.recordSince(start);
+
+        int added = 0;
+        for (int j = 0; j < n; j++) {
+            DecryptionShare share = shares.get(j);
+            if (!valid[j]) {
+                metrics.rejectedShares.increment();
+                continue;
+            }
+            if (insertSignedTransactionWithProof(share.pkSig, share.sig, share.wj.toString(), share.proof.toString(),
+                    new DecryptionSharePayload(share.wj)))
+                added++;
+        }
+        return added;
     }
 
     /**
@@ -171,20 +865,168 @@ public class VoteChain {
      * @throws NoSuchAlgorithmException
      */
     public void insertVoteTransaction(ElGamalPK pka, SchnorrPK pk, SchnorrSig sig, ElGamalCT encrVote, String ZKProof) throws IOException, NoSuchAlgorithmException {
-        // controlli
-        if(votersPkMap.containsKey(pk.getH()) &&  //presente nella blockchain
-        verifyZKProofOfVote(ZKProof, pka, encrVote) && // check validità zero knowledge proof voto 0 o 1
-        votingInProgress &&  //controllo stato votazione in corso
-        checkLastTransaction(pk,LocalDateTime.now())){ // controllo del tempo votazione
+        VoteProof proof;
+        try {
+            proof = new VoteProof(ZKProof);
+        } catch (RuntimeException e) {
+            proof = null; // rejected as an invalid proof once the voter is known to be registered
+        }
+        insertVote(pka, new Ballot(pk, sig, encrVote, proof), null);
+    }
+
+    /**
+     * Add a vote transaction to the blockchain, with the binary proof of vote validity
+     *
+     * @param pka the pka for vote encryption ZK proof
+     * @param pk the signature pk
+     * @param sig the signature of encrVote + proof
+     * @param encrVote the vote to include into the transaction
+     * @param proof the proof that encrVote encrypts 0 or 1
+     * @return true if the vote has been accepted
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public boolean insertVoteTransaction(ElGamalPK pka, SchnorrPK pk, SchnorrSig sig, ElGamalCT encrVote, VoteProof proof) throws IOException, NoSuchAlgorithmException {
+        return insertVote(pka, new Ballot(pk, sig, encrVote, proof), null);
+    }
 
-            //insertSignedTransaction(pk, sig, encrVote.toString());
-            insertSignedTransactionWithProof(pk,sig,encrVote.toString(), ZKProof);
+    /**
+     * Add many vote transactions at once. The validity proofs of the whole batch are checked
+     * with a single multi-exponentiation, and only a failing batch is split to find the invalid ones.
+     * Ballots with values outside the group are rejected before, so they never enter the batch.
+     *
+     * @param pka the pka for vote encryption ZK proof
+     * @param ballots the ballots, appended in this order
+     * @return the number of accepted votes
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public int insertVoteTransactions(ElGamalPK pka, List<Ballot> ballots) throws IOException, NoSuchAlgorithmException {
+        int n = ballots.size();
+        SchnorrPK[] voters = new SchnorrPK[n];
+        ElGamalCT[] cts = new ElGamalCT[n];
+        VoteProof[] proofs = new VoteProof[n];
+        boolean[] inGroup = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            long t = System.nanoTime();
+            inGroup[i] = isInGroup(pka, ballots.get(i));
+            metrics.voteGroupCheck.recordSince(t);
+            voters[i] = ballots.get(i).pkSig;
+            cts[i] = ballots.get(i).encrVote;
+            proofs[i] = inGroup[i] ? ballots.get(i).proof : null;
+        }
 
-            // aggiunta nella mappa del tempo corrente transazione votante
-            voterLastTransactionTime.put(pk.getH(), LocalDateTime.now());
+        long start = System.nanoTime();
+        boolean[] validProofs = verifyZKProofsOfVote(pka, voters, cts, proofs);
+        long perBallot = n == 0 ? 0 : (System.nanoTime() - start) / n;
 
+        int accepted = 0;
+        for (int i = 0; i < n; i++) {
+            if (!inGroup[i]) {
+                metrics.rejectedNotInGroup.increment();
+                continue;
+            }
+            metrics.voteZKCheck.record(perBallot);
+            if (insertVote(pka, ballots.get(i), validProofs[i]))
+                accepted++;
         }
+        return accepted;
+    }
 
+    /**
+     * Add a vote whose group membership and validity proof have already been checked by the caller,
+     * e.g. by a pool of verification threads with isInGroup and verifyZKProofOfVote. The remaining
+     * checks (eligibility, voting window, rate limit, signature) are done here.
+     *
+     * @param pka the pka for vote encryption ZK proof
+     * @param ballot the ballot
+     * @param inGroup the result of isInGroup
+     * @param validProof the result of the proof verification
+     * @return true if the vote has been accepted
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     */
+    public boolean insertVerifiedVoteTransaction(ElGamalPK pka, Ballot ballot, boolean inGroup, boolean validProof) throws IOException, NoSuchAlgorithmException {
+        if (!inGroup) {
+            metrics.rejectedNotInGroup.increment();
+            return false;
+        }
+        return insertVote(pka, ballot, validProof);
+    }
+
+    /**
+     * Check a vote and append it to the blockchain
+     *
+     * @param validProof the result of the batch verification of the proof (the ballot has already
+     *                   been checked to be in the group), null to verify both here
+     * @return true if the vote has been accepted
+     */
+    private boolean insertVote(ElGamalPK pka, Ballot ballot, Boolean validProof) throws IOException, NoSuchAlgorithmException {
+        SchnorrPK pk = ballot.pkSig;
+
+        // controlli, each stage is timed and every rejection is counted with its reason
+        long t = System.nanoTime();
+        boolean registered = votersPkMap.containsKey(pk.getH()); //presente nella blockchain
+        t = metrics.voteEligibility.recordSince(t);
+        if(!registered){
+            metrics.rejectedUnregistered.increment();
+            return false;
+        }
+
+        if(validProof == null){
+            // controllo appartenenza al gruppo, cheap with respect to the proof and the signature
+            boolean inGroup = isInGroup(pka, ballot);
+            t = metrics.voteGroupCheck.recordSince(t);
+            if(!inGroup){
+                metrics.rejectedNotInGroup.increment();
+                return false;
+            }
+            validProof = ballot.proof != null && verifyZKProofOfVote(ballot.proof, pka, pk, ballot.encrVote); // check validità zero knowledge proof voto 0 o 1
+            t = metrics.voteZKCheck.recordSince(t);
+        }
+        if(!validProof){
+            metrics.rejectedBadProof.increment();
+            return false;
+        }
+
+        if(!votingInProgress){ //controllo stato votazione in corso
+            metrics.rejectedOutsideWindow.increment();
+            return false;
+        }
+
+        boolean allowed = checkLastTransaction(pk,LocalDateTime.now()); // controllo del tempo votazione
+        t = metrics.voteRateLimit.recordSince(t);
+        if(!allowed){
+            metrics.rejectedRateLimited.increment();
+            return false;
+        }
+
+        TransactionWithProof transaction = new TransactionWithProof(pk, ballot.sig, ballot.encrVote.toString(), ballot.proof.toString(),
+                new BallotPayload(ballot.encrVote, ballot.proof));
+        boolean validSignature = signatures.verify(transaction.sig, transaction.pkSig, transaction.message+transaction.getZKProof());
+        t = metrics.voteSignatureVerify.recordSince(t);
+        if(!validSignature){
+            metrics.rejectedBadSignature.increment();
+            return false;
+        }
+
+        // the block updates the last ballot and the last transaction time (tempo transazione votante) of the voter
+        addTransaction(transaction);
+        metrics.voteAppend.recordSince(t);
+        metrics.votesAccepted.increment();
+        return true;
+    }
+
+    /**
+     * Check that the ciphertext components and the commitment of the Schnorr signature are
+     * elements of the prime order subgroup. In Zp with a safe prime this is a Legendre symbol.
+     *
+     * @return true if all the values are group elements
+     */
+    public static boolean isInGroup(ElGamalPK pka, Ballot ballot) {
+        Group group = pka.params.group;
+        return ballot.encrVote != null && group.isElement(ballot.encrVote.C) && group.isElement(ballot.encrVote.C2)
+                && ballot.sig != null && ballot.pkSig.getGroup().isElement(ballot.sig.getA());
     }
 
     /**
@@ -193,25 +1035,67 @@ public class VoteChain {
      * @return true only if the time interval is greater than allowedTransactionInterval
      */
     public boolean checkLastTransaction(SchnorrPK pk, LocalDateTime currentTimeTransaction){
-        if(voterLastTransactionTime.containsKey(pk.getH())){
-            Duration differenceInTime = Duration.between(voterLastTransactionTime.get(pk.getH()), currentTimeTransaction);
+        BallotArena.BallotView last = getLastBallot(pk.getH());
+        if(last != null){
+            Duration differenceInTime = Duration.between(last.getTimeStamp(), currentTimeTransaction);
             return differenceInTime.compareTo(allowedTransactionInterval) > 0;  // restituisce vero solo se l'intervallo di tempo è superiore al minimo richiesto
         }
         return true;
     }
 
     /**
-     * Simulates the Zero-Knowledge proof of encrypting 0 or 1
+     * Verify the Zero-Knowledge proof of encrypting 0 or 1, made for the ballot of the voter pk
      */
-    public boolean verifyZKProofOfVote(String ZKProof, ElGamalPK pka, ElGamalCT encrVote){
-        return true;
+    public boolean verifyZKProofOfVote(String ZKProof, ElGamalPK pka, SchnorrPK pk, ElGamalCT encrVote){
+        try {
+            return verifyZKProofOfVote(new VoteProof(ZKProof), pka, pk, encrVote);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Verify the disjunctive Chaum-Pedersen proof of encrypting a valid vote of the ballot encoding,
+     * made for the ballot of the voter pk
+     */
+    public boolean verifyZKProofOfVote(VoteProof proof, ElGamalPK pka, SchnorrPK pk, ElGamalCT encrVote){
+        return ChaumPedersen.VerifyVote(pka, ballotMessages, pk.getH(), encrVote, proof);
     }
 
     /**
-     * Simulates the Zero-Knowledge proof of decryption contributes
+     * Verify a batch of proofs of encrypting a valid vote, a missing proof is invalid
+     */
+    public boolean[] verifyZKProofsOfVote(ElGamalPK pka, SchnorrPK[] pks, ElGamalCT[] encrVotes, VoteProof[] proofs){
+        List<Integer> present = new ArrayList<>(proofs.length);
+        for (int i = 0; i < proofs.length; i++) {
+            if (proofs[i] != null)
+                present.add(i);
+        }
+        BigInteger[] voters = new BigInteger[present.size()];
+        ElGamalCT[] cts = new ElGamalCT[present.size()];
+        VoteProof[] ps = new VoteProof[present.size()];
+        for (int i = 0; i < cts.length; i++) {
+            voters[i] = pks[present.get(i)].getH();
+            cts[i] = encrVotes[present.get(i)];
+            ps[i] = proofs[present.get(i)];
+        }
+        boolean[] verified = ChaumPedersen.VerifyVotes(pka, ballotMessages, voters, cts, ps);
+        boolean[] valid = new boolean[proofs.length];
+        for (int i = 0; i < cts.length; i++) {
+            valid[present.get(i)] = verified[i];
+        }
+        return valid;
+    }
+
+    /**
+     * Verify the Zero-Knowledge proof that the decryption contribute wj = uj^sj matches pkaj = g^sj
      */
     public boolean verifyZKProofOfDecryption(String ZKProof, BigInteger wj, ElGamalPK pkaj, BigInteger uj){
-        return true;
+        try {
+            return ChaumPedersen.VerifyDecryptionShare(pkaj, uj, wj, new DecryptionShareProof(ZKProof));
+        } catch (RuntimeException e) {
+            return false;
+        }
     }
 
 
@@ -225,9 +1109,8 @@ public class VoteChain {
      * @throws NoSuchAlgorithmException
      */
     public void insertStartTransaction(SchnorrPK startvotejointpk, SchnorrSig startvotejointSig, String message) throws IOException, NoSuchAlgorithmException {
-        votingInProgress = true; // votazione è iniziata
+        // the voting starts when the block is appended
         insertSignedTransaction(startvotejointpk ,startvotejointSig, message);
-        indexOfStartVotingBlock = blocks.size()-1;
     }
 
     /**
@@ -240,9 +1123,8 @@ public class VoteChain {
      * @throws NoSuchAlgorithmException
      */
     public void insertStopTransaction(SchnorrPK stopvotejointpk, SchnorrSig stopvotejointSig, String message) throws IOException, NoSuchAlgorithmException {
-        votingInProgress = false; // votazione è terminata
+        // the voting ends when the block is appended
         insertSignedTransaction(stopvotejointpk ,stopvotejointSig, message);
-        indexOfEndVotingBlock = blocks.size()-1;
     }
 
     // filtraggio + verifica
@@ -250,44 +1132,155 @@ public class VoteChain {
     // TODO: questo restituisce il ciphertext complessivo (cambiare nome)
 
     /**
-     * Count and filter last votes of all voters
+     * Count and filter last votes of all voters. Whatever the number of candidates, the tally is
+     * a single ciphertext, the packed counters being digits of its plaintext.
      *
      * @param pk the ElGamal pk used to encrypt the votes
-     * @return a ElGamalCT encrypting the sum of votes of candidate 1
+     * @return a ElGamalCT encrypting the sum of the votes (the votes of candidate 1 with two candidates)
      */
     public ElGamalCT countVotes(ElGamalPK pk) {
-        //blocchi con le transazioni di voto
+        // the last valid vote of each voter in [t_votestart, t_voteend] is kept in lastBallots, off-heap
+        // as the blocks are appended (filtraggio voti duplicati), so no block needs to be rescanned
 
-        Map<BigInteger, String> filteredVotes = new HashMap<>();
-        //List<Utils.Pair<BigInteger,String>> filteredVotes = new ArrayList<>();
+        // tutti gli ultimi voti validi dei votanti
+        // moltiplicazione -> omomorfismo su t. el gamal
+        long start = System.nanoTime();
+        ElGamalCT total = Homomorphism(pk, lastBallotCiphertexts());
+        metrics.countVotes.recordSince(start);
+        return total;
+    }
 
-        for(int i=indexOfStartVotingBlock+1; i<indexOfEndVotingBlock; i++){
-            //filtraggio voti duplicati
-            TransactionWithProof transaction = (TransactionWithProof)blocks.get(i).getTransaction();
-            filteredVotes.put(transaction.pkSig.getH(), transaction.message);
+    /**
+     * Count the votes reading the blocks written to the blockchain file instead of the ballots held
+     * in memory: the same tally as countVotes, for a node whose heap cannot hold the whole electorate.
+     *
+     * @param pk the ElGamal pk used to encrypt the votes
+     * @return the product of the last ballot of each voter and the number of ballots counted
+     * @throws IOException if the blockchain file cannot be read
+     */
+    public StreamingTally.Result countVotesFromChainFile(ElGamalPK pk) throws IOException {
+        long start = System.nanoTime();
+        // the blocks written so far, a block being appended is not part of the tally
+        StreamingTally.Result result = new StreamingTally().tally(blockchainDescriptor.toPath(), chainFileLength, pk);
+        metrics.countVotes.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Decrypt the counted votes with the decryption contributes of the authorities
+     *
+     * @param pk the ElGamal pk used to encrypt the votes
+     * @param total the ciphertext returned by countVotes
+     * @param W the decryption contributes
+     * @return g^m, where m is the number of votes of candidate 1
+     */
+    public BigInteger decryptVotes(ElGamalPK pk, ElGamalCT total, BigInteger[] W) {
+        long start = System.nanoTime();
+        BigInteger plain = Decrypt(pk, total, W);
+        metrics.decrypt.recordSince(start);
+        return plain;
+    }
+
+    /**
+     * Recover the number of votes of each candidate from the decrypted tally: the discrete logarithm
+     * is computed with a parallel baby-step giant-step search over the range of the packed tally.
+     *
+     * @param pk the ElGamal pk used to encrypt the votes
+     * @param decrypted g^m, as returned by decryptVotes
+     * @return the votes of each candidate, null if the tally is not a valid packing of the counted ballots
+     */
+    public long[] decodeTally(ElGamalPK pk, BigInteger decrypted) {
+        return decodeTally(pk, decrypted, getCountedBallots());
+    }
+
+    /**
+     * Recover the number of votes of each candidate from a tally computed out of this chain,
+     * e.g. by countVotesFromChainFile
+     *
+     * @param pk the ElGamal pk used to encrypt the votes
+     * @param decrypted g^m, as returned by decryptVotes
+     * @param ballots the number of ballots multiplied in the tally
+     * @return the votes of each candidate, null if the tally is not a valid packing of the ballots
+     */
+    public long[] decodeTally(ElGamalPK pk, BigInteger decrypted, long ballots) {
+        long start = System.nanoTime();
+        BigInteger m = DiscreteLog.Solve(pk.params.group, pk.params.g, decrypted, ballotEncoding.bound(ballots));
+        metrics.decodeTally.recordSince(start);
+        if (m.signum() < 0)
+            return null;
+        try {
+            return ballotEncoding.decode(m, ballots);
+        } catch (IllegalArgumentException e) {
+            return null;
         }
+    }
 
-        // tutti gli ultimi voti validi dei votanti
-        // moltiplicazione -> omomorfismo su t. el gamal
-        List<String> messages = new LinkedList<>(filteredVotes.values());
+    /**
+     * @return the number of ballots in the tally, the last accepted one of each voter
+     */
+    public long getCountedBallots() {
+        return countedBallots;
+    }
 
-        return Homomorphism(pk, messages);
+    /**
+     * Set the candidates of the election, before the voting starts. Like the election key, the
+     * encoding is part of the published election configuration.
+     *
+     * @param encoding the ballot encoding
+     * @param pk the ElGamal pk used to encrypt the votes
+     * @throws IllegalArgumentException if the packed tally would not fit the group order of the pk
+     */
+    public void setBallotEncoding(PackedEncoding encoding, ElGamalPK pk) {
+        if (!encoding.fits(pk.params.group.getOrder()))
+            throw new IllegalArgumentException("the packed tally of " + encoding + " exceeds the group order");
+        this.ballotEncoding = encoding;
+        this.ballotMessages = encoding.messages();
+        this.ballotElementBytes = pk.params.group.getElementBytes();
     }
 
+    /**
+     * @return the candidates of the election and the packing of their votes
+     */
+    public PackedEncoding getBallotEncoding() {
+        return ballotEncoding;
+    }
 
     /**
-     * @return a list of the decryption contributes of the authorities (which is located on the blockchain)
+     * @return the cache of the signatures verified by the chain
      */
-    public BigInteger[] getAuthorityDecryptContributes(){
+    public SignatureCache getSignatureCache() {
+        return signatures;
+    }
+
+    /**
+     * Replace the cache of the verified signatures, e.g. with a private one or with one of size 0
+     */
+    public void setSignatureCache(SignatureCache signatures) {
+        this.signatures = signatures;
+    }
 
-        List<BigInteger> W = new ArrayList<>();
+    /**
+     * @return the metrics of the chain hot paths
+     */
+    public VoteChainMetrics getMetrics() {
+        return metrics;
+    }
 
-        for(int i=indexOfEndVotingBlock+1; i < blocks.size(); i++){
-            TransactionWithProof transaction = (TransactionWithProof)blocks.get(i).getTransaction();
-            W.add(new BigInteger(transaction.message));
-        }
+    /**
+     * Expose the metrics in the platform MBean server as evote:type=VoteChain,name=&lt;file name&gt;
+     *
+     * @throws JMException if the MBean cannot be registered
+     */
+    public void registerMetricsMBean() throws JMException {
+        MetricsMBean.register(metrics.registry, "evote:type=VoteChain,name=" + blockchainDescriptor.getName());
+    }
 
-        return W.toArray(new BigInteger[0]);
+
+    /**
+     * @return a list of the decryption contributes of the authorities (which is located on the blockchain)
+     */
+    public BigInteger[] getAuthorityDecryptContributes(){
+        return decryptionContributes.toArray(new BigInteger[0]);
     }
 
 
@@ -300,13 +1293,25 @@ public class VoteChain {
      * @return the exponent of g^x
      */
     public BigInteger bruteforceGetVotesTo1(BigInteger value, BigInteger g, BigInteger p, BigInteger maxNumOfVoters){
+        return bruteforceGetVotesTo1(value, new ZpGroup(p, p.subtract(BigInteger.ONE).shiftRight(1), g), maxNumOfVoters);
+    }
+
+    /**
+     * Execute exhaustive search on the value to obtain the number of votes associated to candidate 1
+     * @param value is a group element such that value = g ^ x
+     * @param group the group of the election, generated by g
+     * @param maxNumOfVoters the max value of x
+     * @return the exponent of g^x
+     */
+    public BigInteger bruteforceGetVotesTo1(BigInteger value, Group group, BigInteger maxNumOfVoters){
         BigInteger i;
+        BigInteger val = group.getIdentity(); // g^0
 
         for(i = BigInteger.ZERO; i.compareTo(maxNumOfVoters) < 0; i = i.add(BigInteger.ONE) ){
-            BigInteger val = g.modPow(i, p); // g^i mod p
             if(val.compareTo(value) == 0){ // g^i mod p == value
                 return i; // found the exponent of the dlog -> number of voters
             }
+            val = group.multiply(val, group.getGenerator()); // g^(i+1)
         }
 
         return new BigInteger("-1"); // bruteforce did not found a solution
@@ -0,0 +1,312 @@
+package VoteChain;
+
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A compact binary checkpoint of the state derived from the chain up to a given block:
+ * subscribed voters, last transaction times, voting window, ballot encoding and running tally inputs.
+ * The snapshot is bound to the height and hash of its last block and to the length of the
+ * chain file at that block, so that a restart only replays the blocks written afterwards.
+ * A snapshot captured from a running chain keeps the slots of the last ballots and a frozen view of
+ * the ballot arena, and decodes the ballots only when it is written, off the appending thread.
+ */
+public class VoteChainSnapshot {
+
+    private static final Logger LOGGER = Logger.getLogger(VoteChainSnapshot.class.getName());
+    private static final int MAGIC = 0x56435332; // "VCS2", the snapshots without the ballot encoding are skipped
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+    private static final int RETAINED = 2; // number of snapshots kept on disk
+
+    final long height;
+    final String lastBlockHash;
+    final long chainFileLength;
+    final long lastBlockOffset; // where the last block starts in the chain file
+    final boolean votingInProgress;
+    final long indexOfStartVotingBlock, indexOfEndVotingBlock;
+    final PackedEncoding ballotEncoding;
+    final int ballotElementBytes;
+    final Map<BigInteger, Integer> votersPkMap;
+    final Map<BigInteger, LocalDateTime> voterLastTransactionTime; // null for a captured snapshot
+    final Map<BigInteger, ElGamalCT> lastBallots; // null for a captured snapshot
+    final List<BigInteger> decryptionContributes;
+    private final int[] ballotSlots; // slot of the last ballot of each voter index, null for a snapshot read from a file
+    private final BallotArena arena; // the ballots of ballotSlots, null if there are none
+
+    VoteChainSnapshot(long height, String lastBlockHash, long chainFileLength, long lastBlockOffset, boolean votingInProgress,
+                      long indexOfStartVotingBlock, long indexOfEndVotingBlock, PackedEncoding ballotEncoding, int ballotElementBytes,
+                      Map<BigInteger, Integer> votersPkMap, Map<BigInteger, LocalDateTime> voterLastTransactionTime,
+                      Map<BigInteger, ElGamalCT> lastBallots, List<BigInteger> decryptionContributes) {
+        this.height = height;
+        this.lastBlockHash = lastBlockHash;
+        this.chainFileLength = chainFileLength;
+        this.lastBlockOffset = lastBlockOffset;
+        this.votingInProgress = votingInProgress;
+        this.indexOfStartVotingBlock = indexOfStartVotingBlock;
+        this.indexOfEndVotingBlock = indexOfEndVotingBlock;
+        this.ballotEncoding = ballotEncoding;
+        this.ballotElementBytes = ballotElementBytes;
+        this.votersPkMap = votersPkMap;
+        this.voterLastTransactionTime = voterLastTransactionTime;
+        this.lastBallots = lastBallots;
+        this.decryptionContributes = decryptionContributes;
+        this.ballotSlots = null;
+        this.arena = null;
+    }
+
+    /**
+     * A snapshot of a running chain
+     *
+     * @param votersPkMap the map of the chain, never modified afterwards
+     * @param ballotSlots a copy of the slots of the last ballots, -1 for the voters without one
+     * @param arena a frozen view of the ballot arena, null if no ballot has been stored
+     */
+    VoteChainSnapshot(long height, String lastBlockHash, long chainFileLength, long lastBlockOffset, boolean votingInProgress,
+                      long indexOfStartVotingBlock, long indexOfEndVotingBlock, PackedEncoding ballotEncoding, int ballotElementBytes,
+                      Map<BigInteger, Integer> votersPkMap,
+                      int[] ballotSlots, BallotArena arena, List<BigInteger> decryptionContributes) {
+        this.height = height;
+        this.lastBlockHash = lastBlockHash;
+        this.chainFileLength = chainFileLength;
+        this.lastBlockOffset = lastBlockOffset;
+        this.votingInProgress = votingInProgress;
+        this.indexOfStartVotingBlock = indexOfStartVotingBlock;
+        this.indexOfEndVotingBlock = indexOfEndVotingBlock;
+        this.ballotEncoding = ballotEncoding;
+        this.ballotElementBytes = ballotElementBytes;
+        this.votersPkMap = votersPkMap;
+        this.voterLastTransactionTime = null;
+        this.lastBallots = null;
+        this.decryptionContributes = decryptionContributes;
+        this.ballotSlots = ballotSlots;
+        this.arena = arena;
+    }
+
+    public long getHeight() {
+        return height;
+    }
+
+    public String getLastBlockHash() {
+        return lastBlockHash;
+    }
+
+    /**
+     * Write the snapshot into the directory atomically: the file is written and synced under a
+     * temporary name, then renamed. Older snapshots beyond the retained ones are deleted.
+     *
+     * @param directory the snapshot directory
+     * @return the path of the written snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    public Path writeTo(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(String.format("%s%016d%s", PREFIX, height, SUFFIX));
+        Path tmp = directory.resolve(target.getFileName() + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc));
+            writeFields(out);
+            out.writeLong(crc.getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Path> snapshots = list(directory);
+        for (int i = RETAINED; i < snapshots.size(); i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+        return target;
+    }
+
+    /**
+     * Load the most recent valid snapshot of a directory, skipping corrupted or truncated files
+     *
+     * @param directory the snapshot directory
+     * @return the latest snapshot, null if there is none
+     * @throws IOException if the directory cannot be listed
+     */
+    public static VoteChainSnapshot loadLatest(Path directory) throws IOException {
+        if (!Files.isDirectory(directory))
+            return null;
+        for (Path path : list(directory)) {
+            try {
+                return read(path);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warning("Skipping invalid snapshot " + path + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param path a snapshot file
+     * @return the snapshot
+     * @throws IOException if the file is unreadable or its checksum does not match
+     */
+    public static VoteChainSnapshot read(Path path) throws IOException {
+        try (InputStream file = Files.newInputStream(path)) {
+            CRC32 crc = new CRC32();
+            DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(file, 1 << 16), crc));
+            VoteChainSnapshot snapshot = readFields(in);
+            long expected = crc.getValue();
+            if (in.readLong() != expected)
+                throw new IOException("checksum mismatch");
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return the snapshot files of the directory, most recent first
+     */
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> snapshots = new ArrayList<>();
+            files.filter(p -> p.getFileName().toString().startsWith(PREFIX) && p.getFileName().toString().endsWith(SUFFIX))
+                    .forEach(snapshots::add);
+            snapshots.sort(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed());
+            return snapshots;
+        }
+    }
+
+    private void writeFields(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(height);
+        out.writeUTF(lastBlockHash);
+        out.writeLong(chainFileLength);
+        out.writeLong(lastBlockOffset);
+        out.writeBoolean(votingInProgress);
+        out.writeLong(indexOfStartVotingBlock);
+        out.writeLong(indexOfEndVotingBlock);
+        out.writeUTF(ballotEncoding.toString());
+        out.writeInt(ballotElementBytes);
+
+        out.writeInt(votersPkMap.size());
+        for (Map.Entry<BigInteger, Integer> e : votersPkMap.entrySet()) {
+            writeBigInteger(out, e.getKey());
+            out.writeInt(e.getValue());
+        }
+        if (ballotSlots != null) {
+            writeBallotSlots(out);
+        } else {
+            out.writeInt(voterLastTransactionTime.size());
+            for (Map.Entry<BigInteger, LocalDateTime> e : voterLastTransactionTime.entrySet()) {
+                writeBigInteger(out, e.getKey());
+                writeTime(out, e.getValue());
+            }
+            out.writeInt(lastBallots.size());
+            for (Map.Entry<BigInteger, ElGamalCT> e : lastBallots.entrySet()) {
+                writeBigInteger(out, e.getKey());
+                writeBigInteger(out, e.getValue().C);
+                writeBigInteger(out, e.getValue().C2);
+            }
+        }
+        out.writeInt(decryptionContributes.size());
+        for (BigInteger wj : decryptionContributes) {
+            writeBigInteger(out, wj);
+        }
+    }
+
+    /**
+     * Write the times and the ciphertexts of the last ballots of a captured snapshot, decoded from the arena
+     */
+    private void writeBallotSlots(DataOutputStream out) throws IOException {
+        int voting = 0;
+        for (Map.Entry<BigInteger, Integer> e : votersPkMap.entrySet()) {
+            if (ballotSlots[e.getValue()] >= 0)
+                voting++;
+        }
+        out.writeInt(voting);
+        for (Map.Entry<BigInteger, Integer> e : votersPkMap.entrySet()) {
+            int slot = ballotSlots[e.getValue()];
+            if (slot >= 0) {
+                writeBigInteger(out, e.getKey());
+                writeTime(out, arena.timeStamp(slot));
+            }
+        }
+        out.writeInt(voting);
+        for (Map.Entry<BigInteger, Integer> e : votersPkMap.entrySet()) {
+            int slot = ballotSlots[e.getValue()];
+            if (slot >= 0) {
+                ElGamalCT ballot = arena.ciphertext(slot);
+                writeBigInteger(out, e.getKey());
+                writeBigInteger(out, ballot.C);
+                writeBigInteger(out, ballot.C2);
+            }
+        }
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    private static VoteChainSnapshot readFields(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("not a VoteChain snapshot");
+        long height = in.readLong();
+        String lastBlockHash = in.readUTF();
+        long chainFileLength = in.readLong();
+        long lastBlockOffset = in.readLong();
+        boolean votingInProgress = in.readBoolean();
+        long start = in.readLong();
+        long end = in.readLong();
+        PackedEncoding encoding = PackedEncoding.parse(in.readUTF());
+        int elementBytes = in.readInt();
+
+        int n = in.readInt();
+        Map<BigInteger, Integer> voters = new HashMap<>(2 * n);
+        for (int i = 0; i < n; i++) {
+            voters.put(readBigInteger(in), in.readInt());
+        }
+        n = in.readInt();
+        Map<BigInteger, LocalDateTime> times = new HashMap<>(2 * n);
+        for (int i = 0; i < n; i++) {
+            BigInteger key = readBigInteger(in);
+            times.put(key, LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC));
+        }
+        n = in.readInt();
+        Map<BigInteger, ElGamalCT> ballots = new HashMap<>(2 * n);
+        for (int i = 0; i < n; i++) {
+            BigInteger key = readBigInteger(in);
+            ballots.put(key, new ElGamalCT(readBigInteger(in), readBigInteger(in)));
+        }
+        n = in.readInt();
+        List<BigInteger> contributes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            contributes.add(readBigInteger(in));
+        }
+
+        return new VoteChainSnapshot(height, lastBlockHash, chainFileLength, lastBlockOffset, votingInProgress, start, end,
+                encoding, elementBytes, voters, times, ballots, contributes);
+    }
+
+    /**
+     * Write a non-negative BigInteger as a length prefixed byte array
+     */
+    private static void writeBigInteger(DataOutput out, BigInteger value) throws IOException {
+        byte[] bytes = value.toByteArray();
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static BigInteger readBigInteger(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+}
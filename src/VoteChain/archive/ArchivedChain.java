@@ -0,0 +1,115 @@
+package VoteChain.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Read access to a chain archived by ChainArchiver: any block by height, or the whole chain as the
+ * text of the original blockchain file, e.g. for the ChainAuditor.
+ */
+public class ArchivedChain implements Closeable {
+
+    private final List<ChainSegment> segments;
+    private final long height;
+
+    private ArchivedChain(List<ChainSegment> segments, long height) {
+        this.segments = segments;
+        this.height = height;
+    }
+
+    /**
+     * Open the segments of a directory
+     * @throws IOException if a segment is unreadable or the segments are not contiguous from height 0
+     */
+    public static ArchivedChain open(Path directory) throws IOException {
+        List<ChainSegment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, ChainArchiver.PREFIX + "*" + ChainArchiver.SUFFIX)) {
+            for (Path file : files) {
+                segments.add(ChainSegment.open(file));
+            }
+            segments.sort(Comparator.comparingLong(ChainSegment::getFirstHeight));
+            long height = 0;
+            for (ChainSegment segment : segments) {
+                if (segment.getFirstHeight() != height)
+                    throw new IOException("the archive has no block at height " + height);
+                height += segment.getBlocks();
+            }
+            return new ArchivedChain(segments, height);
+        } catch (IOException e) {
+            for (ChainSegment segment : segments) {
+                segment.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return the blocks of the archive
+     */
+    public long getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the block at a height, as written in the chain file
+     * @throws IOException if the block cannot be read
+     */
+    public String line(long height) throws IOException {
+        if (height < 0 || height >= this.height)
+            throw new IndexOutOfBoundsException("height " + height + " of " + this.height);
+        int low = 0, high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).getFirstHeight() <= height)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return segments.get(low).line(height);
+    }
+
+    /**
+     * @return the text of the chain file, decompressed one block at a time
+     */
+    public Reader openReader() {
+        return new Reader() {
+            private long next;
+            private String line = "";
+            private int position;
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                if (length == 0)
+                    return 0;
+                while (position == line.length()) {
+                    if (next == height)
+                        return -1;
+                    line = line(next++) + '\n';
+                    position = 0;
+                }
+                int read = Math.min(length, line.length() - position);
+                line.getChars(position, position + read, buffer, offset);
+                position += read;
+                return read;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ChainSegment segment : segments) {
+            segment.close();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package VoteChain.archive;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binary form of the blocks of a chain segment. A block line is split in its fields: the two hashes
+ * as raw bytes, the timestamp as seconds and nanoseconds, the group parameters and the key of the
+ * signer as indices of the dictionaries of the segment, and the rest of the transaction as text whose
+ * decimal numbers are written in binary. Every block is then deflated on its own, so a segment can be
+ * read at any block. Lines that would not be rebuilt identically are kept as text.
+ */
+public class BlockCodec {
+
+    private static final String HASH = "Block{hash='";
+    private static final String PREVIOUS_HASH = "', previousHash='";
+    private static final String TRANSACTION = "', transaction='";
+    private static final String TIMESTAMP = "', timeStamp=";
+    private static final String[] TYPES = {"Transaction{pkSig=", "TransactionWithProof{pkSig="};
+    private static final String KEY = ", h=";
+    private static final String SIGNATURE = "}, sig=";
+
+    private static final byte TEXT = 0, BLOCK = 1; // forms of a block
+    private static final byte STORED = 0, DEFLATED = 1; // codecs of a frame
+    private static final int HASH_BYTES = 32;
+    private static final int MIN_NUMBER_DIGITS = 4; // shorter numbers stay in the text
+
+    // the text left in the blocks after their encoding, to prime the deflater
+    private static final byte[] PRESET = (", sig=SchnorrSig{a=, e=, z=}, message='{C=;C2=}', ZKProof='"
+            + "{A0=;B0=;A1=;B1=;c0=;c1=;z0=;z1=}'}{a1=;a2=;z=}'}inizio votazionefine votazione, ").getBytes(StandardCharsets.ISO_8859_1);
+
+    /**
+     * The dictionaries of a segment: the group parameters of the signature keys, i.e. their text
+     * around the key, and the keys
+     */
+    public static class Dictionary {
+        final List<String[]> groups = new ArrayList<>();
+        final List<BigInteger> keys = new ArrayList<>();
+        private final Map<String, Integer> groupIds = new HashMap<>();
+        private final Map<BigInteger, Integer> keyIds = new HashMap<>();
+
+        int group(String before, String after) {
+            return groupIds.computeIfAbsent(before + '\0' + after, k -> {
+                groups.add(new String[]{before, after});
+                return groups.size() - 1;
+            });
+        }
+
+        int key(BigInteger key) {
+            return keyIds.computeIfAbsent(key, k -> {
+                keys.add(key);
+                return keys.size() - 1;
+            });
+        }
+
+        void write(Output out) {
+            out.varint(groups.size());
+            for (String[] group : groups) {
+                out.text(group[0]);
+                out.text(group[1]);
+            }
+            out.varint(keys.size());
+            for (BigInteger key : keys) {
+                out.bytes(key.toByteArray());
+            }
+        }
+
+        static Dictionary read(ByteBuffer in) {
+            Dictionary dictionary = new Dictionary();
+            for (int i = readVarint(in); i > 0; i--) {
+                dictionary.group(readText(in), readText(in));
+            }
+            for (int i = readVarint(in); i > 0; i--) {
+                dictionary.key(new BigInteger(readBytes(in)));
+            }
+            return dictionary;
+        }
+    }
+
+    /**
+     * Encode and compress a block, adding its group and key to the dictionary
+     * @param line the block, as written in the chain file
+     * @return the frame of the block
+     */
+    public static byte[] encode(String line, Dictionary dictionary) {
+        Output out = new Output();
+        if (!encodeBlock(line, dictionary, out) || !line.equals(decodeBlock(ByteBuffer.wrap(out.toByteArray()), dictionary))) {
+            out = new Output();
+            out.write(TEXT);
+            out.text(line);
+        }
+        byte[] plain = out.toByteArray();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setDictionary(PRESET);
+            deflater.setInput(plain);
+            deflater.finish();
+            byte[] deflated = new byte[plain.length + 64];
+            int length = deflater.deflate(deflated);
+            Output frame = new Output();
+            if (deflater.finished() && length < plain.length) {
+                frame.write(DEFLATED);
+                frame.varint(plain.length);
+                frame.write(deflated, 0, length);
+            } else {
+                frame.write(STORED);
+                frame.write(plain, 0, plain.length);
+            }
+            return frame.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress and decode a frame
+     * @return the block, as written in the chain file
+     * @throws IllegalArgumentException if the frame is corrupted
+     */
+    public static String decode(byte[] frame, Dictionary dictionary) {
+        byte[] plain;
+        if (frame[0] == DEFLATED) {
+            ByteBuffer in = ByteBuffer.wrap(frame, 1, frame.length - 1);
+            plain = new byte[readVarint(in)];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(frame, in.position(), in.remaining());
+                int length = inflater.inflate(plain);
+                if (length == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(PRESET);
+                    length = inflater.inflate(plain);
+                }
+                if (length != plain.length)
+                    throw new IllegalArgumentException("truncated frame");
+            } catch (DataFormatException e) {
+                throw new IllegalArgumentException("corrupted frame", e);
+            } finally {
+                inflater.end();
+            }
+        } else {
+            plain = new byte[frame.length - 1];
+            System.arraycopy(frame, 1, plain, 0, plain.length);
+        }
+        return decodeBlock(ByteBuffer.wrap(plain), dictionary);
+    }
+
+    private static boolean encodeBlock(String line, Dictionary dictionary, Output out) {
+        int previous = HASH.length() + 2 * HASH_BYTES;
+        int transaction = previous + PREVIOUS_HASH.length() + 2 * HASH_BYTES;
+        int timeStamp = line.lastIndexOf(TIMESTAMP);
+        if (!line.startsWith(HASH) || !line.startsWith(PREVIOUS_HASH, previous) || !line.startsWith(TRANSACTION, transaction)
+                || timeStamp < transaction || !line.endsWith("}"))
+            return false; // e.g. the genesis block, whose previous hash is "0"
+        transaction += TRANSACTION.length();
+
+        int type = TYPES.length - 1;
+        while (type >= 0 && !line.startsWith(TYPES[type], transaction))
+            type--;
+        int pk = type < 0 ? -1 : transaction + TYPES[type].length();
+        int key = pk < 0 ? -1 : line.indexOf(KEY, pk);
+        int keyEnd = key < 0 ? -1 : line.indexOf(',', key + KEY.length());
+        int pkEnd = keyEnd < 0 ? -1 : line.indexOf(SIGNATURE, keyEnd);
+        if (pkEnd < 0 || pkEnd > timeStamp)
+            return false;
+        try {
+            LocalDateTime time = LocalDateTime.parse(line.substring(timeStamp + TIMESTAMP.length(), line.length() - 1));
+            BigInteger signer = new BigInteger(line.substring(key + KEY.length(), keyEnd));
+            out.write(BLOCK);
+            out.write(HexFormat.of().parseHex(line, HASH.length(), HASH.length() + 2 * HASH_BYTES), 0, HASH_BYTES);
+            out.write(HexFormat.of().parseHex(line, previous + PREVIOUS_HASH.length(), previous + PREVIOUS_HASH.length() + 2 * HASH_BYTES), 0, HASH_BYTES);
+            out.varint(time.toEpochSecond(ZoneOffset.UTC));
+            out.varint(time.getNano());
+            out.write((byte) type);
+            out.varint(dictionary.group(line.substring(pk, key + KEY.length()), line.substring(keyEnd, pkEnd + 1)));
+            out.varint(dictionary.key(signer));
+            out.text(line.substring(pkEnd + 1, timeStamp));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static String decodeBlock(ByteBuffer in, Dictionary dictionary) {
+        if (in.get() == TEXT)
+            return readText(in);
+        byte[] hash = new byte[HASH_BYTES], previousHash = new byte[HASH_BYTES];
+        in.get(hash);
+        in.get(previousHash);
+        LocalDateTime time = LocalDateTime.ofEpochSecond(readVarint64(in), readVarint(in), ZoneOffset.UTC);
+        String type = TYPES[in.get()];
+        String[] group = dictionary.groups.get(readVarint(in));
+        BigInteger signer = dictionary.keys.get(readVarint(in));
+        return HASH + HexFormat.of().formatHex(hash) + PREVIOUS_HASH + HexFormat.of().formatHex(previousHash)
+                + TRANSACTION + type + group[0] + signer + group[1] + readText(in) + TIMESTAMP + time + '}';
+    }
+
+    /**
+     * A growable buffer with the varint and text encodings of the segments
+     */
+    static class Output extends ByteArrayOutputStream {
+
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void bytes(byte[] bytes) {
+            varint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Write a text as literal runs and binary numbers: a header (length << 1 | number) precedes
+         * each run, 0 ends the text
+         */
+        void text(String text) {
+            int literal = 0, i = 0;
+            while (i < text.length()) {
+                int digits = i;
+                while (digits < text.length() && Character.isDigit(text.charAt(digits)) && text.charAt(digits) < 128)
+                    digits++;
+                if (digits - i >= MIN_NUMBER_DIGITS && text.charAt(i) != '0') {
+                    literal(text, literal, i);
+                    byte[] number = new BigInteger(text.substring(i, digits)).toByteArray();
+                    varint((long) number.length << 1 | 1);
+                    write(number, 0, number.length);
+                    literal = digits;
+                }
+                i = Math.max(digits, i + 1);
+            }
+            literal(text, literal, text.length());
+            varint(0);
+        }
+
+        private void literal(String text, int from, int to) {
+            if (to > from) {
+                byte[] bytes = text.substring(from, to).getBytes(StandardCharsets.UTF_8);
+                varint((long) bytes.length << 1);
+                write(bytes, 0, bytes.length);
+            }
+        }
+    }
+
+    static int readVarint(ByteBuffer in) {
+        long value = readVarint64(in);
+        if (value > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("varint out of range");
+        return (int) value;
+    }
+
+    static long readVarint64(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    static byte[] readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[readVarint(in)];
+        in.get(bytes);
+        return bytes;
+    }
+
+    static String readText(ByteBuffer in) {
+        StringBuilder text = new StringBuilder();
+        for (int header = readVarint(in); header != 0; header = readVarint(in)) {
+            byte[] run = new byte[header >>> 1];
+            in.get(run);
+            if ((header & 1) == 1)
+                text.append(new BigInteger(run));
+            else
+                text.append(new String(run, StandardCharsets.UTF_8));
+        }
+        return text.toString();
+    }
+}
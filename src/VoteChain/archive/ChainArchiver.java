@@ -0,0 +1,178 @@
+package VoteChain.archive;
+
+import VoteChain.Block;
+import VoteChain.VoteChain;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archives a VoteChain in compressed segments: every segmentBlocks appended blocks the segment is
+ * sealed, and a background thread reads its blocks back from the chain file and writes them as a
+ * ChainSegment, so the appending thread never waits for the compression.
+ */
+public class ChainArchiver implements VoteChain.BlockListener, Closeable {
+
+    static final String PREFIX = "segment-";
+    static final String SUFFIX = ".vcs";
+
+    private final Path chainFile;
+    private final Path directory;
+    private final int segmentBlocks;
+    private final ExecutorService sealer;
+
+    // guarded by this
+    private long height; // blocks of the chain
+    private long submittedHeight; // blocks whose segment has been submitted to the sealer
+    private boolean closed;
+
+    // written by the sealer thread only
+    private long nextOffset; // the chain file offset of the first block not sealed yet
+    private volatile long sealedBlocks, chainBytes, segmentBytes;
+    private volatile IOException failure;
+
+    /**
+     * Start archiving a chain: the segments left in the directory are replaced, and the full segments
+     * of the blocks already in the chain are sealed at once
+     *
+     * @param chainFile the blockchain file
+     * @param directory the directory of the segments
+     * @param segmentBlocks the blocks of a segment
+     * @param height the blocks of the chain
+     * @throws IOException if the directory cannot be created
+     */
+    public ChainArchiver(Path chainFile, Path directory, int segmentBlocks, long height) throws IOException {
+        if (segmentBlocks < 1)
+            throw new IllegalArgumentException("a segment needs at least one block");
+        this.chainFile = chainFile;
+        this.directory = directory;
+        this.segmentBlocks = segmentBlocks;
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path segment : stale) {
+                Files.delete(segment);
+            }
+        }
+        this.sealer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "votechain-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        synchronized (this) {
+            this.height = height;
+            while (submittedHeight + segmentBlocks <= height)
+                submit(segmentBlocks);
+        }
+    }
+
+    /**
+     * @return the segment file of the blocks starting at a height
+     */
+    public static Path segmentFile(Path directory, long firstHeight) {
+        return directory.resolve(String.format("%s%016d%s", PREFIX, firstHeight, SUFFIX));
+    }
+
+    @Override
+    public synchronized void blockAppended(long height, Block block) {
+        if (closed)
+            return;
+        this.height = height + 1;
+        if (this.height - submittedHeight == segmentBlocks)
+            submit(segmentBlocks);
+    }
+
+    /**
+     * Seal the next blocks, called with the lock held so the segments are submitted in order
+     */
+    private void submit(int blocks) {
+        long first = submittedHeight;
+        submittedHeight += blocks;
+        sealer.execute(() -> {
+            try {
+                seal(first, blocks);
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+            }
+        });
+    }
+
+    private void seal(long first, int blocks) throws IOException {
+        if (failure != null)
+            return; // the segments must stay contiguous
+        List<String> lines = new ArrayList<>(blocks);
+        long offset = nextOffset;
+        try (FileChannel channel = FileChannel.open(chainFile, StandardOpenOption.READ)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel.position(offset)), Charset.defaultCharset()));
+            while (lines.size() < blocks) {
+                String line = reader.readLine();
+                if (line == null)
+                    throw new IOException("the blockchain file ends before block " + (first + lines.size()));
+                offset += line.getBytes(Charset.defaultCharset()).length + 1;
+                if (!line.isEmpty())
+                    lines.add(line);
+            }
+        }
+        long size = ChainSegment.write(segmentFile(directory, first), first, lines);
+        chainBytes += offset - nextOffset;
+        segmentBytes += size;
+        sealedBlocks += blocks;
+        nextOffset = offset;
+    }
+
+    /**
+     * @return the blocks written to sealed segments
+     */
+    public long getSealedBlocks() {
+        return sealedBlocks;
+    }
+
+    /**
+     * @return the size of the sealed blocks in the chain file divided by their size in the segments
+     */
+    public double getCompressionRatio() {
+        long segments = segmentBytes;
+        return segments == 0 ? 0 : (double) chainBytes / segments;
+    }
+
+    /**
+     * Seal the blocks appended after the last full segment, wait for the pending segments and stop
+     * archiving
+     *
+     * @throws IOException if a segment could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            if (height > submittedHeight)
+                submit((int) (height - submittedHeight));
+        }
+        sealer.shutdown();
+        try {
+            if (!sealer.awaitTermination(1, TimeUnit.MINUTES))
+                throw new IOException("the archive segments are still being written");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while sealing the archive", e);
+        }
+        if (failure != null)
+            throw failure;
+    }
+}
@@ -0,0 +1,157 @@
+package VoteChain.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sealed segment of an archived chain: a run of consecutive blocks in the compressed form of
+ * BlockCodec. The file holds the first height and the dictionaries, then one varint framed block after
+ * the other, then an index of the block offsets, so that any block is read with a single positional read.
+ */
+public class ChainSegment implements Closeable {
+
+    private static final int MAGIC = 0x56435347; // "VCSG", distinct from the magic of the snapshots
+    private static final int TRAILER = Long.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+    private final long firstHeight;
+    private final int blocks;
+    private final BlockCodec.Dictionary dictionary;
+    private final long[] offsets; // of each frame, then of the index
+
+    private ChainSegment(FileChannel channel, long firstHeight, int blocks, BlockCodec.Dictionary dictionary, long[] offsets) {
+        this.channel = channel;
+        this.firstHeight = firstHeight;
+        this.blocks = blocks;
+        this.dictionary = dictionary;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Write a segment, atomically replacing the file
+     * @param target the segment file
+     * @param firstHeight the height of the first block
+     * @param lines the blocks, as written in the chain file
+     * @return the size of the segment file
+     * @throws IOException if the file cannot be written
+     */
+    public static long write(Path target, long firstHeight, List<String> lines) throws IOException {
+        BlockCodec.Dictionary dictionary = new BlockCodec.Dictionary();
+        List<byte[]> frames = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            frames.add(BlockCodec.encode(line, dictionary));
+        }
+
+        BlockCodec.Output out = new BlockCodec.Output();
+        out.write(ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).array(), 0, Integer.BYTES);
+        out.varint(firstHeight);
+        out.varint(lines.size());
+        dictionary.write(out);
+        ByteBuffer index = ByteBuffer.allocate(frames.size() * Long.BYTES + TRAILER);
+        for (byte[] frame : frames) {
+            index.putLong(out.size());
+            out.bytes(frame);
+        }
+        index.putLong(out.size()).putInt(MAGIC);
+        out.write(index.array(), 0, index.capacity());
+
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer content = ByteBuffer.wrap(out.toByteArray());
+            while (content.hasRemaining())
+                file.write(content);
+            file.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return out.size();
+    }
+
+    /**
+     * Open a segment for reading
+     * @throws IOException if the file cannot be read or is not a complete segment
+     */
+    public static ChainSegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < Integer.BYTES + TRAILER)
+                throw new IOException(file + " is not a chain segment");
+            ByteBuffer trailer = read(channel, size - TRAILER, TRAILER);
+            long indexOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC || indexOffset < 0 || indexOffset > size - TRAILER)
+                throw new IOException(file + " is not a complete chain segment");
+
+            ByteBuffer header = read(channel, 0, (int) Math.min(indexOffset, Integer.MAX_VALUE));
+            if (header.getInt() != MAGIC)
+                throw new IOException(file + " is not a chain segment");
+            long firstHeight = BlockCodec.readVarint64(header);
+            int blocks = BlockCodec.readVarint(header);
+            BlockCodec.Dictionary dictionary = BlockCodec.Dictionary.read(header);
+
+            ByteBuffer index = read(channel, indexOffset, blocks * Long.BYTES);
+            long[] offsets = new long[blocks + 1];
+            for (int i = 0; i < blocks; i++) {
+                offsets[i] = index.getLong();
+            }
+            offsets[blocks] = indexOffset;
+            return new ChainSegment(channel, firstHeight, blocks, dictionary, offsets);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(file + " is corrupted", e);
+        }
+    }
+
+    /**
+     * @return the height of the first block of the segment
+     */
+    public long getFirstHeight() {
+        return firstHeight;
+    }
+
+    /**
+     * @return the number of blocks of the segment
+     */
+    public int getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Read a block
+     * @param height the height of the block, in [firstHeight, firstHeight + blocks)
+     * @return the block, as written in the chain file
+     * @throws IOException if the block cannot be read or is corrupted
+     */
+    public String line(long height) throws IOException {
+        if (height < firstHeight || height >= firstHeight + blocks)
+            throw new IndexOutOfBoundsException("height " + height + " is not in the segment");
+        int i = (int) (height - firstHeight);
+        ByteBuffer frame = read(channel, offsets[i], (int) (offsets[i + 1] - offsets[i]));
+        try {
+            return BlockCodec.decode(BlockCodec.readBytes(frame), dictionary);
+        } catch (RuntimeException e) {
+            throw new IOException("block " + height + " is corrupted", e);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("unexpected end of the segment");
+        }
+        return buffer.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
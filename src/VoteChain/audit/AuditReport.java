@@ -0,0 +1,110 @@
+package VoteChain.audit;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a chain audit: counters and every discrepancy found
+ */
+public class AuditReport {
+
+    private final List<String> discrepancies = Collections.synchronizedList(new ArrayList<>());
+
+    long blocks, signaturesVerified, ballots, voteProofsVerified, countedBallots, decryptionContributes;
+    BigInteger recomputedVotesTo1; // null if the tally could not be recomputed
+    long[] recomputedCounts; // the votes of each candidate, null if the tally could not be recomputed
+    String publishedResult;
+
+    void discrepancy(long height, String description) {
+        discrepancies.add("block " + height + ": " + description);
+    }
+
+    void discrepancy(String description) {
+        discrepancies.add(description);
+    }
+
+    /**
+     * Add the counters and the discrepancies of a part of the election, e.g. a shard
+     * @param part the name of the part, prefixed to its discrepancies
+     */
+    void add(String part, AuditReport report) {
+        blocks += report.blocks;
+        signaturesVerified += report.signaturesVerified;
+        ballots += report.ballots;
+        voteProofsVerified += report.voteProofsVerified;
+        countedBallots += report.countedBallots;
+        decryptionContributes += report.decryptionContributes;
+        for (String d : report.discrepancies) {
+            discrepancies.add(part + ", " + d);
+        }
+    }
+
+    /**
+     * @return true if no discrepancy has been found
+     */
+    public boolean isClean() {
+        return discrepancies.isEmpty();
+    }
+
+    public List<String> getDiscrepancies() {
+        return discrepancies;
+    }
+
+    public long getBlocks() {
+        return blocks;
+    }
+
+    public long getSignaturesVerified() {
+        return signaturesVerified;
+    }
+
+    public long getBallots() {
+        return ballots;
+    }
+
+    public long getVoteProofsVerified() {
+        return voteProofsVerified;
+    }
+
+    public long getCountedBallots() {
+        return countedBallots;
+    }
+
+    public long getDecryptionContributes() {
+        return decryptionContributes;
+    }
+
+    public BigInteger getRecomputedVotesTo1() {
+        return recomputedVotesTo1;
+    }
+
+    public long[] getRecomputedCounts() {
+        return recomputedCounts;
+    }
+
+    public String getPublishedResult() {
+        return publishedResult;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("AuditReport{blocks=").append(blocks)
+                .append(", signaturesVerified=").append(signaturesVerified)
+                .append(", ballots=").append(ballots)
+                .append(", voteProofsVerified=").append(voteProofsVerified)
+                .append(", countedBallots=").append(countedBallots)
+                .append(", decryptionContributes=").append(decryptionContributes)
+                .append(", recomputedVotesTo1=").append(recomputedVotesTo1)
+                .append(", recomputedCounts=").append(Arrays.toString(recomputedCounts))
+                .append(", publishedResult='").append(publishedResult).append('\'')
+                .append(", discrepancies=").append(discrepancies.size()).append('}');
+        for (String d : discrepancies) {
+            sb.append('\n').append('\t').append(d);
+        }
+        return sb.toString();
+    }
+}
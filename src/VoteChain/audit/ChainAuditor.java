@@ -0,0 +1,637 @@
+package VoteChain.audit;
+
+import VoteChain.VoteChain;
+import crypto.utils.Schnorr.Schnorr;
+import crypto.utils.Schnorr.SchnorrJointSignature;
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.group.Group;
+import crypto.utils.thresholdElGamal.DiscreteLog;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.ElGamalParams;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+import crypto.utils.zkp.ChaumPedersen;
+import crypto.utils.zkp.DecryptionShareProof;
+import crypto.utils.zkp.VoteProof;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.Decrypt;
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.Homomorphism;
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.LagrangeCoefficient;
+
+/**
+ * Independent verifier of a published VoteChain file.
+ * The file is streamed in batches of lines: parsing, hash recomputation and Schnorr verification
+ * of a batch, as well as the batch verification of its vote validity proofs, run on a pool of workers, while the hash links, the election lifecycle and the tally
+ * inputs are checked in chain order as the batches complete. Only the last ballot of each voter is
+ * kept in memory, so the whole chain never needs to fit in the heap.
+ * An election split over shards (see ShardedVoteChain) is audited shard by shard, then the tallies
+ * recomputed on the shards are multiplied into the tally decrypted on shard 0.
+ */
+public class ChainAuditor {
+
+    private static final Pattern RESULT = Pattern.compile("candidato (\\d+) = (\\d+)");
+
+    private final int threads;
+    private final int batchSize;
+
+    public ChainAuditor() {
+        this(Runtime.getRuntime().availableProcessors(), 1024);
+    }
+
+    /**
+     * @param threads the number of verification workers
+     * @param batchSize the number of blocks verified by a worker at once
+     */
+    public ChainAuditor(int threads, int batchSize) {
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * A block after the parallel checks
+     */
+    private static class Checked {
+        final long height;
+        final ChainRecord record; // null if the line could not be parsed
+        final String error;
+        boolean hashValid, signatureValid;
+        ElGamalCT ciphertext; // the parsed ciphertext, for transactions carrying one
+        boolean ciphertextValid;
+        VoteProof proof; // the parsed proof of vote validity, null if absent
+        boolean proofValid;
+
+        Checked(long height, ChainRecord record, String error) {
+            this.height = height;
+            this.record = record;
+            this.error = error;
+        }
+    }
+
+    private enum Phase { GENESIS, REGISTRATION, BEFORE_VOTING, VOTING, TALLY }
+
+    /**
+     * A decryption contribute of a valid block, verified once the tally is recomputed
+     */
+    private static class Contribute {
+        final long height;
+        final BigInteger wj;
+        final DecryptionShareProof proof; // names the ElGamal key hj of the authority
+        final SchnorrPK signer;
+
+        Contribute(long height, BigInteger wj, DecryptionShareProof proof, SchnorrPK signer) {
+            this.height = height;
+            this.wj = wj;
+            this.proof = proof;
+            this.signer = signer;
+        }
+    }
+
+    /**
+     * The sequential part of the audit, fed in chain order
+     */
+    private static class ChainState {
+        final AuditReport report;
+        Phase phase = Phase.GENESIS;
+        String lastHash = "0";
+        BigInteger authoritiesKey; // joint signature key of the genesis block
+        BigInteger electionKey; // the ElGamal public key published in the genesis block
+        final Set<BigInteger> registeredVoters = new HashSet<>();
+        final Map<BigInteger, ElGamalCT> lastBallots = new HashMap<>();
+        final List<Contribute> contributes = new ArrayList<>();
+        ElGamalCT publishedTally; // the merged tally of a sharded election, null if not published
+
+        final boolean checkProofs; // false if the election parameters are not known
+
+        ChainState(AuditReport report, boolean checkProofs) {
+            this.report = report;
+            this.checkProofs = checkProofs;
+        }
+
+        void accept(Checked c) {
+            report.blocks++;
+            if (c.record == null) {
+                report.discrepancy(c.height, "unparsable block (" + c.error + ")");
+                return;
+            }
+            ChainRecord r = c.record;
+            if (!r.previousHash.equals(lastHash))
+                report.discrepancy(c.height, "previous hash " + r.previousHash + " does not link to " + lastHash);
+            if (!c.hashValid)
+                report.discrepancy(c.height, "stored hash does not match the block content");
+            if (c.signatureValid)
+                report.signaturesVerified++;
+            else
+                report.discrepancy(c.height, "invalid Schnorr signature");
+            lastHash = r.hash;
+
+            if (!r.withProof) {
+                acceptLifecycle(r);
+            } else if (phase == Phase.VOTING) {
+                acceptBallot(c);
+            } else if (phase == Phase.TALLY) {
+                acceptContribute(c);
+            } else {
+                report.discrepancy(r.height, "transaction with proof outside the voting and tally phases");
+            }
+        }
+
+        void acceptLifecycle(ChainRecord r) {
+            if (phase == Phase.GENESIS) {
+                authoritiesKey = r.pkSig.getH();
+                try {
+                    electionKey = new BigInteger(r.message);
+                } catch (NumberFormatException e) {
+                    report.discrepancy(r.height, "genesis block does not contain an ElGamal public key");
+                }
+                phase = Phase.REGISTRATION;
+                return;
+            }
+            if (!r.pkSig.getH().equals(authoritiesKey))
+                report.discrepancy(r.height, "lifecycle transaction not signed by the authorities joint key");
+
+            if (phase == Phase.REGISTRATION) {
+                String list = r.message.trim();
+                if (list.startsWith("[") && list.endsWith("]")) {
+                    try {
+                        for (String key : list.substring(1, list.length() - 1).split(",")) {
+                            if (!key.isBlank())
+                                registeredVoters.add(new BigInteger(key.trim()));
+                        }
+                    } catch (NumberFormatException e) {
+                        report.discrepancy(r.height, "registration block contains an invalid key");
+                    }
+                } else {
+                    report.discrepancy(r.height, "registration block does not contain a key list");
+                }
+                phase = Phase.BEFORE_VOTING;
+            } else if (r.message.equals(VoteChain.START_VOTING_MESSAGE)) {
+                if (phase != Phase.BEFORE_VOTING)
+                    report.discrepancy(r.height, "unexpected start vote transaction");
+                phase = Phase.VOTING;
+            } else if (r.message.equals(VoteChain.STOP_VOTING_MESSAGE)) {
+                if (phase != Phase.VOTING)
+                    report.discrepancy(r.height, "stop vote transaction without start");
+                phase = Phase.TALLY;
+            } else if (phase == Phase.TALLY && r.message.startsWith("{C=")) {
+                try {
+                    publishedTally = new ElGamalCT(r.message);
+                } catch (RuntimeException e) {
+                    report.discrepancy(r.height, "published tally is not an ElGamal ciphertext");
+                }
+            } else if (phase == Phase.TALLY) {
+                report.publishedResult = r.message;
+            } else {
+                report.discrepancy(r.height, "unexpected lifecycle transaction '" + r.message + "'");
+            }
+        }
+
+        void acceptBallot(Checked c) {
+            ChainRecord r = c.record;
+            report.ballots++;
+            if (!c.signatureValid || !c.hashValid)
+                return; // already reported, a forged ballot does not enter the tally
+            BigInteger voter = r.pkSig.getH();
+            if (!registeredVoters.contains(voter)) {
+                report.discrepancy(r.height, "ballot from unregistered voter " + voter);
+                return;
+            }
+            if (c.ciphertext == null)
+                report.discrepancy(r.height, "ballot does not contain an ElGamal ciphertext");
+            else if (!c.ciphertextValid)
+                report.discrepancy(r.height, "ballot ciphertext is not made of group elements");
+            else if (checkProofs && !c.proofValid)
+                report.discrepancy(r.height, c.proof == null ? "ballot without a proof of vote validity"
+                        : "invalid proof that the ballot encrypts 0 or 1");
+            else {
+                if (checkProofs)
+                    report.voteProofsVerified++;
+                lastBallots.put(voter, c.ciphertext);
+            }
+        }
+
+        void acceptContribute(Checked c) {
+            ChainRecord r = c.record;
+            report.decryptionContributes++;
+            if (!c.signatureValid || !c.hashValid)
+                return; // already reported, a forged contribute does not decrypt the tally
+            BigInteger wj;
+            DecryptionShareProof proof;
+            try {
+                wj = new BigInteger(r.message);
+            } catch (NumberFormatException e) {
+                report.discrepancy(r.height, "decryption contribute is not a number");
+                return;
+            }
+            try {
+                proof = new DecryptionShareProof(r.ZKProof);
+            } catch (RuntimeException e) {
+                report.discrepancy(r.height, "decryption contribute without a proof");
+                return;
+            }
+            if (proof.hj == null) {
+                report.discrepancy(r.height, "decryption contribute proof does not name the key of its authority");
+                return;
+            }
+            contributes.add(new Contribute(r.height, wj, proof, r.pkSig));
+        }
+    }
+
+    /**
+     * Audit a blockchain file
+     * @param chainFile the path of the file
+     * @param params the ElGamal parameters of the election, null to skip the tally recomputation
+     * @return the report of the audit
+     * @throws IOException if the file cannot be read
+     */
+    public AuditReport audit(Path chainFile, ElGamalParams params) throws IOException {
+        return audit(chainFile, params, PackedEncoding.BINARY);
+    }
+
+    /**
+     * Audit a blockchain file of an election with many candidates
+     * @param chainFile the path of the file
+     * @param params the ElGamal parameters of the election, null to skip the tally recomputation
+     * @param encoding the candidates of the election and the packing of their votes
+     * @return the report of the audit
+     * @throws IOException if the file cannot be read
+     */
+    public AuditReport audit(Path chainFile, ElGamalParams params, PackedEncoding encoding) throws IOException {
+        try (Reader reader = Files.newBufferedReader(chainFile)) {
+            return audit(reader, params, encoding);
+        }
+    }
+
+    /**
+     * Audit a blockchain read from a stream, one block per line
+     * @param source the chain content
+     * @param params the ElGamal parameters of the election, null to skip the tally recomputation
+     * @return the report of the audit
+     * @throws IOException if the source cannot be read
+     */
+    public AuditReport audit(Reader source, ElGamalParams params) throws IOException {
+        return audit(source, params, PackedEncoding.BINARY);
+    }
+
+    /**
+     * Audit a blockchain read from a stream, one block per line
+     * @param source the chain content
+     * @param params the ElGamal parameters of the election, null to skip the tally recomputation
+     * @param encoding the candidates of the election and the packing of their votes
+     * @return the report of the audit
+     * @throws IOException if the source cannot be read
+     */
+    public AuditReport audit(Reader source, ElGamalParams params, PackedEncoding encoding) throws IOException {
+        AuditReport report = new AuditReport();
+        ChainState state = scan(source, params, encoding, report);
+        if (finishVoting(state) && params != null && state.electionKey != null) {
+            ElGamalPK pk = new ElGamalPK(state.electionKey, params);
+            recomputeTally(report, pk, Homomorphism(pk, state.lastBallots.values()), state, encoding);
+        }
+        return report;
+    }
+
+    /**
+     * Audit the chain files of an election split over shards: each shard is checked on its own, then
+     * the tallies recomputed on the shards are multiplied and decrypted with the contributes published
+     * on shard 0, next to the merged tally and the result
+     * @param shardFiles the chain file of each shard, shard 0 first
+     * @param params the ElGamal parameters of the election, null to skip the tally recomputation
+     * @param encoding the candidates of the election and the packing of their votes
+     * @return the report of the audit, with the discrepancies of each shard
+     * @throws IOException if a file cannot be read
+     */
+    public AuditReport auditShards(List<Path> shardFiles, ElGamalParams params, PackedEncoding encoding) throws IOException {
+        AuditReport report = new AuditReport();
+        List<ChainState> states = new ArrayList<>(shardFiles.size());
+        boolean ended = true;
+        for (int i = 0; i < shardFiles.size(); i++) {
+            AuditReport shardReport = new AuditReport();
+            ChainState state;
+            try (Reader reader = Files.newBufferedReader(shardFiles.get(i))) {
+                state = scan(reader, params, encoding, shardReport);
+            }
+            shardReport.countedBallots = state.lastBallots.size();
+            if (state.phase != Phase.TALLY) {
+                shardReport.discrepancy("the chain ends before the end of the voting phase");
+                ended = false;
+            }
+            report.add("shard " + i, shardReport);
+            states.add(state);
+        }
+        if (states.isEmpty()) {
+            report.discrepancy("no shard to audit");
+            return report;
+        }
+
+        ChainState tallyShard = states.get(0);
+        Map<BigInteger, Integer> shardOfVoter = new HashMap<>();
+        for (int i = 0; i < states.size(); i++) {
+            ChainState state = states.get(i);
+            if (i > 0 && (!Objects.equals(state.electionKey, tallyShard.electionKey) || !Objects.equals(state.authoritiesKey, tallyShard.authoritiesKey)))
+                report.discrepancy("shard " + i + " has not the election keys of shard 0");
+            if (i > 0 && (state.publishedTally != null || !state.contributes.isEmpty() || state.report.publishedResult != null))
+                report.discrepancy("shard " + i + " publishes a tally, expected on shard 0 only");
+            for (BigInteger voter : state.registeredVoters) {
+                Integer other = shardOfVoter.putIfAbsent(voter, i);
+                if (other != null)
+                    report.discrepancy("voter " + voter + " is registered on shards " + other + " and " + i);
+            }
+        }
+        report.publishedResult = tallyShard.report.publishedResult;
+        if (!ended)
+            return report;
+        if (report.publishedResult == null)
+            report.discrepancy("no voting result has been published");
+        if (tallyShard.publishedTally == null)
+            report.discrepancy("the merged tally of the shards has not been published");
+        if (params == null || tallyShard.electionKey == null)
+            return report;
+
+        ElGamalPK pk = new ElGamalPK(tallyShard.electionKey, params);
+        List<ElGamalCT> tallies = new ArrayList<>(states.size());
+        for (ChainState state : states) {
+            tallies.add(Homomorphism(pk, state.lastBallots.values()));
+        }
+        recomputeTally(report, pk, Homomorphism(pk, tallies), tallyShard, encoding);
+        return report;
+    }
+
+    /**
+     * Read and check the blocks of a chain, in parallel batches consumed in chain order
+     */
+    private ChainState scan(Reader source, ElGamalParams params, PackedEncoding encoding, AuditReport report) throws IOException {
+        BigInteger[] messages = encoding.messages();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Deque<Future<List<Checked>>> inFlight = new ArrayDeque<>();
+        ChainState state;
+
+        try {
+            BufferedReader br = source instanceof BufferedReader ? (BufferedReader) source : new BufferedReader(source);
+            long height = 0;
+            List<String> batch = new ArrayList<>(batchSize);
+
+            // the workers need the election key of the genesis block to verify the vote proofs
+            String first = br.readLine();
+            ElGamalPK electionPk = params == null ? null : genesisKey(first, params);
+            state = new ChainState(report, electionPk != null);
+            if (first != null && !first.isEmpty())
+                batch.add(first);
+
+            for (String line; (line = br.readLine()) != null; ) {
+                if (line.isEmpty())
+                    continue;
+                batch.add(line);
+                if (batch.size() == batchSize) {
+                    inFlight.add(submit(workers, height, batch, params, electionPk, messages));
+                    height += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                    // bound the memory: at most two batches per worker wait to be consumed
+                    while (inFlight.size() > 2 * threads)
+                        consume(inFlight.poll(), state);
+                }
+            }
+            if (!batch.isEmpty())
+                inFlight.add(submit(workers, height, batch, params, electionPk, messages));
+            while (!inFlight.isEmpty())
+                consume(inFlight.poll(), state);
+        } finally {
+            workers.shutdownNow();
+        }
+        return state;
+    }
+
+    /**
+     * @return the election key published in the genesis block, null if it cannot be read
+     */
+    private static ElGamalPK genesisKey(String line, ElGamalParams params) {
+        try {
+            return new ElGamalPK(new BigInteger(ChainRecord.parse(0, line).message), params);
+        } catch (RuntimeException e) {
+            return null; // reported by the sequential checks
+        }
+    }
+
+    private static Future<List<Checked>> submit(ExecutorService workers, long firstHeight, List<String> lines,
+                                                ElGamalParams params, ElGamalPK electionPk, BigInteger[] messages) {
+        return workers.submit(() -> {
+            List<Checked> checked = new ArrayList<>(lines.size());
+            long height = firstHeight;
+            for (String line : lines) {
+                checked.add(check(height++, line, params));
+            }
+            if (electionPk != null)
+                verifyProofs(checked, electionPk, messages);
+            return checked;
+        });
+    }
+
+    /**
+     * Verify the vote proofs of a batch with one multi-exponentiation
+     */
+    private static void verifyProofs(List<Checked> checked, ElGamalPK electionPk, BigInteger[] messages) {
+        List<Checked> ballots = new ArrayList<>();
+        for (Checked c : checked) {
+            if (c.ciphertextValid && c.proof != null)
+                ballots.add(c);
+        }
+        BigInteger[] voters = new BigInteger[ballots.size()];
+        ElGamalCT[] cts = new ElGamalCT[ballots.size()];
+        VoteProof[] proofs = new VoteProof[ballots.size()];
+        for (int i = 0; i < cts.length; i++) {
+            voters[i] = ballots.get(i).record.pkSig.getH();
+            cts[i] = ballots.get(i).ciphertext;
+            proofs[i] = ballots.get(i).proof;
+        }
+        boolean[] valid = ChaumPedersen.VerifyVotes(electionPk, messages, voters, cts, proofs);
+        for (int i = 0; i < valid.length; i++) {
+            ballots.get(i).proofValid = valid[i];
+        }
+    }
+
+    private static Checked check(long height, String line, ElGamalParams params) {
+        ChainRecord record;
+        try {
+            record = ChainRecord.parse(height, line);
+        } catch (RuntimeException e) {
+            return new Checked(height, null, e.getMessage());
+        }
+        Checked c = new Checked(height, record, null);
+        try {
+            c.hashValid = record.hash.equals(record.calculateBlockHash());
+        } catch (Exception e) {
+            c.hashValid = false;
+        }
+        try {
+            c.signatureValid = Schnorr.Verify(record.sig, record.pkSig, record.signedMessage());
+        } catch (RuntimeException e) {
+            c.signatureValid = false;
+        }
+        if (record.withProof && record.message.startsWith("{C=")) {
+            try {
+                c.ciphertext = new ElGamalCT(record.message);
+                c.ciphertextValid = params == null
+                        || (params.group.isElement(c.ciphertext.C) && params.group.isElement(c.ciphertext.C2));
+            } catch (RuntimeException e) {
+                c.ciphertext = null;
+            }
+            try {
+                c.proof = new VoteProof(record.ZKProof);
+            } catch (RuntimeException e) {
+                c.proof = null;
+            }
+        }
+        return c;
+    }
+
+    private static void consume(Future<List<Checked>> batch, ChainState state) throws IOException {
+        try {
+            for (Checked c : batch.get()) {
+                state.accept(c);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("audit interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("audit worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * Check the end of the lifecycle of a single chain
+     * @return true if the voting has ended, so the tally can be recomputed
+     */
+    private static boolean finishVoting(ChainState state) {
+        AuditReport report = state.report;
+        report.countedBallots = state.lastBallots.size();
+
+        if (state.phase != Phase.TALLY) {
+            report.discrepancy("the chain ends before the end of the voting phase");
+            return false;
+        }
+        if (report.publishedResult == null)
+            report.discrepancy("no voting result has been published");
+        return true;
+    }
+
+    /**
+     * Decrypt the tally recomputed from the counted ballots with the published contributes, and
+     * compare it with the published tally and result
+     * @param total the product of the last ballots of the voters
+     * @param tallyState the chain carrying the contributes and the published tally
+     */
+    private static void recomputeTally(AuditReport report, ElGamalPK pk, ElGamalCT total, ChainState tallyState, PackedEncoding encoding) {
+        ElGamalParams params = pk.params;
+        if (tallyState.publishedTally != null
+                && (!tallyState.publishedTally.C.equals(total.C) || !tallyState.publishedTally.C2.equals(total.C2)))
+            report.discrepancy("the published tally differs from the product of the counted ballots");
+        BigInteger[] W = verifyContributes(report, pk, total, tallyState);
+        if (W == null)
+            return;
+        BigInteger plain;
+        try {
+            plain = Decrypt(pk, total, W);
+        } catch (RuntimeException e) {
+            report.discrepancy("the decryption contributes cannot decrypt the tally (" + e.getMessage() + ")");
+            return;
+        }
+
+        // discrete logarithm of the packed tally, then one digit per candidate
+        BigInteger m = DiscreteLog.Solve(params.group, params.g, plain, encoding.bound(report.countedBallots));
+        try {
+            report.recomputedCounts = m.signum() < 0 ? null : encoding.decode(m, report.countedBallots);
+        } catch (IllegalArgumentException e) {
+            report.recomputedCounts = null;
+        }
+
+        if (report.recomputedCounts == null) {
+            report.discrepancy("the decrypted tally is not in the range of the counted ballots");
+            return;
+        }
+        report.recomputedVotesTo1 = BigInteger.valueOf(report.recomputedCounts[1]);
+        if (report.publishedResult != null) {
+            Map<Integer, Long> published = new HashMap<>();
+            Matcher r = RESULT.matcher(report.publishedResult);
+            while (r.find()) {
+                published.put(Integer.parseInt(r.group(1)), Long.parseLong(r.group(2)));
+            }
+            for (int c = 0; c < report.recomputedCounts.length; c++) {
+                Long votes = published.get(c);
+                if (votes == null || votes != report.recomputedCounts[c])
+                    report.discrepancy("published result '" + report.publishedResult + "' differs from the recomputed "
+                            + report.recomputedCounts[c] + " votes to candidate " + c);
+            }
+        }
+    }
+
+    /**
+     * Verify the published decryption contributes against the recomputed tally: the proof of each of
+     * them, then the keys of their authorities, whose signature keys must be distinct and make up the
+     * joint key of the lifecycle transactions, and whose ElGamal keys hj must make up the election key
+     * @return the contributes in chain order, null if they cannot be trusted to decrypt the tally
+     */
+    private static BigInteger[] verifyContributes(AuditReport report, ElGamalPK pk, ElGamalCT total, ChainState tallyState) {
+        List<Contribute> contributes = tallyState.contributes;
+        int n = contributes.size();
+        if (n == 0) {
+            report.discrepancy("no valid decryption contribute has been published");
+            return null;
+        }
+        ElGamalPK[] keys = new ElGamalPK[n];
+        BigInteger[] W = new BigInteger[n];
+        DecryptionShareProof[] proofs = new DecryptionShareProof[n];
+        List<SchnorrPK> signers = new ArrayList<>(n);
+        for (int j = 0; j < n; j++) {
+            Contribute c = contributes.get(j);
+            keys[j] = new ElGamalPK(c.proof.hj, pk.params);
+            W[j] = c.wj;
+            proofs[j] = c.proof;
+            signers.add(c.signer);
+        }
+        boolean trusted = true;
+        boolean[] valid = ChaumPedersen.VerifyDecryptionShares(keys, total.C2, W, proofs);
+        for (int j = 0; j < n; j++) {
+            if (!valid[j]) {
+                report.discrepancy(contributes.get(j).height, "invalid proof of the decryption contribute");
+                trusted = false;
+            }
+        }
+
+        Set<BigInteger> distinct = new HashSet<>();
+        for (int j = 0; j < n; j++) {
+            if (!distinct.add(signers.get(j).getH())) {
+                report.discrepancy(contributes.get(j).height, "second decryption contribute of the same authority");
+                trusted = false;
+            }
+        }
+        if (tallyState.authoritiesKey != null && !SchnorrJointSignature.generateJointPublicKey(signers).getH().equals(tallyState.authoritiesKey)) {
+            report.discrepancy("the decryption contributes are not signed by the authorities of the joint key");
+            trusted = false;
+        }
+
+        // h = prod hj^λj, as the contributes are combined by Decrypt
+        Group group = pk.params.group;
+        BigInteger h = group.exp(keys[0].h, LagrangeCoefficient(1, n, pk.params.q));
+        for (int j = 2; j <= n; j++) {
+            h = group.multiply(h, group.exp(keys[j - 1].h, LagrangeCoefficient(j, n, pk.params.q)));
+        }
+        if (!h.equals(pk.h)) {
+            report.discrepancy("the keys of the decryption contributes do not make up the election key");
+            trusted = false;
+        }
+        return trusted ? W : null;
+    }
+}
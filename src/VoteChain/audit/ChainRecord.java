@@ -0,0 +1,139 @@
+package VoteChain.audit;
+
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.Utils;
+import crypto.utils.group.Groups;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A block of a published VoteChain file, parsed back from its textual representation
+ * (one Block.toString() per line)
+ */
+public class ChainRecord {
+
+    private static final String HASH = "Block{hash='";
+    private static final String PREVIOUS_HASH = "', previousHash='";
+    private static final String TRANSACTION = "', transaction='";
+    private static final String TIMESTAMP = "', timeStamp=";
+    private static final String PK = "{pkSig=SchnorrPK{";
+    private static final String SIG = "}, sig=SchnorrSig{";
+    private static final String MESSAGE = "}, message='";
+    private static final String PROOF = "', ZKProof='";
+
+    public final long height;
+    public final String hash, previousHash, timeStamp;
+    public final String transaction; // the textual transaction, as hashed by the block
+    public final boolean withProof; // true for TransactionWithProof
+    public final SchnorrPK pkSig;
+    public final SchnorrSig sig;
+    public final String message, ZKProof;
+
+    private ChainRecord(long height, String hash, String previousHash, String timeStamp, String transaction,
+                        boolean withProof, SchnorrPK pkSig, SchnorrSig sig, String message, String ZKProof) {
+        this.height = height;
+        this.hash = hash;
+        this.previousHash = previousHash;
+        this.timeStamp = timeStamp;
+        this.transaction = transaction;
+        this.withProof = withProof;
+        this.pkSig = pkSig;
+        this.sig = sig;
+        this.message = message;
+        this.ZKProof = ZKProof;
+    }
+
+    /**
+     * Parse a line of the blockchain file
+     * @param height the position of the block in the chain
+     * @param line the line
+     * @return the parsed record
+     * @throws IllegalArgumentException if the line is not a well formed block
+     */
+    public static ChainRecord parse(long height, String line) {
+        int hashEnd = indexOf(line, PREVIOUS_HASH, HASH.length());
+        int previousEnd = indexOf(line, TRANSACTION, hashEnd);
+        int transactionEnd = line.lastIndexOf(TIMESTAMP);
+        if (!line.startsWith(HASH) || transactionEnd < previousEnd || !line.endsWith("}"))
+            throw new IllegalArgumentException("malformed block");
+
+        String hash = line.substring(HASH.length(), hashEnd);
+        String previousHash = line.substring(hashEnd + PREVIOUS_HASH.length(), previousEnd);
+        String transaction = line.substring(previousEnd + TRANSACTION.length(), transactionEnd);
+        String timeStamp = line.substring(transactionEnd + TIMESTAMP.length(), line.length() - 1);
+
+        int pkStart = indexOf(transaction, PK, 0);
+        boolean withProof = transaction.startsWith("TransactionWithProof");
+        if (!withProof && !transaction.startsWith("Transaction{"))
+            throw new IllegalArgumentException("unknown transaction type");
+        int sigStart = indexOf(transaction, SIG, pkStart);
+        int messageStart = indexOf(transaction, MESSAGE, sigStart);
+        if (!transaction.endsWith("'}"))
+            throw new IllegalArgumentException("malformed transaction");
+
+        Map<String, String> pkFields = fields(transaction.substring(pkStart + PK.length(), sigStart));
+        Map<String, String> sigFields = fields(transaction.substring(sigStart + SIG.length(), messageStart));
+
+        BigInteger p = new BigInteger(pkFields.get("p"));
+        BigInteger q = new BigInteger(pkFields.get("q"));
+        BigInteger g = new BigInteger(pkFields.get("g"));
+        SchnorrPK pkSig = new SchnorrPK(Groups.forParameters(p, q, g), new BigInteger(pkFields.get("h")),
+                Integer.parseInt(pkFields.get("securityparameter")));
+        SchnorrSig sig = new SchnorrSig(new BigInteger(sigFields.get("a")), new BigInteger(sigFields.get("e")),
+                new BigInteger(sigFields.get("z")));
+
+        String body = transaction.substring(messageStart + MESSAGE.length(), transaction.length() - 2);
+        String message = body, ZKProof = null;
+        if (withProof) {
+            int proofStart = body.lastIndexOf(PROOF);
+            if (proofStart < 0)
+                throw new IllegalArgumentException("missing ZKProof");
+            message = body.substring(0, proofStart);
+            ZKProof = body.substring(proofStart + PROOF.length());
+        }
+
+        return new ChainRecord(height, hash, previousHash, timeStamp, transaction, withProof, pkSig, sig, message, ZKProof);
+    }
+
+    /**
+     * Recompute the hash as Block.calculateBlockHash does
+     * @return the hexadecimal representation of the block hash
+     * @throws NoSuchAlgorithmException if digest algorithm is invalid
+     */
+    public String calculateBlockHash() throws NoSuchAlgorithmException {
+        String dataToHash = previousHash + timeStamp + transaction;
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] bytes = digest.digest(dataToHash.getBytes(Charset.defaultCharset()));
+        return Utils.bytesToHexString(bytes);
+    }
+
+    /**
+     * @return the message covered by the signature of the transaction
+     */
+    public String signedMessage() {
+        return withProof ? message + ZKProof : message;
+    }
+
+    private static int indexOf(String s, String token, int from) {
+        int i = s.indexOf(token, from);
+        if (i < 0)
+            throw new IllegalArgumentException("missing " + token.trim());
+        return i;
+    }
+
+    private static Map<String, String> fields(String s) {
+        Map<String, String> fields = new HashMap<>();
+        for (String field : s.split(", ")) {
+            int eq = field.indexOf('=');
+            if (eq > 0)
+                fields.put(field.substring(0, eq), field.substring(eq + 1));
+        }
+        return fields;
+    }
+}
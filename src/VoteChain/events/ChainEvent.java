@@ -0,0 +1,102 @@
+package VoteChain.events;
+
+import VoteChain.Block;
+import VoteChain.CiphertextPayload;
+import VoteChain.DecryptionSharePayload;
+import VoteChain.KeyListPayload;
+import VoteChain.Transaction;
+import VoteChain.TransactionPayload;
+import VoteChain.VoteChain;
+import VoteChain.audit.ChainRecord;
+
+import java.math.BigInteger;
+
+/**
+ * A block appended to the chain, as seen by the subscribers of a ChainEventPublisher, classified
+ * by what it means for the election.
+ */
+public class ChainEvent {
+
+    public enum Kind {
+        BLOCK, // genesis, result or any other signed message
+        REGISTRATION, // the list of the subscribed voters
+        VOTING_STARTED, // t_votestart
+        BALLOT,
+        VOTING_STOPPED, // t_voteend
+        DECRYPTION_CONTRIBUTE // a wj of an authority
+    }
+
+    public final long height;
+    public final Kind kind;
+    public final String hash, previousHash, timeStamp;
+    public final String message; // the message of the transaction: the ciphertext of a ballot, the wj of a contribute...
+    public final BigInteger wj; // the decryption contribute, null for the other kinds
+
+    ChainEvent(long height, Kind kind, String hash, String previousHash, String timeStamp, String message, BigInteger wj) {
+        this.height = height;
+        this.kind = kind;
+        this.hash = hash;
+        this.previousHash = previousHash;
+        this.timeStamp = timeStamp;
+        this.message = message;
+        this.wj = wj;
+    }
+
+    /**
+     * @return the event of a block being appended
+     */
+    static ChainEvent of(long height, Block block) {
+        Transaction transaction = block.getTransaction();
+        TransactionPayload payload = transaction.getPayload();
+        Kind kind;
+        BigInteger wj = null;
+        if (payload instanceof CiphertextPayload) {
+            kind = Kind.BALLOT;
+        } else if (payload instanceof DecryptionSharePayload) {
+            kind = Kind.DECRYPTION_CONTRIBUTE;
+            wj = ((DecryptionSharePayload) payload).getWj();
+        } else if (payload instanceof KeyListPayload) {
+            kind = Kind.REGISTRATION;
+        } else {
+            kind = lifecycle(transaction.getMessage());
+        }
+        return new ChainEvent(height, kind, block.getHash(), block.getPreviousHash(), block.getTimeStamp().toString(), transaction.getMessage(), wj);
+    }
+
+    /**
+     * @return the event of a block read back from the chain file
+     */
+    static ChainEvent of(ChainRecord record) {
+        Kind kind;
+        BigInteger wj = null;
+        if (record.withProof && record.message.startsWith("{C=")) {
+            kind = Kind.BALLOT;
+        } else if (record.withProof) {
+            kind = Kind.DECRYPTION_CONTRIBUTE;
+            wj = new BigInteger(record.message);
+        } else if (record.message.startsWith("[")) {
+            kind = Kind.REGISTRATION;
+        } else {
+            kind = lifecycle(record.message);
+        }
+        return new ChainEvent(record.height, kind, record.hash, record.previousHash, record.timeStamp, record.message, wj);
+    }
+
+    private static Kind lifecycle(String message) {
+        if (message.equals(VoteChain.START_VOTING_MESSAGE))
+            return Kind.VOTING_STARTED;
+        if (message.equals(VoteChain.STOP_VOTING_MESSAGE))
+            return Kind.VOTING_STOPPED;
+        return Kind.BLOCK;
+    }
+
+    @Override
+    public String toString() {
+        return "ChainEvent{" +
+                "height=" + height +
+                ", kind=" + kind +
+                ", hash='" + hash + '\'' +
+                ", timeStamp=" + timeStamp +
+                '}';
+    }
+}
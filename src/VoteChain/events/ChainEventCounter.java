@@ -0,0 +1,97 @@
+package VoteChain.events;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A subscriber counting the events of each kind, e.g. for a live dashboard of the election.
+ * Events are requested in batches, so a slow counter does not receive more than it asked for.
+ */
+public class ChainEventCounter implements Flow.Subscriber<ChainEvent> {
+
+    private static final int BATCH = 64;
+
+    private final Map<ChainEvent.Kind, Long> counts = new EnumMap<>(ChainEvent.Kind.class);
+    private Flow.Subscription subscription;
+    private long nextHeight = -1; // the height after the last event received
+    private long gaps; // events missing between two received ones
+    private int requested;
+    private boolean completed;
+    private Throwable error;
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        requested = BATCH;
+        subscription.request(BATCH);
+    }
+
+    @Override
+    public synchronized void onNext(ChainEvent event) {
+        counts.merge(event.kind, 1L, Long::sum);
+        if (nextHeight >= 0 && event.height > nextHeight)
+            gaps += event.height - nextHeight;
+        nextHeight = event.height + 1;
+        if (--requested == BATCH / 2) {
+            requested += BATCH / 2;
+            subscription.request(BATCH / 2);
+        }
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onError(Throwable throwable) {
+        error = throwable;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        completed = true;
+        notifyAll();
+    }
+
+    /**
+     * Wait until the events up to a height have been received
+     *
+     * @return true if they have been received, false on timeout or if the stream has ended
+     */
+    public synchronized boolean awaitHeight(long height, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (nextHeight < height && !completed && error == null) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return nextHeight >= height;
+    }
+
+    /**
+     * @return the events of the kind received so far
+     */
+    public synchronized long count(ChainEvent.Kind kind) {
+        return counts.getOrDefault(kind, 0L);
+    }
+
+    /**
+     * @return the events lost by a DROP subscription
+     */
+    public synchronized long getGaps() {
+        return gaps;
+    }
+
+    /**
+     * @return the error that ended the stream, null if none
+     */
+    public synchronized Throwable getError() {
+        return error;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ChainEventCounter{" + counts + (gaps > 0 ? ", gaps=" + gaps : "") + (error != null ? ", error=" + error : "") + '}';
+    }
+}
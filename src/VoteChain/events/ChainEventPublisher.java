@@ -0,0 +1,329 @@
+package VoteChain.events;
+
+import VoteChain.Block;
+import VoteChain.VoteChain;
+import VoteChain.audit.ChainRecord;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the blocks appended to a VoteChain as ChainEvents. Every subscriber has its own bounded
+ * buffer, delivered asynchronously as it requests events, and chooses what happens when the buffer is
+ * full: DROP discards the new events (the subscriber sees a gap in the heights), BLOCK makes the
+ * appending thread wait, slowing down the chain to the speed of the subscriber.
+ * A subscriber can start from an earlier height: the recent events are kept in memory, the older
+ * ones are read once from the chain file, then the subscriber continues with the live events.
+ */
+public class ChainEventPublisher implements Flow.Publisher<ChainEvent>, VoteChain.BlockListener, Closeable {
+
+    public enum Overflow { DROP, BLOCK }
+
+    public static final int DEFAULT_CAPACITY = 256;
+    private static final int RECENT = 4096; // events served from memory to resuming subscribers
+
+    private final Path chainFile;
+    private final ExecutorService executor;
+    private final List<EventSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private final ChainEvent[] recent = new ChainEvent[RECENT]; // event h at h % RECENT
+    private final long firstHeight; // the first event appended after the creation of the publisher
+    private long height; // the next height
+    private boolean closed;
+
+    /**
+     * @param chainFile the blockchain file, read by the subscribers starting before height
+     * @param height the height of the chain, the next block published is at this height
+     */
+    public ChainEventPublisher(Path chainFile, long height) {
+        this.chainFile = chainFile;
+        this.firstHeight = height;
+        this.height = height;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "votechain-events-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void blockAppended(long height, Block block) {
+        ChainEvent event = ChainEvent.of(height, block);
+        synchronized (this) {
+            recent[(int) (height % RECENT)] = event;
+            this.height = height + 1;
+        }
+        for (EventSubscription s : subscriptions) {
+            s.offer(event);
+        }
+    }
+
+    /**
+     * Subscribe to the live events, with a buffer of DEFAULT_CAPACITY events dropped on overflow
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super ChainEvent> subscriber) {
+        subscribe(subscriber, -1, DEFAULT_CAPACITY, Overflow.DROP);
+    }
+
+    /**
+     * Subscribe to the events of the chain
+     *
+     * @param subscriber the subscriber
+     * @param fromHeight the height of the first event, -1 for the next appended block
+     * @param capacity the size of the buffer of the live events
+     * @param overflow what happens to a live event when the buffer is full
+     */
+    public void subscribe(Flow.Subscriber<? super ChainEvent> subscriber, long fromHeight, int capacity, Overflow overflow) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("the buffer needs at least one event");
+        EventSubscription subscription;
+        boolean completed;
+        synchronized (this) {
+            long from = fromHeight < 0 ? height : Math.min(fromHeight, height);
+            subscription = new EventSubscription(subscriber, from, height, capacity, overflow);
+            completed = closed;
+            if (!completed)
+                subscriptions.add(subscription);
+        }
+        subscriber.onSubscribe(subscription);
+        if (completed)
+            subscription.complete();
+    }
+
+    /**
+     * @return the event at a height, null if it is no longer (or not yet) in memory
+     */
+    private synchronized ChainEvent recent(long h) {
+        if (h < firstHeight || h < height - RECENT || h >= height)
+            return null;
+        return recent[(int) (h % RECENT)];
+    }
+
+    /**
+     * Complete all the subscriptions once they have received their buffered events
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (EventSubscription s : subscriptions) {
+            s.complete();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * The state of a subscriber: the history still to replay, then its buffer of live events
+     */
+    public class EventSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super ChainEvent> subscriber;
+        private final int capacity;
+        private final Overflow overflow;
+        private final long replayEnd; // events before it are replayed, the later ones are live
+        private final AtomicInteger wip = new AtomicInteger(); // serializes the drains
+
+        // guarded by this
+        private final ArrayDeque<ChainEvent> buffer = new ArrayDeque<>();
+        private long demand;
+        private long dropped;
+        private boolean cancelled, completing, done;
+
+        // used by the draining thread only
+        private long next; // the next height to replay
+        private BufferedReader reader; // the chain file, for the events no longer in memory
+        private long readerHeight; // the height of the next block of reader
+
+        EventSubscription(Flow.Subscriber<? super ChainEvent> subscriber, long from, long replayEnd, int capacity, Overflow overflow) {
+            this.subscriber = subscriber;
+            this.next = from;
+            this.replayEnd = replayEnd;
+            this.capacity = capacity;
+            this.overflow = overflow;
+        }
+
+        /**
+         * @return the number of live events discarded because the buffer was full
+         */
+        public synchronized long getDropped() {
+            return dropped;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("non-positive request " + n));
+                return;
+            }
+            synchronized (this) {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                buffer.clear();
+                notifyAll();
+            }
+            subscriptions.remove(this);
+            schedule(); // releases the chain file
+        }
+
+        void offer(ChainEvent event) {
+            synchronized (this) {
+                if (cancelled || event.height < replayEnd)
+                    return; // the events before replayEnd come from the history
+                while (overflow == Overflow.BLOCK && buffer.size() >= capacity && !cancelled) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                if (cancelled)
+                    return;
+                if (buffer.size() >= capacity) {
+                    dropped++;
+                    return;
+                }
+                buffer.add(event);
+            }
+            schedule();
+        }
+
+        void complete() {
+            synchronized (this) {
+                completing = true;
+            }
+            schedule();
+        }
+
+        private void fail(Throwable error) {
+            synchronized (this) {
+                if (cancelled || done)
+                    return;
+                cancelled = true;
+                done = true;
+                buffer.clear();
+                notifyAll();
+            }
+            subscriptions.remove(this);
+            subscriber.onError(error);
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    drain(); // the publisher is closed, the completion is delivered by the caller
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                while (true) {
+                    boolean complete = false;
+                    synchronized (this) {
+                        if (cancelled) {
+                            closeReader();
+                            break;
+                        }
+                        if (next >= replayEnd && buffer.isEmpty()) {
+                            if (!completing || done)
+                                break;
+                            done = complete = true;
+                        } else if (demand == 0) {
+                            break;
+                        }
+                    }
+                    if (complete) {
+                        closeReader();
+                        subscriptions.remove(this);
+                        subscriber.onComplete();
+                        break;
+                    }
+
+                    ChainEvent event;
+                    try {
+                        event = nextEvent();
+                    } catch (IOException | RuntimeException e) {
+                        closeReader();
+                        fail(e);
+                        break;
+                    }
+                    if (event == null)
+                        continue; // a cancel cleared the buffer after the check, look at the state again
+                    synchronized (this) {
+                        demand--;
+                    }
+                    subscriber.onNext(event);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private ChainEvent nextEvent() throws IOException {
+            if (next < replayEnd) {
+                ChainEvent event = recent(next);
+                if (event == null)
+                    event = readEvent(next);
+                next++;
+                if (next == replayEnd)
+                    closeReader();
+                return event;
+            }
+            synchronized (this) {
+                ChainEvent event = buffer.poll();
+                notifyAll(); // a blocked append can go on
+                return event;
+            }
+        }
+
+        /**
+         * Read an old event from the chain file, sequentially for consecutive heights
+         */
+        private ChainEvent readEvent(long h) throws IOException {
+            if (reader == null || readerHeight > h) {
+                closeReader();
+                reader = Files.newBufferedReader(chainFile, Charset.defaultCharset());
+                readerHeight = 0;
+            }
+            for (String line; (line = reader.readLine()) != null; ) {
+                if (line.isEmpty())
+                    continue;
+                if (readerHeight++ == h)
+                    return ChainEvent.of(ChainRecord.parse(h, line));
+            }
+            throw new IOException("the blockchain file ends before height " + h);
+        }
+
+        private void closeReader() {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+                reader = null;
+            }
+        }
+    }
+}
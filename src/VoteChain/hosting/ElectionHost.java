@@ -0,0 +1,331 @@
+package VoteChain.hosting;
+
+import VoteChain.Ballot;
+import VoteChain.VoteChain;
+import VoteChain.scheduler.ChainScheduler;
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+import crypto.utils.zkp.VoteProof;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A node hosting many elections at once. Every election has its own VoteChain, so its voter registry,
+ * voting window and tally are isolated from the others, while the node shares among them:
+ * the verification threads, which serve the elections with pending ballots in turn, one batch each,
+ * so a busy election cannot starve the quiet ones; the block writer, a ChainScheduler appending the
+ * blocks of all the chains, where the lifecycle transactions of any election overtake the ballots of
+ * the other elections and those verified after them; and the groups, which Groups.forParameters returns as one instance per
+ * parameters with its precomputed tables.
+ * The ballots of an election waiting for verification or append are limited by its quota, beyond
+ * which new ballots are refused at once.
+ */
+public class ElectionHost implements Closeable {
+
+    public static final int DEFAULT_QUOTA = 4096;
+    private static final int BATCH = 16; // ballots verified at once, with one multi-exponentiation
+
+    /**
+     * An action on the chain of an election, run by the block writer in the lifecycle lane
+     */
+    public interface ChainTask<T> {
+        T run(VoteChain chain) throws Exception;
+    }
+
+    /**
+     * An election hosted by the node
+     */
+    public class Election {
+        public final String id;
+        private final VoteChain chain;
+        private final ElGamalPK pka;
+        private final int quota;
+
+        private final ArrayDeque<Submission> queue = new ArrayDeque<>(); // guarded by the host
+        private boolean scheduled; // in the turn of the verifiers, guarded by the host
+        private final AtomicInteger pending = new AtomicInteger(); // submitted, not yet appended or rejected
+        private final AtomicLong submitted = new AtomicLong(), accepted = new AtomicLong(), rejected = new AtomicLong(),
+                overQuota = new AtomicLong();
+
+        private Election(String id, VoteChain chain, ElGamalPK pka, int quota) {
+            this.id = id;
+            this.chain = chain;
+            this.pka = pka;
+            this.quota = quota;
+        }
+
+        /**
+         * @return the chain of the election; its blocks must be appended through ElectionHost.append
+         */
+        public VoteChain getChain() {
+            return chain;
+        }
+
+        public ElGamalPK getPK() {
+            return pka;
+        }
+
+        public long getAccepted() {
+            return accepted.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        /**
+         * @return the ballots refused because the election was over its quota
+         */
+        public long getOverQuota() {
+            return overQuota.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Election{" +
+                    "id='" + id + '\'' +
+                    ", height=" + chain.getHeight() +
+                    ", submitted=" + submitted +
+                    ", accepted=" + accepted +
+                    ", rejected=" + rejected +
+                    ", overQuota=" + overQuota +
+                    ", pending=" + pending +
+                    '}';
+        }
+    }
+
+    private static class Submission {
+        final Ballot ballot;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        Submission(Ballot ballot) {
+            this.ballot = ballot;
+        }
+    }
+
+    private final Path directory;
+    private final Map<String, Election> elections = new ConcurrentHashMap<>();
+    private final ArrayDeque<Election> turn = new ArrayDeque<>(); // elections with ballots to verify, guarded by this
+    private final Thread[] verifiers;
+    private final ChainScheduler writer = new ChainScheduler("election-writer"); // its ballot lane is bounded by the quotas
+    private volatile boolean closed;
+
+    /**
+     * Start a node
+     *
+     * @param directory the directory of the chain files, one per election
+     * @param verifierThreads the threads verifying the ballots of all the elections
+     */
+    public ElectionHost(Path directory, int verifierThreads) {
+        this.directory = directory;
+        this.verifiers = new Thread[verifierThreads];
+        for (int i = 0; i < verifierThreads; i++) {
+            verifiers[i] = new Thread(this::verify, "election-verifier-" + i);
+            verifiers[i].setDaemon(true);
+            verifiers[i].start();
+        }
+    }
+
+    /**
+     * Host a new election, whose chain is written to directory/id.txt
+     *
+     * @param id the name of the election
+     * @param pka the ElGamal pk of the election
+     * @param encoding the candidates of the election
+     * @param quota the maximum number of ballots of the election waiting for verification or append
+     * @return the election
+     * @throws IllegalArgumentException if the id is already hosted
+     */
+    public Election createElection(String id, ElGamalPK pka, PackedEncoding encoding, int quota) {
+        VoteChain chain = new VoteChain(directory.resolve(id + ".txt").toString());
+        chain.setBallotEncoding(encoding, pka);
+        Election election = new Election(id, chain, pka, quota);
+        if (elections.putIfAbsent(id, election) != null)
+            throw new IllegalArgumentException("election " + id + " is already hosted");
+        return election;
+    }
+
+    /**
+     * @return the election, null if not hosted
+     */
+    public Election getElection(String id) {
+        return elections.get(id);
+    }
+
+    public Collection<Election> getElections() {
+        return elections.values();
+    }
+
+    /**
+     * @return the block writer, with the depths and waiting times of its lanes
+     */
+    public ChainScheduler getWriter() {
+        return writer;
+    }
+
+    /**
+     * Run an action on the chain of an election in the block writer, e.g. a lifecycle transaction.
+     * It goes ahead of the queued ballots of the other elections, but after the ballots of this election
+     * already verified and queued for append; those still being verified come after it.
+     *
+     * @return the result of the action
+     */
+    public <T> CompletableFuture<T> append(Election election, ChainTask<T> task) {
+        if (closed) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            result.completeExceptionally(new RejectedExecutionException("the host is closed"));
+            return result;
+        }
+        return writer.submit(ChainScheduler.Lane.LIFECYCLE, election.chain, () -> task.run(election.chain));
+    }
+
+    /**
+     * Submit a ballot to an election
+     *
+     * @return true if the ballot has been appended to the chain, false if it has been rejected;
+     * completed exceptionally with a RejectedExecutionException if the election is over its quota
+     */
+    public CompletableFuture<Boolean> submit(Election election, Ballot ballot) {
+        Submission submission = new Submission(ballot);
+        election.submitted.incrementAndGet();
+        if (closed) {
+            submission.result.completeExceptionally(new RejectedExecutionException("the host is closed"));
+            return submission.result;
+        }
+        if (election.pending.incrementAndGet() > election.quota) {
+            election.pending.decrementAndGet();
+            election.overQuota.incrementAndGet();
+            submission.result.completeExceptionally(new RejectedExecutionException(
+                    "election " + election.id + " has " + election.quota + " ballots pending"));
+            return submission.result;
+        }
+        synchronized (this) {
+            // checked again under the lock: once close has emptied the queues nobody would verify it
+            if (closed) {
+                election.pending.decrementAndGet();
+                submission.result.completeExceptionally(new RejectedExecutionException("the host is closed"));
+                return submission.result;
+            }
+            election.queue.add(submission);
+            if (!election.scheduled) {
+                election.scheduled = true;
+                turn.add(election);
+                notify();
+            }
+        }
+        return submission.result;
+    }
+
+    private void verify() {
+        while (true) {
+            Election election;
+            List<Submission> batch = new ArrayList<>(BATCH);
+            synchronized (this) {
+                while (turn.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed)
+                    return;
+                // one batch, then the election goes back to the end of the turn
+                election = turn.poll();
+                while (batch.size() < BATCH && !election.queue.isEmpty())
+                    batch.add(election.queue.poll());
+                if (election.queue.isEmpty())
+                    election.scheduled = false;
+                else
+                    turn.add(election);
+            }
+
+            int n = batch.size();
+            boolean[] inGroup = new boolean[n];
+            boolean[] validProofs;
+            try {
+                SchnorrPK[] voters = new SchnorrPK[n];
+                ElGamalCT[] cts = new ElGamalCT[n];
+                VoteProof[] proofs = new VoteProof[n];
+                for (int i = 0; i < n; i++) {
+                    Ballot ballot = batch.get(i).ballot;
+                    inGroup[i] = VoteChain.isInGroup(election.pka, ballot);
+                    voters[i] = ballot.pkSig;
+                    cts[i] = ballot.encrVote;
+                    proofs[i] = inGroup[i] ? ballot.proof : null;
+                }
+                validProofs = election.chain.verifyZKProofsOfVote(election.pka, voters, cts, proofs);
+            } catch (RuntimeException e) {
+                // e.g. a malformed ballot: the batch fails, the verifier goes on with the next one
+                for (Submission submission : batch) {
+                    election.pending.decrementAndGet();
+                    submission.result.completeExceptionally(e);
+                }
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                Submission submission = batch.get(i);
+                boolean group = inGroup[i], proof = validProofs[i];
+                writer.submit(ChainScheduler.Lane.BALLOT, election.chain, () -> {
+                    // no longer pending when the result completes, the submitter may use the slot at once
+                    try {
+                        boolean accepted = election.chain.insertVerifiedVoteTransaction(election.pka, submission.ballot, group, proof);
+                        (accepted ? election.accepted : election.rejected).incrementAndGet();
+                        election.pending.decrementAndGet();
+                        submission.result.complete(accepted);
+                    } catch (Exception e) {
+                        election.pending.decrementAndGet();
+                        submission.result.completeExceptionally(e);
+                    }
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Stop the node: the ballots still waiting for verification are cancelled, the verified ones and
+     * the submitted actions are appended
+     */
+    @Override
+    public void close() {
+        List<Submission> cancelled = new ArrayList<>();
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            for (Election election : turn) {
+                cancelled.addAll(election.queue);
+                election.queue.clear();
+                election.scheduled = false;
+            }
+            turn.clear();
+            notifyAll();
+        }
+        for (Submission submission : cancelled) {
+            submission.result.completeExceptionally(new CancellationException("the host is closed"));
+        }
+        try {
+            for (Thread verifier : verifiers) {
+                verifier.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+    }
+}
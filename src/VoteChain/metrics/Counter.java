@@ -0,0 +1,22 @@
+package VoteChain.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A striped monotonic counter, cheap to increment from many threads
+ */
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long n) {
+        value.add(n);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,62 @@
+package VoteChain.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * A named set of counters and latency histograms
+ */
+public class MetricsRegistry {
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param name the counter name
+     * @return the counter with this name, created on first use
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    /**
+     * @param name the histogram name
+     * @return the histogram with this name, created on first use
+     */
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * @return every metric flattened to name/value pairs, latencies in microseconds
+     */
+    public Map<String, Number> values() {
+        Map<String, Number> values = new LinkedHashMap<>();
+        counters.forEach((name, c) -> values.put(name, c.get()));
+        histograms.forEach((name, h) -> {
+            LatencyHistogram.Snapshot s = h.snapshot();
+            values.put(name + ".count", s.count);
+            values.put(name + ".meanMicros", s.mean() / 1000);
+            values.put(name + ".p50Micros", s.quantile(0.50) / 1000.0);
+            values.put(name + ".p99Micros", s.quantile(0.99) / 1000.0);
+            values.put(name + ".maxMicros", s.max / 1000.0);
+        });
+        return values;
+    }
+
+    /**
+     * @return a human readable report of the metrics
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        counters.forEach((name, c) -> sb.append(String.format("%-40s %d%n", name, c.get())));
+        histograms.forEach((name, h) -> {
+            LatencyHistogram.Snapshot s = h.snapshot();
+            if (s.count > 0)
+                sb.append(String.format("%-40s count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus%n", name, s.count,
+                        s.mean() / 1000, s.quantile(0.5) / 1000.0, s.quantile(0.99) / 1000.0, s.max / 1000.0));
+        });
+        return sb.toString();
+    }
+}
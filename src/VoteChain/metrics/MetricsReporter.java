@@ -0,0 +1,36 @@
+package VoteChain.metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Periodically logs the report of a MetricsRegistry
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsReporter.class.getName());
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Start logging the metrics
+     * @param registry the metrics to report
+     * @param period the reporting period
+     * @param unit the unit of the period
+     */
+    public MetricsReporter(MetricsRegistry registry, long period, TimeUnit unit) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-reporter");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(() -> LOGGER.info("VoteChain metrics\n" + registry.report()), period, period, unit);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,50 @@
+package VoteChain.metrics;
+
+/**
+ * The metrics of the VoteChain hot paths. The handles are resolved once so that recording
+ * only costs a System.nanoTime() and a few uncontended atomic additions.
+ */
+public class VoteChainMetrics {
+
+    public final MetricsRegistry registry;
+
+    // insertVoteTransaction stages
+    public final LatencyHistogram voteEligibility, voteGroupCheck, voteZKCheck, voteRateLimit, voteSignatureVerify, voteAppend;
+    public final Counter votesAccepted;
+    public final Counter rejectedUnregistered, rejectedNotInGroup, rejectedBadProof, rejectedOutsideWindow, rejectedRateLimited, rejectedBadSignature;
+
+    // block append and tally
+    public final LatencyHistogram appendIO, countVotes, decrypt, decodeTally, shareProofs, receiptLookup;
+    public final Counter blocksAppended, bytesAppended, rejectedShares;
+
+    public VoteChainMetrics() {
+        this(new MetricsRegistry());
+    }
+
+    public VoteChainMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+        voteEligibility = registry.histogram("vote.eligibility");
+        voteGroupCheck = registry.histogram("vote.groupCheck");
+        voteZKCheck = registry.histogram("vote.zkCheck");
+        voteRateLimit = registry.histogram("vote.rateLimit");
+        voteSignatureVerify = registry.histogram("vote.signatureVerify");
+        voteAppend = registry.histogram("vote.append");
+        votesAccepted = registry.counter("vote.accepted");
+        rejectedUnregistered = registry.counter("vote.rejected.unregistered");
+        rejectedNotInGroup = registry.counter("vote.rejected.notInGroup");
+        rejectedBadProof = registry.counter("vote.rejected.badProof");
+        rejectedOutsideWindow = registry.counter("vote.rejected.outsideWindow");
+        rejectedRateLimited = registry.counter("vote.rejected.rateLimited");
+        rejectedBadSignature = registry.counter("vote.rejected.badSignature");
+
+        appendIO = registry.histogram("block.appendIO");
+        blocksAppended = registry.counter("block.appended");
+        bytesAppended = registry.counter("block.bytesAppended");
+        countVotes = registry.histogram("tally.countVotes");
+        decrypt = registry.histogram("tally.decrypt");
+        decodeTally = registry.histogram("tally.decode");
+        shareProofs = registry.histogram("tally.shareProofs");
+        receiptLookup = registry.histogram("receipt.lookup");
+        rejectedShares = registry.counter("tally.rejected.badShareProof");
+    }
+}
@@ -0,0 +1,80 @@
+package VoteChain.receipt;
+
+import crypto.utils.Utils;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * The answer to a receipt query: where a ballot is in the chain, whether it is the ballot of the
+ * voter that enters the tally, and a Merkle inclusion proof of its block that anyone can check
+ * against the root of the chain.
+ */
+public class BallotReceipt {
+
+    public final String ballotHash; // SHA-256 of the ciphertext, known to the voter
+    public final long height; // the height of the block of the ballot
+    public final String blockHash;
+    public final boolean counted; // true if it is the last ballot of the voter in [start, end]
+    public final int ballotsOfVoter; // the ballots cast by the voter in the voting window
+    public final long votingStart, votingEnd; // heights of the t_votestart and t_voteend blocks, -1 if missing
+    public final long chainHeight; // number of blocks covered by the Merkle root
+    public final String merkleRoot;
+    public final byte[][] path; // siblings from the leaf to the root
+
+    BallotReceipt(String ballotHash, long height, String blockHash, boolean counted, int ballotsOfVoter,
+                  long votingStart, long votingEnd, long chainHeight, String merkleRoot, byte[][] path) {
+        this.ballotHash = ballotHash;
+        this.height = height;
+        this.blockHash = blockHash;
+        this.counted = counted;
+        this.ballotsOfVoter = ballotsOfVoter;
+        this.votingStart = votingStart;
+        this.votingEnd = votingEnd;
+        this.chainHeight = chainHeight;
+        this.merkleRoot = merkleRoot;
+        this.path = path;
+    }
+
+    /**
+     * @param ballot an encrypted vote
+     * @return the hexadecimal hash identifying the ballot in receipt queries
+     */
+    public static String ballotHash(ElGamalCT ballot) {
+        return Utils.bytesToHexString(sha256(ballot.toString()));
+    }
+
+    static byte[] sha256(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true if the inclusion proof links the block of the ballot to the Merkle root
+     */
+    public boolean verify() {
+        HexFormat hex = HexFormat.of();
+        return MerkleTree.verify(hex.parseHex(blockHash), height, chainHeight, path, hex.parseHex(merkleRoot));
+    }
+
+    @Override
+    public String toString() {
+        return "BallotReceipt{" +
+                "ballotHash='" + ballotHash + '\'' +
+                ", height=" + height +
+                ", blockHash='" + blockHash + '\'' +
+                ", counted=" + counted +
+                ", ballotsOfVoter=" + ballotsOfVoter +
+                ", votingWindow=[" + votingStart + ", " + votingEnd + ']' +
+                ", chainHeight=" + chainHeight +
+                ", merkleRoot='" + merkleRoot + '\'' +
+                ", proofLength=" + path.length +
+                '}';
+    }
+}
@@ -0,0 +1,118 @@
+package VoteChain.receipt;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary Merkle tree over the block hashes of the chain, in the style of RFC 6962: leaves and
+ * inner nodes are hashed with different prefixes, and the last node of a level without a sibling
+ * is promoted unchanged to the next level. An inclusion proof is the list of the existing siblings
+ * from the leaf to the root, at most log2(n) hashes.
+ */
+public class MerkleTree {
+
+    static final int HASH_BYTES = 32;
+    private static final byte LEAF = 0, NODE = 1;
+
+    /**
+     * @param blockHash the hash of a block
+     * @return the hash of the leaf of the block
+     */
+    public static byte[] leafHash(byte[] blockHash) {
+        MessageDigest digest = sha256();
+        digest.update(LEAF);
+        return digest.digest(blockHash);
+    }
+
+    /**
+     * @return the hash of the inner node with the given children
+     */
+    public static byte[] nodeHash(byte[] left, byte[] right) {
+        MessageDigest digest = sha256();
+        digest.update(NODE);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    /**
+     * @param leaves the number of leaves
+     * @return the number of nodes of each level, from the leaves to the root
+     */
+    static long[] levelSizes(long leaves) {
+        int levels = 1;
+        for (long s = leaves; s > 1; s = (s + 1) / 2) {
+            levels++;
+        }
+        long[] sizes = new long[levels];
+        sizes[0] = leaves;
+        for (int l = 1; l < levels; l++) {
+            sizes[l] = (sizes[l - 1] + 1) / 2;
+        }
+        return sizes;
+    }
+
+    /**
+     * Write all the levels of the tree, from the leaves to the root. The first level holds the
+     * block hashes themselves, which are hashed as leaves when a proof is built.
+     * @param blockHashes the hashes of the blocks, in chain order
+     * @param out the destination
+     * @return the root, or a zero hash for an empty chain
+     * @throws IOException if the write fails
+     */
+    static byte[] write(List<byte[]> blockHashes, DataOutput out) throws IOException {
+        if (blockHashes.isEmpty())
+            return new byte[HASH_BYTES];
+        byte[][] level = new byte[blockHashes.size()][];
+        for (int i = 0; i < level.length; i++) {
+            out.write(blockHashes.get(i));
+            level[i] = leafHash(blockHashes.get(i));
+        }
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                next[i] = 2 * i + 1 < level.length ? nodeHash(level[2 * i], level[2 * i + 1]) : level[2 * i];
+                out.write(next[i]);
+            }
+            level = next;
+        }
+        return level[0];
+    }
+
+    /**
+     * Check an inclusion proof
+     * @param blockHash the hash of the block
+     * @param index the height of the block
+     * @param leaves the number of blocks covered by the root
+     * @param path the siblings from the leaf to the root
+     * @param root the root of the tree
+     * @return true if the block is the leaf at position index of the tree with the given root
+     */
+    public static boolean verify(byte[] blockHash, long index, long leaves, byte[][] path, byte[] root) {
+        if (index < 0 || index >= leaves)
+            return false;
+        byte[] h = leafHash(blockHash);
+        int k = 0;
+        for (long s = leaves; s > 1; s = (s + 1) / 2) {
+            if ((index ^ 1) < s) {
+                if (k == path.length)
+                    return false;
+                h = (index & 1) == 0 ? nodeHash(h, path[k]) : nodeHash(path[k], h);
+                k++;
+            }
+            index >>= 1;
+        }
+        return k == path.length && Arrays.equals(h, root);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
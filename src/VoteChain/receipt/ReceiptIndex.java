@@ -0,0 +1,387 @@
+package VoteChain.receipt;
+
+import VoteChain.Block;
+import VoteChain.Transaction;
+import VoteChain.TransactionWithProof;
+import VoteChain.VoteChain;
+import VoteChain.audit.ChainRecord;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Persistent index answering receipt queries without scanning the chain. The index file holds
+ * <ul>
+ *     <li>the block hashes and every level of their Merkle tree,</li>
+ *     <li>the ballots of the voting window sorted by ballot hash,</li>
+ *     <li>the voters sorted by the hash of their signature key, with their last ballot.</li>
+ * </ul>
+ * Records have a fixed size, so a query is a binary search of positional reads: O(log n) reads of
+ * a few bytes, served by the page cache, whatever the size of the chain. The index is built by one
+ * pass over the chain file, or written by a Builder following the chain, and is bound to the height
+ * and the hash of the last block it covers.
+ */
+public class ReceiptIndex implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReceiptIndex.class.getName());
+    private static final int MAGIC = 0x56435249; // "VCRI"
+    static final String FILE_NAME = "receipts.idx";
+
+    private static final int H = MerkleTree.HASH_BYTES;
+    private static final int HEADER = 4 + 8 + H + 8 + 8 + 4 + 4 + H;
+    private static final int BALLOT_RECORD = H + 8 + H; // ballot hash, height, voter key hash
+    private static final int VOTER_RECORD = H + 8 + 4 + H; // voter key hash, last height, ballots, last ballot hash
+
+    private final FileChannel channel;
+    private final long height;
+    private final byte[] lastBlockHash;
+    private final long votingStart, votingEnd;
+    private final int ballots, voters;
+    private final byte[] root;
+    private final long[] levelOffsets; // file offset of each level of the Merkle tree
+    private final long[] levelSizes;
+    private final long ballotsOffset, votersOffset;
+
+    private ReceiptIndex(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = read(0, HEADER);
+        if (header.getInt() != MAGIC)
+            throw new IOException("not a receipt index");
+        height = header.getLong();
+        lastBlockHash = new byte[H];
+        header.get(lastBlockHash);
+        votingStart = header.getLong();
+        votingEnd = header.getLong();
+        ballots = header.getInt();
+        voters = header.getInt();
+        root = new byte[H];
+        header.get(root);
+
+        levelSizes = height == 0 ? new long[0] : MerkleTree.levelSizes(height);
+        levelOffsets = new long[levelSizes.length];
+        long offset = HEADER;
+        for (int l = 0; l < levelSizes.length; l++) {
+            levelOffsets[l] = offset;
+            offset += levelSizes[l] * H;
+        }
+        ballotsOffset = offset;
+        votersOffset = ballotsOffset + (long) ballots * BALLOT_RECORD;
+        if (channel.size() != votersOffset + (long) voters * VOTER_RECORD)
+            throw new IOException("truncated receipt index");
+    }
+
+    /**
+     * Open the index of a directory
+     * @param directory the index directory
+     * @return the index, null if there is none or it is unreadable
+     */
+    public static ReceiptIndex open(Path directory) {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.isRegularFile(file))
+            return null;
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            return new ReceiptIndex(channel);
+        } catch (IOException e) {
+            LOGGER.warning("Ignoring invalid receipt index " + file + ": " + e.getMessage());
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Build the index of a chain file with a single pass, replacing the index of the directory atomically
+     * @param chainFile the blockchain file
+     * @param directory the index directory
+     * @return the opened index
+     * @throws IOException if the chain cannot be read or the index cannot be written
+     */
+    public static ReceiptIndex build(Path chainFile, Path directory) throws IOException {
+        return Builder.scan(chainFile).write(directory);
+    }
+
+    /**
+     * The records of an index, read once from the chain file and then kept up to date by the blocks
+     * appended to the chain, so writing the index does not scan the chain again. The records of a
+     * block are added under the builder lock together with its height and hash, so a written index
+     * always covers a consistent prefix of the chain.
+     */
+    public static class Builder implements VoteChain.BlockListener {
+        private final HexFormat hex = HexFormat.of();
+        // guarded by this
+        private final List<byte[]> blockHashes = new ArrayList<>();
+        private final List<byte[]> ballotRecords = new ArrayList<>();
+        private final Map<BigInteger, byte[]> voterRecords = new HashMap<>();
+        private long start = -1, end = -1;
+        private byte[] last = new byte[H];
+
+        /**
+         * Read the blocks of a chain file
+         * @param chainFile the blockchain file
+         * @return the builder of the index of the file
+         * @throws IOException if the chain cannot be read
+         */
+        public static Builder scan(Path chainFile) throws IOException {
+            Builder builder = new Builder();
+            try (BufferedReader reader = Files.newBufferedReader(chainFile, Charset.defaultCharset())) {
+                for (String line; (line = reader.readLine()) != null; ) {
+                    if (line.isEmpty())
+                        continue;
+                    long height = builder.blockHashes.size();
+                    ChainRecord record;
+                    try {
+                        record = ChainRecord.parse(height, line);
+                    } catch (RuntimeException e) {
+                        throw new IOException("unreadable block at height " + height, e);
+                    }
+                    builder.add(height, record.hash, record.withProof, record.message, record.pkSig.getH());
+                }
+            }
+            return builder;
+        }
+
+        /**
+         * Add an appended block; the blocks already read from the chain file are skipped
+         */
+        @Override
+        public void blockAppended(long height, Block block) {
+            Transaction transaction = block.getTransaction();
+            add(height, block.getHash(), transaction instanceof TransactionWithProof, transaction.getMessage(),
+                    transaction.getPkSig().getH());
+        }
+
+        private synchronized void add(long height, String hash, boolean withProof, String message, BigInteger voterKey) {
+            if (height < blockHashes.size())
+                return;
+            if (height > blockHashes.size())
+                throw new IllegalStateException("block " + height + " after " + blockHashes.size() + " indexed blocks");
+            last = hex.parseHex(hash);
+            blockHashes.add(last);
+
+            if (!withProof) {
+                if (start < 0 && message.equals(VoteChain.START_VOTING_MESSAGE))
+                    start = height;
+                else if (start >= 0 && end < 0 && message.equals(VoteChain.STOP_VOTING_MESSAGE))
+                    end = height;
+            } else if (start >= 0 && end < 0 && message.startsWith("{C=")) {
+                // a ballot of the voting window, later ballots of the same voter replace the earlier ones
+                byte[] ballotHash = BallotReceipt.sha256(message);
+                byte[] keyHash = keyHash(voterKey);
+                ballotRecords.add(ByteBuffer.allocate(BALLOT_RECORD).put(ballotHash).putLong(height).put(keyHash).array());
+
+                byte[] previous = voterRecords.get(voterKey);
+                int count = previous == null ? 1 : ByteBuffer.wrap(previous).getInt(H + 8) + 1;
+                voterRecords.put(voterKey,
+                        ByteBuffer.allocate(VOTER_RECORD).put(keyHash).putLong(height).putInt(count).put(ballotHash).array());
+            }
+        }
+
+        /**
+         * @return the number of blocks added
+         */
+        public synchronized long getHeight() {
+            return blockHashes.size();
+        }
+
+        /**
+         * @return the hexadecimal hash of the last block added
+         */
+        public synchronized String getLastBlockHash() {
+            return hex.formatHex(last);
+        }
+
+        /**
+         * Write the index of the blocks added so far, replacing the index of the directory atomically.
+         * Only the copy of the records holds the builder lock, the blocks appended meanwhile go to the
+         * next index.
+         * @param directory the index directory
+         * @return the opened index
+         * @throws IOException if the index cannot be written
+         */
+        public ReceiptIndex write(Path directory) throws IOException {
+            List<byte[]> blockHashes, ballotRecords, voterList;
+            long start, end;
+            byte[] last;
+            synchronized (this) {
+                blockHashes = new ArrayList<>(this.blockHashes);
+                ballotRecords = new ArrayList<>(this.ballotRecords);
+                voterList = new ArrayList<>(voterRecords.values());
+                start = this.start;
+                end = this.end;
+                last = this.last;
+            }
+
+            Comparator<byte[]> byKey = (a, b) -> Arrays.compareUnsigned(a, 0, H, b, 0, H);
+            ballotRecords.sort(byKey);
+            voterList.sort(byKey);
+
+            Files.createDirectories(directory);
+            Path target = directory.resolve(FILE_NAME);
+            Path tmp = directory.resolve(FILE_NAME + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(tmp.toFile())) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16));
+                // the root is known only after the tree, its slot in the header is filled afterwards
+                out.writeInt(MAGIC);
+                out.writeLong(blockHashes.size());
+                out.write(last);
+                out.writeLong(start);
+                out.writeLong(end);
+                out.writeInt(ballotRecords.size());
+                out.writeInt(voterList.size());
+                out.write(new byte[H]);
+                byte[] root = MerkleTree.write(blockHashes, out);
+                for (byte[] r : ballotRecords) {
+                    out.write(r);
+                }
+                for (byte[] r : voterList) {
+                    out.write(r);
+                }
+                out.flush();
+                file.getChannel().write(ByteBuffer.wrap(root), HEADER - H);
+                file.getFD().sync();
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return new ReceiptIndex(FileChannel.open(target, StandardOpenOption.READ));
+        }
+    }
+
+    /**
+     * @return the number of blocks covered by the index
+     */
+    public long getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the hexadecimal hash of the last block covered by the index
+     */
+    public String getLastBlockHash() {
+        return HexFormat.of().formatHex(lastBlockHash);
+    }
+
+    /**
+     * @return the hexadecimal Merkle root of the block hashes
+     */
+    public String getMerkleRoot() {
+        return HexFormat.of().formatHex(root);
+    }
+
+    /**
+     * @param ballotHash the hexadecimal hash of a ballot, as computed by {@link BallotReceipt#ballotHash}
+     * @return the receipt of the ballot, null if it is not in the voting window of the chain
+     * @throws IOException if the index cannot be read
+     */
+    public BallotReceipt findByBallotHash(String ballotHash) throws IOException {
+        byte[] key;
+        try {
+            key = HexFormat.of().parseHex(ballotHash);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        ByteBuffer ballot = search(ballotsOffset, ballots, BALLOT_RECORD, key);
+        if (ballot == null)
+            return null;
+        long height = ballot.getLong(H);
+        byte[] keyHash = new byte[H];
+        ballot.get(H + 8, keyHash);
+
+        ByteBuffer voter = search(votersOffset, voters, VOTER_RECORD, keyHash);
+        boolean counted = voter != null && voter.getLong(H) == height;
+        return receipt(key, height, counted, voter == null ? 0 : voter.getInt(H + 8));
+    }
+
+    /**
+     * @param voterKey the signature public key h of a voter
+     * @return the receipt of the last ballot of the voter, null if the voter has not voted
+     * @throws IOException if the index cannot be read
+     */
+    public BallotReceipt findByVoter(BigInteger voterKey) throws IOException {
+        ByteBuffer voter = search(votersOffset, voters, VOTER_RECORD, keyHash(voterKey));
+        if (voter == null)
+            return null;
+        byte[] ballotHash = new byte[H];
+        voter.get(H + 8 + 4, ballotHash);
+        return receipt(ballotHash, voter.getLong(H), true, voter.getInt(H + 8));
+    }
+
+    private BallotReceipt receipt(byte[] ballotHash, long height, boolean counted, int ballotsOfVoter) throws IOException {
+        HexFormat hex = HexFormat.of();
+        byte[] blockHash = new byte[H];
+        read(levelOffsets[0] + height * H, H).get(blockHash);
+        return new BallotReceipt(hex.formatHex(ballotHash), height, hex.formatHex(blockHash),
+                counted && votingStart < height && (votingEnd < 0 || height < votingEnd), ballotsOfVoter,
+                votingStart, votingEnd, this.height, hex.formatHex(root), path(height));
+    }
+
+    /**
+     * @return the existing siblings of the leaf from the bottom to the root
+     */
+    private byte[][] path(long index) throws IOException {
+        List<byte[]> path = new ArrayList<>();
+        for (int l = 0; l < levelSizes.length - 1; l++) {
+            long sibling = index ^ 1;
+            if (sibling < levelSizes[l]) {
+                byte[] node = new byte[H];
+                read(levelOffsets[l] + sibling * H, H).get(node);
+                path.add(l == 0 ? MerkleTree.leafHash(node) : node); // the first level holds the block hashes
+            }
+            index >>= 1;
+        }
+        return path.toArray(new byte[0][]);
+    }
+
+    /**
+     * Binary search of fixed size records sorted by their first H bytes
+     * @return the record with the given key, null if there is none
+     */
+    private ByteBuffer search(long offset, int count, int recordSize, byte[] key) throws IOException {
+        int lo = 0, hi = count - 1;
+        byte[] probe = new byte[H];
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            ByteBuffer record = read(offset + (long) mid * recordSize, recordSize);
+            record.get(0, probe);
+            int cmp = Arrays.compareUnsigned(probe, key);
+            if (cmp == 0)
+                return record;
+            if (cmp < 0)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return null;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException("truncated receipt index");
+        }
+        return buffer.flip();
+    }
+
+    private static byte[] keyHash(BigInteger voterKey) {
+        return BallotReceipt.sha256(voterKey.toString());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
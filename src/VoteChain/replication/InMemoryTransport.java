@@ -0,0 +1,56 @@
+package VoteChain.replication;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport between nodes of the same JVM: each node has an unbounded inbox and messages are
+ * passed by reference, so only the replication protocol is measured.
+ */
+public class InMemoryTransport implements Transport {
+
+    private final InMemoryTransport[] network;
+    private final BlockingQueue<ReplicationMessage> inbox = new LinkedBlockingQueue<>();
+    private volatile boolean closed;
+
+    private InMemoryTransport(InMemoryTransport[] network) {
+        this.network = network;
+    }
+
+    /**
+     * @param nodes the number of nodes
+     * @return the connected transports, the i-th one is the transport of node i
+     */
+    public static InMemoryTransport[] network(int nodes) {
+        InMemoryTransport[] network = new InMemoryTransport[nodes];
+        for (int i = 0; i < nodes; i++) {
+            network[i] = new InMemoryTransport(network);
+        }
+        return network;
+    }
+
+    @Override
+    public void send(int to, ReplicationMessage message) throws IOException {
+        InMemoryTransport receiver = network[to];
+        if (receiver.closed)
+            throw new IOException("node " + to + " is down");
+        receiver.inbox.add(message);
+    }
+
+    @Override
+    public ReplicationMessage receive() throws InterruptedException {
+        while (!closed) {
+            ReplicationMessage message = inbox.poll(100, TimeUnit.MILLISECONDS);
+            if (message != null)
+                return message;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,441 @@
+package VoteChain.replication;
+
+import VoteChain.Ballot;
+import VoteChain.Block;
+import VoteChain.VoteChain;
+import VoteChain.metrics.Counter;
+import VoteChain.metrics.LatencyHistogram;
+import VoteChain.metrics.MetricsRegistry;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A node of a replicated VoteChain with a fixed leader, in the style of Raft log replication.
+ * The leader orders the transactions by appending them to its own chain; every appended block is
+ * then replicated to the followers. Each follower has a window of in-flight APPEND messages (pipelining),
+ * and the blocks appended while the window is full are sent together in the next message (batching),
+ * so the number of messages adapts to the load. A block is committed once it is stored by a majority
+ * of the nodes. Followers append the blocks of the leader unchanged, with their hash and timestamp.
+ * The leader keeps in memory only the blocks not yet committed or not yet stored by a reachable
+ * follower; a follower lagging further behind is served from the chain file.
+ * A follower that does not acknowledge its window within the resend timeout, e.g. because an APPEND
+ * was lost with its connection, is sent again everything after the height it last acknowledged;
+ * the follower skips the blocks it already has.
+ * <p>
+ * Leader election is not simulated: the leader is chosen at construction and all the chains must
+ * start at the same height.
+ */
+public class ReplicatedNode implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicatedNode.class.getName());
+    public static final int DEFAULT_MAX_BATCH = 256; // blocks per APPEND message
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4; // unacknowledged APPEND messages per follower
+    public static final long DEFAULT_RESEND_MILLIS = 500; // without an ACK, the window of a follower is sent again
+
+    private final int id, leaderId, clusterSize;
+    private final long term = 1; // no elections, a single term
+    private final VoteChain chain;
+    private final Transport transport;
+    private final int maxBatch, maxInFlight;
+    private final long resendNanos;
+    private final Thread receiver;
+    private final ScheduledExecutorService resender; // leader only
+
+    // leader state, guarded by this
+    private long logBase; // height of the first block of the log
+    private final List<String> log = new ArrayList<>(); // blocks appended from logBase, in textual form
+    private final List<Long> appendTimes = new ArrayList<>(); // nanoTime of each block of the log
+    private final long[] nextHeight, matchHeight; // of each follower
+    private final long[] sentCommit; // the last commit height sent to each follower
+    private final int[] inFlight;
+    private final long[] lastProgress; // nanoTime of the last ACK of each follower, or of the send that opened its window
+    private final boolean[] unreachable;
+    private long commitHeight;
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final LatencyHistogram commitLatency, appendLatency;
+    private final Counter appendsSent, entriesSent, acksReceived, appendsRejected, resends;
+
+    public ReplicatedNode(int id, int leaderId, int clusterSize, VoteChain chain, Transport transport) {
+        this(id, leaderId, clusterSize, chain, transport, DEFAULT_MAX_BATCH, DEFAULT_MAX_IN_FLIGHT, DEFAULT_RESEND_MILLIS);
+    }
+
+    /**
+     * Start a node. The leader must be started before any block is appended to its chain.
+     *
+     * @param id the index of the node
+     * @param leaderId the index of the leader
+     * @param clusterSize the number of nodes
+     * @param chain the chain of the node, only the leader accepts transactions on it
+     * @param transport the channel to the other nodes
+     * @param maxBatch the maximum number of blocks of an APPEND
+     * @param maxInFlight the maximum number of unacknowledged APPEND for each follower
+     * @param resendMillis the wait for an ACK before the window of a follower is sent again
+     */
+    public ReplicatedNode(int id, int leaderId, int clusterSize, VoteChain chain, Transport transport, int maxBatch, int maxInFlight,
+                          long resendMillis) {
+        this.id = id;
+        this.leaderId = leaderId;
+        this.clusterSize = clusterSize;
+        this.chain = chain;
+        this.transport = transport;
+        this.maxBatch = maxBatch;
+        this.maxInFlight = maxInFlight;
+        this.resendNanos = TimeUnit.MILLISECONDS.toNanos(resendMillis);
+
+        logBase = chain.getHeight();
+        commitHeight = logBase;
+        nextHeight = new long[clusterSize];
+        matchHeight = new long[clusterSize];
+        sentCommit = new long[clusterSize];
+        inFlight = new int[clusterSize];
+        lastProgress = new long[clusterSize];
+        unreachable = new boolean[clusterSize];
+        Arrays.fill(nextHeight, logBase);
+        Arrays.fill(matchHeight, logBase);
+
+        commitLatency = metrics.histogram("replication.commitLatency");
+        appendLatency = metrics.histogram("replication.followerAppend");
+        appendsSent = metrics.counter("replication.appendsSent");
+        entriesSent = metrics.counter("replication.entriesSent");
+        acksReceived = metrics.counter("replication.acksReceived");
+        appendsRejected = metrics.counter("replication.appendsRejected");
+        resends = metrics.counter("replication.resends");
+
+        if (isLeader()) {
+            chain.addBlockListener(this::blockAppended);
+            resender = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "replication-resend-" + id);
+                t.setDaemon(true);
+                return t;
+            });
+            resender.scheduleWithFixedDelay(this::resend, resendMillis, resendMillis, TimeUnit.MILLISECONDS);
+        } else {
+            resender = null;
+        }
+        receiver = new Thread(this::receive, "replication-node-" + id);
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    /**
+     * Start a cluster in this JVM over in-memory channels, node 0 being the leader
+     *
+     * @param chains the chain of each node
+     * @return the nodes
+     */
+    public static ReplicatedNode[] inMemoryCluster(List<VoteChain> chains) {
+        InMemoryTransport[] network = InMemoryTransport.network(chains.size());
+        ReplicatedNode[] nodes = new ReplicatedNode[chains.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new ReplicatedNode(i, 0, nodes.length, chains.get(i), network[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Start a cluster in this JVM over loopback sockets, node 0 being the leader
+     *
+     * @param chains the chain of each node
+     * @return the nodes
+     * @throws IOException if the sockets cannot be bound
+     */
+    public static ReplicatedNode[] socketCluster(List<VoteChain> chains) throws IOException {
+        List<java.net.InetSocketAddress> addresses = SocketTransport.localAddresses(chains.size());
+        ReplicatedNode[] nodes = new ReplicatedNode[chains.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new ReplicatedNode(i, 0, nodes.length, chains.get(i), new SocketTransport(i, addresses));
+        }
+        return nodes;
+    }
+
+    public boolean isLeader() {
+        return id == leaderId;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public VoteChain getChain() {
+        return chain;
+    }
+
+    /**
+     * @return the replication metrics of the node
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of blocks stored by a majority of the nodes, as known by this node
+     */
+    public synchronized long getCommitHeight() {
+        return commitHeight;
+    }
+
+    /**
+     * Wait until the chain is committed up to a height
+     *
+     * @param height the number of blocks
+     * @return true if the blocks are committed, false on timeout
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized boolean awaitCommit(long height, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (commitHeight < height) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0)
+                return false;
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return true;
+    }
+
+    /**
+     * Add votes through the leader and wait for their blocks to be committed
+     *
+     * @param pka the pka for vote encryption ZK proof
+     * @param ballots the ballots, appended in this order
+     * @param timeout the maximum wait for the commit
+     * @return the number of accepted votes
+     * @throws IOException if the blocks are not committed within the timeout
+     * @see VoteChain#insertVoteTransactions
+     */
+    public int submitVotes(ElGamalPK pka, List<Ballot> ballots, long timeout, TimeUnit unit) throws IOException, NoSuchAlgorithmException, InterruptedException {
+        if (!isLeader())
+            throw new IllegalStateException("node " + id + " is not the leader, votes go to node " + leaderId);
+        int accepted;
+        long height;
+        synchronized (chain) {
+            accepted = chain.insertVoteTransactions(pka, ballots);
+            height = chain.getHeight();
+        }
+        if (!awaitCommit(height, timeout, unit))
+            throw new IOException("blocks up to height " + height + " not replicated to a majority of the nodes");
+        return accepted;
+    }
+
+    /**
+     * Leader: queue a block of its chain and send it to the followers with room in their window
+     */
+    private synchronized void blockAppended(long height, Block block) {
+        log.add(block.toString());
+        appendTimes.add(System.nanoTime());
+        for (int f = 0; f < clusterSize; f++) {
+            if (f != id)
+                replicate(f);
+        }
+        if (clusterSize == 1)
+            advanceCommit();
+    }
+
+    /**
+     * Leader: send the blocks the follower has not received yet, in batches, while its window allows
+     */
+    private void replicate(int follower) {
+        long logEnd = logBase + log.size();
+        while (nextHeight[follower] < logEnd && inFlight[follower] < maxInFlight) {
+            List<String> entries;
+            if (nextHeight[follower] < logBase) {
+                // already dropped from the log, but written to the chain file
+                try {
+                    entries = chain.readBlocks(nextHeight[follower], (int) Math.min(maxBatch, logBase - nextHeight[follower]));
+                } catch (IOException e) {
+                    LOGGER.warning("Node " + id + " cannot read the blocks of node " + follower + ": " + e.getMessage());
+                    return;
+                }
+            } else {
+                int from = (int) (nextHeight[follower] - logBase);
+                int to = (int) Math.min(log.size(), from + (long) maxBatch);
+                entries = new ArrayList<>(log.subList(from, to));
+            }
+            if (!send(follower, ReplicationMessage.append(term, id, nextHeight[follower], commitHeight, entries)))
+                return;
+            if (inFlight[follower] == 0)
+                lastProgress[follower] = System.nanoTime();
+            nextHeight[follower] += entries.size();
+            sentCommit[follower] = commitHeight;
+            inFlight[follower]++;
+            entriesSent.add(entries.size());
+        }
+    }
+
+    private boolean send(int to, ReplicationMessage message) {
+        try {
+            transport.send(to, message);
+            if (message.type == ReplicationMessage.Type.APPEND)
+                appendsSent.increment();
+            unreachable[to] = false;
+            return true;
+        } catch (IOException e) {
+            if (!unreachable[to])
+                LOGGER.warning("Node " + id + " cannot reach node " + to + ": " + e.getMessage());
+            unreachable[to] = true;
+            return false;
+        }
+    }
+
+    private void receive() {
+        try {
+            for (ReplicationMessage message; (message = transport.receive()) != null; ) {
+                if (message.type == ReplicationMessage.Type.ACK)
+                    acknowledged(message);
+                else
+                    appendEntries(message);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Leader: a follower has processed an APPEND
+     */
+    private synchronized void acknowledged(ReplicationMessage ack) {
+        if (ack.term != term || !isLeader())
+            return;
+        acksReceived.increment();
+        int f = ack.from;
+        inFlight[f] = Math.max(0, inFlight[f] - 1);
+        lastProgress[f] = System.nanoTime();
+        if (ack.success) {
+            matchHeight[f] = Math.max(matchHeight[f], ack.height);
+            advanceCommit();
+        } else {
+            // the follower is not where the leader expected, restart from its height
+            appendsRejected.increment();
+            inFlight[f] = 0;
+            nextHeight[f] = ack.height;
+            matchHeight[f] = Math.min(matchHeight[f], ack.height);
+        }
+        replicate(f);
+        for (int g = 0; g < clusterSize; g++) {
+            // an idle follower learns the new commit height from an empty APPEND, which is not acknowledged
+            long known = Math.min(commitHeight, matchHeight[g]);
+            if (g != id && inFlight[g] == 0 && nextHeight[g] == matchHeight[g] && sentCommit[g] < known
+                    && send(g, ReplicationMessage.append(term, id, nextHeight[g], commitHeight, new ArrayList<>())))
+                sentCommit[g] = commitHeight;
+        }
+    }
+
+    /**
+     * Leader: send again the window of the followers that have not acknowledged it in time, and retry
+     * the followers behind the log that could not be reached
+     */
+    private synchronized void resend() {
+        long now = System.nanoTime();
+        long logEnd = logBase + log.size();
+        for (int f = 0; f < clusterSize; f++) {
+            if (f == id)
+                continue;
+            if (inFlight[f] > 0 && now - lastProgress[f] >= resendNanos) {
+                resends.increment();
+                inFlight[f] = 0;
+                nextHeight[f] = matchHeight[f];
+            }
+            if (inFlight[f] == 0 && nextHeight[f] < logEnd)
+                replicate(f);
+        }
+    }
+
+    /**
+     * Leader: the commit height is the height stored by a majority, the leader included
+     */
+    private void advanceCommit() {
+        long[] heights = matchHeight.clone();
+        heights[id] = logBase + log.size();
+        Arrays.sort(heights);
+        long majority = heights[(clusterSize - 1) / 2]; // the (n/2+1)-th largest
+        if (majority <= commitHeight)
+            return;
+        long now = System.nanoTime();
+        for (long h = commitHeight; h < majority; h++) {
+            commitLatency.record(now - appendTimes.get((int) (h - logBase)));
+        }
+        commitHeight = majority;
+        notifyAll();
+        trimLog();
+    }
+
+    /**
+     * Leader: drop the committed blocks of the log stored by every reachable follower, in steps of
+     * at least a batch
+     */
+    private void trimLog() {
+        long stored = commitHeight;
+        for (int f = 0; f < clusterSize; f++) {
+            if (f != id && !unreachable[f])
+                stored = Math.min(stored, matchHeight[f]);
+        }
+        int dropped = (int) (stored - logBase);
+        if (dropped <= 0 || (dropped < maxBatch && dropped < log.size()))
+            return;
+        log.subList(0, dropped).clear();
+        appendTimes.subList(0, dropped).clear();
+        logBase = stored;
+    }
+
+    /**
+     * Follower: append the blocks of the leader that continue the local chain
+     */
+    private void appendEntries(ReplicationMessage append) {
+        if (append.term < term) {
+            send(append.from, ReplicationMessage.ack(term, id, chain.getHeight(), false));
+            return;
+        }
+        long height = chain.getHeight();
+        boolean success;
+        if (append.height > height) {
+            success = false; // a previous batch is missing
+        } else {
+            int skip = (int) Math.min(height - append.height, append.entries.size()); // already appended, e.g. after a resend
+            long start = System.nanoTime();
+            try {
+                if (skip < append.entries.size())
+                    height = chain.appendBlocks(append.entries.subList(skip, append.entries.size()));
+                success = true;
+            } catch (IOException | NoSuchAlgorithmException e) {
+                LOGGER.warning("Node " + id + " rejected the blocks of the leader: " + e.getMessage());
+                height = chain.getHeight();
+                success = false;
+            }
+            appendLatency.recordSince(start);
+        }
+        synchronized (this) {
+            long committed = Math.min(append.commitHeight, height);
+            if (committed > commitHeight) {
+                commitHeight = committed;
+                notifyAll();
+            }
+        }
+        if (!append.entries.isEmpty() || !success)
+            send(append.from, ReplicationMessage.ack(term, id, height, success));
+    }
+
+    /**
+     * Stop the node and close its transport
+     */
+    @Override
+    public void close() throws IOException {
+        if (resender != null)
+            resender.shutdownNow();
+        transport.close();
+        try {
+            receiver.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
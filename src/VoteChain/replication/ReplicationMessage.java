@@ -0,0 +1,104 @@
+package VoteChain.replication;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A message between replicated nodes: an APPEND from the leader carries a batch of consecutive blocks
+ * starting at a given height, an ACK from a follower reports the height of its chain.
+ * Messages are immutable, and have a binary form for the socket transport.
+ */
+public class ReplicationMessage {
+
+    public enum Type { APPEND, ACK }
+
+    public final Type type;
+    public final long term; // the term of the leader, stale messages are rejected
+    public final int from; // the sender node
+    public final long height; // APPEND: height of the first block, ACK: height of the follower chain
+    public final long commitHeight; // APPEND: blocks stored by a majority of the nodes
+    public final boolean success; // ACK: true if the blocks have been appended
+    public final List<String> entries; // APPEND: the blocks in textual form
+
+    private ReplicationMessage(Type type, long term, int from, long height, long commitHeight, boolean success, List<String> entries) {
+        this.type = type;
+        this.term = term;
+        this.from = from;
+        this.height = height;
+        this.commitHeight = commitHeight;
+        this.success = success;
+        this.entries = entries;
+    }
+
+    public static ReplicationMessage append(long term, int leader, long height, long commitHeight, List<String> entries) {
+        return new ReplicationMessage(Type.APPEND, term, leader, height, commitHeight, false, Collections.unmodifiableList(entries));
+    }
+
+    public static ReplicationMessage ack(long term, int follower, long height, boolean success) {
+        return new ReplicationMessage(Type.ACK, term, follower, height, 0, success, Collections.emptyList());
+    }
+
+    /**
+     * Write the binary form of the message
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(type.ordinal());
+        out.writeLong(term);
+        out.writeInt(from);
+        out.writeLong(height);
+        out.writeLong(commitHeight);
+        out.writeBoolean(success);
+        out.writeInt(entries.size());
+        for (String entry : entries) {
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read a message written by write
+     * @throws IOException if the stream ends or does not contain a message
+     */
+    public static ReplicationMessage read(DataInput in) throws IOException {
+        int type = in.readUnsignedByte();
+        if (type >= Type.values().length)
+            throw new IOException("unknown replication message type " + type);
+        long term = in.readLong();
+        int from = in.readInt();
+        long height = in.readLong();
+        long commitHeight = in.readLong();
+        boolean success = in.readBoolean();
+        int count = in.readInt();
+        if (count < 0)
+            throw new IOException("invalid number of entries " + count);
+        List<String> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            if (length < 0)
+                throw new IOException("invalid entry length " + length);
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            entries.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return new ReplicationMessage(Type.values()[type], term, from, height, commitHeight, success, Collections.unmodifiableList(entries));
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationMessage{" +
+                "type=" + type +
+                ", term=" + term +
+                ", from=" + from +
+                ", height=" + height +
+                ", commitHeight=" + commitHeight +
+                ", success=" + success +
+                ", entries=" + entries.size() +
+                '}';
+    }
+}
@@ -0,0 +1,143 @@
+package VoteChain.replication;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Transport over TCP sockets: each node listens on its own address and keeps one connection, opened
+ * on the first send, to each node it talks to. Messages are written in their binary form.
+ */
+public class SocketTransport implements Transport {
+
+    private static final Logger LOGGER = Logger.getLogger(SocketTransport.class.getName());
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000; // the sender holds the lock of its node meanwhile
+
+    private final List<InetSocketAddress> addresses;
+    private final ServerSocket server;
+    private final BlockingQueue<ReplicationMessage> inbox = new LinkedBlockingQueue<>();
+    private final Socket[] sockets; // outgoing connections, one per node
+    private final DataOutputStream[] outputs;
+    private final List<Socket> accepted = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * @param id the index of this node
+     * @param addresses the addresses of all the nodes of the cluster
+     * @throws IOException if the address of this node cannot be bound
+     */
+    public SocketTransport(int id, List<InetSocketAddress> addresses) throws IOException {
+        this.addresses = addresses;
+        this.sockets = new Socket[addresses.size()];
+        this.outputs = new DataOutputStream[addresses.size()];
+        this.server = new ServerSocket();
+        server.bind(addresses.get(id));
+
+        Thread acceptor = new Thread(this::accept, "replication-accept-" + id);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @param nodes the number of nodes
+     * @return free loopback addresses for a local cluster
+     * @throws IOException if no port is available
+     */
+    public static List<InetSocketAddress> localAddresses(int nodes) throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>(nodes);
+        for (int i = 0; i < nodes; i++) {
+            try (ServerSocket probe = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), probe.getLocalPort()));
+            }
+        }
+        return addresses;
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                synchronized (accepted) {
+                    accepted.add(socket);
+                }
+                Thread reader = new Thread(() -> read(socket), "replication-read");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed)
+                    LOGGER.warning("Replication accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+            while (!closed) {
+                inbox.add(ReplicationMessage.read(in));
+            }
+        } catch (EOFException e) {
+            // the sender closed the connection
+        } catch (IOException e) {
+            if (!closed)
+                LOGGER.warning("Replication connection lost: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void send(int to, ReplicationMessage message) throws IOException {
+        synchronized (outputs) {
+            // a single lock: messages are small and the sender is the single replication thread of the node
+            try {
+                if (outputs[to] == null) {
+                    sockets[to] = new Socket();
+                    sockets[to].setTcpNoDelay(true);
+                    sockets[to].connect(addresses.get(to), CONNECT_TIMEOUT_MILLIS);
+                    outputs[to] = new DataOutputStream(new BufferedOutputStream(sockets[to].getOutputStream(), 1 << 16));
+                }
+                message.write(outputs[to]);
+                outputs[to].flush();
+            } catch (IOException e) {
+                if (sockets[to] != null)
+                    sockets[to].close();
+                sockets[to] = null;
+                outputs[to] = null;
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public ReplicationMessage receive() throws InterruptedException {
+        while (!closed) {
+            ReplicationMessage message = inbox.poll(100, TimeUnit.MILLISECONDS);
+            if (message != null)
+                return message;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        synchronized (outputs) {
+            for (Socket socket : sockets) {
+                if (socket != null)
+                    socket.close();
+            }
+        }
+        synchronized (accepted) {
+            for (Socket socket : accepted) {
+                socket.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package VoteChain.replication;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The channel of a node to the other nodes of the cluster, identified by their index
+ */
+public interface Transport extends Closeable {
+
+    /**
+     * Send a message, without waiting for the receiver to process it
+     * @param to the index of the receiving node
+     * @param message the message
+     * @throws IOException if the node is unreachable
+     */
+    void send(int to, ReplicationMessage message) throws IOException;
+
+    /**
+     * Wait for the next message sent to this node
+     * @return the message, null once the transport is closed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    ReplicationMessage receive() throws InterruptedException;
+}
@@ -0,0 +1,273 @@
+package VoteChain.scheduler;
+
+import VoteChain.metrics.Counter;
+import VoteChain.metrics.LatencyHistogram;
+import VoteChain.metrics.MetricsRegistry;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The single thread appending blocks, in front of one or more VoteChains, with a lane per kind of
+ * transaction. The jointly signed transactions of the authorities (start and stop of the voting,
+ * decryption contributes) go in the LIFECYCLE lane, which is served first: between two ballots the
+ * sequencer looks at it again, so a lifecycle transaction does not wait for the ballots of the other
+ * chains nor for those queued after it, however many they are.
+ * Every action is stamped with a sequence number when it is queued. A lifecycle action does not
+ * overtake the actions of its own chain queued before it in a lower lane: these are run first, so the
+ * stop of the voting closes the poll after the ballots already verified and queued for append.
+ */
+public class ChainScheduler implements Closeable {
+
+    /**
+     * The lanes, in priority order
+     */
+    public enum Lane {
+        LIFECYCLE, BALLOT;
+
+        final String metric = name().toLowerCase();
+    }
+
+    private static class Task<T> {
+        final Object chain;
+        final long sequence;
+        final Callable<T> action;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long queued = System.nanoTime();
+
+        Task(Object chain, long sequence, Callable<T> action) {
+            this.chain = chain;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        void run() {
+            try {
+                result.complete(action.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class LaneQueue {
+        final ConcurrentLinkedQueue<Task<?>> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicInteger depth = new AtomicInteger(), maxDepth = new AtomicInteger();
+        final LatencyHistogram wait, run;
+        final Counter executed;
+
+        LaneQueue(Lane lane, MetricsRegistry metrics) {
+            wait = metrics.histogram("scheduler." + lane.metric + ".wait");
+            run = metrics.histogram("scheduler." + lane.metric + ".run");
+            executed = metrics.counter("scheduler." + lane.metric + ".executed");
+        }
+    }
+
+    private final LaneQueue[] lanes = new LaneQueue[Lane.values().length];
+    private final MetricsRegistry metrics;
+    private final Thread sequencer;
+    private long sequence; // of the next queued action, guarded by the lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private volatile boolean closed;
+
+    /**
+     * Start a scheduler
+     *
+     * @param name the name of the sequencer thread
+     * @param metrics the registry of the lane metrics
+     */
+    public ChainScheduler(String name, MetricsRegistry metrics) {
+        this.metrics = metrics;
+        for (Lane lane : Lane.values()) {
+            lanes[lane.ordinal()] = new LaneQueue(lane, metrics);
+        }
+        sequencer = new Thread(this::sequence, name);
+        sequencer.setDaemon(true);
+        sequencer.start();
+    }
+
+    public ChainScheduler(String name) {
+        this(name, new MetricsRegistry());
+    }
+
+    /**
+     * Queue an action in a lane
+     *
+     * @param lane the lane, LIFECYCLE for the authority transactions
+     * @param chain the chain the action appends to; a lifecycle action runs after the actions of the
+     *              same chain queued before it
+     * @param action the action, run by the sequencer thread
+     * @return the result of the action; completed exceptionally with a RejectedExecutionException if the
+     * scheduler is closed
+     */
+    public <T> CompletableFuture<T> submit(Lane lane, Object chain, Callable<T> action) {
+        LaneQueue queue = lanes[lane.ordinal()];
+        Task<T> task;
+        lock.lock();
+        try {
+            // checked under the lock that close takes, so no action is queued after the last drain
+            if (closed) {
+                CompletableFuture<T> result = new CompletableFuture<>();
+                result.completeExceptionally(new RejectedExecutionException("the scheduler is closed"));
+                return result;
+            }
+            // stamped and queued together, so every lane is in the order of the sequence numbers
+            task = new Task<>(chain, sequence++, action);
+            queue.tasks.add(task);
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        queue.maxDepth.accumulateAndGet(queue.depth.incrementAndGet(), Math::max);
+        return task.result;
+    }
+
+    /**
+     * @return the actions waiting in a lane
+     */
+    public int getDepth(Lane lane) {
+        return lanes[lane.ordinal()].depth.get();
+    }
+
+    /**
+     * @return the most actions that have been waiting in a lane at once
+     */
+    public int getMaxDepth(Lane lane) {
+        return lanes[lane.ordinal()].maxDepth.get();
+    }
+
+    /**
+     * @return the registry with the waiting and running times of each lane
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the depths of the lanes and their waiting and running times
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Lane lane : Lane.values()) {
+            sb.append(String.format("%-40s depth=%d max=%d%n", "scheduler." + lane.metric, getDepth(lane), getMaxDepth(lane)));
+        }
+        return sb.append(metrics.report()).toString();
+    }
+
+    /**
+     * Run the next action, the highest lane first. An action with actions of its chain queued before
+     * it in a lower lane waits for them, and so do the later actions of its chain in its lane, while
+     * those of the other chains go ahead.
+     * @return false if there is none
+     */
+    private boolean runNext() {
+        for (int l = 0; l < lanes.length; l++) {
+            List<Object> waiting = null; // chains with an action of this lane waiting
+            for (Task<?> task : lanes[l].tasks) { // only the sequencer removes tasks
+                if (waiting != null && waiting.contains(task.chain))
+                    continue;
+                boolean blocked = false;
+                for (int lower = l + 1; lower < lanes.length && !blocked; lower++) {
+                    blocked = firstBefore(lanes[lower], task) != null;
+                }
+                if (!blocked) {
+                    lanes[l].tasks.remove(task);
+                    run(lanes[l], task);
+                    return true;
+                }
+                if (waiting == null)
+                    waiting = new ArrayList<>();
+                waiting.add(task.chain);
+            }
+            if (waiting != null) {
+                // every action of the lane waits, the earliest action they wait for goes first
+                Task<?> first = lanes[l].tasks.peek();
+                for (int lower = l + 1; lower < lanes.length; lower++) {
+                    Task<?> earlier = firstBefore(lanes[lower], first);
+                    if (earlier != null) {
+                        lanes[lower].tasks.remove(earlier);
+                        run(lanes[lower], earlier);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the first action of the queue for the chain of the task and queued before it, null if none
+     */
+    private static Task<?> firstBefore(LaneQueue queue, Task<?> task) {
+        for (Task<?> queued : queue.tasks) {
+            if (queued.sequence > task.sequence)
+                break; // the lane is in the order of the sequence numbers
+            if (queued.chain == task.chain)
+                return queued;
+        }
+        return null;
+    }
+
+    private static void run(LaneQueue queue, Task<?> task) {
+        queue.depth.decrementAndGet();
+        long start = queue.wait.recordSince(task.queued);
+        task.run();
+        queue.run.recordSince(start);
+        queue.executed.increment();
+    }
+
+    private void sequence() {
+        while (true) {
+            if (runNext())
+                continue;
+            lock.lock();
+            try {
+                while (!closed && isEmpty())
+                    work.await();
+                if (closed && isEmpty())
+                    return;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean isEmpty() {
+        for (LaneQueue queue : lanes) {
+            if (!queue.tasks.isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting actions and wait for the queued ones to be run
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            work.signal();
+        } finally {
+            lock.unlock();
+        }
+        // the sequencer stops with empty lanes, and nothing can be queued once closed is set
+        try {
+            sequencer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package VoteChain.server;
+
+import VoteChain.Ballot;
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.group.Group;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.zkp.VoteProof;
+
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+
+/**
+ * The binary frames of the vote submission protocol. Every frame is an int length followed by
+ * the body; numbers are big-endian and BigIntegers are an unsigned short length and their two's
+ * complement bytes.
+ * <pre>
+ * BALLOT  = type(1) requestId(4) h a e z C C2 k(1) A[k] B[k] c[k] z[k]
+ * RECEIPT = type(2) requestId(4) status(1) blockHash(32)
+ * </pre>
+ * The group parameters of the voter key are not sent: all the voters of a server sign in the
+ * same group, known to the server.
+ */
+public class BallotFrame {
+
+    public static final byte BALLOT = 1, RECEIPT = 2;
+    public static final int MAX_FRAME = 1 << 20; // bytes of a body, larger frames close the connection
+    public static final int RECEIPT_BODY = 1 + 4 + 1 + 32;
+
+    /**
+     * The outcome of a submission
+     */
+    public enum Status {
+        ACCEPTED, // appended to the chain, the receipt carries the block hash
+        REJECTED, // not registered, outside the voting window, rate limited or badly signed
+        NOT_IN_GROUP,
+        BAD_PROOF,
+        MALFORMED
+    }
+
+    /**
+     * @return the frame of a ballot, ready to be written
+     */
+    public static ByteBuffer encodeBallot(int requestId, Ballot ballot) {
+        VoteProof proof = ballot.proof;
+        BigInteger[] values = new BigInteger[6 + 4 * proof.branches()];
+        values[0] = ballot.pkSig.getH();
+        values[1] = ballot.sig.getA();
+        values[2] = ballot.sig.getE();
+        values[3] = ballot.sig.getZ();
+        values[4] = ballot.encrVote.C;
+        values[5] = ballot.encrVote.C2;
+        for (int j = 0; j < proof.branches(); j++) {
+            values[6 + j] = proof.A[j];
+            values[6 + proof.branches() + j] = proof.B[j];
+            values[6 + 2 * proof.branches() + j] = proof.c[j];
+            values[6 + 3 * proof.branches() + j] = proof.z[j];
+        }
+
+        byte[][] bytes = new byte[values.length][];
+        int length = 1 + 4 + 1;
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].toByteArray();
+            length += 2 + bytes[i].length;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(4 + length);
+        frame.putInt(length).put(BALLOT).putInt(requestId);
+        for (int i = 0; i < 6; i++) {
+            put(frame, bytes[i]);
+        }
+        frame.put((byte) proof.branches());
+        for (int i = 6; i < bytes.length; i++) {
+            put(frame, bytes[i]);
+        }
+        return frame.flip();
+    }
+
+    /**
+     * Decode the body of a BALLOT frame, positioned after the type and the request id
+     *
+     * @param body the rest of the body
+     * @param signatureGroup the group of the voter keys
+     * @param securityParameter the security parameter of the voter keys
+     * @return the ballot
+     * @throws IllegalArgumentException if the body is not a ballot
+     */
+    public static Ballot decodeBallot(ByteBuffer body, Group signatureGroup, int securityParameter) {
+        try {
+            BigInteger h = get(body), a = get(body), e = get(body), z = get(body);
+            BigInteger C = get(body), C2 = get(body);
+            int k = body.get() & 0xff;
+            if (k < 2)
+                throw new IllegalArgumentException("a vote proof needs at least 2 branches");
+            BigInteger[][] proof = new BigInteger[4][k];
+            for (BigInteger[] part : proof) {
+                for (int j = 0; j < k; j++) {
+                    part[j] = get(body);
+                }
+            }
+            if (body.hasRemaining())
+                throw new IllegalArgumentException("trailing bytes after the ballot");
+            return new Ballot(new SchnorrPK(signatureGroup, h, securityParameter), new SchnorrSig(a, e, z),
+                    new ElGamalCT(C, C2), new VoteProof(proof[0], proof[1], proof[2], proof[3]));
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated ballot", e);
+        }
+    }
+
+    /**
+     * @param blockHash the hexadecimal hash of the block of the ballot, null if it has not been accepted
+     * @return the frame of a receipt, ready to be written
+     */
+    public static ByteBuffer encodeReceipt(int requestId, Status status, String blockHash) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + RECEIPT_BODY);
+        frame.putInt(RECEIPT_BODY).put(RECEIPT).putInt(requestId).put((byte) status.ordinal());
+        frame.put(blockHash == null ? new byte[32] : HexFormat.of().parseHex(blockHash));
+        return frame.flip();
+    }
+
+    private static void put(ByteBuffer frame, byte[] value) {
+        frame.putShort((short) value.length).put(value);
+    }
+
+    private static BigInteger get(ByteBuffer body) {
+        int length = body.getShort() & 0xffff;
+        if (length == 0)
+            throw new IllegalArgumentException("empty number");
+        byte[] value = new byte[length];
+        body.get(value);
+        return new BigInteger(value);
+    }
+}
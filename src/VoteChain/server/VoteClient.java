@@ -0,0 +1,191 @@
+package VoteChain.server;
+
+import VoteChain.Ballot;
+import VoteChain.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load generator for a VoteServer: the ballots are spread over many concurrent connections, all
+ * driven by one selector thread, and each connection sends its ballots back to back and then
+ * waits for their receipts.
+ */
+public class VoteClient {
+
+    /**
+     * The outcome of a load run
+     */
+    public static class Result {
+        public final long[] statuses = new long[BallotFrame.Status.values().length]; // receipts of each status
+        public final String[] blockHashes; // of each accepted ballot, by index
+        public final LatencyHistogram latency = new LatencyHistogram(); // from the connection start to the receipt
+        public long unanswered; // ballots without receipt at the end of the run
+        public long elapsedNanos;
+
+        Result(int ballots) {
+            blockHashes = new String[ballots];
+        }
+
+        /**
+         * @return the receipts per second
+         */
+        public double throughput() {
+            long receipts = 0;
+            for (long count : statuses) {
+                receipts += count;
+            }
+            return elapsedNanos == 0 ? 0 : receipts * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Result{");
+            for (BallotFrame.Status status : BallotFrame.Status.values()) {
+                sb.append(status).append('=').append(statuses[status.ordinal()]).append(", ");
+            }
+            LatencyHistogram.Snapshot s = latency.snapshot();
+            return sb.append("unanswered=").append(unanswered)
+                    .append(", elapsed=").append(elapsedNanos / 1_000_000).append("ms")
+                    .append(", throughput=").append(String.format("%.1f/s", throughput()))
+                    .append(", latency p50=").append(s.quantile(0.5) / 1000).append("us")
+                    .append(" p99=").append(s.quantile(0.99) / 1000).append("us")
+                    .append('}').toString();
+        }
+    }
+
+    private static class Connection {
+        final SocketChannel channel;
+        final ByteBuffer out;
+        final ByteBuffer in = ByteBuffer.allocate(64 * (4 + BallotFrame.RECEIPT_BODY));
+        final int frames;
+        int answered;
+        long started;
+
+        Connection(SocketChannel channel, ByteBuffer out, int frames) {
+            this.channel = channel;
+            this.out = out;
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * Submit the ballots over concurrent connections, the i-th ballot on the connection i % connections
+     *
+     * @param server the address of the server
+     * @param ballots the ballots, the request id of a ballot is its index
+     * @param connections the number of connections
+     * @param timeout the maximum duration of the run
+     * @return the receipts and their latencies
+     * @throws IOException if the connections cannot be opened
+     */
+    public static Result submit(InetSocketAddress server, List<Ballot> ballots, int connections,
+                                long timeout, TimeUnit unit) throws IOException {
+        Result result = new Result(ballots.size());
+        connections = Math.max(1, Math.min(connections, ballots.size()));
+        List<List<ByteBuffer>> frames = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            frames.add(new ArrayList<>());
+        }
+        for (int i = 0; i < ballots.size(); i++) {
+            frames.get(i % connections).add(BallotFrame.encodeBallot(i, ballots.get(i)));
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        long remaining = ballots.size();
+        try (Selector selector = Selector.open()) {
+            for (List<ByteBuffer> own : frames) {
+                int size = 0;
+                for (ByteBuffer frame : own) {
+                    size += frame.remaining();
+                }
+                ByteBuffer out = ByteBuffer.allocate(size);
+                for (ByteBuffer frame : own) {
+                    out.put(frame);
+                }
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.connect(server);
+                channel.register(selector, SelectionKey.OP_CONNECT, new Connection(channel, out.flip(), own.size()));
+            }
+
+            while (remaining > 0 && System.nanoTime() < deadline) {
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            c.channel.finishConnect();
+                            c.started = System.nanoTime();
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                            continue;
+                        }
+                        if (key.isWritable()) {
+                            c.channel.write(c.out);
+                            if (!c.out.hasRemaining())
+                                key.interestOps(SelectionKey.OP_READ);
+                        }
+                        if (key.isReadable()) {
+                            if (c.channel.read(c.in) < 0)
+                                throw new IOException("connection closed by the server");
+                            remaining -= receipts(c, result);
+                            if (c.answered == c.frames) {
+                                key.cancel();
+                                c.channel.close();
+                            }
+                        }
+                    } catch (IOException e) {
+                        key.cancel();
+                        c.channel.close();
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        result.unanswered = remaining;
+        return result;
+    }
+
+    /**
+     * @return the number of receipts read from the input buffer
+     */
+    private static int receipts(Connection c, Result result) {
+        c.in.flip();
+        int read = 0;
+        long now = System.nanoTime();
+        while (c.in.remaining() >= 4 + BallotFrame.RECEIPT_BODY) {
+            c.in.getInt(); // the length of the fixed size receipt
+            c.in.get(); // the RECEIPT type
+            int requestId = c.in.getInt();
+            BallotFrame.Status status = BallotFrame.Status.values()[c.in.get()];
+            byte[] hash = new byte[32];
+            c.in.get(hash);
+            result.statuses[status.ordinal()]++;
+            if (status == BallotFrame.Status.ACCEPTED)
+                result.blockHashes[requestId] = HexFormat.of().formatHex(hash);
+            result.latency.record(now - c.started);
+            c.answered++;
+            read++;
+        }
+        c.in.compact();
+        return read;
+    }
+}
@@ -0,0 +1,456 @@
+package VoteChain.server;
+
+import VoteChain.Ballot;
+import VoteChain.VoteChain;
+import VoteChain.metrics.Counter;
+import VoteChain.metrics.LatencyHistogram;
+import VoteChain.metrics.MetricsRegistry;
+import VoteChain.scheduler.ChainScheduler;
+import crypto.utils.group.Group;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking front end submitting ballots to a VoteChain.
+ * <ul>
+ *     <li>one selector thread reads BALLOT frames and writes RECEIPT frames for all the connections,</li>
+ *     <li>a bounded pool checks the group membership and the validity proof of the ballots in parallel,</li>
+ *     <li>one appender, a ChainScheduler, applies the remaining checks and appends the ballots in arrival
+ *     order; the lifecycle transactions of the authorities submitted through appendLifecycle come after the
+ *     ballots already verified and overtake those verified later.</li>
+ * </ul>
+ * Backpressure: a connection with too many ballots waiting for their receipt, or whose ballot does
+ * not fit in the verification queue, is not read until it has room again, so a fast client slows down
+ * to the verification rate instead of filling the memory of the server.
+ */
+public class VoteServer implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(VoteServer.class.getName());
+    public static final int DEFAULT_MAX_PENDING = 16; // ballots of a connection waiting for their receipt
+    public static final int DEFAULT_QUEUE = 1024; // ballots waiting for a verification thread
+
+    private final VoteChain chain;
+    private final ElGamalPK pka;
+    private final Group signatureGroup;
+    private final int securityParameter;
+    private final int maxPending;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ThreadPoolExecutor verifiers;
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>(); // connections with receipts or to resume
+    private final Queue<Connection> stalled = new ConcurrentLinkedQueue<>(); // connections waiting for the verification queue
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(); // the selector will look at the ready connections
+    private final Thread ioThread;
+    private final ChainScheduler appender; // its ballot lane is bounded by the pending limits
+    private volatile boolean closed;
+
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final LatencyHistogram latency, verify;
+    private final Counter connections, ballots, accepted, rejected, malformed, paused;
+
+    /**
+     * Start a server
+     *
+     * @param chain the chain receiving the ballots
+     * @param pka the ElGamal pk of the election
+     * @param signatureGroup the group of the voter signature keys
+     * @param securityParameter the security parameter of the voter keys
+     * @param address the address to listen on, port 0 for any free port
+     * @param verifierThreads the threads checking the proofs
+     * @throws IOException if the address cannot be bound
+     */
+    public VoteServer(VoteChain chain, ElGamalPK pka, Group signatureGroup, int securityParameter,
+                      InetSocketAddress address, int verifierThreads) throws IOException {
+        this(chain, pka, signatureGroup, securityParameter, address, verifierThreads, DEFAULT_QUEUE, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param queueCapacity the ballots waiting for a verification thread
+     * @param maxPending the ballots of a connection waiting for their receipt
+     */
+    public VoteServer(VoteChain chain, ElGamalPK pka, Group signatureGroup, int securityParameter,
+                      InetSocketAddress address, int verifierThreads, int queueCapacity, int maxPending) throws IOException {
+        this.chain = chain;
+        this.pka = pka;
+        this.signatureGroup = signatureGroup;
+        this.securityParameter = securityParameter;
+        this.maxPending = maxPending;
+
+        latency = metrics.histogram("server.latency");
+        verify = metrics.histogram("server.verify");
+        connections = metrics.counter("server.connections");
+        ballots = metrics.counter("server.ballots");
+        accepted = metrics.counter("server.accepted");
+        rejected = metrics.counter("server.rejected");
+        malformed = metrics.counter("server.malformed");
+        paused = metrics.counter("server.backpressurePauses");
+
+        verifiers = new ThreadPoolExecutor(verifierThreads, verifierThreads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), daemon("vote-server-verify"), new ThreadPoolExecutor.AbortPolicy());
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address, 4096);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        ioThread = daemon("vote-server-io").newThread(this::serve);
+        appender = new ChainScheduler("vote-server-append", metrics);
+        ioThread.start();
+    }
+
+    /**
+     * @return the bound address of the server
+     */
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * @return the metrics of the server, with the lanes of the appender
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the appender, with the depths of its lanes
+     */
+    public ChainScheduler getAppender() {
+        return appender;
+    }
+
+    /**
+     * Append a transaction of the authorities, e.g. the stop of the voting, after the ballots already
+     * verified and waiting for the appender, ahead of those verified later
+     *
+     * @param action the action on the chain
+     * @return the result of the action
+     */
+    public <T> CompletableFuture<T> appendLifecycle(Callable<T> action) {
+        return appender.submit(ChainScheduler.Lane.LIFECYCLE, chain, () -> {
+            synchronized (chain) {
+                return action.call();
+            }
+        });
+    }
+
+    /**
+     * A connection of a client, its buffers are used by the selector thread only
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(1 << 14);
+        ByteBuffer out; // the receipt being written
+        final Queue<ByteBuffer> receipts = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pending = new AtomicInteger(); // ballots read and not answered yet
+        boolean readPaused;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    /**
+     * A ballot on its way from the verification pool to the appender
+     */
+    private static class Submission {
+        final Connection connection;
+        final int requestId;
+        final Ballot ballot;
+        final long received;
+        boolean inGroup, validProof;
+
+        Submission(Connection connection, int requestId, Ballot ballot, long received) {
+            this.connection = connection;
+            this.requestId = requestId;
+            this.ballot = ballot;
+            this.received = received;
+        }
+    }
+
+    private void serve() {
+        while (!closed) {
+            try {
+                // receipts queued by the selector thread itself do not wake it up
+                if (ready.isEmpty())
+                    selector.select();
+                else
+                    selector.selectNow();
+                // cleared before the queue is drained, a connection added afterwards wakes the selector again
+                wakeupPending.set(false);
+                for (Connection c; (c = ready.poll()) != null; ) {
+                    if (!c.key.isValid())
+                        continue;
+                    try {
+                        write(c);
+                        resume(c);
+                    } catch (IOException e) {
+                        close(c);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable())
+                            read(c);
+                        if (key.isValid() && key.isWritable())
+                            write(c);
+                    } catch (IOException e) {
+                        close(c);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (!closed)
+                    LOGGER.warning("Vote server failure: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        for (SocketChannel channel; (channel = server.accept()) != null; ) {
+            channel.configureBlocking(false);
+            channel.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+            connections.increment();
+        }
+    }
+
+    private void read(Connection c) throws IOException {
+        if (c.channel.read(c.in) < 0) {
+            close(c);
+            return;
+        }
+        process(c);
+    }
+
+    /**
+     * Submit the complete frames of the input buffer, until the connection has to wait
+     */
+    private void process(Connection c) throws IOException {
+        c.in.flip();
+        while (c.in.remaining() >= 4) {
+            int start = c.in.position();
+            int length = c.in.getInt(start);
+            if (length < 5 || length > BallotFrame.MAX_FRAME) {
+                close(c);
+                return;
+            }
+            if (c.in.remaining() < 4 + length) {
+                if (c.in.capacity() < 4 + length) {
+                    ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(c.in);
+                    c.in = larger;
+                    c.in.flip();
+                }
+                break;
+            }
+            if (c.pending.get() >= maxPending) {
+                pause(c);
+                break;
+            }
+
+            ByteBuffer body = c.in.slice(start + 4, length);
+            byte type = body.get();
+            int requestId = body.getInt();
+            Ballot ballot = null;
+            if (type == BallotFrame.BALLOT) {
+                try {
+                    ballot = BallotFrame.decodeBallot(body, signatureGroup, securityParameter);
+                } catch (IllegalArgumentException e) {
+                    // answered below as malformed
+                }
+            }
+            c.in.position(start + 4 + length);
+            c.pending.incrementAndGet();
+            if (ballot == null) {
+                ballots.increment();
+                malformed.increment();
+                respond(c, requestId, BallotFrame.Status.MALFORMED, null, System.nanoTime());
+                continue;
+            }
+
+            Submission submission = new Submission(c, requestId, ballot, System.nanoTime());
+            try {
+                verifiers.execute(() -> verify(submission));
+                ballots.increment();
+            } catch (RejectedExecutionException e) {
+                // the verification queue is full: the frame is read again when a verifier is free
+                c.pending.decrementAndGet();
+                c.in.position(start);
+                stalled.add(c);
+                pause(c);
+                break;
+            }
+        }
+        c.in.compact();
+    }
+
+    private void pause(Connection c) {
+        if (!c.readPaused) {
+            c.readPaused = true;
+            c.key.interestOps(c.key.interestOps() & ~SelectionKey.OP_READ);
+            paused.increment();
+        }
+    }
+
+    /**
+     * Read again a paused connection, starting from the frames already buffered
+     */
+    private void resume(Connection c) {
+        if (!c.readPaused || c.pending.get() >= maxPending)
+            return;
+        c.readPaused = false;
+        c.key.interestOps(c.key.interestOps() | SelectionKey.OP_READ);
+        try {
+            process(c);
+        } catch (IOException e) {
+            close(c);
+        }
+    }
+
+    private void write(Connection c) throws IOException {
+        while (true) {
+            if (c.out == null || !c.out.hasRemaining()) {
+                c.out = c.receipts.poll();
+                if (c.out == null)
+                    break;
+            }
+            c.channel.write(c.out);
+            if (c.out.hasRemaining())
+                break;
+        }
+        boolean more = c.out != null && c.out.hasRemaining();
+        c.key.interestOps(more ? c.key.interestOps() | SelectionKey.OP_WRITE : c.key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    private void close(Connection c) {
+        c.key.cancel();
+        try {
+            c.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Verification thread: the checks that do not depend on the chain state
+     */
+    private void verify(Submission s) {
+        long start = System.nanoTime();
+        s.inGroup = VoteChain.isInGroup(pka, s.ballot);
+        s.validProof = s.inGroup && chain.verifyZKProofOfVote(s.ballot.proof, pka, s.ballot.pkSig, s.ballot.encrVote);
+        verify.recordSince(start);
+        appender.submit(ChainScheduler.Lane.BALLOT, chain, () -> {
+            append(s);
+            return null;
+        });
+
+        // a slot of the verification queue is free, one stalled connection can use it
+        Connection c = stalled.poll();
+        if (c != null) {
+            ready.add(c);
+            wakeup();
+        }
+    }
+
+    /**
+     * Appender: apply the checks that depend on the chain state and append a verified ballot
+     */
+    private void append(Submission s) {
+        BallotFrame.Status status;
+        String blockHash = null;
+        synchronized (chain) {
+            try {
+                if (chain.insertVerifiedVoteTransaction(pka, s.ballot, s.inGroup, s.validProof)) {
+                    status = BallotFrame.Status.ACCEPTED;
+                    blockHash = chain.getLastBlock().getHash();
+                } else {
+                    status = !s.inGroup ? BallotFrame.Status.NOT_IN_GROUP
+                            : !s.validProof ? BallotFrame.Status.BAD_PROOF : BallotFrame.Status.REJECTED;
+                }
+            } catch (IOException | NoSuchAlgorithmException e) {
+                LOGGER.warning("Vote server cannot append a ballot: " + e.getMessage());
+                status = BallotFrame.Status.REJECTED;
+            }
+        }
+        respond(s.connection, s.requestId, status, blockHash, s.received);
+        wakeup();
+    }
+
+    /**
+     * Wake the selector up to write the queued receipts; the wakeups until it looks at the ready
+     * connections coalesce into one
+     */
+    private void wakeup() {
+        if (!wakeupPending.getAndSet(true))
+            selector.wakeup();
+    }
+
+    /**
+     * Queue the receipt of a ballot, written by the selector thread at its next wakeup
+     */
+    private void respond(Connection c, int requestId, BallotFrame.Status status, String blockHash, long received) {
+        c.receipts.add(BallotFrame.encodeReceipt(requestId, status, blockHash));
+        c.pending.decrementAndGet();
+        if (status == BallotFrame.Status.ACCEPTED)
+            accepted.increment();
+        else
+            rejected.increment();
+        latency.recordSince(received);
+        ready.add(c);
+    }
+
+    /**
+     * Stop accepting connections and ballots, the ballots being verified are dropped and the verified
+     * ones appended
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        verifiers.shutdownNow();
+        try {
+            ioThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        appender.close();
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
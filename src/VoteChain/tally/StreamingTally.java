@@ -0,0 +1,378 @@
+package VoteChain.tally;
+
+import crypto.utils.arithmetic.ModAccumulator;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.Homomorphism;
+
+/**
+ * Tally of a VoteChain read straight from its file, for electorates whose ballots do not fit in the heap.
+ * The file is split in segments scanned in parallel, in two passes:
+ * the first one keeps, for each voter, only the position of the last ballot in a table of primitive
+ * longs (two longs per slot with at most half of the slots used, so 32 to 64 bytes per voter and no
+ * ciphertext), the second one multiplies the ciphertexts of the ballots found at those positions.
+ * Voters are identified by 64 bits of the SHA-256 of their key, with 16 more bits to detect the
+ * (very unlikely) voters sharing them.
+ */
+public class StreamingTally {
+
+    private static final String TRANSACTION = "', transaction='";
+    private static final String WITH_PROOF = "TransactionWithProof{";
+    private static final String PK = "pkSig=SchnorrPK{";
+    private static final String MESSAGE = "}, message='";
+    private static final String PROOF = "', ZKProof='";
+    private static final String BALLOT = "{C=";
+
+    private static final int READ_BUFFER = 1 << 20;
+
+    private final int threads;
+    private final long segmentSize;
+
+    public StreamingTally() {
+        this(Runtime.getRuntime().availableProcessors(), 64L << 20);
+    }
+
+    /**
+     * @param threads the number of scanning workers
+     * @param segmentSize the bytes of the chain file scanned by a worker at once
+     */
+    public StreamingTally(int threads, long segmentSize) {
+        if (threads < 1 || segmentSize < 1)
+            throw new IllegalArgumentException("at least one worker and one byte per segment");
+        this.threads = threads;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * The outcome of a tally
+     */
+    public static class Result {
+        public final ElGamalCT total; // the product of the last ballot of each voter
+        public final long countedBallots; // the ballots multiplied in total, one per voter
+        public final long ballots; // all the ballots of the chain, including the replaced ones
+        public final long bytes; // the length of the chain file scanned
+        public final long elapsedNanos;
+
+        Result(ElGamalCT total, long countedBallots, long ballots, long bytes, long elapsedNanos) {
+            this.total = total;
+            this.countedBallots = countedBallots;
+            this.ballots = ballots;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "countedBallots=" + countedBallots +
+                    ", ballots=" + ballots +
+                    ", bytes=" + bytes +
+                    ", elapsed=" + elapsedNanos / 1_000_000 + "ms" +
+                    '}';
+        }
+    }
+
+    /**
+     * Tally a whole chain file
+     * @param chainFile the path of the file
+     * @param pk the ElGamal pk used to encrypt the votes
+     * @return the tally
+     * @throws IOException if the file cannot be read
+     */
+    public Result tally(Path chainFile, ElGamalPK pk) throws IOException {
+        try (FileChannel channel = FileChannel.open(chainFile, StandardOpenOption.READ)) {
+            return tally(chainFile, channel.size(), pk);
+        }
+    }
+
+    /**
+     * Tally the first bytes of a chain file, e.g. the blocks written so far by a running VoteChain.
+     * A last line without its newline is an incomplete block and is ignored.
+     * @param chainFile the path of the file
+     * @param length the bytes to read
+     * @param pk the ElGamal pk used to encrypt the votes
+     * @return the tally
+     * @throws IOException if the file cannot be read
+     */
+    public Result tally(Path chainFile, long length, ElGamalPK pk) throws IOException {
+        long start = System.nanoTime();
+        int segments = (int) Math.max(1, (length + segmentSize - 1) / segmentSize);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(chainFile, StandardOpenOption.READ)) {
+            // first pass: the position of the last ballot of each voter
+            PositionTable latest = new PositionTable(1024);
+            Deque<Future<PositionTable>> inFlight = new ArrayDeque<>();
+            long ballots = 0;
+            for (int i = 0; i < segments; i++) {
+                long from = i * segmentSize, to = Math.min(length, from + segmentSize);
+                inFlight.add(workers.submit(() -> positions(channel, from, to, length)));
+                // bound the memory: at most two segment tables per worker wait to be merged
+                while (inFlight.size() > 2 * threads)
+                    ballots += latest.merge(get(inFlight.poll()));
+            }
+            while (!inFlight.isEmpty())
+                ballots += latest.merge(get(inFlight.poll()));
+
+            // second pass: multiply the ballots found at those positions
+            List<Future<Partial>> partials = new ArrayList<>(segments);
+            for (int i = 0; i < segments; i++) {
+                long from = i * segmentSize, to = Math.min(length, from + segmentSize);
+                partials.add(workers.submit(() -> multiply(channel, from, to, length, latest, pk)));
+            }
+            List<ElGamalCT> products = new ArrayList<>(segments);
+            long counted = 0;
+            for (Future<Partial> partial : partials) {
+                Partial p = get(partial);
+                products.add(p.product);
+                counted += p.count;
+            }
+            if (counted != latest.size())
+                throw new IOException("the chain file changed during the tally: " + counted + " of " + latest.size() + " ballots found");
+            return new Result(Homomorphism(pk, products), counted, ballots, length, System.nanoTime() - start);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("tally interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("tally worker failed", e.getCause());
+        }
+    }
+
+    /**
+     * The product of the counted ballots of a segment
+     */
+    private static class Partial {
+        final ElGamalCT product;
+        final long count;
+
+        Partial(ElGamalCT product, long count) {
+            this.product = product;
+            this.count = count;
+        }
+    }
+
+    private static PositionTable positions(FileChannel channel, long from, long to, long length) throws IOException {
+        PositionTable table = new PositionTable(1024);
+        MessageDigest digest = sha256();
+        scan(channel, from, to, length, (offset, line) -> {
+            if (ballotMessage(line) >= 0)
+                table.put(voterFingerprint(digest, line), offset);
+        });
+        return table;
+    }
+
+    private static Partial multiply(FileChannel channel, long from, long to, long length, PositionTable latest, ElGamalPK pk) throws IOException {
+        ModAccumulator C = pk.params.group.newAccumulator();
+        ModAccumulator C2 = pk.params.group.newAccumulator();
+        long[] count = new long[1];
+        MessageDigest digest = sha256();
+        scan(channel, from, to, length, (offset, line) -> {
+            int message = ballotMessage(line);
+            if (message < 0 || latest.get(voterFingerprint(digest, line)) != offset)
+                return; // not a ballot, or replaced by a later ballot of the voter
+            int messageEnd = line.lastIndexOf(PROOF);
+            if (messageEnd < message)
+                throw new IOException("malformed ballot at byte " + offset);
+            ElGamalCT ballot = new ElGamalCT(line.substring(message, messageEnd));
+            C.multiply(ballot.C);
+            C2.multiply(ballot.C2);
+            count[0]++;
+        });
+        return new Partial(new ElGamalCT(C.get(), C2.get()), count[0]);
+    }
+
+    /**
+     * @return the start of the message of a ballot transaction, -1 if the block is not a ballot
+     */
+    private static int ballotMessage(String line) {
+        int transaction = line.indexOf(TRANSACTION);
+        if (transaction < 0 || !line.startsWith(WITH_PROOF, transaction + TRANSACTION.length()))
+            return -1;
+        int message = line.indexOf(MESSAGE, transaction);
+        if (message < 0 || !line.startsWith(BALLOT, message + MESSAGE.length()))
+            return -1;
+        return message + MESSAGE.length();
+    }
+
+    /**
+     * @return the fingerprint of the signature key of the voter: 64 bits identifying the voter
+     * and 16 check bits, packed as PositionTable expects them
+     */
+    private static long[] voterFingerprint(MessageDigest digest, String line) throws IOException {
+        int pk = line.indexOf(PK);
+        int h = pk < 0 ? -1 : line.indexOf("h=", pk);
+        int end = h < 0 ? -1 : line.indexOf(',', h);
+        if (end < 0)
+            throw new IOException("ballot without the key of the voter");
+        byte[] hash = digest.digest(line.substring(h + 2, end).getBytes(StandardCharsets.ISO_8859_1));
+        long key = ByteBuffer.wrap(hash).getLong();
+        long check = ((hash[8] & 0xFFL) << 8) | (hash[9] & 0xFFL);
+        return new long[]{key == 0 ? 1 : key, check};
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface LineVisitor {
+        void line(long offset, String line) throws IOException;
+    }
+
+    /**
+     * Visit the lines starting in [from, to): the line crossing from belongs to the previous segment,
+     * the one crossing to is read up to its end.
+     */
+    private static void scan(FileChannel channel, long from, long to, long length, LineVisitor visitor) throws IOException {
+        byte[] data = new byte[READ_BUFFER];
+        long base = from > 0 ? from - 1 : 0; // the file offset of data[0]
+        boolean skipping = from > 0; // up to the end of the line of the previous segment
+        int filled = 0, lineStart = 0;
+        while (base + lineStart < to) {
+            if (filled == data.length) {
+                if (lineStart > 0) {
+                    System.arraycopy(data, lineStart, data, 0, filled - lineStart);
+                    base += lineStart;
+                    filled -= lineStart;
+                    lineStart = 0;
+                } else {
+                    data = Arrays.copyOf(data, data.length * 2); // a block longer than the buffer
+                }
+            }
+            long readAt = base + filled;
+            if (readAt >= length)
+                return; // the last line is incomplete
+            ByteBuffer buffer = ByteBuffer.wrap(data, filled, (int) Math.min(data.length - filled, length - readAt));
+            int read = channel.read(buffer, readAt);
+            if (read < 0)
+                return;
+            int scanned = filled;
+            filled += read;
+            for (int i = scanned; i < filled && base + lineStart < to; i++) {
+                if (data[i] != '\n')
+                    continue;
+                if (skipping)
+                    skipping = false;
+                else if (i > lineStart)
+                    visitor.line(base + lineStart, new String(data, lineStart, i - lineStart, StandardCharsets.ISO_8859_1));
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Open addressing table from voter fingerprints to the file offset of their last ballot,
+     * stored in two primitive arrays
+     */
+    private static class PositionTable {
+        private long[] keys; // 0 for an empty slot
+        private long[] values; // offset << 16 | check
+        private int size;
+        private long ballots; // the positions put, replaced ones included
+
+        PositionTable(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the offset of the last ballot of the voter, -1 if unknown
+         */
+        long get(long[] fingerprint) {
+            int mask = keys.length - 1;
+            for (int i = slot(fingerprint[0], mask); keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == fingerprint[0])
+                    return (values[i] & 0xFFFF) == fingerprint[1] ? values[i] >>> 16 : -1;
+            }
+            return -1;
+        }
+
+        void put(long[] fingerprint, long offset) throws IOException {
+            ballots++;
+            put(fingerprint[0], offset << 16 | fingerprint[1]);
+        }
+
+        /**
+         * Keep the later of the two positions of a voter
+         */
+        private void put(long key, long value) throws IOException {
+            if (2 * (size + 1) > keys.length)
+                grow();
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            for (; keys[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    if ((values[i] & 0xFFFF) != (value & 0xFFFF))
+                        throw new IOException("two voters share a fingerprint, tally the chain in memory");
+                    values[i] = Math.max(values[i], value);
+                    return;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        /**
+         * Merge the table of a segment
+         * @return the number of ballots of the segment
+         */
+        long merge(PositionTable segment) throws IOException {
+            for (int i = 0; i < segment.keys.length; i++) {
+                if (segment.keys[i] != 0)
+                    put(segment.keys[i], segment.values[i]);
+            }
+            return segment.ballots;
+        }
+
+        private void grow() throws IOException {
+            long[] oldKeys = keys, oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0)
+                    put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
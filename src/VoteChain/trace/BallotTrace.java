@@ -0,0 +1,274 @@
+package VoteChain.trace;
+
+import VoteChain.Ballot;
+import VoteChain.VoteChain;
+import VoteChain.server.BallotFrame;
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.group.Group;
+import crypto.utils.group.Groups;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.ElGamalParams;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A workload of signed ballots recorded once and replayed at will, so the cost of the chain can be
+ * measured without the cost of the voters (key generation, encryption, proofs, signatures).
+ * The file holds the setup of the election, i.e. the keys, the candidates, the voter registry and the
+ * jointly signed transactions opening the voting, then the ballots in order of arrival, each with its
+ * arrival time and in the BALLOT frame of the vote submission protocol.
+ * <pre>
+ * TRACE  = magic(VBT1) SETUP (nanos(8) frameLength(4) BALLOT)*
+ * SETUP  = p q g securityParameter(4) pA qA gA securityParameterA(4) hA encoding(UTF) voters(4) h[voters]
+ *          (h securityParameter(4) a e z)[genesis, registry, start]
+ * </pre>
+ * Numbers are written as an unsigned short length and their two's complement bytes.
+ */
+public class BallotTrace {
+
+    private static final int MAGIC = 0x56425431; // VBT1
+
+    /**
+     * A transaction signed by the authorities
+     */
+    public static class Signed {
+        public final SchnorrPK pk;
+        public final SchnorrSig sig;
+
+        public Signed(SchnorrPK pk, SchnorrSig sig) {
+            this.pk = pk;
+            this.sig = sig;
+        }
+    }
+
+    /**
+     * The election of a trace, everything needed to open the voting on an empty chain
+     */
+    public static class Setup {
+        public final Group signatureGroup; // of the voter and authority keys
+        public final int securityParameter; // of the voter keys
+        public final ElGamalPK pkA;
+        public final PackedEncoding encoding;
+        public final List<BigInteger> voterKeys;
+        public final Signed genesis, registry, start;
+
+        public Setup(Group signatureGroup, int securityParameter, ElGamalPK pkA, PackedEncoding encoding,
+                     List<BigInteger> voterKeys, Signed genesis, Signed registry, Signed start) {
+            this.signatureGroup = signatureGroup;
+            this.securityParameter = securityParameter;
+            this.pkA = pkA;
+            this.encoding = encoding;
+            this.voterKeys = voterKeys;
+            this.genesis = genesis;
+            this.registry = registry;
+            this.start = start;
+        }
+
+        /**
+         * Append the genesis block, the voter registry and the start of the voting to an empty chain
+         */
+        public void open(VoteChain chain) throws IOException, NoSuchAlgorithmException {
+            chain.setBallotEncoding(encoding, pkA);
+            chain.insertGenesisBlock(pkA, genesis.pk, genesis.sig);
+            chain.insertPKTransactions(registry.pk, registry.sig, voterKeys);
+            chain.insertStartTransaction(start.pk, start.sig, VoteChain.START_VOTING_MESSAGE);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            put(out, signatureGroup.getModulus());
+            put(out, signatureGroup.getOrder());
+            put(out, signatureGroup.getGenerator());
+            out.writeInt(securityParameter);
+            put(out, pkA.params.p);
+            put(out, pkA.params.q);
+            put(out, pkA.params.g);
+            out.writeInt(pkA.params.securityparameter);
+            put(out, pkA.h);
+            out.writeUTF(encoding.toString());
+            out.writeInt(voterKeys.size());
+            for (BigInteger key : voterKeys) {
+                put(out, key);
+            }
+            for (Signed signed : new Signed[]{genesis, registry, start}) {
+                put(out, signed.pk.getH());
+                out.writeInt(signed.pk.getSecurityparameter());
+                put(out, signed.sig.getA());
+                put(out, signed.sig.getE());
+                put(out, signed.sig.getZ());
+            }
+        }
+
+        private static Setup read(DataInputStream in) throws IOException {
+            Group signatureGroup = Groups.forParameters(get(in), get(in), get(in));
+            int securityParameter = in.readInt();
+            Group group = Groups.forParameters(get(in), get(in), get(in));
+            ElGamalParams params = new ElGamalParams(group, in.readInt());
+            ElGamalPK pkA = new ElGamalPK(get(in), params);
+            PackedEncoding encoding = PackedEncoding.parse(in.readUTF());
+            int voters = in.readInt();
+            List<BigInteger> voterKeys = new ArrayList<>(Math.min(voters, 1 << 20));
+            for (int i = 0; i < voters; i++) {
+                voterKeys.add(get(in));
+            }
+            Signed[] signed = new Signed[3];
+            for (int i = 0; i < signed.length; i++) {
+                SchnorrPK pk = new SchnorrPK(signatureGroup, get(in), in.readInt());
+                signed[i] = new Signed(pk, new SchnorrSig(get(in), get(in), get(in)));
+            }
+            return new Setup(signatureGroup, securityParameter, pkA, encoding, voterKeys, signed[0], signed[1], signed[2]);
+        }
+    }
+
+    /**
+     * A ballot of a trace
+     */
+    public static class Entry {
+        public final long nanos; // arrival time since the first ballot
+        public final Ballot ballot;
+
+        public Entry(long nanos, Ballot ballot) {
+            this.nanos = nanos;
+            this.ballot = ballot;
+        }
+    }
+
+    /**
+     * Records a trace
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private int ballots;
+
+        /**
+         * Create a trace file, replacing it
+         */
+        public Writer(Path file, Setup setup) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+            setup.write(out);
+        }
+
+        /**
+         * Record a ballot, after those already recorded
+         * @param nanos its arrival time since the first ballot
+         */
+        public void write(long nanos, Ballot ballot) throws IOException {
+            ByteBuffer frame = BallotFrame.encodeBallot(ballots++, ballot);
+            out.writeLong(nanos);
+            out.write(frame.array(), frame.arrayOffset(), frame.remaining());
+        }
+
+        /**
+         * @return the ballots recorded
+         */
+        public int getBallots() {
+            return ballots;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a trace one ballot at a time
+     */
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final Setup setup;
+
+        /**
+         * @throws IOException if the file cannot be read or is not a trace
+         */
+        public Reader(Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC)
+                    throw new IOException(file + " is not a ballot trace");
+                setup = Setup.read(in);
+            } catch (IOException | RuntimeException e) {
+                in.close();
+                throw e instanceof IOException ? (IOException) e : new IOException(file + " is corrupted", e);
+            }
+        }
+
+        public Setup getSetup() {
+            return setup;
+        }
+
+        /**
+         * @return the next ballot, null at the end of the trace
+         * @throws IOException if the trace is truncated or corrupted
+         */
+        public Entry next() throws IOException {
+            long nanos;
+            try {
+                nanos = in.readLong();
+            } catch (EOFException e) {
+                return null;
+            }
+            byte[] body;
+            try {
+                int length = in.readInt();
+                if (length < 5 || length > BallotFrame.MAX_FRAME)
+                    throw new IOException("invalid ballot frame of " + length + " bytes");
+                body = new byte[length];
+                in.readFully(body);
+            } catch (EOFException e) {
+                throw new IOException("truncated trace", e);
+            }
+            if (body[0] != BallotFrame.BALLOT)
+                throw new IOException("not a ballot frame");
+            try {
+                // after the type and the request id
+                return new Entry(nanos, BallotFrame.decodeBallot(ByteBuffer.wrap(body, 5, body.length - 5), setup.signatureGroup, setup.securityParameter));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("corrupted ballot", e);
+            }
+        }
+
+        /**
+         * @return the remaining ballots
+         */
+        public List<Entry> readAll() throws IOException {
+            List<Entry> entries = new ArrayList<>();
+            for (Entry entry; (entry = next()) != null; ) {
+                entries.add(entry);
+            }
+            return entries;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void put(DataOutputStream out, BigInteger value) throws IOException {
+        byte[] bytes = value.toByteArray();
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static BigInteger get(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+}
@@ -0,0 +1,122 @@
+package VoteChain.trace;
+
+import VoteChain.Ballot;
+import VoteChain.VoteChain;
+import VoteChain.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a BallotTrace into a VoteChain, one ballot at a time through insertVoteTransaction or in
+ * batches through insertVoteTransactions, as fast as possible or at the recorded arrival times.
+ * The trace is decoded before the clock starts, so only the chain is measured. With the recorded
+ * pacing the latency of a ballot runs from its scheduled arrival, so the time spent waiting behind a
+ * slow ballot is counted too.
+ */
+public class TraceReplayer {
+
+    public enum Pacing {
+        MAX_SPEED, RECORDED
+    }
+
+    /**
+     * The outcome of a replay
+     */
+    public static class Result {
+        public final long ballots, accepted, elapsedNanos;
+        public final LatencyHistogram.Snapshot latency;
+
+        Result(long ballots, long accepted, long elapsedNanos, LatencyHistogram.Snapshot latency) {
+            this.ballots = ballots;
+            this.accepted = accepted;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        /**
+         * @return the ballots processed per second
+         */
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : ballots * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "ballots=" + ballots +
+                    ", accepted=" + accepted +
+                    ", elapsed=" + elapsedNanos / 1_000_000 + "ms" +
+                    ", throughput=" + String.format("%.1f", throughput()) + "/s" +
+                    ", latency p50=" + latency.quantile(0.5) / 1000 + "us" +
+                    " p99=" + latency.quantile(0.99) / 1000 + "us" +
+                    " max=" + latency.max / 1000 + "us" +
+                    '}';
+        }
+    }
+
+    /**
+     * Open the voting of the trace on an empty chain and submit its ballots
+     *
+     * @param trace the trace file
+     * @param chain an empty chain
+     * @param pacing MAX_SPEED, or RECORDED to submit each ballot at its arrival time
+     * @param batchSize 1 for insertVoteTransaction, more for insertVoteTransactions with batches of up to
+     *                  this many ballots already arrived
+     * @return the throughput and the latencies of the ballots
+     * @throws IOException if the trace cannot be read or the chain written
+     */
+    public static Result replay(Path trace, VoteChain chain, Pacing pacing, int batchSize) throws IOException, NoSuchAlgorithmException {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("a batch needs at least one ballot");
+        BallotTrace.Setup setup;
+        List<BallotTrace.Entry> entries;
+        try (BallotTrace.Reader reader = new BallotTrace.Reader(trace)) {
+            setup = reader.getSetup();
+            entries = reader.readAll();
+        }
+        setup.open(chain);
+
+        LatencyHistogram latency = new LatencyHistogram();
+        List<Ballot> batch = new ArrayList<>(batchSize);
+        long accepted = 0;
+        long start = System.nanoTime();
+        int i = 0;
+        while (i < entries.size()) {
+            long due = start + entries.get(i).nanos;
+            if (pacing == Pacing.RECORDED) {
+                for (long wait; (wait = due - System.nanoTime()) > 0; )
+                    LockSupport.parkNanos(wait);
+            } else {
+                due = System.nanoTime();
+            }
+
+            if (batchSize == 1) {
+                Ballot ballot = entries.get(i++).ballot;
+                if (chain.insertVoteTransaction(setup.pkA, ballot.pkSig, ballot.sig, ballot.encrVote, ballot.proof))
+                    accepted++;
+                latency.recordSince(due);
+                continue;
+            }
+
+            // the ballots arrived so far, up to a batch
+            int from = i;
+            long now = System.nanoTime();
+            batch.clear();
+            do {
+                batch.add(entries.get(i++).ballot);
+            } while (i < entries.size() && batch.size() < batchSize
+                    && (pacing == Pacing.MAX_SPEED || start + entries.get(i).nanos <= now));
+            accepted += chain.insertVoteTransactions(setup.pkA, batch);
+            long end = System.nanoTime();
+            for (int j = from; j < i; j++) {
+                latency.record(end - (pacing == Pacing.RECORDED ? start + entries.get(j).nanos : due));
+            }
+        }
+        return new Result(entries.size(), accepted, System.nanoTime() - start, latency.snapshot());
+    }
+}
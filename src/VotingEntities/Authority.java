@@ -1,5 +1,6 @@
 package VotingEntities;
 
+import VoteChain.DecryptionShare;
 import VoteChain.VoteChain;
 import crypto.utils.DLogParams;
 import crypto.utils.Schnorr.Schnorr;
@@ -10,6 +11,8 @@ import crypto.utils.Utils;
 import crypto.utils.thresholdElGamal.ElGamalCT;
 import crypto.utils.thresholdElGamal.ElGamalPK;
 import crypto.utils.thresholdElGamal.ElGamalSK;
+import crypto.utils.zkp.ChaumPedersen;
+import crypto.utils.zkp.DecryptionShareProof;
 
 import java.io.IOException;
 import java.math.BigInteger;
@@ -52,7 +55,7 @@ public class Authority {
      * @return decryption contribute wj
      */
     public BigInteger computeWj(ElGamalCT message, ElGamalPK pk){
-        return message.C2.modPow(ska.getS(), pk.params.p);
+        return pk.params.group.exp(message.C2, ska.getS());
     }
 
     /**
@@ -77,13 +80,14 @@ public class Authority {
     public void publishDecryptionContribute(ElGamalPK pkA, ElGamalCT totalvotesOfOne, VoteChain blockchain){
 
         BigInteger wj = computeWj(totalvotesOfOne, pkA);
-        String ZKProofContributeValid = generateZKProofDecryptionContributeValid(wj,ska.getPK(), totalvotesOfOne.C2);
+        DecryptionShareProof ZKProofContributeValid = generateZKProofDecryptionContributeValid(wj, ska.getPK(), totalvotesOfOne.C2);
 
         SchnorrSig contributeSig = sign(wj.toString()+ZKProofContributeValid);
 
         try {
-            blockchain.insertDecContributeTransaction(sk.getPK(), contributeSig, wj.toString(), ZKProofContributeValid,
-                    wj, totalvotesOfOne.C2, pkA);
+            // the proof is checked against the key share of this authority, not the joint key
+            blockchain.insertDecContributeTransaction(sk.getPK(), contributeSig, wj.toString(), ZKProofContributeValid.toString(),
+                    wj, totalvotesOfOne.C2, ska.getPK());
 
         } catch (IOException | NoSuchAlgorithmException e) {
             e.printStackTrace();
@@ -91,6 +95,20 @@ public class Authority {
 
     }
 
+    /**
+     * Compute and sign the decryption contribute without publishing it, so that the contributes
+     * of all the authorities can be verified and published together
+     * @param pkA joint public key of elgamal
+     * @param totalvotesOfOne ciphertexts containing the votes from which obtain the decryption contributes
+     * @return the signed decryption contribute with its proof
+     */
+    public DecryptionShare createDecryptionContribute(ElGamalPK pkA, ElGamalCT totalvotesOfOne){
+        BigInteger wj = computeWj(totalvotesOfOne, pkA);
+        DecryptionShareProof proof = generateZKProofDecryptionContributeValid(wj, ska.getPK(), totalvotesOfOne.C2);
+        SchnorrSig contributeSig = sign(wj.toString()+proof);
+        return new DecryptionShare(sk.getPK(), contributeSig, wj, proof, ska.getPK());
+    }
+
     /**
      * @return contributes for Schnorr Joint Signature
      */
@@ -99,15 +117,15 @@ public class Authority {
     }
 
     /**
-     * Generate a new ZK proof ensuring that the decryption contribute is valid.
-     * The proof is simulated, so the response is always the same and positive.
+     * Generate a new ZK proof ensuring that the decryption contribute is valid:
+     * a Chaum-Pedersen proof that log_g(pkaj) = log_uj(wj).
      * @param wj the decryption contribute
      * @param pkaj the public key of the authority
      * @param uj the constant value of the elgamal ciphertext
      * @return valid proof
      */
-    public String generateZKProofDecryptionContributeValid(BigInteger wj, ElGamalPK pkaj, BigInteger uj){
-        return "proof valid";
+    public DecryptionShareProof generateZKProofDecryptionContributeValid(BigInteger wj, ElGamalPK pkaj, BigInteger uj){
+        return ChaumPedersen.ProveDecryptionShare(ska, uj, wj);
     }
 
     /**
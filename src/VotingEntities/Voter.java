@@ -1,20 +1,27 @@
 package VotingEntities;
 
+import VoteChain.Ballot;
 import VoteChain.VoteChain;
+import VoteChain.receipt.BallotReceipt;
+import crypto.utils.DLogParams;
 import crypto.utils.Schnorr.SchnorrPK;
 import crypto.utils.Schnorr.SchnorrSK;
 import crypto.utils.Schnorr.SchnorrSig;
 import crypto.utils.thresholdElGamal.ElGamalCT;
 import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+import crypto.utils.random.Randomness;
 import crypto.utils.thresholdElGamal.ThresholdElGamal;
+import crypto.utils.zkp.ChaumPedersen;
+import crypto.utils.zkp.VoteProof;
 
 import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
-import java.util.Random;
 
 import static crypto.utils.Schnorr.Schnorr.Setup;
+import static crypto.utils.Schnorr.Schnorr.SetupDLogParamsFixed;
 import static crypto.utils.Schnorr.Schnorr.Sign;
 
 /**
@@ -22,6 +29,7 @@ import static crypto.utils.Schnorr.Schnorr.Sign;
  */
 public class Voter{
     private SchnorrSK sk;
+    private ElGamalCT lastBallot; // the last encrypted vote cast, to check its receipt
 
 
     public Voter() {
@@ -32,6 +40,15 @@ public class Voter{
         sk = Setup(securityparameter);
     }
 
+    /**
+     * Generate the signature key pair over shared group parameters (e.g. an elliptic curve)
+     * @param params the group parameters
+     * @param securityparameter the security parameter
+     */
+    public void generateSignPair(DLogParams params, int securityparameter){
+        sk = SetupDLogParamsFixed(params, securityparameter);
+    }
+
     /**
      * Post the public key of the voter to the voting portal
      *
@@ -55,40 +72,65 @@ public class Voter{
 
     /**
      * Simulate a new vote of a voter on the blockchain.
-     * The vote is chosen randomly, then is encrypted using exponential elgamal,
+     * The candidate is chosen randomly, then its packed plaintext is encrypted using exponential elgamal,
      * then a valid proof of vote correctness is generated. Finally, the proof is signed
      * and a new transaction on the blockchain is performed.
      * @param blockchain the blockchain on which post the transaction
      * @param pkA joint public key of the authorities
+     * @return the chosen candidate
      * @throws IOException can't write on the blockchain
      * @throws NoSuchAlgorithmException insertion of the vote failed
      */
     public BigInteger vote(VoteChain blockchain, ElGamalPK pkA) throws IOException, NoSuchAlgorithmException {
-        BigInteger vote = new BigInteger(1, new Random()); // voto 0 o 1
+        PackedEncoding encoding = blockchain.getBallotEncoding();
+        int candidate = Randomness.current().nextInt(encoding.getCandidates()); // voto 0..k-1
+
+        Ballot ballot = prepareBallot(encoding, pkA, candidate);
+
+        if(blockchain.insertVoteTransaction(pkA, ballot.pkSig, ballot.sig, ballot.encrVote, ballot.proof))
+            lastBallot = ballot.encrVote;
+
+        return BigInteger.valueOf(candidate);
+    }
 
+    /**
+     * Encrypt a vote, prove its validity and sign it, without submitting it
+     * @param encoding the candidates of the election
+     * @param pkA joint public key of the authorities
+     * @param candidate the chosen candidate
+     * @return the signed ballot
+     */
+    public Ballot prepareBallot(PackedEncoding encoding, ElGamalPK pkA, int candidate){
         BigInteger r = ThresholdElGamal.getR(pkA.params.securityparameter);
 
-        ElGamalCT encryptedVote = ThresholdElGamal.EncryptInTheExponent(pkA, vote, r);
+        // un solo ciphertext per scheda, qualunque sia il numero di candidati
+        ElGamalCT encryptedVote = ThresholdElGamal.EncryptInTheExponent(pkA, encoding.encode(candidate), r);
 
-        String ZKproof = generateZKProofVoteValid(pkA, vote, r);
+        VoteProof ZKproof = ChaumPedersen.ProveVote(pkA, sk.getPK().getH(), encryptedVote, encoding.messages(), candidate, r);
 
-        SchnorrSig voteSig = Sign(sk, encryptedVote+ZKproof);
+        SchnorrSig voteSig = Sign(sk, encryptedVote.toString()+ZKproof);
 
-        blockchain.insertVoteTransaction(pkA,  sk.getPK(), voteSig , encryptedVote, ZKproof);
+        return new Ballot(sk.getPK(), voteSig, encryptedVote, ZKproof);
+    }
 
-        return vote;
+    /**
+     * @return the hash of the last accepted ballot of the voter, to query its receipt; null if none
+     */
+    public String getBallotHash(){
+        return lastBallot == null ? null : BallotReceipt.ballotHash(lastBallot);
     }
 
     /**
-     * Create a new ZK proof on the correctness of the vote.
-     * A simulated proof is presented, so the result will be always valid proof.
+     * Create a new ZK proof on the correctness of the vote:
+     * a disjunctive Chaum-Pedersen proof that the ciphertext encrypts 0 or 1.
      * @param pkA joint public key of the authorities
+     * @param encryptedVote the encrypted vote
      * @param m the vote
      * @param r the randomness used to cipher the vote
      * @return the proof of vote correctness
      */
-    public String generateZKProofVoteValid(ElGamalPK pkA, BigInteger m, BigInteger r){
-        return "successful proof";
+    public VoteProof generateZKProofVoteValid(ElGamalPK pkA, ElGamalCT encryptedVote, BigInteger m, BigInteger r){
+        return ChaumPedersen.ProveVote(pkA, sk.getPK().getH(), encryptedVote, m, r);
     }
 
     public SchnorrPK getPKSig(){
@@ -0,0 +1,146 @@
+package app;
+
+import VoteChain.ShardedVoteChain;
+import VoteChain.archive.ArchivedChain;
+import VoteChain.audit.AuditReport;
+import VoteChain.audit.ChainAuditor;
+import crypto.utils.group.Group;
+import crypto.utils.group.Groups;
+import crypto.utils.thresholdElGamal.ElGamalParams;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Command line audit of a published VoteChain file.
+ * Usage: AuditApp [chain file or archive directory] [election parameters file]
+ * The file of a shard (e.g. VotingBlockchain.shard0.txt) is audited with all the shards of its election.
+ */
+public class AuditApp {
+
+    private static final Pattern SHARD_FILE = Pattern.compile("(.*)\\.shard\\d+(\\.[^./]*)?");
+
+    /**
+     * Publish the ElGamal group of an election so that observers can recompute the tally.
+     * The file contains the group name, or the three lines p, q, g for a Zp* group.
+     *
+     * @param params the ElGamal parameters of the election
+     * @param fileName the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeElectionParams(ElGamalParams params, String fileName) throws IOException {
+        writeElectionParams(params, PackedEncoding.BINARY, fileName);
+    }
+
+    /**
+     * Publish the ElGamal group and the ballot encoding of an election. The encoding is written
+     * on a last line, omitted for a yes/no election.
+     *
+     * @param params the ElGamal parameters of the election
+     * @param encoding the candidates of the election
+     * @param fileName the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeElectionParams(ElGamalParams params, PackedEncoding encoding, String fileName) throws IOException {
+        try (FileWriter writer = new FileWriter(fileName)) {
+            if (params.group.getName().equals("Zp")) {
+                writer.write(params.p + "\n" + params.q + "\n" + params.g + "\n");
+            } else {
+                writer.write(params.group.getName() + "\n");
+            }
+            if (encoding.getCandidates() > 2)
+                writer.write(encoding + "\n");
+        }
+    }
+
+    /**
+     * @param fileName a file written by {@link #writeElectionParams(ElGamalParams, String)}
+     * @return the ElGamal parameters of the election
+     * @throws IOException if the file cannot be read
+     */
+    public static ElGamalParams readElectionParams(String fileName) throws IOException {
+        List<String> lines = groupLines(fileName);
+        if (lines.size() >= 3) {
+            BigInteger p = new BigInteger(lines.get(0).trim());
+            return new ElGamalParams(p, new BigInteger(lines.get(1).trim()), new BigInteger(lines.get(2).trim()), p.bitLength());
+        }
+        Group group = Groups.byName(lines.get(0).trim());
+        return new ElGamalParams(group, group.getOrder().bitLength());
+    }
+
+    /**
+     * @param fileName a file written by {@link #writeElectionParams(ElGamalParams, PackedEncoding, String)}
+     * @return the ballot encoding of the election
+     * @throws IOException if the file cannot be read
+     */
+    public static PackedEncoding readBallotEncoding(String fileName) throws IOException {
+        for (String line : Files.readAllLines(Path.of(fileName))) {
+            if (line.startsWith("candidates="))
+                return PackedEncoding.parse(line.trim());
+        }
+        return PackedEncoding.BINARY;
+    }
+
+    /**
+     * @return the lines of the file describing the group
+     */
+    private static List<String> groupLines(String fileName) throws IOException {
+        List<String> lines = new ArrayList<>(Files.readAllLines(Path.of(fileName)));
+        lines.removeIf(line -> line.startsWith("candidates="));
+        return lines;
+    }
+
+    /**
+     * @return the files of the shards of the election of a shard file, from shard 0, empty if the
+     * file is not the file of a shard
+     */
+    private static List<Path> shardFiles(String chain) {
+        List<Path> shards = new ArrayList<>();
+        Matcher m = SHARD_FILE.matcher(chain);
+        if (!m.matches())
+            return shards;
+        String blockchainName = m.group(1) + (m.group(2) == null ? "" : m.group(2));
+        for (int i = 0; Files.isRegularFile(Path.of(ShardedVoteChain.shardFileName(blockchainName, i))); i++) {
+            shards.add(Path.of(ShardedVoteChain.shardFileName(blockchainName, i)));
+        }
+        return shards;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String chain = args.length > 0 ? args[0] : "./VotingBlockchain.txt";
+        ElGamalParams params = args.length > 1 ? readElectionParams(args[1]) : null;
+        PackedEncoding encoding = args.length > 1 ? readBallotEncoding(args[1]) : PackedEncoding.BINARY;
+
+        long start = System.nanoTime();
+        AuditReport report;
+        List<Path> shards = shardFiles(chain);
+        if (!shards.isEmpty()) {
+            // un'elezione divisa in shard: ogni shard è verificato, poi il conteggio unito sullo shard 0
+            chain = shards.size() + " shards " + shards;
+            report = new ChainAuditor().auditShards(shards, params, encoding);
+        } else if (Files.isDirectory(Path.of(chain))) {
+            // una catena archiviata in segmenti compressi
+            try (ArchivedChain archive = ArchivedChain.open(Path.of(chain)); Reader reader = archive.openReader()) {
+                report = new ChainAuditor().audit(reader, params, encoding);
+            }
+        } else {
+            report = new ChainAuditor().audit(Path.of(chain), params, encoding);
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println(report);
+        System.out.println("Audit of " + chain + " completed in " + elapsed + " ms: "
+                + (report.isClean() ? "no discrepancies" : report.getDiscrepancies().size() + " discrepancies"));
+        if (!report.isClean())
+            System.exit(1);
+    }
+}
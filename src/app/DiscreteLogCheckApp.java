@@ -0,0 +1,47 @@
+package app;
+
+import crypto.utils.group.Group;
+import crypto.utils.group.ZpGroup;
+import crypto.utils.random.Randomness;
+import crypto.utils.thresholdElGamal.DiscreteLog;
+
+import java.math.BigInteger;
+
+/**
+ * Regression check of DiscreteLog with g = 2 in Zp, whose powers g^j for j >= 64 are powers of two
+ * below p and share their low bits: every logarithm in the bound must be found.
+ * Exits with status 1 if one is missed.
+ */
+public class DiscreteLogCheckApp {
+
+    public static void main(String[] args) {
+        int bits = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        BigInteger bound = BigInteger.valueOf(40000);
+
+        // p = 2q+1 con p = 7 mod 8, così 2 è un residuo quadratico e genera il sottogruppo di ordine q
+        BigInteger p, q;
+        do {
+            q = BigInteger.probablePrime(bits - 1, Randomness.current());
+            p = q.shiftLeft(1).add(BigInteger.ONE);
+        } while (p.intValue() % 8 != 7 || !p.isProbablePrime(64));
+        BigInteger g = BigInteger.TWO;
+        Group group = new ZpGroup(p, q, g);
+
+        DiscreteLog log = new DiscreteLog(group, g, bound);
+        int failures = 0;
+        for (long x : new long[]{0, 1, 10, 63, 64, 65, 100, 1000, 4096, 5000, 20065, 39999}) {
+            BigInteger found = log.solve(group.exp(g, BigInteger.valueOf(x)), bound);
+            if (found.longValue() != x) {
+                System.out.println("log of 2^" + x + " not found: " + found);
+                failures++;
+            }
+        }
+        if (log.solve(group.exp(g, bound), bound).signum() >= 0) {
+            System.out.println("log of 2^" + bound + " found beyond the bound");
+            failures++;
+        }
+        System.out.println(failures == 0 ? "DiscreteLog check passed" : "DiscreteLog check failed: " + failures);
+        if (failures > 0)
+            System.exit(1);
+    }
+}
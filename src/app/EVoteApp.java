@@ -1,24 +1,45 @@
 package app;
 
+import VoteChain.DecryptionShare;
+import VoteChain.ShardedVoteChain;
 import VoteChain.VoteChain;
+import VoteChain.archive.ArchivedChain;
+import VoteChain.archive.ChainArchiver;
+import VoteChain.events.ChainEvent;
+import VoteChain.events.ChainEventCounter;
+import VoteChain.events.ChainEventPublisher;
+import VoteChain.tally.StreamingTally;
+import VoteChain.metrics.MetricsReporter;
+import VoteChain.receipt.BallotReceipt;
+import VoteChain.replication.ReplicatedNode;
 import VotingEntities.Authority;
 import VotingEntities.Voter;
 import crypto.utils.DLogParams;
 import crypto.utils.Schnorr.*;
 import crypto.utils.Utils;
+import crypto.utils.group.Group;
+import crypto.utils.group.Groups;
+import crypto.utils.thresholdElGamal.DistributedKeyGeneration;
 import crypto.utils.thresholdElGamal.ElGamalCT;
 import crypto.utils.thresholdElGamal.ElGamalPK;
 import crypto.utils.thresholdElGamal.ElGamalParams;
 import crypto.utils.thresholdElGamal.ElGamalSK;
+import crypto.utils.thresholdElGamal.PackedEncoding;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
 
 import static crypto.utils.DLogParams.SetupDLogParams;
 import static crypto.utils.thresholdElGamal.ThresholdElGamal.*;
@@ -48,6 +69,27 @@ public class EVoteApp {
         return voterList;
     }
 
+    /**
+     * Creates a list of Voter simulation entities signing over shared group parameters
+     *
+     * @param voterNum the number of Voters to create
+     * @param params the group parameters of the signatures
+     * @param securityParameter the security parameters for blockchain signatures generation
+     * @return the list of created Voters
+     */
+    public static List<Voter> votersCreator(int voterNum, DLogParams params, int securityParameter){
+
+        List<Voter> voterList = new LinkedList<>();
+
+        for(int i=0; i<voterNum; i++){
+            Voter voter = new Voter();
+            voter.generateSignPair(params, securityParameter);
+            voterList.add(voter);
+        }
+
+        return voterList;
+    }
+
     /**
      * Creates a list of Authority simulation entities
      *
@@ -56,8 +98,17 @@ public class EVoteApp {
      * @return the list of created Authority
      */
     public  static List<Authority> authoritiesCreator(int na, int securityParameter){
-        DLogParams pqg = SetupDLogParams(securityParameter);
+        return authoritiesCreator(na, SetupDLogParams(securityParameter));
+    }
 
+    /**
+     * Creates a list of Authority simulation entities sharing the given group parameters
+     *
+     * @param na the number of Authority to create
+     * @param pqg the group parameters for blockchain signatures generation
+     * @return the list of created Authority
+     */
+    public  static List<Authority> authoritiesCreator(int na, DLogParams pqg){
         // creazione delle autorità
         List<Authority> authorities = new ArrayList<>(na);
         for(int i=0; i < na; i++) authorities.add(new Authority(pqg));
@@ -78,7 +129,7 @@ public class EVoteApp {
         }
 
         SchnorrPK joinedSigPk = SchnorrJointSignature.generateJointPublicKey(pkSigAj);
-        BigInteger A = SchnorrJointSignature.computeJointA(leA, pkSigAj.get(0).getP());
+        BigInteger A = SchnorrJointSignature.computeJointA(leA, pkSigAj.get(0).getGroup());
 
         for(int i=0; i < authoritiesInvolvedInVote; i++){
             signatures.add(authorities.get(i).computeSignature(message,A,leR.get(i),joinedSigPk));
@@ -90,7 +141,92 @@ public class EVoteApp {
     }
 
     /**
-     * Run the simulation
+     * Start the replication of a chain: the chain is the leader, and each follower writes its
+     * copy of the chain next to it
+     *
+     * @param leader the chain receiving the transactions
+     * @param blockchainName the file of the leader chain
+     * @param replicaCount the number of nodes, leader included
+     * @return the nodes, the leader first
+     */
+    public static ReplicatedNode[] startReplicas(VoteChain leader, String blockchainName, int replicaCount) throws IOException {
+        List<VoteChain> chains = new ArrayList<>(replicaCount);
+        chains.add(leader);
+        for(int i = 1; i < replicaCount; i++){
+            String replicaName = blockchainName.replace(".txt", ".replica" + i + ".txt");
+            Utils.removeFileIfExists(replicaName);
+            chains.add(new VoteChain(replicaName));
+        }
+        return "socket".equals(System.getProperty("evote.replication"))
+                ? ReplicatedNode.socketCluster(chains) : ReplicatedNode.inMemoryCluster(chains);
+    }
+
+    /**
+     * Run a whole election on a sharded VoteChain: every shard gets the genesis block, its own
+     * registration block and the voting window, each voter votes on its shard, and the shard tallies
+     * are merged before the threshold decryption.
+     *
+     * @return the votes of each candidate
+     */
+    public static long[] shardedElection(int shardCount, String blockchainName, List<Authority> authorities, List<SchnorrPK> pkSigAj,
+                                         ElGamalPK pkA, PackedEncoding ballotEncoding, List<Voter> voters,
+                                         List<BigInteger> votersPublicKeyList) throws IOException, NoSuchAlgorithmException {
+        int na = authorities.size();
+        for(int i = 0; i < shardCount; i++){
+            Utils.removeFileIfExists(ShardedVoteChain.shardFileName(blockchainName, i));
+        }
+        ShardedVoteChain sharded = new ShardedVoteChain(blockchainName, shardCount);
+        try {
+            sharded.setBallotEncoding(ballotEncoding, pkA);
+
+            Utils.Pair<SchnorrPK, SchnorrSig> pk_Sig = authoritiesCreateJointSignature(na, authorities, pkSigAj, pkA.getH().toString());
+            sharded.insertGenesisBlock(pkA, pk_Sig.t, pk_Sig.u);
+
+            // un blocco di registrazione per shard, firmato congiuntamente dalle autorità
+            List<List<BigInteger>> partition = sharded.partition(votersPublicKeyList);
+            for(int i = 0; i < shardCount; i++){
+                pk_Sig = authoritiesCreateJointSignature(na, authorities, pkSigAj, partition.get(i).toString());
+                sharded.insertPKTransactions(i, pk_Sig.t, pk_Sig.u, partition.get(i));
+            }
+
+            pk_Sig = authoritiesCreateJointSignature(na, authorities, pkSigAj, VoteChain.START_VOTING_MESSAGE);
+            sharded.insertStartTransaction(pk_Sig.t, pk_Sig.u, VoteChain.START_VOTING_MESSAGE);
+            for(Voter v: voters){
+                v.vote(sharded.getShardOf(v.getPKSig().getH()), pkA);
+            }
+            pk_Sig = authoritiesCreateJointSignature(na, authorities, pkSigAj, VoteChain.STOP_VOTING_MESSAGE);
+            sharded.insertStopTransaction(pk_Sig.t, pk_Sig.u, VoteChain.STOP_VOTING_MESSAGE);
+
+            ElGamalCT total = sharded.countVotes(pkA);
+            pk_Sig = authoritiesCreateJointSignature(na, authorities, pkSigAj, total.toString());
+            sharded.insertTallyTransaction(pk_Sig.t, pk_Sig.u, total);
+            List<DecryptionShare> shares = new ArrayList<>(na);
+            for(Authority authority: authorities){
+                shares.add(authority.createDecryptionContribute(pkA, total));
+            }
+            sharded.insertDecContributeTransactions(total.C2, shares);
+            BigInteger decrypted = sharded.decryptVotes(pkA, total, sharded.getAuthorityDecryptContributes());
+            long[] votesTo = sharded.decodeTally(pkA, decrypted);
+            if(votesTo == null)
+                throw new IllegalStateException("the merged tally is not a valid count of the ballots");
+
+            // l'esito dell'intera elezione è pubblicato sullo shard 0, insieme al conteggio unito
+            StringJoiner results = new StringJoiner(", ");
+            for(int c = 0; c < votesTo.length; c++){
+                results.add("voti assegnati a candidato " + c + " = " + votesTo[c]);
+            }
+            pk_Sig = authoritiesCreateJointSignature(na, authorities, pkSigAj, results.toString());
+            sharded.insertSignedTransaction(pk_Sig.t, pk_Sig.u, results.toString());
+            return votesTo;
+        } finally {
+            sharded.close();
+        }
+    }
+
+    /**
+     * Run the simulation.
+     * An optional argument selects a named group for the election (e.g. "P-256"),
+     * otherwise fresh Zp* safe prime groups are generated.
      */
     public static void main(String[] args) throws IOException, NoSuchAlgorithmException, InterruptedException {
 
@@ -103,9 +239,16 @@ public class EVoteApp {
         int schnorrSecurityParameter = 512;  // 512 in real application, 64 for testing
         int elgamalSecurityParameter = 2048; // 2048 in real application, 64 for testing
 
+        Group electionGroup = args.length > 0 ? Groups.byName(args[0]) : null;
+        if(electionGroup != null){
+            schnorrSecurityParameter = electionGroup.getOrder().bitLength();
+            elgamalSecurityParameter = electionGroup.getOrder().bitLength();
+        }
+
         String votingPortal = "./voting_portal.txt";
 
         String blockchainName = "./VotingBlockchain.txt";
+        String electionParamsName = "./ElectionParams.txt"; // published group of the election, for the audit
         VoteChain blockchain;
 
         //create a fresh voting portal and blockchain
@@ -116,20 +259,41 @@ public class EVoteApp {
         System.out.println("\t".repeat(6) + "EVote System Simulation ");
         System.out.println(" voterNumber = " + voterNumber
                 + ", schnorrSecurityParam = " + schnorrSecurityParameter
-                + ", elgamalSecurityParam = " + elgamalSecurityParameter);
+                + ", elgamalSecurityParam = " + elgamalSecurityParameter
+                + (electionGroup != null ? ", group = " + electionGroup.getName() : ""));
         System.out.println("-".repeat(75));
 
         //creazione autorità
         //List<SchnorrSK> skSigAj = new ArrayList<>(authoritiesInvolvedInVote);
         List<SchnorrPK> pkSigAj = new ArrayList<>(authoritiesInvolvedInVote);
-        List<Authority> authorities = authoritiesCreator(authoritiesInvolvedInVote,schnorrSecurityParameter);
+        DLogParams signatureParams = electionGroup != null ? new DLogParams(electionGroup) : SetupDLogParams(schnorrSecurityParameter);
+        List<Authority> authorities = authoritiesCreator(authoritiesInvolvedInVote, signatureParams);
         System.out.println("\t Authorities simulation entities creation done!");
 
         //creazione votanti
-        List<Voter> voters = votersCreator(voterNumber, schnorrSecurityParameter);
+        List<Voter> voters = electionGroup != null ? votersCreator(voterNumber, signatureParams, schnorrSecurityParameter)
+                : votersCreator(voterNumber, schnorrSecurityParameter);
 
         // creazione di blockchain
         blockchain = new VoteChain(blockchainName);
+        try {
+            blockchain.registerMetricsMBean();
+        } catch (JMException e) {
+            System.err.println("VoteChain metrics not exposed via JMX: " + e.getMessage());
+        }
+        // archivio compresso della catena: ogni 8 blocchi un segmento è sigillato e compresso in background
+        ChainArchiver archiver = blockchain.enableArchive(Path.of("./archive"), 8);
+        // -Devote.replicas=<n> replica la catena su n nodi, il primo è il leader; -Devote.replication=socket su socket locali
+        int replicaCount = Integer.getInteger("evote.replicas", 1);
+        ReplicatedNode[] replicas = replicaCount > 1 ? startReplicas(blockchain, blockchainName, replicaCount) : null;
+        // -Devote.metrics.period=<seconds> logs the metrics periodically during the simulation
+        int metricsPeriod = Integer.getInteger("evote.metrics.period", 0);
+        MetricsReporter metricsReporter = metricsPeriod > 0
+                ? new MetricsReporter(blockchain.getMetrics().registry, metricsPeriod, TimeUnit.SECONDS) : null;
+
+        // monitor in tempo reale: segue i blocchi appesi senza rileggere il file della blockchain
+        ChainEventCounter liveMonitor = new ChainEventCounter();
+        blockchain.getEventPublisher().subscribe(liveMonitor, -1, ChainEventPublisher.DEFAULT_CAPACITY, ChainEventPublisher.Overflow.BLOCK);
 
         System.out.println("\t Voters simulation entities creation done!");
 
@@ -138,9 +302,16 @@ public class EVoteApp {
         // le autorità effettuano protocollo generazione chiave distribuito per
         // ottenere public key combinata e secret key per ciascuno (threshold)
 
-        ElGamalParams params = SetupParameters(elgamalSecurityParameter);
+        ElGamalParams params = electionGroup != null ? SetupParameters(electionGroup) : SetupParameters(elgamalSecurityParameter);
         ElGamalPK pkA = new ElGamalPK(); // chiave pubblica complessiva
-        ElGamalSK[] skAj = LagrangeShamirSecretSharing(params, authoritiesInvolvedInVote, pkA); // lista chiavi private
+        // -Devote.keygen=dealer usa il dealer fidato al posto del protocollo distribuito
+        ElGamalSK[] skAj = "dealer".equals(System.getProperty("evote.keygen"))
+                ? LagrangeShamirSecretSharing(params, authoritiesInvolvedInVote, pkA)
+                : DistributedKeyGeneration.GenerateKeys(params, authoritiesInvolvedInVote, pkA); // lista chiavi private
+        // -Devote.candidates=<k> elezione con k candidati, i voti sono impacchettati in un solo ciphertext
+        PackedEncoding ballotEncoding = new PackedEncoding(Integer.getInteger("evote.candidates", 2), voterNumber);
+        blockchain.setBallotEncoding(ballotEncoding, pkA);
+        AuditApp.writeElectionParams(params, ballotEncoding, electionParamsName);
 
         // ciascuna autorità salva la propria coppia per la cifratura
         for(int i=0; i < authoritiesInvolvedInVote; i++){
@@ -198,7 +369,7 @@ public class EVoteApp {
         // FASE DI VOTAZIONE
 
         // pubblicazione transazione t_votestart, firmata congiuntamente da autorità
-        String inizioVotazioneMsg = "inizio votazione";
+        String inizioVotazioneMsg = VoteChain.START_VOTING_MESSAGE;
 
         pk_Sig = authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, inizioVotazioneMsg);
         SchnorrSig startvotejointSig = pk_Sig.u;
@@ -223,7 +394,7 @@ public class EVoteApp {
         System.out.println("\t\tVoter with pkSig " + voters.get(0).getPKSig().getH() + " tried to vote for " + vote);
 
         // aggiunta della transazione t_voteEnd da parte delle autorità
-        String fineVotazioneMsg = "fine votazione";
+        String fineVotazioneMsg = VoteChain.STOP_VOTING_MESSAGE;
 
         pk_Sig = authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, fineVotazioneMsg);
         SchnorrSig endvotejointSig = pk_Sig.u;
@@ -239,13 +410,25 @@ public class EVoteApp {
 
         totalvotesOfOne = blockchain.countVotes(pkA);
 
+        // -Devote.tally=streaming: il conteggio è rifatto leggendo i blocchi dal file della blockchain,
+        // come su un nodo di conteggio che non può tenere in memoria tutte le schede
+        if("streaming".equals(System.getProperty("evote.tally"))){
+            StreamingTally.Result streamed = blockchain.countVotesFromChainFile(pkA);
+            boolean same = streamed.total.C.equals(totalvotesOfOne.C) && streamed.total.C2.equals(totalvotesOfOne.C2);
+            System.out.println("\t Streaming tally " + streamed + ", same ciphertext as in memory: " + same);
+            totalvotesOfOne = streamed.total;
+        }
+
         System.out.println("\t Votes filtered and counted!");
 
         // le autorità singolarmente pubblicano i propri wj sulla blockchain
 
+        // i contributi sono verificati insieme con una sola multi-esponenziazione
+        List<DecryptionShare> shares = new ArrayList<>();
         for(Authority authority: authorities){
-           authority.publishDecryptionContribute(pkA,totalvotesOfOne, blockchain);
+           shares.add(authority.createDecryptionContribute(pkA,totalvotesOfOne));
         }
+        blockchain.insertDecContributeTransactions(totalvotesOfOne.C2, shares);
 
         System.out.println("\t Authorities published threshold decryption contributes!");
 
@@ -260,17 +443,23 @@ public class EVoteApp {
         BigInteger[] W = blockchain.getAuthorityDecryptContributes();
 
         // decifratura del ciphertext mediante i contributi
-        BigInteger decripted = Decrypt(pkA,totalciphertext, W);
+        BigInteger decripted = blockchain.decryptVotes(pkA,totalciphertext, W);
 
-        // ricerca esaustiva per ottenere il numero di preferenze associate al candidato 1
-        BigInteger votesTo1 = blockchain.bruteforceGetVotesTo1(decripted, pkA.params.g, pkA.params.p, BigInteger.valueOf(voterNumber + 1));
+        // logaritmo discreto (baby-step giant-step) e spacchettamento delle preferenze di ciascun candidato
+        long[] votesTo = blockchain.decodeTally(pkA, decripted);
+        if(votesTo == null)
+            throw new IllegalStateException("the decrypted tally is not a valid count of the ballots");
 
-        System.out.println("\t Votes of ones decrypted and bruteforced!");
+        System.out.println("\t Votes decrypted and decoded!");
 
         // PUBBLICAZIONE DEL RISULTATO
 
         // messaggio contenente esito della votazione
-        String resultsOfVotingMessage = "voti assegnati a candidato 0 = " + (voterNumber - votesTo1.intValue()) + ", voti assegnati a candidato 1 = " + votesTo1;
+        StringJoiner results = new StringJoiner(", ");
+        for(int c = 0; c < votesTo.length; c++){
+            results.add("voti assegnati a candidato " + c + " = " + votesTo[c]);
+        }
+        String resultsOfVotingMessage = results.toString();
 
         pk_Sig = authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, resultsOfVotingMessage);
         SchnorrSig resultsOfVotingSig = pk_Sig.u;
@@ -281,6 +470,70 @@ public class EVoteApp {
 
         System.out.println("\t Voting results transaction added!");
 
+        // VERIFICA RICEVUTE: ogni votante controlla che la propria scheda sia conteggiata
+        blockchain.enableReceipts(Path.of("./receipts"));
+        int countedReceipts = 0;
+        for(Voter v: voters){
+            BallotReceipt receipt = blockchain.getReceipt(v.getBallotHash());
+            if(receipt != null && receipt.counted && receipt.verify())
+                countedReceipts++;
+        }
+        System.out.println("\t Receipts of counted ballots verified: " + countedReceipts + "/" + voterNumber);
+        System.out.println("\t\t" + blockchain.getReceipt(voters.get(0).getPKSig().getH()));
+
+        // un secondo osservatore riparte dall'inizio della catena e deve vedere gli stessi eventi
+        ChainEventCounter resumedMonitor = new ChainEventCounter();
+        blockchain.getEventPublisher().subscribe(resumedMonitor, 0, ChainEventPublisher.DEFAULT_CAPACITY, ChainEventPublisher.Overflow.DROP);
+        boolean followed = liveMonitor.awaitHeight(blockchain.getHeight(), 10, TimeUnit.SECONDS)
+                && resumedMonitor.awaitHeight(blockchain.getHeight(), 10, TimeUnit.SECONDS);
+        System.out.println("\t Chain events followed: " + followed + ", ballots " + liveMonitor.count(ChainEvent.Kind.BALLOT)
+                + ", decryption contributes " + liveMonitor.count(ChainEvent.Kind.DECRYPTION_CONTRIBUTE)
+                + ", resumed from 0 " + resumedMonitor);
+        blockchain.getEventPublisher().close();
+
+        // l'archivio deve restituire esattamente le righe del file della blockchain
+        blockchain.closeArchive();
+        List<String> chainLines = Files.readAllLines(Path.of(blockchainName));
+        boolean archived = true;
+        try (ArchivedChain archive = ArchivedChain.open(Path.of("./archive"))) {
+            archived = archive.getHeight() == chainLines.size();
+            for (int h = 0; archived && h < chainLines.size(); h++) {
+                archived = archive.line(h).equals(chainLines.get(h));
+            }
+        }
+        System.out.println("\t Chain archived in " + archiver.getSealedBlocks() + " blocks, "
+                + String.format("%.1f", archiver.getCompressionRatio()) + "x smaller, identical when read back: " + archived);
+
+        // -Devote.shards=<k> ripete la votazione su k catene indipendenti, unendo i conteggi con un solo prodotto
+        int shardCount = Integer.getInteger("evote.shards", 0);
+        if(shardCount > 1){
+            long[] shardedVotesTo = shardedElection(shardCount, blockchainName, authorities, pkSigAj, pkA, ballotEncoding, voters, votersPublicKeyList);
+            StringJoiner shardedResults = new StringJoiner(", ");
+            for(int c = 0; c < shardedVotesTo.length; c++){
+                shardedResults.add("candidato " + c + " = " + shardedVotesTo[c]);
+            }
+            System.out.println("\t Sharded election over " + shardCount + " chains: " + shardedResults);
+        }
+
+        if(replicas != null){
+            long height = blockchain.getHeight();
+            boolean identical = true;
+            for(ReplicatedNode replica: replicas){
+                identical &= replica.awaitCommit(height, 30, TimeUnit.SECONDS)
+                        && replica.getChain().getLastBlock().getHash().equals(blockchain.getLastBlock().getHash());
+            }
+            System.out.println("\t Chain replicated on " + replicas.length + " nodes up to height " + height + ", replicas identical: " + identical);
+            System.out.println(replicas[0].getMetrics().report());
+            for(ReplicatedNode replica: replicas){
+                replica.close();
+            }
+        }
+
+        if(metricsReporter != null)
+            metricsReporter.close();
+        System.out.println(blockchain.getMetrics().registry.report());
+        System.out.println("\t " + blockchain.getSignatureCache());
+
     }
 
 }
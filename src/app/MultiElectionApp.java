@@ -0,0 +1,203 @@
+package app;
+
+import VoteChain.Ballot;
+import VoteChain.DecryptionShare;
+import VoteChain.VoteChain;
+import VoteChain.hosting.ElectionHost;
+import VoteChain.scheduler.ChainScheduler;
+import VotingEntities.Authority;
+import VotingEntities.Voter;
+import crypto.utils.DLogParams;
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.Utils;
+import crypto.utils.group.Group;
+import crypto.utils.group.Groups;
+import crypto.utils.random.Randomness;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.ElGamalParams;
+import crypto.utils.thresholdElGamal.ElGamalSK;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.LagrangeShamirSecretSharing;
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.SetupParameters;
+
+/**
+ * Several elections hosted by one ElectionHost at the same time: a large municipal election, whose
+ * voters submit all at once, and two small ones, which share the verifiers and the block writer with it.
+ */
+public class MultiElectionApp {
+
+    private static final int AUTHORITIES = 3;
+
+    /**
+     * The authorities and the voters of an election
+     */
+    private static class Setup {
+        final String id;
+        final List<Authority> authorities;
+        final List<SchnorrPK> pkSigAj = new ArrayList<>(AUTHORITIES);
+        final ElGamalPK pkA = new ElGamalPK();
+        final List<Voter> voters;
+        final PackedEncoding encoding;
+        ElectionHost.Election election;
+        long refused;
+
+        Setup(String id, Group group, int voterNumber, int candidates) {
+            this.id = id;
+            int securityParameter = group.getOrder().bitLength();
+            DLogParams signatureParams = new DLogParams(group);
+            authorities = EVoteApp.authoritiesCreator(AUTHORITIES, signatureParams);
+            ElGamalParams params = SetupParameters(group);
+            ElGamalSK[] skAj = LagrangeShamirSecretSharing(params, AUTHORITIES, pkA);
+            for (int i = 0; i < AUTHORITIES; i++) {
+                authorities.get(i).setElGamalPair(skAj[i].getPK(), skAj[i]);
+                authorities.get(i).generateSignPair(securityParameter);
+                pkSigAj.add(authorities.get(i).getPk());
+            }
+            voters = EVoteApp.votersCreator(voterNumber, signatureParams, securityParameter);
+            encoding = new PackedEncoding(candidates, voterNumber);
+        }
+
+        Utils.Pair<SchnorrPK, SchnorrSig> sign(String message) {
+            return EVoteApp.authoritiesCreateJointSignature(AUTHORITIES, authorities, pkSigAj, message);
+        }
+    }
+
+    /**
+     * Run the elections.
+     * Arguments: [voters of the municipal election] [group], by default 600 voters on P-256.
+     */
+    public static void main(String[] args) throws Exception {
+        int municipalVoters = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        Group group = Groups.byName(args.length > 1 ? args[1] : "P-256");
+        Path directory = Paths.get(".");
+
+        List<Setup> setups = List.of(
+                new Setup("municipal", group, municipalVoters, 4),
+                new Setup("referendum", group, Math.max(municipalVoters / 10, 2), 2),
+                new Setup("board", group, Math.max(municipalVoters / 20, 2), 3));
+        for (Setup setup : setups) {
+            Utils.removeFileIfExists(directory.resolve(setup.id + ".txt").toString());
+        }
+
+        int verifierThreads = Runtime.getRuntime().availableProcessors();
+        try (ElectionHost host = new ElectionHost(directory, verifierThreads)) {
+            // ogni elezione ha la sua catena; le transazioni di apertura passano dallo scrittore condiviso
+            for (Setup setup : setups) {
+                setup.election = host.createElection(setup.id, setup.pkA, setup.encoding, setup.voters.size() / 4 + 1);
+                Utils.Pair<SchnorrPK, SchnorrSig> genesis = setup.sign(setup.pkA.getH().toString());
+                List<BigInteger> votersPublicKeyList = setup.voters.stream().map(v -> v.getPKSig().getH()).collect(Collectors.toList());
+                Utils.Pair<SchnorrPK, SchnorrSig> keys = setup.sign(votersPublicKeyList.toString());
+                Utils.Pair<SchnorrPK, SchnorrSig> start = setup.sign(VoteChain.START_VOTING_MESSAGE);
+                host.append(setup.election, chain -> {
+                    chain.insertGenesisBlock(setup.pkA, genesis.t, genesis.u);
+                    chain.insertPKTransactions(keys.t, keys.u, votersPublicKeyList);
+                    chain.insertStartTransaction(start.t, start.u, VoteChain.START_VOTING_MESSAGE);
+                    return null;
+                }).join();
+            }
+
+            List<List<Ballot>> ballots = new ArrayList<>();
+            for (Setup setup : setups) {
+                ballots.add(setup.voters.parallelStream()
+                        .map(v -> v.prepareBallot(setup.encoding, setup.pkA, Randomness.current().nextInt(setup.encoding.getCandidates())))
+                        .collect(Collectors.toList()));
+            }
+
+            // tutte le elezioni votano insieme, un thread di invio ciascuna
+            long start = System.nanoTime();
+            List<Thread> submitters = new ArrayList<>();
+            for (int i = 0; i < setups.size(); i++) {
+                Setup setup = setups.get(i);
+                List<Ballot> electionBallots = ballots.get(i);
+                Thread submitter = new Thread(() -> {
+                    submitAll(host, setup, electionBallots);
+                    close(host, setup);
+                }, "submit-" + setup.id);
+                submitter.start();
+                submitters.add(submitter);
+            }
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+            System.out.println("Voting of " + setups.size() + " elections on " + verifierThreads + " verifiers: "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+            for (Setup setup : setups) {
+                tally(host, setup);
+            }
+            System.out.print(host.getWriter().report());
+        }
+    }
+
+    /**
+     * Stop the voting of an election as soon as its ballots are in, while the others may still be voting:
+     * the stop transaction overtakes the ballots of the other elections queued in the writer
+     */
+    private static void close(ElectionHost host, Setup setup) {
+        Utils.Pair<SchnorrPK, SchnorrSig> stop = setup.sign(VoteChain.STOP_VOTING_MESSAGE);
+        int queued = host.getWriter().getDepth(ChainScheduler.Lane.BALLOT);
+        long start = System.nanoTime();
+        host.append(setup.election, chain -> {
+            chain.insertStopTransaction(stop.t, stop.u, VoteChain.STOP_VOTING_MESSAGE);
+            return null;
+        }).join();
+        System.out.println("Voting of " + setup.id + " stopped in " + (System.nanoTime() - start) / 1000 + " us, "
+                + queued + " ballots queued in the writer");
+    }
+
+    /**
+     * Submit the ballots of an election; those refused over the quota are submitted again when the
+     * oldest pending ballot has been processed
+     */
+    private static void submitAll(ElectionHost host, Setup setup, List<Ballot> ballots) {
+        ArrayDeque<CompletableFuture<Boolean>> pending = new ArrayDeque<>();
+        for (Ballot ballot : ballots) {
+            while (true) {
+                CompletableFuture<Boolean> result = host.submit(setup.election, ballot);
+                if (!result.isCompletedExceptionally()) {
+                    pending.add(result);
+                    break;
+                }
+                try {
+                    result.join();
+                } catch (CompletionException e) {
+                    if (!(e.getCause() instanceof RejectedExecutionException) || pending.isEmpty())
+                        throw e;
+                }
+                setup.refused++;
+                pending.poll().join();
+            }
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static void tally(ElectionHost host, Setup setup) {
+        ElGamalCT total = setup.election.getChain().countVotes(setup.pkA);
+        List<DecryptionShare> shares = new ArrayList<>(AUTHORITIES);
+        for (Authority authority : setup.authorities) {
+            shares.add(authority.createDecryptionContribute(setup.pkA, total));
+        }
+        long[] votesTo = host.append(setup.election, chain -> {
+            chain.insertDecContributeTransactions(total.C2, shares);
+            return chain.decodeTally(setup.pkA, chain.decryptVotes(setup.pkA, total, chain.getAuthorityDecryptContributes()));
+        }).join();
+        System.out.println(setup.election + " resubmitted " + setup.refused + " over quota");
+        System.out.println("Tally of " + setup.id + " (" + setup.election.getChain().getCountedBallots() + " ballots): "
+                + Arrays.toString(votesTo));
+    }
+}
@@ -0,0 +1,112 @@
+package app;
+
+import VoteChain.Ballot;
+import VoteChain.VoteChain;
+import VoteChain.trace.BallotTrace;
+import VoteChain.trace.TraceReplayer;
+import VotingEntities.Authority;
+import VotingEntities.Voter;
+import crypto.utils.DLogParams;
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.Utils;
+import crypto.utils.group.Group;
+import crypto.utils.group.Groups;
+import crypto.utils.random.Randomness;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.ElGamalParams;
+import crypto.utils.thresholdElGamal.ElGamalSK;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.LagrangeShamirSecretSharing;
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.SetupParameters;
+
+/**
+ * Records a workload of signed ballots in a trace file, then replays it into a new chain to measure
+ * the chain alone.
+ * <pre>
+ * TraceApp capture [trace] [voters] [group]      by default ./ballots.trace, 1000 voters on P-256
+ * TraceApp replay [trace] [max|recorded] [batch] by default at full speed, one ballot at a time
+ * </pre>
+ */
+public class TraceApp {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "capture";
+        Path trace = Paths.get(args.length > 1 ? args[1] : "./ballots.trace");
+        if (mode.equals("capture")) {
+            capture(trace, args.length > 2 ? Integer.parseInt(args[2]) : 1000, Groups.byName(args.length > 3 ? args[3] : "P-256"));
+        } else if (mode.equals("replay")) {
+            TraceReplayer.Pacing pacing = args.length > 2 && args[2].equals("recorded") ? TraceReplayer.Pacing.RECORDED : TraceReplayer.Pacing.MAX_SPEED;
+            replay(trace, pacing, args.length > 3 ? Integer.parseInt(args[3]) : 1);
+        } else {
+            System.err.println("Usage: TraceApp capture|replay [trace] ...");
+        }
+    }
+
+    private static void capture(Path trace, int voterNumber, Group group) throws Exception {
+        int authoritiesInvolvedInVote = 3;
+        int securityParameter = group.getOrder().bitLength();
+
+        // autorità, chiavi e votanti come in VoteServerApp
+        DLogParams signatureParams = new DLogParams(group);
+        List<Authority> authorities = EVoteApp.authoritiesCreator(authoritiesInvolvedInVote, signatureParams);
+        ElGamalParams params = SetupParameters(group);
+        ElGamalPK pkA = new ElGamalPK();
+        ElGamalSK[] skAj = LagrangeShamirSecretSharing(params, authoritiesInvolvedInVote, pkA);
+        List<SchnorrPK> pkSigAj = new ArrayList<>(authoritiesInvolvedInVote);
+        for(int i = 0; i < authoritiesInvolvedInVote; i++){
+            authorities.get(i).setElGamalPair(skAj[i].getPK(), skAj[i]);
+            authorities.get(i).generateSignPair(securityParameter);
+            pkSigAj.add(authorities.get(i).getPk());
+        }
+        List<Voter> voters = EVoteApp.votersCreator(voterNumber, signatureParams, securityParameter);
+        PackedEncoding encoding = new PackedEncoding(Integer.getInteger("evote.candidates", 2), voterNumber);
+
+        List<BigInteger> votersPublicKeyList = voters.stream().map(v -> v.getPKSig().getH()).collect(Collectors.toList());
+        Utils.Pair<SchnorrPK, SchnorrSig> genesis = EVoteApp.authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, pkA.getH().toString());
+        Utils.Pair<SchnorrPK, SchnorrSig> registry = EVoteApp.authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, votersPublicKeyList.toString());
+        Utils.Pair<SchnorrPK, SchnorrSig> start = EVoteApp.authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, VoteChain.START_VOTING_MESSAGE);
+        BallotTrace.Setup setup = new BallotTrace.Setup(group, securityParameter, pkA, encoding, votersPublicKeyList,
+                new BallotTrace.Signed(genesis.t, genesis.u), new BallotTrace.Signed(registry.t, registry.u),
+                new BallotTrace.Signed(start.t, start.u));
+
+        // l'istante di arrivo di una scheda è quello in cui il votante l'ha preparata
+        long begin = System.nanoTime();
+        List<BallotTrace.Entry> entries = voters.parallelStream()
+                .map(v -> {
+                    Ballot ballot = v.prepareBallot(encoding, pkA, Randomness.current().nextInt(encoding.getCandidates()));
+                    return new BallotTrace.Entry(System.nanoTime() - begin, ballot);
+                })
+                .sorted(Comparator.comparingLong(e -> e.nanos))
+                .collect(Collectors.toList());
+        long first = entries.isEmpty() ? 0 : entries.get(0).nanos;
+
+        try (BallotTrace.Writer writer = new BallotTrace.Writer(trace, setup)) {
+            for (BallotTrace.Entry entry : entries) {
+                writer.write(entry.nanos - first, entry.ballot);
+            }
+        }
+        System.out.println("Captured " + entries.size() + " ballots in " + (System.nanoTime() - begin) / 1_000_000 + " ms: "
+                + trace + ", " + Files.size(trace) / 1024 + " KB");
+    }
+
+    private static void replay(Path trace, TraceReplayer.Pacing pacing, int batchSize) throws Exception {
+        String blockchainName = "./ReplayBlockchain.txt";
+        Utils.removeFileIfExists(blockchainName);
+        VoteChain blockchain = new VoteChain(blockchainName);
+        TraceReplayer.Result result = TraceReplayer.replay(trace, blockchain, pacing, batchSize);
+        System.out.println("Replayed " + trace + " (" + pacing + ", batches of " + batchSize + "): " + result);
+        System.out.println(blockchain.getMetrics().registry.report());
+        System.out.println(blockchain.getSignatureCache());
+    }
+}
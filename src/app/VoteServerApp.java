@@ -0,0 +1,110 @@
+package app;
+
+import VoteChain.Ballot;
+import VoteChain.DecryptionShare;
+import VoteChain.VoteChain;
+import VoteChain.server.VoteClient;
+import VoteChain.server.VoteServer;
+import VotingEntities.Authority;
+import VotingEntities.Voter;
+import crypto.utils.DLogParams;
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.Utils;
+import crypto.utils.group.Group;
+import crypto.utils.group.Groups;
+import crypto.utils.random.Randomness;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.ElGamalParams;
+import crypto.utils.thresholdElGamal.ElGamalSK;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.LagrangeShamirSecretSharing;
+import static crypto.utils.thresholdElGamal.ThresholdElGamal.SetupParameters;
+
+/**
+ * An election whose ballots are submitted to a VoteServer by a loopback client with one connection
+ * per voter, to measure the throughput of the submission path.
+ */
+public class VoteServerApp {
+
+    /**
+     * Run the election.
+     * Arguments: [voters] [connections] [group], by default 1000 voters, one connection each, on P-256.
+     */
+    public static void main(String[] args) throws Exception {
+        int voterNumber = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : voterNumber;
+        Group group = Groups.byName(args.length > 2 ? args[2] : "P-256");
+        int authoritiesInvolvedInVote = 3;
+        int securityParameter = group.getOrder().bitLength();
+        String blockchainName = "./ServerBlockchain.txt";
+        Utils.removeFileIfExists(blockchainName);
+
+        // autorità, chiavi e votanti sullo stesso gruppo
+        DLogParams signatureParams = new DLogParams(group);
+        List<Authority> authorities = EVoteApp.authoritiesCreator(authoritiesInvolvedInVote, signatureParams);
+        ElGamalParams params = SetupParameters(group);
+        ElGamalPK pkA = new ElGamalPK();
+        ElGamalSK[] skAj = LagrangeShamirSecretSharing(params, authoritiesInvolvedInVote, pkA);
+        List<SchnorrPK> pkSigAj = new ArrayList<>(authoritiesInvolvedInVote);
+        for(int i = 0; i < authoritiesInvolvedInVote; i++){
+            authorities.get(i).setElGamalPair(skAj[i].getPK(), skAj[i]);
+            authorities.get(i).generateSignPair(securityParameter);
+            pkSigAj.add(authorities.get(i).getPk());
+        }
+        List<Voter> voters = EVoteApp.votersCreator(voterNumber, signatureParams, securityParameter);
+
+        VoteChain blockchain = new VoteChain(blockchainName);
+        PackedEncoding encoding = new PackedEncoding(Integer.getInteger("evote.candidates", 2), voterNumber);
+        blockchain.setBallotEncoding(encoding, pkA);
+
+        Utils.Pair<SchnorrPK, SchnorrSig> pk_Sig = EVoteApp.authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, pkA.getH().toString());
+        blockchain.insertGenesisBlock(pkA, pk_Sig.t, pk_Sig.u);
+        List<BigInteger> votersPublicKeyList = voters.stream().map(v -> v.getPKSig().getH()).collect(Collectors.toList());
+        pk_Sig = EVoteApp.authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, votersPublicKeyList.toString());
+        blockchain.insertPKTransactions(pk_Sig.t, pk_Sig.u, votersPublicKeyList);
+        pk_Sig = EVoteApp.authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, VoteChain.START_VOTING_MESSAGE);
+        blockchain.insertStartTransaction(pk_Sig.t, pk_Sig.u, VoteChain.START_VOTING_MESSAGE);
+
+        // le schede sono preparate prima, così è misurato solo il percorso di invio
+        long start = System.nanoTime();
+        List<Ballot> ballots = voters.parallelStream()
+                .map(v -> v.prepareBallot(encoding, pkA, Randomness.current().nextInt(encoding.getCandidates())))
+                .collect(Collectors.toList());
+        System.out.println("Prepared " + voterNumber + " ballots in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        int verifierThreads = Runtime.getRuntime().availableProcessors();
+        try (VoteServer server = new VoteServer(blockchain, pkA, group, securityParameter,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), verifierThreads)) {
+            VoteClient.Result result = VoteClient.submit(server.getAddress(), ballots, connections, 10, TimeUnit.MINUTES);
+            System.out.println("Submitted over " + Math.min(connections, voterNumber) + " connections: " + result);
+            System.out.println(server.getMetrics().report());
+        }
+        System.out.println("Ballots stored off-heap: " + blockchain.getBallotArenaBytes() / 1024 + " KB of direct memory");
+        System.out.println(blockchain.getSignatureCache());
+
+        pk_Sig = EVoteApp.authoritiesCreateJointSignature(authoritiesInvolvedInVote, authorities, pkSigAj, VoteChain.STOP_VOTING_MESSAGE);
+        blockchain.insertStopTransaction(pk_Sig.t, pk_Sig.u, VoteChain.STOP_VOTING_MESSAGE);
+
+        // il conteggio deve coincidere con le schede accettate dal server
+        ElGamalCT total = blockchain.countVotes(pkA);
+        List<DecryptionShare> shares = new ArrayList<>(authoritiesInvolvedInVote);
+        for(Authority authority: authorities){
+            shares.add(authority.createDecryptionContribute(pkA, total));
+        }
+        blockchain.insertDecContributeTransactions(total.C2, shares);
+        long[] votesTo = blockchain.decodeTally(pkA, blockchain.decryptVotes(pkA, total, blockchain.getAuthorityDecryptContributes()));
+        System.out.println("Tally of " + blockchain.getCountedBallots() + " ballots: " + Arrays.toString(votesTo));
+    }
+}
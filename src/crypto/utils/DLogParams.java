@@ -1,17 +1,36 @@
 package crypto.utils;
 
+import crypto.utils.events.CryptoEvent;
+import crypto.utils.group.Group;
+import crypto.utils.group.ZpGroup;
+import crypto.utils.random.Randomness;
+
 import java.math.BigInteger;
-import java.security.SecureRandom;
+import java.util.Random;
 
-import static crypto.utils.Utils.isqr;
+import static crypto.utils.Utils.jacobi;
 
 public class DLogParams {
     public BigInteger p,q,g;
+    public Group group; // the group generated by g, in which all the operations are computed
 
     public DLogParams(BigInteger p, BigInteger q, BigInteger g) {
         this.p = p;
         this.q = q;
         this.g = g;
+        this.group = new ZpGroup(p, q, g);
+    }
+
+    /**
+     * Build the parameters of a given prime order group.
+     * For elliptic curves p is the prime of the underlying field.
+     * @param group the group
+     */
+    public DLogParams(Group group) {
+        this.p = group.getModulus();
+        this.q = group.getOrder();
+        this.g = group.getGenerator();
+        this.group = group;
     }
 
     /**
@@ -21,23 +40,25 @@ public class DLogParams {
      */
     public static DLogParams SetupDLogParams(int securityparameter) {
 
-        DLogParams dlogparams = new DLogParams(BigInteger.ZERO, BigInteger.ZERO, BigInteger.ZERO);
-
+        CryptoEvent event = CryptoEvent.start("DLogParams.SetupDLogParams");
+        BigInteger p, q, g;
 
-        SecureRandom sc = new SecureRandom();
+        Random sc = Randomness.current();
         // finding two prime numbers p and q such that p = 2q+1 with securityparameter number of bits
         do {
-            dlogparams.q = BigInteger.probablePrime(securityparameter, sc);
-            dlogparams.p = dlogparams.q.multiply(BigInteger.TWO).add(BigInteger.ONE);
-        } while (!dlogparams.p.isProbablePrime(50)); // p is prime with probability 1-2^-50
+            q = BigInteger.probablePrime(securityparameter, sc);
+            p = q.multiply(BigInteger.TWO).add(BigInteger.ONE);
+        } while (!p.isProbablePrime(50)); // p is prime with probability 1-2^-50
 
-        dlogparams.g = BigInteger.TWO;
+        g = BigInteger.TWO;
 
-        // finding a generator for the cyclic group given by prime p
-        while (isqr(dlogparams.g, dlogparams.p) != 1) {
-            dlogparams.g = dlogparams.g.add(BigInteger.ONE);
+        // finding a generator for the cyclic group given by prime p: any quadratic residue other than 1
+        while (jacobi(g, p) != 1) {
+            g = g.add(BigInteger.ONE);
         }
 
-        return dlogparams;
+        DLogParams params = new DLogParams(p, q, g);
+        event.finish(params.group, securityparameter, 0);
+        return params;
     }
 }
@@ -2,10 +2,13 @@ package crypto.utils.Schnorr;
 
 import crypto.utils.DLogParams;
 import crypto.utils.Utils;
+import crypto.utils.events.CryptoEvent;
+import crypto.utils.group.Group;
+import crypto.utils.random.DeterministicNonce;
+import crypto.utils.random.Randomness;
 
 import java.math.BigInteger;
 import java.security.MessageDigest;
-import java.security.SecureRandom;
 
 import static crypto.utils.DLogParams.SetupDLogParams;
 
@@ -19,13 +22,11 @@ public class Schnorr {
     public static SchnorrSK Setup(int securityparameter) {
         BigInteger h;
 
-        SecureRandom sc = new SecureRandom();
-
         DLogParams params = SetupDLogParams(securityparameter);
 
-        BigInteger s = new BigInteger(securityparameter, sc); // the private key, the randomness
-        h = params.g.modPow(s, params.p); // the public key -> h = g^s mod p
-        SchnorrPK PK = new SchnorrPK(params.p, params.q, params.g, h, securityparameter); // public key instance containing all the parameters
+        BigInteger s = Randomness.randomBits(securityparameter); // the private key, the randomness
+        h = params.group.exp(params.g, s); // the public key -> h = g^s mod p
+        SchnorrPK PK = new SchnorrPK(params.group, h, securityparameter); // public key instance containing all the parameters
 
         return new SchnorrSK(s, PK);
     }
@@ -40,10 +41,9 @@ public class Schnorr {
     public static SchnorrSK SetupDLogParamsFixed(DLogParams dlogparams, int securityparameter) {
         BigInteger h;
 
-        SecureRandom sc = new SecureRandom();
-        BigInteger s = new BigInteger(securityparameter, sc);
-        h = dlogparams.g.modPow(s, dlogparams.p);
-        SchnorrPK PK = new SchnorrPK(dlogparams.p, dlogparams.q, dlogparams.g, h, securityparameter);
+        BigInteger s = Randomness.randomBits(securityparameter);
+        h = dlogparams.group.exp(dlogparams.g, s);
+        SchnorrPK PK = new SchnorrPK(dlogparams.group, h, securityparameter);
 
         return new SchnorrSK(s, PK);
     }
@@ -79,11 +79,13 @@ public class Schnorr {
      * @return a new signature of the message
      */
     public static SchnorrSig Sign(SchnorrSK SK, String M) {
-        SecureRandom sc = new SecureRandom(); // generate secure random source
-        BigInteger r = new BigInteger(SK.getPK().securityparameter, sc); // choose random r
-        BigInteger a = SK.getPK().g.modPow(r, SK.getPK().p); // a=g^r mod p
+        CryptoEvent event = CryptoEvent.start("Schnorr.Sign");
+        // r is derived from the secret key and the message (RFC 6979), no entropy is drawn at signing time
+        BigInteger r = DeterministicNonce.generate(SK.getPK().q, SK.getS(), M);
+        BigInteger a = SK.getPK().group.exp(SK.getPK().g, r); // a=g^r mod p
         BigInteger e = HashToBigInteger(SK.getPK(), a, M); // e=H(PK,a,M)
         BigInteger z = r.add(e.multiply(SK.getS()).mod(SK.getPK().q)).mod(SK.getPK().q); // z=r+es mod q
+        event.finish(SK.getPK().group, SK.getPK().q.bitLength(), 1); // the length of r would leak bits of the nonce
         return new SchnorrSig(a, e, z); // (a,e,z) is the signature of M
 
     }
@@ -99,9 +101,11 @@ public class Schnorr {
      * @return
      */
     public static SchnorrSig Sign(SchnorrSK SK, String M, BigInteger A, BigInteger r, SchnorrPK pk){
-        BigInteger a = SK.getPK().g.modPow(r, SK.getPK().p); // a=g^r mod p
+        CryptoEvent event = CryptoEvent.start("Schnorr.Sign");
+        BigInteger a = SK.getPK().group.exp(SK.getPK().g, r); // a=g^r mod p
         BigInteger e = HashToBigInteger(pk, A, M); // e=H(PK,a,M)
         BigInteger z = r.add(e.multiply(SK.getS()).mod(SK.getPK().q)).mod(SK.getPK().q); // z=r+es mod q
+        event.finish(SK.getPK().group, SK.getPK().q.bitLength(), 1); // the length of r would leak bits of the nonce
         return new SchnorrSig(a, e, z); // (a,e,z) is the signature of M
     }
 
@@ -111,9 +115,9 @@ public class Schnorr {
      * @return pair (secret, hidden secret)
      */
     public static Utils.Pair<BigInteger,BigInteger> computeA(SchnorrSK SK){
-        SecureRandom sc = new SecureRandom(); // generate secure random source
-        BigInteger r = new BigInteger(SK.getPK().securityparameter, sc); // choose random r
-        return new Utils.Pair<>(r, SK.getPK().g.modPow(r, SK.getPK().p)); // a=g^r mod p
+        // the joint A depends on the other signers, so r must be fresh randomness and not derived from the message
+        BigInteger r = Randomness.randomBits(SK.getPK().securityparameter); // choose random r
+        return new Utils.Pair<>(r, SK.getPK().group.exp(SK.getPK().g, r)); // a=g^r mod p
     }
 
     /**
@@ -124,13 +128,29 @@ public class Schnorr {
      * @return the correctness of the signature
      */
     public static boolean Verify(SchnorrSig sigma, SchnorrPK PK, String M) {
+        return Verify(sigma, PK, M, null);
+    }
+
+    /**
+     * Check the correctness of a Schnorr signature with the precomputed powers of the public key
+     * @param sigma the signature
+     * @param PK public key of the scheme
+     * @param M message that has to be checked
+     * @param h the precomputed powers of PK.h, null to compute h^e directly
+     * @return the correctness of the signature
+     */
+    public static boolean Verify(SchnorrSig sigma, SchnorrPK PK, String M, Group.FixedBase h) {
         // sigma is the triple (a,e,z), PK is the pair (g,h)
+        CryptoEvent event = CryptoEvent.start("Schnorr.Verify");
         BigInteger e2 = HashToBigInteger(PK, sigma.a, M); // e2=H(PK,a,M)
         // crucial that we use the hash computed by ourself and not the challenge e in the signature
         // actually the value e in the signature is NOT needed
-        BigInteger tmp = sigma.a.multiply(PK.h.modPow(e2, PK.p)).mod(PK.p); // tmp=ah^e2
+        BigInteger he2 = h == null ? PK.group.exp(PK.h, e2) : h.exp(e2);
+        BigInteger tmp = PK.group.multiply(sigma.a, he2); // tmp=ah^e2
         // compare tmp with g^z mod p
-        return tmp.compareTo(PK.g.modPow(sigma.z, PK.p)) == 0;
+        boolean valid = tmp.compareTo(PK.group.exp(PK.g, sigma.z)) == 0;
+        event.finish(PK.group, Math.max(e2.bitLength(), sigma.z.bitLength()), 2);
+        return valid;
     }
 
 
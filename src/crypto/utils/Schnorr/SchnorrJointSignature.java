@@ -1,13 +1,12 @@
 package crypto.utils.Schnorr;
 
-import crypto.utils.Utils;
+import crypto.utils.arithmetic.ModAccumulator;
+import crypto.utils.group.Group;
 
 import java.math.BigInteger;
-import java.util.ArrayList;
 import java.util.List;
 
 import static crypto.utils.Schnorr.Schnorr.HashToBigInteger;
-import static crypto.utils.Schnorr.Schnorr.computeA;
 
 public class SchnorrJointSignature {
 
@@ -18,17 +17,15 @@ public class SchnorrJointSignature {
      */
     public static SchnorrPK generateJointPublicKey(List<SchnorrPK> publicKeys){
 
-        BigInteger Y;
-        Y = BigInteger.ONE;
+        SchnorrPK pk1 = publicKeys.get(0);
+        ModAccumulator Y = pk1.group.newAccumulator();
 
         // homomorphism of Schnorr to compute the joint public key
         for(SchnorrPK pk: publicKeys){
-            Y = Y.multiply(pk.h).mod(pk.p);
+            Y.multiply(pk.h);
         }
 
-        SchnorrPK pk1 = publicKeys.get(0);
-
-        return new SchnorrPK(pk1.p,pk1.q,pk1.g, Y, pk1.securityparameter);
+        return new SchnorrPK(pk1.group, Y.get(), pk1.securityparameter);
     }
 
     /**
@@ -39,36 +36,38 @@ public class SchnorrJointSignature {
      * @return the joint signature of the message
      */
     public static SchnorrSig generateJointSignature(List<SchnorrSig> signatures, SchnorrPK jointPublicKey, String M){
-        BigInteger A,E,Z;
+        BigInteger E,Z;
 
-        A = BigInteger.ONE;
+        ModAccumulator A = jointPublicKey.group.newAccumulator();
         Z = BigInteger.ZERO;
 
         // homomorphism to generate the joint signature
         for(SchnorrSig sig: signatures){
-            A = A.multiply(sig.a).mod(jointPublicKey.p);
-            Z = Z.add(sig.z).mod(jointPublicKey.q);
+            A.multiply(sig.a);
+            Z = Z.add(sig.z);
         }
+        Z = Z.mod(jointPublicKey.q);
 
-        E = HashToBigInteger(jointPublicKey, A, M);
+        BigInteger jointA = A.get();
+        E = HashToBigInteger(jointPublicKey, jointA, M);
 
-        return new SchnorrSig(A,E, Z);
+        return new SchnorrSig(jointA,E, Z);
     }
 
     /**
      * Compute the joint A of the Schnorr signature scheme using homomorphism.
      * @param leA all the As to be combined
-     * @param p the modulo size (parameter of the group)
+     * @param group the group of the signature scheme
      * @return joint A
      */
-    public static BigInteger computeJointA(List<BigInteger> leA, BigInteger p){
+    public static BigInteger computeJointA(List<BigInteger> leA, Group group){
 
-        BigInteger A = BigInteger.ONE;
+        ModAccumulator A = group.newAccumulator();
 
         for(BigInteger a : leA){
-            A = A.multiply(a).mod(p);
+            A.multiply(a);
         }
-        return A;
+        return A.get();
     }
 
 }
@@ -1,17 +1,26 @@
 package crypto.utils.Schnorr;
 
+import crypto.utils.group.Group;
+import crypto.utils.group.ZpGroup;
+
 import java.math.BigInteger;
 
 public class SchnorrPK{
 	BigInteger g,h,p,q;
 	int securityparameter;
+	Group group;
 
 	public SchnorrPK(BigInteger p,BigInteger q,BigInteger g,BigInteger h,int securityparameter) {
-		this.p=p;
-		this.q=q;
-		this.g=g;
+		this(new ZpGroup(p, q, g), h, securityparameter);
+	}
+
+	public SchnorrPK(Group group,BigInteger h,int securityparameter) {
+		this.p=group.getModulus();
+		this.q=group.getOrder();
+		this.g=group.getGenerator();
 		this.h=h;
 		this.securityparameter=securityparameter;
+		this.group=group;
 	}
 
 	public BigInteger getG() {
@@ -34,6 +43,10 @@ public class SchnorrPK{
 		return securityparameter;
 	}
 
+	public Group getGroup() {
+		return group;
+	}
+
 	@Override
 	public String toString() {
 		return "SchnorrPK{" +
@@ -11,6 +11,21 @@ public class SchnorrSig{
 		this.z=z;
 	}
 
+	/**
+	 * @return the commitment a = g^r of the signature
+	 */
+	public BigInteger getA() {
+		return a;
+	}
+
+	public BigInteger getE() {
+		return e;
+	}
+
+	public BigInteger getZ() {
+		return z;
+	}
+
 	@Override
 	public String toString() {
 		return "SchnorrSig{" +
@@ -0,0 +1,248 @@
+package crypto.utils.Schnorr;
+
+import crypto.utils.Utils;
+import crypto.utils.group.Group;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded caches in front of Schnorr.Verify, for voters signing again and again with the same key:
+ * <ul>
+ *     <li>the outcome of the signatures already verified, by digest of key, signature and message, so an
+ *     identical transaction submitted again is accepted or rejected without any exponentiation;</li>
+ *     <li>the precomputed powers of the keys seen most often (Group.precompute), which save the doublings
+ *     of h^e on elliptic curves.</li>
+ * </ul>
+ * Both are LRU. A key gets its table once it has been seen a few times, and then replaces the least
+ * recently used key only if it has been seen more often (TinyLFU admission), so a flood of one-time
+ * voters does not evict the tables of the frequent ones.
+ */
+public class SignatureCache {
+
+    public static final int DEFAULT_SIGNATURES = 1 << 16;
+    public static final int DEFAULT_KEYS = 64; // about 180 KB each on P-256
+    // a P-256 table costs about ten verifications, it is built for the keys seen this often
+    private static final int MIN_KEY_FREQUENCY = 8;
+
+    private static final SignatureCache SHARED = new SignatureCache(
+            Integer.getInteger("evote.sigcache.signatures", DEFAULT_SIGNATURES), Integer.getInteger("evote.sigcache.keys", DEFAULT_KEYS));
+
+    private final int maxSignatures, maxKeys;
+    private final LinkedHashMap<ByteBuffer, Boolean> signatures = new LinkedHashMap<>(16, 0.75f, true); // guarded by itself
+    private final LinkedHashMap<List<Object>, Group.FixedBase> keys = new LinkedHashMap<>(16, 0.75f, true); // guarded by itself
+    private final FrequencySketch keyFrequency;
+    private final LongAdder signatureHits = new LongAdder(), signatureMisses = new LongAdder();
+    private final LongAdder keyHits = new LongAdder(), keyMisses = new LongAdder(), keysBuilt = new LongAdder();
+
+    /**
+     * @param maxSignatures the verified signatures remembered, 0 to disable
+     * @param maxKeys the keys with precomputed powers, 0 to disable
+     */
+    public SignatureCache(int maxSignatures, int maxKeys) {
+        this.maxSignatures = maxSignatures;
+        this.maxKeys = maxKeys;
+        this.keyFrequency = new FrequencySketch(Math.max(maxKeys, 1) * 16);
+    }
+
+    /**
+     * @return the cache shared by the chains of the node, sized by the system properties
+     * "evote.sigcache.signatures" and "evote.sigcache.keys"
+     */
+    public static SignatureCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Check the correctness of a Schnorr signature, as Schnorr.Verify
+     * @param sigma the signature
+     * @param PK public key of the scheme
+     * @param M message that has to be checked
+     * @return the correctness of the signature
+     */
+    public boolean verify(SchnorrSig sigma, SchnorrPK PK, String M) {
+        ByteBuffer digest = maxSignatures > 0 ? digest(sigma, PK, M) : null;
+        if (digest != null) {
+            Boolean known;
+            synchronized (signatures) {
+                known = signatures.get(digest);
+            }
+            if (known != null) {
+                signatureHits.increment();
+                return known;
+            }
+            signatureMisses.increment();
+        }
+
+        boolean valid = Schnorr.Verify(sigma, PK, M, precomputed(PK));
+        if (digest != null) {
+            synchronized (signatures) {
+                signatures.put(digest, valid);
+                if (signatures.size() > maxSignatures) {
+                    Iterator<ByteBuffer> eldest = signatures.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * @return the precomputed powers of the key, null if they are not worth building yet
+     */
+    private Group.FixedBase precomputed(SchnorrPK PK) {
+        if (maxKeys == 0)
+            return null;
+        List<Object> key = List.of(PK.group, PK.h);
+        int frequency;
+        synchronized (keys) {
+            Group.FixedBase table = keys.get(key);
+            if (table != null) {
+                keyHits.increment();
+                return table;
+            }
+            keyMisses.increment();
+            frequency = keyFrequency.increment(key);
+            if (frequency < MIN_KEY_FREQUENCY)
+                return null;
+            if (keys.size() >= maxKeys) {
+                List<Object> victim = keys.keySet().iterator().next();
+                if (frequency <= keyFrequency.frequency(victim))
+                    return null;
+            }
+        }
+        // built outside the lock, two threads may build the same table
+        Group.FixedBase table = PK.group.precompute(PK.h);
+        keysBuilt.increment();
+        synchronized (keys) {
+            keys.put(key, table);
+            if (keys.size() > maxKeys) {
+                Iterator<List<Object>> eldest = keys.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return table;
+    }
+
+    private static ByteBuffer digest(SchnorrSig sigma, SchnorrPK PK, String M) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (BigInteger value : new BigInteger[]{PK.p, PK.g, PK.h, sigma.a, sigma.e, sigma.z}) {
+                byte[] bytes = value.toByteArray();
+                sha.update((byte) (bytes.length >>> 8));
+                sha.update((byte) bytes.length);
+                sha.update(bytes);
+            }
+            sha.update(Utils.toByteArray(M));
+            return ByteBuffer.wrap(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the fraction of the verifications answered by the signature cache
+     */
+    public double getSignatureHitRatio() {
+        return ratio(signatureHits.sum(), signatureMisses.sum());
+    }
+
+    /**
+     * @return the fraction of the verifications computed with a precomputed key
+     */
+    public double getKeyHitRatio() {
+        return ratio(keyHits.sum(), keyMisses.sum());
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    @Override
+    public String toString() {
+        int cachedSignatures, cachedKeys;
+        synchronized (signatures) {
+            cachedSignatures = signatures.size();
+        }
+        synchronized (keys) {
+            cachedKeys = keys.size();
+        }
+        return "SignatureCache{" +
+                "signatures=" + cachedSignatures +
+                ", signatureHits=" + signatureHits +
+                ", signatureHitRatio=" + String.format("%.3f", getSignatureHitRatio()) +
+                ", keys=" + cachedKeys +
+                ", keysBuilt=" + keysBuilt +
+                ", keyHits=" + keyHits +
+                ", keyHitRatio=" + String.format("%.3f", getKeyHitRatio()) +
+                '}';
+    }
+
+    /**
+     * Approximate counts of the keys seen recently: a count-min sketch of 4 rows of 4-bit counters,
+     * all halved after 10 increments per counter, so old popularity fades. Guarded by the keys lock.
+     */
+    private static class FrequencySketch {
+        private static final int ROWS = 4;
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int width) {
+            int size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+            counters = new byte[ROWS][size];
+            mask = size - 1;
+            sampleSize = 10 * size;
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode()), min = Integer.MAX_VALUE;
+            for (int row = 0; row < ROWS; row++) {
+                min = Math.min(min, counters[row][index(hash, row)]);
+            }
+            return min;
+        }
+
+        /**
+         * @return the frequency of the key, this occurrence included
+         */
+        int increment(Object key) {
+            int hash = spread(key.hashCode()), min = Integer.MAX_VALUE;
+            for (int row = 0; row < ROWS; row++) {
+                int i = index(hash, row);
+                if (counters[row][i] < 15)
+                    counters[row][i]++;
+                min = Math.min(min, counters[row][i]);
+            }
+            if (++additions == sampleSize) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * (0x9E3779B9 + 2 * row) + row;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x45D9F3B;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -33,11 +33,62 @@ public class Utils {
         return bytes;
     }
 
+    /**
+     * @param x the value to check
+     * @param p an odd prime
+     * @return 1 if x is a non zero quadratic residue modulo p, 0 otherwise
+     */
     public static int isqr(BigInteger x, BigInteger p) {
+        return jacobi(x, p) == 1 ? 1 : 0;
+    }
 
-        if (x.modPow(p.subtract(BigInteger.ONE).divide(BigInteger.TWO), p).compareTo(BigInteger.ONE) == 0)
-            return 1;
-        return 0;
+    /**
+     * Jacobi symbol (a/n) computed with the binary algorithm: powers of two are removed with
+     * shifts and quadratic reciprocity swaps the operands, so only a few reductions of shrinking
+     * numbers are needed instead of an exponentiation. For a prime n it is the Legendre symbol.
+     *
+     * @param a the value
+     * @param n a positive odd modulus
+     * @return 1, -1 or 0 if a and n are not coprime
+     */
+    public static int jacobi(BigInteger a, BigInteger n) {
+        if (n.signum() <= 0 || !n.testBit(0))
+            throw new IllegalArgumentException("the Jacobi symbol requires a positive odd modulus");
+        a = a.mod(n);
+        int result = 1;
+        while (a.signum() != 0) {
+            if (n.bitLength() < 63) // the tail of the reduction fits in a machine word
+                return result * jacobi(a.longValue(), n.longValue());
+            int twos = a.getLowestSetBit();
+            a = a.shiftRight(twos);
+            int n8 = n.intValue() & 7;
+            // (2/n) = -1 when n = 3, 5 mod 8
+            if ((twos & 1) == 1 && (n8 == 3 || n8 == 5))
+                result = -result;
+            // reciprocity: (a/n) = -(n/a) when both are 3 mod 4
+            if ((a.intValue() & 3) == 3 && (n8 & 3) == 3)
+                result = -result;
+            BigInteger r = n.mod(a);
+            n = a;
+            a = r;
+        }
+        return n.equals(BigInteger.ONE) ? result : 0;
+    }
+
+    private static int jacobi(long a, long n) {
+        int result = 1;
+        while (a != 0) {
+            int twos = Long.numberOfTrailingZeros(a);
+            a >>>= twos;
+            if ((twos & 1) == 1 && ((n & 7) == 3 || (n & 7) == 5))
+                result = -result;
+            if ((a & 3) == 3 && (n & 3) == 3)
+                result = -result;
+            long r = n % a;
+            n = a;
+            a = r;
+        }
+        return n == 1 ? result : 0;
     }
 
     public static class Pair<T, U> {
@@ -0,0 +1,40 @@
+package crypto.utils.arithmetic;
+
+import java.math.BigInteger;
+
+/**
+ * Reference backend using immutable BigInteger.multiply().mod()
+ */
+public class BigIntegerArithmetic extends ModArithmetic {
+
+    public BigIntegerArithmetic(BigInteger modulus) {
+        super(modulus);
+    }
+
+    @Override
+    public ModAccumulator newAccumulator() {
+        return new ModAccumulator() {
+            private BigInteger value = BigInteger.ONE;
+
+            @Override
+            public void multiply(BigInteger factor) {
+                value = value.multiply(factor).mod(modulus);
+            }
+
+            @Override
+            public BigInteger get() {
+                return value;
+            }
+
+            @Override
+            public void reset() {
+                value = BigInteger.ONE;
+            }
+        };
+    }
+
+    @Override
+    public BigInteger multiply(BigInteger a, BigInteger b) {
+        return a.multiply(b).mod(modulus);
+    }
+}
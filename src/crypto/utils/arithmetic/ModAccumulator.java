@@ -0,0 +1,26 @@
+package crypto.utils.arithmetic;
+
+import java.math.BigInteger;
+
+/**
+ * A mutable running product modulo a fixed modulus.
+ * Accumulators are not thread safe, each loop should use its own instance.
+ */
+public interface ModAccumulator {
+
+    /**
+     * Multiply the running product by a factor
+     * @param factor the factor, a non-negative integer
+     */
+    void multiply(BigInteger factor);
+
+    /**
+     * @return the current product reduced modulo the modulus
+     */
+    BigInteger get();
+
+    /**
+     * Restart the accumulation from 1, keeping the internal buffers
+     */
+    void reset();
+}
@@ -0,0 +1,67 @@
+package crypto.utils.arithmetic;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A modular arithmetic backend for a fixed modulus.
+ * The backend is chosen with the system property "evote.modarith":
+ * "montgomery" (default) or "biginteger" (reference backend, useful for differential testing).
+ */
+public abstract class ModArithmetic {
+
+    public static final String BACKEND_PROPERTY = "evote.modarith";
+
+    private static final Map<BigInteger, ModArithmetic> backends = new ConcurrentHashMap<>();
+
+    protected final BigInteger modulus;
+
+    protected ModArithmetic(BigInteger modulus) {
+        this.modulus = modulus;
+    }
+
+    /**
+     * Return the configured backend for the given modulus (instances are cached per modulus)
+     * @param modulus the modulus
+     * @return the arithmetic backend
+     */
+    public static ModArithmetic forModulus(BigInteger modulus) {
+        return backends.computeIfAbsent(modulus, ModArithmetic::create);
+    }
+
+    /**
+     * Create a new backend for the given modulus ignoring the cache
+     * @param modulus the modulus
+     * @return the arithmetic backend
+     */
+    public static ModArithmetic create(BigInteger modulus) {
+        String backend = System.getProperty(BACKEND_PROPERTY, "montgomery");
+        // Montgomery reduction needs an odd modulus
+        if (backend.equals("biginteger") || !modulus.testBit(0)) {
+            return new BigIntegerArithmetic(modulus);
+        }
+        return new MontgomeryArithmetic(modulus);
+    }
+
+    public BigInteger getModulus() {
+        return modulus;
+    }
+
+    /**
+     * @return a new accumulator initialized to 1
+     */
+    public abstract ModAccumulator newAccumulator();
+
+    /**
+     * @param a first factor
+     * @param b second factor
+     * @return a*b mod modulus
+     */
+    public BigInteger multiply(BigInteger a, BigInteger b) {
+        ModAccumulator acc = newAccumulator();
+        acc.multiply(a);
+        acc.multiply(b);
+        return acc.get();
+    }
+}
@@ -0,0 +1,196 @@
+package crypto.utils.arithmetic;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Montgomery multiplication (CIOS) over 64 bit limbs stored in reusable long[] buffers.
+ * The accumulator keeps the product in the form x*R^-k mod m, where R = 2^(64n) and k is the
+ * number of factors, and the R^k factor is restored only once when the result is read.
+ * No division is performed and no object is allocated per multiplication step
+ * (except the byte array produced by BigInteger.toByteArray() when the factor is a BigInteger).
+ */
+public class MontgomeryArithmetic extends ModArithmetic {
+
+    private final int n; // number of 64 bit limbs
+    private final long[] m; // the modulus, little endian limbs
+    private final long mInv; // -m^-1 mod 2^64
+    private final BigInteger rModM; // R mod m
+
+    public MontgomeryArithmetic(BigInteger modulus) {
+        super(modulus);
+        if (!modulus.testBit(0) || modulus.signum() <= 0)
+            throw new IllegalArgumentException("Montgomery arithmetic requires a positive odd modulus");
+
+        this.n = (modulus.bitLength() + 63) / 64;
+        this.m = new long[n];
+        toLimbs(modulus, m);
+
+        // Newton iteration for the inverse of m mod 2^64, each step doubles the correct bits
+        long inv = m[0];
+        for (int i = 0; i < 5; i++) {
+            inv *= 2 - m[0] * inv;
+        }
+        this.mInv = -inv;
+        this.rModM = BigInteger.ONE.shiftLeft(64 * n).mod(modulus);
+    }
+
+    /**
+     * @return the number of 64 bit limbs used for an element
+     */
+    public int getLimbs() {
+        return n;
+    }
+
+    @Override
+    public MontgomeryAccumulator newAccumulator() {
+        return new MontgomeryAccumulator();
+    }
+
+    /**
+     * A Montgomery running product. All the buffers are allocated once at creation.
+     */
+    public class MontgomeryAccumulator implements ModAccumulator {
+        private final long[] acc = new long[n];
+        private final long[] operand = new long[n];
+        private final long[] t = new long[n + 2];
+        private long count;
+
+        private MontgomeryAccumulator() {
+            reset();
+        }
+
+        @Override
+        public void multiply(BigInteger factor) {
+            if (factor.signum() < 0 || factor.compareTo(modulus) >= 0) {
+                factor = factor.mod(modulus);
+            }
+            toLimbs(factor, operand);
+            multiplyLimbs(operand);
+        }
+
+        /**
+         * Multiply by a factor already stored as little endian limbs (smaller than the modulus)
+         * @param factor the limbs of the factor, the array is not modified
+         */
+        public void multiplyLimbs(long[] factor) {
+            montMul(acc, factor, t, acc);
+            count++;
+        }
+
+        @Override
+        public BigInteger get() {
+            BigInteger value = fromLimbs(acc);
+            if (count == 0)
+                return value;
+            // acc = x * R^-count, restore the missing R^count factor
+            return value.multiply(rModM.modPow(BigInteger.valueOf(count), modulus)).mod(modulus);
+        }
+
+        @Override
+        public void reset() {
+            Arrays.fill(acc, 0L);
+            acc[0] = 1L;
+            count = 0;
+        }
+    }
+
+    /**
+     * out = a*b*R^-1 mod m, out can alias a or b
+     */
+    private void montMul(long[] a, long[] b, long[] t, long[] out) {
+        Arrays.fill(t, 0L);
+        for (int i = 0; i < n; i++) {
+            long bi = b[i];
+            long c = 0;
+            long lo, hi;
+            // t = t + a*b[i]
+            for (int j = 0; j < n; j++) {
+                lo = a[j] * bi;
+                hi = unsignedMultiplyHigh(a[j], bi);
+                lo += t[j];
+                if (Long.compareUnsigned(lo, t[j]) < 0) hi++;
+                lo += c;
+                if (Long.compareUnsigned(lo, c) < 0) hi++;
+                t[j] = lo;
+                c = hi;
+            }
+            long s = t[n] + c;
+            t[n + 1] = Long.compareUnsigned(s, c) < 0 ? 1L : 0L;
+            t[n] = s;
+
+            // t = (t + q*m) / 2^64, where q makes the lowest limb vanish
+            long q = t[0] * mInv;
+            lo = q * m[0];
+            hi = unsignedMultiplyHigh(q, m[0]);
+            lo += t[0];
+            if (Long.compareUnsigned(lo, t[0]) < 0) hi++;
+            c = hi;
+            for (int j = 1; j < n; j++) {
+                lo = q * m[j];
+                hi = unsignedMultiplyHigh(q, m[j]);
+                lo += t[j];
+                if (Long.compareUnsigned(lo, t[j]) < 0) hi++;
+                lo += c;
+                if (Long.compareUnsigned(lo, c) < 0) hi++;
+                t[j - 1] = lo;
+                c = hi;
+            }
+            s = t[n] + c;
+            t[n - 1] = s;
+            t[n] = t[n + 1] + (Long.compareUnsigned(s, c) < 0 ? 1L : 0L);
+        }
+
+        // the result is smaller than 2m, a final subtraction brings it into [0, m)
+        if (t[n] != 0 || !lessThanModulus(t)) {
+            long borrow = 0;
+            for (int j = 0; j < n; j++) {
+                long d = t[j] - m[j] - borrow;
+                borrow = (Long.compareUnsigned(t[j], m[j]) < 0 || (borrow == 1 && t[j] == m[j])) ? 1L : 0L;
+                t[j] = d;
+            }
+        }
+        System.arraycopy(t, 0, out, 0, n);
+    }
+
+    private boolean lessThanModulus(long[] t) {
+        for (int j = n - 1; j >= 0; j--) {
+            int cmp = Long.compareUnsigned(t[j], m[j]);
+            if (cmp != 0)
+                return cmp < 0;
+        }
+        return false;
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    /**
+     * Write a non-negative BigInteger into little endian 64 bit limbs
+     * @param value the value, it must fit into dst
+     * @param dst the destination limbs
+     */
+    public static void toLimbs(BigInteger value, long[] dst) {
+        Arrays.fill(dst, 0L);
+        byte[] bytes = value.toByteArray();
+        for (int i = 0; i < bytes.length; i++) {
+            int limb = i >>> 3;
+            if (limb >= dst.length)
+                break; // only the sign byte is left
+            dst[limb] |= (bytes[bytes.length - 1 - i] & 0xFFL) << ((i & 7) << 3);
+        }
+    }
+
+    /**
+     * @param limbs little endian 64 bit limbs
+     * @return the non-negative BigInteger represented by the limbs
+     */
+    public static BigInteger fromLimbs(long[] limbs) {
+        byte[] bytes = new byte[limbs.length * 8 + 1]; // leading zero byte keeps the value positive
+        for (int i = 0; i < limbs.length * 8; i++) {
+            bytes[bytes.length - 1 - i] = (byte) (limbs[i >>> 3] >>> ((i & 7) << 3));
+        }
+        return new BigInteger(bytes);
+    }
+}
@@ -0,0 +1,76 @@
+package crypto.utils.events;
+
+import crypto.utils.group.Group;
+import jdk.jfr.*;
+
+/**
+ * A Java Flight Recorder event around a cryptographic operation, with the sizes of its operands.
+ * When no recording is running begin() and finish() are almost free, and the sizes are not even computed.
+ *
+ * Usage:
+ * <pre>
+ *     CryptoEvent event = CryptoEvent.start("Schnorr.Sign");
+ *     ...
+ *     event.finish(group, q.bitLength(), 1);
+ * </pre>
+ * Events are readable by whoever can read the recording: for secret exponents (nonces, keys, votes)
+ * record the bit length of the group order, never their own.
+ */
+@Name("evote.CryptoOperation")
+@Label("Crypto Operation")
+@Category({"EVote", "Crypto"})
+@Description("A signature, encryption, decryption, tally or parameter generation")
+@StackTrace(false)
+public class CryptoEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Group")
+    public String group;
+
+    @Label("Modulus Bits")
+    @Description("Bit length of the modulus (the field prime for elliptic curves)")
+    public int modulusBits;
+
+    @Label("Order Bits")
+    @Description("Bit length of the group order")
+    public int orderBits;
+
+    @Label("Exponent Bits")
+    @Description("Bit length of the largest exponent or scalar of the operation, the order bits for secret ones")
+    public int exponentBits;
+
+    @Label("Elements")
+    @Description("Number of group elements processed (ciphertexts, contributes)")
+    public int elements;
+
+    /**
+     * @param operation the name of the operation, e.g. "Schnorr.Verify"
+     * @return a started event
+     */
+    public static CryptoEvent start(String operation) {
+        CryptoEvent event = new CryptoEvent();
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End the event and commit it if recording
+     * @param group the group of the operation
+     * @param exponentBits the bit length of the largest exponent
+     * @param elements the number of group elements processed
+     */
+    public void finish(Group group, int exponentBits, int elements) {
+        end();
+        if (shouldCommit()) {
+            this.group = group.getName();
+            this.modulusBits = group.getModulus().bitLength();
+            this.orderBits = group.getOrder().bitLength();
+            this.exponentBits = exponentBits;
+            this.elements = elements;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package crypto.utils.group;
+
+import crypto.utils.arithmetic.ModAccumulator;
+
+import java.math.BigInteger;
+
+/**
+ * A prime order elliptic curve group y^2 = x^3 + ax + b over Fp (cofactor 1), in pure Java.
+ * Points are computed in Jacobian coordinates and encoded in compressed form as the BigInteger
+ * (2 + parity of y) * 2^(8*fieldBytes) + x, the point at infinity is encoded as 0.
+ * Exponentiations of the generator use a precomputed fixed-base table.
+ * The scalar multiplications recode the exponent in signed odd digits: every exponent runs the same
+ * sequence of doublings and additions and reads every entry of the tables, so the secret exponents
+ * (keys, nonces, encryption randomness) do not show in the sequence of point operations or in the
+ * memory accesses. The field arithmetic on BigInteger is not constant time itself.
+ */
+public class EllipticCurveGroup implements Group {
+
+    /**
+     * NIST P-256 (secp256r1)
+     */
+    public static final EllipticCurveGroup P256 = new EllipticCurveGroup("P-256",
+            new BigInteger("ffffffff00000001000000000000000000000000ffffffffffffffffffffffff", 16),
+            new BigInteger("ffffffff00000001000000000000000000000000fffffffffffffffffffffffc", 16),
+            new BigInteger("5ac635d8aa3a93e7b3ebbd55769886bc651d06b0cc53b0f63bce3c3e27d2604b", 16),
+            new BigInteger("ffffffff00000000ffffffffffffffffbce6faada7179e84f3b9cac2fc632551", 16),
+            new BigInteger("6b17d1f2e12c4247f8bce6e563a440f277037d812deb33a0f4a13945d898c296", 16),
+            new BigInteger("4fe342e2fe1a7f9b8ee7eb4a7c0f9e162bce33576b315ececbb6406837bf51f5", 16));
+
+    private static final int WINDOW = 4; // bits per window of the scalar multiplications
+    private static final int ODD_DIGITS = 1 << (WINDOW - 1); // the digits +-1, +-3, ..., +-(2^WINDOW - 1)
+
+    private final String name;
+    private final BigInteger p, a, b, n;
+    private final int fieldBytes;
+    private final BigInteger sqrtExponent; // (p+1)/4, valid since p = 3 mod 4
+    private final BigInteger generator;
+    private final int digits; // signed digits of a recoded exponent
+    private final Point[][] generatorTable; // generatorTable[i][j] = (2j+1) * 2^(WINDOW*i) * G, affine
+
+    /**
+     * A point in Jacobian coordinates (X/Z^2, Y/Z^3), Z = 0 is the point at infinity
+     */
+    private static final class Point {
+        final BigInteger x, y, z;
+
+        Point(BigInteger x, BigInteger y, BigInteger z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        boolean isInfinity() {
+            return z.signum() == 0;
+        }
+    }
+
+    private static final Point INFINITY = new Point(BigInteger.ONE, BigInteger.ONE, BigInteger.ZERO);
+
+    public EllipticCurveGroup(String name, BigInteger p, BigInteger a, BigInteger b, BigInteger n, BigInteger gx, BigInteger gy) {
+        if (!p.testBit(0) || !p.testBit(1))
+            throw new IllegalArgumentException("the field prime must be 3 mod 4");
+        this.name = name;
+        this.p = p;
+        this.a = a;
+        this.b = b;
+        this.n = n;
+        this.fieldBytes = (p.bitLength() + 7) / 8;
+        this.sqrtExponent = p.add(BigInteger.ONE).shiftRight(2);
+        this.digits = (n.bitLength() + 1 + WINDOW - 1) / WINDOW; // the recoded exponents are below 2n
+
+        Point G = new Point(gx, gy, BigInteger.ONE);
+        this.generator = encode(G);
+
+        generatorTable = fixedBaseTable(G);
+    }
+
+    /**
+     * @return table[i][j] = (2j+1) * 2^(WINDOW*i) * P, affine, normalized with a single inversion
+     */
+    private Point[][] fixedBaseTable(Point P) {
+        Point[] points = new Point[digits * ODD_DIGITS];
+        Point base = P;
+        for (int i = 0; i < digits; i++) {
+            Point twice = twice(base);
+            points[i * ODD_DIGITS] = base;
+            for (int j = 1; j < ODD_DIGITS; j++) {
+                points[i * ODD_DIGITS + j] = add(points[i * ODD_DIGITS + j - 1], twice);
+            }
+            for (int j = 0; j < WINDOW; j++) {
+                base = twice(base);
+            }
+        }
+        normalize(points);
+
+        Point[][] table = new Point[digits][ODD_DIGITS];
+        for (int i = 0; i < digits; i++) {
+            System.arraycopy(points, i * ODD_DIGITS, table[i], 0, ODD_DIGITS);
+        }
+        return table;
+    }
+
+    /**
+     * Convert the finite points to affine coordinates with one inversion (Montgomery's trick)
+     */
+    private void normalize(Point[] points) {
+        BigInteger[] prefix = new BigInteger[points.length + 1];
+        prefix[0] = BigInteger.ONE;
+        for (int i = 0; i < points.length; i++) {
+            prefix[i + 1] = points[i].isInfinity() ? prefix[i] : prefix[i].multiply(points[i].z).mod(p);
+        }
+        BigInteger inv = prefix[points.length].modInverse(p);
+        for (int i = points.length - 1; i >= 0; i--) {
+            Point P = points[i];
+            if (P.isInfinity())
+                continue;
+            BigInteger zInv = inv.multiply(prefix[i]).mod(p);
+            inv = inv.multiply(P.z).mod(p);
+            BigInteger zInv2 = zInv.multiply(zInv).mod(p);
+            points[i] = new Point(P.x.multiply(zInv2).mod(p), P.y.multiply(zInv2).mod(p).multiply(zInv).mod(p), BigInteger.ONE);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public BigInteger getModulus() {
+        return p;
+    }
+
+    @Override
+    public BigInteger getOrder() {
+        return n;
+    }
+
+    @Override
+    public BigInteger getGenerator() {
+        return generator;
+    }
+
+    @Override
+    public BigInteger getIdentity() {
+        return BigInteger.ZERO;
+    }
+
+    @Override
+    public BigInteger multiply(BigInteger x, BigInteger y) {
+        return encode(add(decode(x), decode(y)));
+    }
+
+    @Override
+    public BigInteger exp(BigInteger base, BigInteger exponent) {
+        BigInteger k = exponent.mod(n);
+        if (base.equals(generator))
+            return encode(fixedBaseMultiply(k));
+        return encode(multiply(decode(base), k));
+    }
+
+    /**
+     * The table of a point takes about 180 KB on P-256, and is built in the time of a few
+     * multiplications; a multiplication with it needs no doublings
+     */
+    @Override
+    public FixedBase precompute(BigInteger base) {
+        Point P = decode(base);
+        if (base.equals(generator) || P.isInfinity())
+            return Group.super.precompute(base);
+        Point[][] table = fixedBaseTable(P);
+        return exponent -> encode(fixedBaseMultiply(table, exponent.mod(n)));
+    }
+
+    @Override
+    public BigInteger multiExp(BigInteger[] bases, BigInteger[] exponents) {
+        if (bases.length < 4)
+            return Group.super.multiExp(bases, exponents);
+        Point[] points = new Point[bases.length];
+        BigInteger[] k = new BigInteger[exponents.length];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = decode(bases[i]);
+            k[i] = exponents[i].mod(n);
+        }
+        return encode(new MultiExponentiation<Point>() {
+            @Override
+            Point identity() {
+                return INFINITY;
+            }
+
+            @Override
+            Point multiply(Point P, Point Q) {
+                return add(P, Q);
+            }
+
+            @Override
+            Point square(Point P) {
+                return twice(P);
+            }
+        }.compute(points, k));
+    }
+
+    /**
+     * The points of the walk are added in Jacobian coordinates and normalized together with a single
+     * inversion (Montgomery's trick), so no point is decoded and no square root is computed per step
+     */
+    @Override
+    public BigInteger[] walk(BigInteger start, BigInteger step, int count) {
+        Point[] points = new Point[count];
+        Point S = decode(step);
+        Point current = decode(start);
+        for (int i = 0; i < count; i++) {
+            points[i] = current;
+            current = add(current, S);
+        }
+
+        // prefix[i] = product of the z of the finite points before i
+        BigInteger[] prefix = new BigInteger[count + 1];
+        prefix[0] = BigInteger.ONE;
+        for (int i = 0; i < count; i++) {
+            prefix[i + 1] = points[i].isInfinity() ? prefix[i] : prefix[i].multiply(points[i].z).mod(p);
+        }
+        BigInteger inv = prefix[count].modInverse(p);
+        BigInteger[] walk = new BigInteger[count];
+        for (int i = count - 1; i >= 0; i--) {
+            Point P = points[i];
+            if (P.isInfinity()) {
+                walk[i] = BigInteger.ZERO;
+                continue;
+            }
+            BigInteger zInv = inv.multiply(prefix[i]).mod(p);
+            inv = inv.multiply(P.z).mod(p);
+            BigInteger zInv2 = zInv.multiply(zInv).mod(p);
+            BigInteger x = P.x.multiply(zInv2).mod(p);
+            BigInteger y = P.y.multiply(zInv2).mod(p).multiply(zInv).mod(p);
+            walk[i] = BigInteger.valueOf(y.testBit(0) ? 3 : 2).shiftLeft(8 * fieldBytes).or(x);
+        }
+        return walk;
+    }
+
+    @Override
+    public BigInteger inverse(BigInteger x) {
+        if (x.signum() == 0)
+            return x;
+        return x.flipBit(8 * fieldBytes); // prefix 2 <-> 3, i.e. (x,y) -> (x,-y)
+    }
+
+    @Override
+    public boolean isElement(BigInteger x) {
+        try {
+            decode(x);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public ModAccumulator newAccumulator() {
+        return new ModAccumulator() {
+            private Point acc = INFINITY;
+
+            @Override
+            public void multiply(BigInteger factor) {
+                acc = add(acc, decode(factor));
+            }
+
+            @Override
+            public BigInteger get() {
+                return encode(acc);
+            }
+
+            @Override
+            public void reset() {
+                acc = INFINITY;
+            }
+        };
+    }
+
+    @Override
+    public int getElementBytes() {
+        return fieldBytes + 1;
+    }
+
+    /**
+     * Decode a compressed point checking that it lies on the curve
+     */
+    private Point decode(BigInteger encoded) {
+        if (encoded.signum() == 0)
+            return INFINITY;
+        if (encoded.signum() < 0 || encoded.bitLength() > 8 * fieldBytes + 2)
+            throw new IllegalArgumentException("invalid point encoding");
+
+        int prefix = encoded.shiftRight(8 * fieldBytes).intValue();
+        BigInteger x = encoded.subtract(BigInteger.valueOf(prefix).shiftLeft(8 * fieldBytes));
+        if ((prefix != 2 && prefix != 3) || x.compareTo(p) >= 0)
+            throw new IllegalArgumentException("invalid point encoding");
+
+        BigInteger y2 = x.multiply(x).add(a).multiply(x).add(b).mod(p); // x^3 + ax + b
+        BigInteger y = y2.modPow(sqrtExponent, p);
+        if (!y.multiply(y).mod(p).equals(y2))
+            throw new IllegalArgumentException("point not on the curve");
+        if (y.testBit(0) != (prefix == 3))
+            y = p.subtract(y);
+        return new Point(x, y, BigInteger.ONE);
+    }
+
+    private BigInteger encode(Point P) {
+        if (P.isInfinity())
+            return BigInteger.ZERO;
+        Point A = toAffine(P);
+        int prefix = A.y.testBit(0) ? 3 : 2;
+        return BigInteger.valueOf(prefix).shiftLeft(8 * fieldBytes).or(A.x);
+    }
+
+    private Point toAffine(Point P) {
+        if (P.isInfinity() || P.z.equals(BigInteger.ONE))
+            return P;
+        BigInteger zInv = P.z.modInverse(p);
+        BigInteger zInv2 = zInv.multiply(zInv).mod(p);
+        BigInteger x = P.x.multiply(zInv2).mod(p);
+        BigInteger y = P.y.multiply(zInv2).mod(p).multiply(zInv).mod(p);
+        return new Point(x, y, BigInteger.ONE);
+    }
+
+    private Point twice(Point P) {
+        if (P.isInfinity() || P.y.signum() == 0)
+            return INFINITY;
+        BigInteger XX = P.x.multiply(P.x).mod(p);
+        BigInteger YY = P.y.multiply(P.y).mod(p);
+        BigInteger ZZ = P.z.multiply(P.z).mod(p);
+        BigInteger S = P.x.multiply(YY).shiftLeft(2).mod(p); // 4XY^2
+        BigInteger M = XX.multiply(BigInteger.valueOf(3)).add(a.multiply(ZZ.multiply(ZZ))).mod(p); // 3X^2 + aZ^4
+        BigInteger X3 = M.multiply(M).subtract(S.shiftLeft(1)).mod(p);
+        BigInteger Y3 = M.multiply(S.subtract(X3)).subtract(YY.multiply(YY).shiftLeft(3)).mod(p);
+        BigInteger Z3 = P.y.multiply(P.z).shiftLeft(1).mod(p);
+        return new Point(X3, Y3, Z3);
+    }
+
+    private Point add(Point P, Point Q) {
+        if (P.isInfinity())
+            return Q;
+        if (Q.isInfinity())
+            return P;
+
+        boolean qAffine = Q.z.equals(BigInteger.ONE);
+        BigInteger Z1Z1 = P.z.multiply(P.z).mod(p);
+        BigInteger U1 = P.x, S1 = P.y;
+        if (!qAffine) {
+            BigInteger Z2Z2 = Q.z.multiply(Q.z).mod(p);
+            U1 = P.x.multiply(Z2Z2).mod(p);
+            S1 = P.y.multiply(Z2Z2).mod(p).multiply(Q.z).mod(p);
+        }
+        BigInteger U2 = Q.x.multiply(Z1Z1).mod(p);
+        BigInteger S2 = Q.y.multiply(Z1Z1).mod(p).multiply(P.z).mod(p);
+
+        BigInteger H = U2.subtract(U1).mod(p);
+        BigInteger r = S2.subtract(S1).mod(p);
+        if (H.signum() == 0) {
+            return r.signum() == 0 ? twice(P) : INFINITY;
+        }
+        BigInteger HH = H.multiply(H).mod(p);
+        BigInteger HHH = HH.multiply(H).mod(p);
+        BigInteger V = U1.multiply(HH).mod(p);
+        BigInteger X3 = r.multiply(r).subtract(HHH).subtract(V.shiftLeft(1)).mod(p);
+        BigInteger Y3 = r.multiply(V.subtract(X3)).subtract(S1.multiply(HHH)).mod(p);
+        BigInteger Z3 = P.z.multiply(H).mod(p);
+        if (!qAffine)
+            Z3 = Z3.multiply(Q.z).mod(p);
+        return new Point(X3, Y3, Z3);
+    }
+
+    /**
+     * Left-to-right fixed window scalar multiplication over the signed odd digits of k: WINDOW
+     * doublings and one addition per digit, whatever the digits
+     */
+    private Point multiply(Point P, BigInteger k) {
+        if (P.isInfinity())
+            return P;
+        Point[] table = new Point[ODD_DIGITS]; // table[j] = (2j+1) * P
+        Point twice = twice(P);
+        table[0] = P;
+        for (int j = 1; j < table.length; j++) {
+            table[j] = add(table[j - 1], twice);
+        }
+
+        int[] d = recode(k);
+        Point R = select(table, d[d.length - 1]);
+        for (int i = d.length - 2; i >= 0; i--) {
+            for (int j = 0; j < WINDOW; j++) {
+                R = twice(R);
+            }
+            R = add(R, select(table, d[i]));
+        }
+        return R;
+    }
+
+    /**
+     * Generator multiplication with the precomputed table, no doublings are needed
+     */
+    private Point fixedBaseMultiply(BigInteger k) {
+        return fixedBaseMultiply(generatorTable, k);
+    }
+
+    private Point fixedBaseMultiply(Point[][] table, BigInteger k) {
+        int[] d = recode(k);
+        Point R = select(table[0], d[0]);
+        for (int i = 1; i < d.length; i++) {
+            R = add(R, select(table[i], d[i]));
+        }
+        return R;
+    }
+
+    /**
+     * Recode an exponent in [0, n) in signed odd digits, k = sum d[i] * 2^(WINDOW*i) mod n, all of them non zero.
+     * An even k is replaced by k + n, which is odd; then with k_i = (k >> WINDOW*i) | 1 the digit
+     * d[i] = (k_i mod 2^(WINDOW+1)) - 2^WINDOW is odd and k_i = d[i] + 2^WINDOW k_(i+1), the last digit is k_i itself.
+     * The digits are read from the same bits for every exponent, without branches on their values.
+     */
+    private int[] recode(BigInteger k) {
+        int even = k.testBit(0) ? 0 : 1;
+        BigInteger odd = k.add(n.multiply(BigInteger.valueOf(even)));
+        int[] d = new int[digits];
+        for (int i = 0; i < digits; i++) {
+            int bits = i < digits - 1 ? WINDOW + 1 : WINDOW;
+            int window = 0;
+            for (int j = bits - 1; j >= 0; j--) {
+                window = (window << 1) | (odd.testBit(i * WINDOW + j) ? 1 : 0);
+            }
+            d[i] = i < digits - 1 ? (window | 1) - (1 << WINDOW) : window | 1;
+        }
+        return d;
+    }
+
+    /**
+     * @return d * P, where table[j] = (2j+1) * P; every entry is read and the negation is computed
+     * for either sign, so neither the digit nor its sign change the memory accesses
+     */
+    private Point select(Point[] table, int d) {
+        int sign = d >> 31; // -1 for a negative digit, 0 otherwise
+        int index = (((d ^ sign) - sign) - 1) >> 1;
+        Point Q = table[0];
+        for (int j = 1; j < table.length; j++) {
+            Q = j == index ? table[j] : Q;
+        }
+        BigInteger negY = p.subtract(Q.y);
+        return new Point(Q.x, sign != 0 ? negY : Q.y, Q.z);
+    }
+}
@@ -0,0 +1,126 @@
+package crypto.utils.group;
+
+import crypto.utils.arithmetic.ModAccumulator;
+
+import java.math.BigInteger;
+
+/**
+ * A cyclic group of prime order q in which ElGamal and Schnorr are computed.
+ * Elements are encoded as non-negative BigIntegers, so ciphertexts, keys and signatures keep
+ * the same structure whatever the underlying group is.
+ */
+public interface Group {
+
+    /**
+     * @return a short name identifying the group (e.g. "Zp" or "P-256")
+     */
+    String getName();
+
+    /**
+     * @return the prime p of Zp* or of the field over which the curve is defined
+     */
+    BigInteger getModulus();
+
+    /**
+     * @return the prime order q of the group
+     */
+    BigInteger getOrder();
+
+    /**
+     * @return the encoded generator g
+     */
+    BigInteger getGenerator();
+
+    /**
+     * @return the encoded identity element
+     */
+    BigInteger getIdentity();
+
+    /**
+     * @param a first element
+     * @param b second element
+     * @return the group operation a*b
+     */
+    BigInteger multiply(BigInteger a, BigInteger b);
+
+    /**
+     * @param base an element
+     * @param exponent the exponent, reduced modulo the group order
+     * @return base^exponent
+     */
+    BigInteger exp(BigInteger base, BigInteger exponent);
+
+    /**
+     * A base with precomputed powers, raised to many exponents
+     */
+    interface FixedBase {
+        /**
+         * @param exponent the exponent, reduced modulo the group order
+         * @return base^exponent
+         */
+        BigInteger exp(BigInteger exponent);
+    }
+
+    /**
+     * Precompute the powers of a base that will be raised to many exponents, e.g. a frequent public
+     * key. The table is worth building only for bases used many times.
+     * @param base an element
+     * @return the base with its precomputed powers; by default nothing is precomputed
+     */
+    default FixedBase precompute(BigInteger base) {
+        return exponent -> exp(base, exponent);
+    }
+
+    /**
+     * Compute a product of powers at once, much faster than separate exponentiations for many bases
+     * @param bases the elements
+     * @param exponents the exponents, reduced modulo the group order
+     * @return the product of bases[i]^exponents[i]
+     */
+    default BigInteger multiExp(BigInteger[] bases, BigInteger[] exponents) {
+        BigInteger result = getIdentity();
+        for (int i = 0; i < bases.length; i++) {
+            result = multiply(result, exp(bases[i], exponents[i]));
+        }
+        return result;
+    }
+
+    /**
+     * The consecutive elements of a walk, as needed by searches over a range of exponents
+     * @param start the first element
+     * @param step the element multiplied at each step
+     * @param count the number of elements
+     * @return the elements start * step^i for i in [0, count)
+     */
+    default BigInteger[] walk(BigInteger start, BigInteger step, int count) {
+        BigInteger[] walk = new BigInteger[count];
+        BigInteger current = start;
+        for (int i = 0; i < count; i++) {
+            walk[i] = current;
+            current = multiply(current, step);
+        }
+        return walk;
+    }
+
+    /**
+     * @param a an element
+     * @return the inverse of a
+     */
+    BigInteger inverse(BigInteger a);
+
+    /**
+     * @param a an encoded value
+     * @return true if a encodes an element of the prime order group
+     */
+    boolean isElement(BigInteger a);
+
+    /**
+     * @return a new running product of group elements initialized to the identity
+     */
+    ModAccumulator newAccumulator();
+
+    /**
+     * @return the size in bytes of an encoded element
+     */
+    int getElementBytes();
+}
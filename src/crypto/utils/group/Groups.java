@@ -0,0 +1,41 @@
+package crypto.utils.group;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the named groups that can be selected for an election
+ */
+public class Groups {
+
+    // the Zp* groups met so far, shared by the keys and the elections using the same parameters
+    private static final Map<List<BigInteger>, Group> zpGroups = new ConcurrentHashMap<>();
+
+    /**
+     * @param name the group name (e.g. "P-256")
+     * @return the named group
+     * @throws IllegalArgumentException if the group is unknown
+     */
+    public static Group byName(String name) {
+        if (name.equalsIgnoreCase(EllipticCurveGroup.P256.getName()) || name.equalsIgnoreCase("secp256r1"))
+            return EllipticCurveGroup.P256;
+        throw new IllegalArgumentException("unknown group " + name);
+    }
+
+    /**
+     * Recognize the group from its published parameters (as printed in keys on the chain)
+     * @param p the modulus of Zp* or the prime of the curve field
+     * @param q the order of the group
+     * @param g the encoded generator
+     * @return the named group with these parameters, or the Zp* group they describe, the same
+     * instance for the same parameters
+     */
+    public static Group forParameters(BigInteger p, BigInteger q, BigInteger g) {
+        Group p256 = EllipticCurveGroup.P256;
+        if (p.equals(p256.getModulus()) && q.equals(p256.getOrder()) && g.equals(p256.getGenerator()))
+            return p256;
+        return zpGroups.computeIfAbsent(List.of(p, q, g), k -> new ZpGroup(p, q, g));
+    }
+}
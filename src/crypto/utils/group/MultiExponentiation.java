@@ -0,0 +1,94 @@
+package crypto.utils.group;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Pippenger's bucket method for products of many powers b_1^e_1 * ... * b_n^e_n.
+ * The exponents are split into windows of c bits; in each window every base is multiplied
+ * into the bucket of its digit, and the buckets are combined with two running products,
+ * so the cost is about (bits/c) * (n + 2^c) group operations instead of n * bits.
+ *
+ * @param <E> the internal representation of the group elements
+ */
+abstract class MultiExponentiation<E> {
+
+    /**
+     * @return the identity element
+     */
+    abstract E identity();
+
+    /**
+     * @return the group operation a*b
+     */
+    abstract E multiply(E a, E b);
+
+    /**
+     * @return a*a
+     */
+    abstract E square(E a);
+
+    /**
+     * @param bases the bases
+     * @param exponents non-negative exponents, as many as the bases
+     * @return the product of bases[i]^exponents[i]
+     */
+    E compute(E[] bases, BigInteger[] exponents) {
+        int n = bases.length;
+        int bits = 0;
+        for (BigInteger e : exponents) {
+            bits = Math.max(bits, e.bitLength());
+        }
+        if (n == 0 || bits == 0)
+            return identity();
+
+        int c = window(n);
+        int windows = (bits + c - 1) / c;
+        @SuppressWarnings("unchecked")
+        E[] buckets = (E[]) new Object[1 << c];
+
+        E result = null;
+        for (int w = windows - 1; w >= 0; w--) {
+            if (result != null) {
+                for (int i = 0; i < c; i++) {
+                    result = square(result);
+                }
+            }
+            Arrays.fill(buckets, null);
+            for (int i = 0; i < n; i++) {
+                int d = digit(exponents[i], w * c, c);
+                if (d != 0)
+                    buckets[d] = buckets[d] == null ? bases[i] : multiply(buckets[d], bases[i]);
+            }
+            // sum of d * bucket[d]: the running product of the buckets from the highest digit down
+            E running = null, sum = null;
+            for (int d = buckets.length - 1; d > 0; d--) {
+                if (buckets[d] != null)
+                    running = running == null ? buckets[d] : multiply(running, buckets[d]);
+                if (running != null)
+                    sum = sum == null ? running : multiply(sum, running);
+            }
+            if (sum != null)
+                result = result == null ? sum : multiply(result, sum);
+        }
+        return result == null ? identity() : result;
+    }
+
+    /**
+     * @return the window size minimizing n + 2^c per window
+     */
+    private static int window(int n) {
+        if (n < 16)
+            return 2;
+        int c = 31 - Integer.numberOfLeadingZeros(n) - 2;
+        return Math.max(3, Math.min(c, 16));
+    }
+
+    private static int digit(BigInteger e, int from, int c) {
+        int d = 0;
+        for (int j = c - 1; j >= 0; j--) {
+            d = (d << 1) | (e.testBit(from + j) ? 1 : 0);
+        }
+        return d;
+    }
+}
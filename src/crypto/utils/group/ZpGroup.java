@@ -0,0 +1,109 @@
+package crypto.utils.group;
+
+import crypto.utils.Utils;
+import crypto.utils.arithmetic.ModAccumulator;
+import crypto.utils.arithmetic.ModArithmetic;
+
+import java.math.BigInteger;
+
+/**
+ * The subgroup of quadratic residues of Zp*, with p = 2q+1 a safe prime and g a generator of order q
+ */
+public class ZpGroup implements Group {
+
+    private final BigInteger p, q, g;
+    private final boolean safePrime; // p = 2q+1, the subgroup of order q is made of the quadratic residues
+
+    public ZpGroup(BigInteger p, BigInteger q, BigInteger g) {
+        this.p = p;
+        this.q = q;
+        this.g = g;
+        this.safePrime = p.equals(q.shiftLeft(1).add(BigInteger.ONE));
+    }
+
+    @Override
+    public String getName() {
+        return "Zp";
+    }
+
+    @Override
+    public BigInteger getModulus() {
+        return p;
+    }
+
+    @Override
+    public BigInteger getOrder() {
+        return q;
+    }
+
+    @Override
+    public BigInteger getGenerator() {
+        return g;
+    }
+
+    @Override
+    public BigInteger getIdentity() {
+        return BigInteger.ONE;
+    }
+
+    @Override
+    public BigInteger multiply(BigInteger a, BigInteger b) {
+        return a.multiply(b).mod(p);
+    }
+
+    @Override
+    public BigInteger exp(BigInteger base, BigInteger exponent) {
+        return base.modPow(exponent, p);
+    }
+
+    @Override
+    public BigInteger multiExp(BigInteger[] bases, BigInteger[] exponents) {
+        if (bases.length < 4)
+            return Group.super.multiExp(bases, exponents);
+        BigInteger[] e = new BigInteger[exponents.length];
+        for (int i = 0; i < e.length; i++) {
+            e[i] = exponents[i].mod(q);
+        }
+        return new MultiExponentiation<BigInteger>() {
+            @Override
+            BigInteger identity() {
+                return BigInteger.ONE;
+            }
+
+            @Override
+            BigInteger multiply(BigInteger a, BigInteger b) {
+                return a.multiply(b).mod(p);
+            }
+
+            @Override
+            BigInteger square(BigInteger a) {
+                return a.multiply(a).mod(p);
+            }
+        }.compute(bases, e);
+    }
+
+    @Override
+    public BigInteger inverse(BigInteger a) {
+        return a.modInverse(p);
+    }
+
+    @Override
+    public boolean isElement(BigInteger a) {
+        if (a.signum() <= 0 || a.compareTo(p) >= 0)
+            return false;
+        // with a safe prime the Legendre symbol decides membership without an exponentiation
+        if (safePrime)
+            return Utils.jacobi(a, p) == 1;
+        return a.modPow(q, p).equals(BigInteger.ONE);
+    }
+
+    @Override
+    public ModAccumulator newAccumulator() {
+        return ModArithmetic.forModulus(p).newAccumulator();
+    }
+
+    @Override
+    public int getElementBytes() {
+        return (p.bitLength() + 7) / 8;
+    }
+}
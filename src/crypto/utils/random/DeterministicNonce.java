@@ -0,0 +1,124 @@
+package crypto.utils.random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Deterministic generation of signature nonces as in RFC 6979 (section 3.2), with HMAC-SHA256.
+ * The nonce is a pseudorandom function of the secret key and of the message hash: it needs no
+ * entropy at signing time, and two different messages never get the same nonce.
+ */
+public final class DeterministicNonce {
+
+    private static final String HMAC = "HmacSHA256";
+
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(HMAC);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private DeterministicNonce() {
+    }
+
+    /**
+     * @param q the order of the group
+     * @param x the secret key
+     * @param message the message to be signed, hashed with SHA-256
+     * @return the nonce k in [1, q)
+     */
+    public static BigInteger generate(BigInteger q, BigInteger x, String message) {
+        return generate(q, x, SHA256.get().digest(message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @param q the order of the group
+     * @param x the secret key
+     * @param h1 the hash of the message
+     * @return the nonce k in [1, q)
+     */
+    public static BigInteger generate(BigInteger q, BigInteger x, byte[] h1) {
+        int qlen = q.bitLength();
+        int rlen = (qlen + 7) / 8;
+        byte[] xOctets = int2octets(x.mod(q), rlen);
+        byte[] hOctets = int2octets(bits2int(h1, qlen).mod(q), rlen);
+
+        Mac mac = MAC.get();
+        int hlen = mac.getMacLength();
+        byte[] V = new byte[hlen];
+        byte[] K = new byte[hlen];
+        Arrays.fill(V, (byte) 0x01);
+
+        try {
+            K = hmac(mac, K, V, new byte[]{0x00}, xOctets, hOctets);
+            V = hmac(mac, K, V);
+            K = hmac(mac, K, V, new byte[]{0x01}, xOctets, hOctets);
+            V = hmac(mac, K, V);
+
+            byte[] T = new byte[rlen];
+            while (true) {
+                int tlen = 0;
+                while (tlen < rlen) {
+                    V = hmac(mac, K, V);
+                    int n = Math.min(V.length, rlen - tlen);
+                    System.arraycopy(V, 0, T, tlen, n);
+                    tlen += n;
+                }
+                BigInteger k = bits2int(T, qlen);
+                if (k.signum() > 0 && k.compareTo(q) < 0)
+                    return k;
+                K = hmac(mac, K, V, new byte[]{0x00});
+                V = hmac(mac, K, V);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(Mac mac, byte[] key, byte[]... data) throws GeneralSecurityException {
+        mac.init(new SecretKeySpec(key, HMAC));
+        for (byte[] d : data) {
+            mac.update(d);
+        }
+        return mac.doFinal();
+    }
+
+    /**
+     * @return the leftmost qlen bits of b as a non-negative integer
+     */
+    private static BigInteger bits2int(byte[] b, int qlen) {
+        BigInteger v = new BigInteger(1, b);
+        int blen = b.length * 8;
+        return blen > qlen ? v.shiftRight(blen - qlen) : v;
+    }
+
+    /**
+     * @return x as a big endian octet string of exactly rlen bytes
+     */
+    private static byte[] int2octets(BigInteger x, int rlen) {
+        byte[] bytes = x.toByteArray();
+        if (bytes.length == rlen)
+            return bytes;
+        byte[] out = new byte[rlen];
+        if (bytes.length > rlen)
+            System.arraycopy(bytes, bytes.length - rlen, out, 0, rlen); // strip the sign byte
+        else
+            System.arraycopy(bytes, 0, out, rlen - bytes.length, bytes.length);
+        return out;
+    }
+}
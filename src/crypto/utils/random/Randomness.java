@@ -0,0 +1,60 @@
+package crypto.utils.random;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Per-thread deterministic random bit generators (NIST SP 800-90A DRBG, 256 bit strength).
+ * Each thread seeds its own instance once from the system entropy source, so that drawing
+ * randomness never contends on a shared SecureRandom nor pays a seeding cost per call.
+ */
+public final class Randomness {
+
+    private static final ThreadLocal<SecureRandom> DRBG = ThreadLocal.withInitial(Randomness::newDrbg);
+
+    private Randomness() {
+    }
+
+    private static SecureRandom newDrbg() {
+        // the thread id personalizes the instance, so that two threads never share an output stream
+        byte[] personalization = ByteBuffer.allocate(Long.BYTES * 2)
+                .putLong(Thread.currentThread().getId()).putLong(System.nanoTime()).array();
+        try {
+            return SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, personalization));
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    /**
+     * @return the random generator of the current thread, it must not be shared with other threads
+     */
+    public static SecureRandom current() {
+        return DRBG.get();
+    }
+
+    /**
+     * @param bits the number of bits
+     * @return a uniformly random non-negative BigInteger of at most the given number of bits
+     */
+    public static BigInteger randomBits(int bits) {
+        return new BigInteger(bits, DRBG.get());
+    }
+
+    /**
+     * @param bound the exclusive upper bound
+     * @return a uniformly random BigInteger in [1, bound)
+     */
+    public static BigInteger randomBelow(BigInteger bound) {
+        SecureRandom random = DRBG.get();
+        BigInteger r;
+        do {
+            r = new BigInteger(bound.bitLength(), random);
+        } while (r.signum() == 0 || r.compareTo(bound) >= 0);
+        return r;
+    }
+}
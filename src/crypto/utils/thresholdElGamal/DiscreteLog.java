@@ -0,0 +1,148 @@
+package crypto.utils.thresholdElGamal;
+
+import crypto.utils.group.Group;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+/**
+ * Discrete logarithm in a bounded range with baby-step giant-step: x = i*m + j with
+ * g^j looked up in a table of m baby steps and value * g^(-m*i) walked by the giant steps.
+ * The table stores only a 64 bit hash of each element (a hit is confirmed with one exponentiation,
+ * and the colliding entries are all tried), and the giant steps are split in chunks searched in parallel.
+ * Time and memory are about sqrt(bound) group operations instead of bound for the exhaustive search.
+ */
+public class DiscreteLog {
+
+	private static final int MAX_BABY_STEPS = 1 << 20; // table of 12 MB, beyond that the giant steps grow
+	private static final int CHUNKS_PER_THREAD = 4;
+	private static final int WALK = 1024; // elements computed at once by Group.walk
+
+	private final Group group;
+	private final BigInteger g;
+	private final int m; // number of baby steps
+	private final long[] keys; // open addressing table of the hashes of g^j
+	private final int[] values; // j+1, 0 for an empty slot
+	private final int mask;
+
+	/**
+	 * Build the baby steps table for logarithms smaller than bound
+	 * @param group the group
+	 * @param g the base of the logarithms
+	 * @param bound the exclusive upper bound of the logarithms
+	 */
+	public DiscreteLog(Group group, BigInteger g, BigInteger bound) {
+		this.group = group;
+		this.g = g;
+		BigInteger root = bound.sqrt().add(BigInteger.ONE);
+		this.m = root.compareTo(BigInteger.valueOf(MAX_BABY_STEPS)) > 0 ? MAX_BABY_STEPS : root.intValue();
+
+		int capacity = Integer.highestOneBit(2 * m - 1) << 1; // load factor at most 1/2
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+
+		BigInteger gj = group.getIdentity();
+		for (int j = 0; j < m; j += WALK) {
+			BigInteger[] babySteps = group.walk(gj, g, Math.min(WALK, m - j) + 1);
+			for (int i = 0; i < babySteps.length - 1; i++) {
+				put(hash(babySteps[i]), j + i);
+			}
+			gj = babySteps[babySteps.length - 1];
+		}
+	}
+
+	/**
+	 * Compute the logarithm of value in [0, bound)
+	 * @param group the group
+	 * @param g the base
+	 * @param value g^x
+	 * @param bound the exclusive upper bound of x
+	 * @return x, or -1 if there is no logarithm smaller than bound
+	 */
+	public static BigInteger Solve(Group group, BigInteger g, BigInteger value, BigInteger bound) {
+		return new DiscreteLog(group, g, bound).solve(value, bound);
+	}
+
+	/**
+	 * @param value g^x
+	 * @param bound the exclusive upper bound of x
+	 * @return x, or -1 if there is no logarithm smaller than bound
+	 */
+	public BigInteger solve(BigInteger value, BigInteger bound) {
+		BigInteger M = BigInteger.valueOf(m);
+		BigInteger q = group.getOrder();
+		BigInteger giants = bound.add(M).subtract(BigInteger.ONE).divide(M);
+		BigInteger stride = group.exp(g, q.subtract(M.mod(q)).mod(q)); // g^-m
+
+		int chunks = Math.max(1, Runtime.getRuntime().availableProcessors() * CHUNKS_PER_THREAD);
+		BigInteger chunk = giants.add(BigInteger.valueOf(chunks - 1)).divide(BigInteger.valueOf(chunks)).max(BigInteger.ONE);
+		AtomicReference<BigInteger> found = new AtomicReference<>();
+
+		IntStream.range(0, chunks).parallel().forEach(k -> {
+			BigInteger first = chunk.multiply(BigInteger.valueOf(k));
+			BigInteger last = first.add(chunk).min(giants);
+			if (first.compareTo(last) >= 0)
+				return;
+			// value * g^(-m*first), then the giant steps are walked in blocks
+			BigInteger gamma = group.multiply(value, group.exp(stride, first.mod(q)));
+			long steps = last.subtract(first).longValueExact();
+			for (long i = 0; i < steps && found.get() == null; i += WALK) {
+				BigInteger[] giantSteps = group.walk(gamma, stride, (int) Math.min(WALK, steps - i) + 1);
+				for (int s = 0; s < giantSteps.length - 1; s++) {
+					BigInteger x = lookup(giantSteps[s], first.add(BigInteger.valueOf(i + s)).multiply(M), value);
+					if (x != null) {
+						found.compareAndSet(null, x);
+						return;
+					}
+				}
+				gamma = giantSteps[giantSteps.length - 1];
+			}
+		});
+
+		BigInteger x = found.get();
+		return x != null && x.compareTo(bound) < 0 ? x : BigInteger.ONE.negate();
+	}
+
+	private void put(long key, int j) {
+		int slot = slot(key);
+		while (values[slot] != 0) {
+			slot = (slot + 1) & mask; // colliding hashes are all kept
+		}
+		keys[slot] = key;
+		values[slot] = j + 1;
+	}
+
+	/**
+	 * @return offset + j if gamma = g^j is in the table and g^(offset + j) = value, null otherwise
+	 */
+	private BigInteger lookup(BigInteger gamma, BigInteger offset, BigInteger value) {
+		long key = hash(gamma);
+		for (int slot = slot(key); values[slot] != 0; slot = (slot + 1) & mask) {
+			if (keys[slot] == key) {
+				BigInteger x = offset.add(BigInteger.valueOf(values[slot] - 1));
+				if (group.exp(g, x.mod(group.getOrder())).equals(value))
+					return x;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return a hash of all the bits of an element: the low bits alone are the same for many
+	 * elements, e.g. for the powers of g = 2 in Zp
+	 */
+	private static long hash(BigInteger element) {
+		long h = 0x84222325CBF29CE4L;
+		for (byte b : element.toByteArray()) {
+			h = (h ^ (b & 0xff)) * 0x100000001B3L;
+		}
+		return h ^ (h >>> 29);
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mask;
+	}
+}
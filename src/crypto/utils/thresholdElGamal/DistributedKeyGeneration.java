@@ -0,0 +1,264 @@
+package crypto.utils.thresholdElGamal;
+
+import crypto.utils.arithmetic.ModAccumulator;
+import crypto.utils.group.Group;
+import crypto.utils.random.Randomness;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Distributed generation of the threshold ElGamal key (joint Feldman / Pedersen DKG), an alternative
+ * to the trusted dealer of ThresholdElGamal.LagrangeShamirSecretSharing.
+ *
+ * Every authority i deals a random polynomial f_i of degree t-1: it publishes the Feldman commitments
+ * C_ik = g^a_ik to its coefficients and sends f_i(j) privately to each authority j. The share of j is
+ * sj = sum_i f_i(j) and the joint public key is h = prod_i C_i0, so that the secret sum_i f_i(0) is never
+ * held by anyone. The dealings are built in parallel, and all the shares are checked against the
+ * commitments with one randomized batch test.
+ */
+public class DistributedKeyGeneration {
+
+	private static final int BATCH_WEIGHT_BITS = 128;
+
+	/**
+	 * The output of a dealer
+	 */
+	public static class Dealing {
+		public final int dealer; // index of the dealing authority, from 1
+		public final BigInteger[] commitments; // C_k = g^a_k, k = 0..t-1, published
+		private final BigInteger[] shares; // shares[j-1] = f(j), sent to authority j over a private channel
+
+		Dealing(int dealer, BigInteger[] commitments, BigInteger[] shares) {
+			this.dealer = dealer;
+			this.commitments = commitments;
+			this.shares = shares;
+		}
+
+		/**
+		 * @param j the index of the receiving authority, from 1
+		 * @return the share f(j) addressed to authority j
+		 */
+		public BigInteger getShare(int j) {
+			return shares[j - 1];
+		}
+	}
+
+	/**
+	 * Run the whole DKG among n authorities with a n-out-of-n threshold, as the trusted dealer does
+	 *
+	 * @param params the ElGamal parameters
+	 * @param n the number of authorities
+	 * @param globalPK filled with the joint public key
+	 * @return the secret key share of each authority, with its public key g^sj
+	 */
+	public static ElGamalSK[] GenerateKeys(ElGamalParams params, int n, ElGamalPK globalPK) {
+		return GenerateKeys(params, n, n, globalPK);
+	}
+
+	/**
+	 * Run the whole DKG among n authorities. Dealers whose shares do not match their commitments
+	 * are disqualified and do not contribute to the key.
+	 *
+	 * @param params the ElGamal parameters
+	 * @param n the number of authorities
+	 * @param t the number of shares needed to decrypt, 1 <= t <= n
+	 * @param globalPK filled with the joint public key
+	 * @return the secret key share of each authority, with its public key g^sj
+	 */
+	public static ElGamalSK[] GenerateKeys(ElGamalParams params, int n, int t, ElGamalPK globalPK) {
+		if (t < 1 || t > n)
+			throw new IllegalArgumentException("the threshold must be between 1 and the number of authorities");
+		Group group = params.group;
+		BigInteger q = params.q;
+
+		// every authority deals its polynomial
+		Dealing[] dealings = IntStream.rangeClosed(1, n).parallel()
+				.mapToObj(i -> Deal(params, i, n, t))
+				.toArray(Dealing[]::new);
+
+		// the shares are checked all together, each dealing is checked alone only if the batch fails
+		Dealing[] qualified = dealings;
+		if (!BatchVerifyDealings(params, dealings, n)) {
+			qualified = Arrays.stream(dealings).parallel()
+					.filter(d -> VerifyDealing(params, d, n))
+					.toArray(Dealing[]::new);
+			if (qualified.length == 0)
+				throw new IllegalStateException("no valid dealing");
+		}
+		Dealing[] qual = qualified;
+
+		// each authority sums the shares it received from the qualified dealers
+		ElGamalSK[] sks = new ElGamalSK[n];
+		IntStream.rangeClosed(1, n).parallel().forEach(j -> {
+			BigInteger sj = BigInteger.ZERO;
+			for (Dealing d : qual) {
+				sj = sj.add(d.getShare(j));
+			}
+			sj = sj.mod(q);
+			sks[j - 1] = new ElGamalSK(sj, new ElGamalPK(group.exp(params.g, sj), params));
+		});
+
+		// the joint public key is the product of the constant term commitments
+		ModAccumulator h = group.newAccumulator();
+		for (Dealing d : qual) {
+			h.multiply(d.commitments[0]);
+		}
+		globalPK.params = params;
+		globalPK.h = h.get();
+
+		return sks;
+	}
+
+	/**
+	 * Deal a random polynomial of degree t-1
+	 *
+	 * @param params the ElGamal parameters
+	 * @param dealer the index of the dealer, from 1
+	 * @param n the number of authorities
+	 * @param t the threshold
+	 * @return the commitments and the shares of the dealer
+	 */
+	public static Dealing Deal(ElGamalParams params, int dealer, int n, int t) {
+		BigInteger q = params.q;
+		BigInteger[] coefficients = new BigInteger[t];
+		BigInteger[] commitments = new BigInteger[t];
+		for (int k = 0; k < t; k++) {
+			coefficients[k] = Randomness.randomBelow(q);
+			commitments[k] = params.group.exp(params.g, coefficients[k]);
+		}
+		BigInteger[] shares = new BigInteger[n];
+		for (int j = 1; j <= n; j++) {
+			shares[j - 1] = EvaluatePolynomial(coefficients, BigInteger.valueOf(j), q);
+		}
+		return new Dealing(dealer, commitments, shares);
+	}
+
+	/**
+	 * Evaluate a polynomial with Horner's rule, t multiplications by the small x instead of t exponentiations
+	 *
+	 * @param coefficients the coefficients, from degree 0
+	 * @param x the point
+	 * @param q the modulus
+	 * @return f(x) mod q
+	 */
+	public static BigInteger EvaluatePolynomial(BigInteger[] coefficients, BigInteger x, BigInteger q) {
+		BigInteger y = BigInteger.ZERO;
+		for (int k = coefficients.length - 1; k >= 0; k--) {
+			y = y.multiply(x).add(coefficients[k]).mod(q);
+		}
+		return y;
+	}
+
+	/**
+	 * Check the share received by one authority: g^share = prod_k C_k^(j^k)
+	 *
+	 * @param params the ElGamal parameters
+	 * @param commitments the commitments of the dealer
+	 * @param j the index of the receiving authority
+	 * @param share the share
+	 * @return true if the share matches the commitments
+	 */
+	public static boolean VerifyShare(ElGamalParams params, BigInteger[] commitments, int j, BigInteger share) {
+		BigInteger[] powers = new BigInteger[commitments.length];
+		BigInteger x = BigInteger.valueOf(j), power = BigInteger.ONE;
+		for (int k = 0; k < powers.length; k++) {
+			powers[k] = power;
+			power = power.multiply(x).mod(params.q);
+		}
+		return params.group.exp(params.g, share).equals(params.group.multiExp(commitments, powers));
+	}
+
+	/**
+	 * Check all the shares of one dealer at once: with random weights b_j,
+	 * g^sum_j(b_j f(j)) = prod_k C_k^P_k where P_k = sum_j b_j j^k
+	 *
+	 * @return true if all the shares match the commitments, except with probability 2^-128
+	 */
+	public static boolean VerifyDealing(ElGamalParams params, Dealing dealing, int n) {
+		BigInteger q = params.q;
+		BigInteger[] beta = weights(n);
+		BigInteger[] P = weightedPowerSums(beta, dealing.commitments.length, q);
+		BigInteger left = BigInteger.ZERO;
+		for (int j = 1; j <= n; j++) {
+			left = left.add(beta[j - 1].multiply(dealing.getShare(j)));
+		}
+		return params.group.exp(params.g, left.mod(q)).equals(params.group.multiExp(dealing.commitments, P));
+	}
+
+	/**
+	 * Check every share of every dealer with a single equation: with random weights a_i per dealer and
+	 * b_j per receiver, g^sum_ij(a_i b_j f_i(j)) = prod_k (prod_i C_ik^a_i)^P_k. The inner products have
+	 * short exponents and are computed in parallel, one per coefficient.
+	 *
+	 * @param params the ElGamal parameters
+	 * @param dealings the dealings, all with the same threshold
+	 * @param n the number of receivers
+	 * @return true if all the shares match the commitments, except with probability 2^-127
+	 */
+	public static boolean BatchVerifyDealings(ElGamalParams params, Dealing[] dealings, int n) {
+		if (dealings.length == 0)
+			return true;
+		BigInteger q = params.q;
+		Group group = params.group;
+		int t = dealings[0].commitments.length;
+		for (Dealing d : dealings) {
+			if (d.commitments.length != t)
+				return false;
+		}
+
+		BigInteger[] alpha = weights(dealings.length);
+		BigInteger[] beta = weights(n);
+		BigInteger[] P = weightedPowerSums(beta, t, q);
+
+		BigInteger left = BigInteger.ZERO;
+		for (int i = 0; i < dealings.length; i++) {
+			BigInteger sum = BigInteger.ZERO;
+			for (int j = 1; j <= n; j++) {
+				sum = sum.add(beta[j - 1].multiply(dealings[i].getShare(j)));
+			}
+			left = left.add(alpha[i].multiply(sum.mod(q)));
+		}
+
+		// A_k = prod_i C_ik^a_i
+		BigInteger[] A = new BigInteger[t];
+		IntStream.range(0, t).parallel().forEach(k -> {
+			BigInteger[] column = new BigInteger[dealings.length];
+			for (int i = 0; i < column.length; i++) {
+				column[i] = dealings[i].commitments[k];
+			}
+			A[k] = group.multiExp(column, alpha);
+		});
+
+		return group.exp(params.g, left.mod(q)).equals(group.multiExp(A, P));
+	}
+
+	private static BigInteger[] weights(int count) {
+		BigInteger[] w = new BigInteger[count];
+		for (int i = 0; i < count; i++) {
+			w[i] = Randomness.randomBits(BATCH_WEIGHT_BITS);
+		}
+		return w;
+	}
+
+	/**
+	 * @return P_k = sum_j beta_j j^k mod q for k = 0..t-1
+	 */
+	private static BigInteger[] weightedPowerSums(BigInteger[] beta, int t, BigInteger q) {
+		BigInteger[] P = new BigInteger[t];
+		Arrays.fill(P, BigInteger.ZERO);
+		for (int j = 1; j <= beta.length; j++) {
+			BigInteger x = BigInteger.valueOf(j);
+			BigInteger term = beta[j - 1];
+			for (int k = 0; k < t; k++) {
+				P[k] = P[k].add(term);
+				term = term.multiply(x).mod(q);
+			}
+		}
+		for (int k = 0; k < t; k++) {
+			P[k] = P[k].mod(q);
+		}
+		return P;
+	}
+}
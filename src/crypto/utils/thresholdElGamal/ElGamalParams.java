@@ -1,17 +1,30 @@
 package crypto.utils.thresholdElGamal;
 
+import crypto.utils.group.Group;
+import crypto.utils.group.ZpGroup;
+
 import java.math.BigInteger;
 
 public class ElGamalParams {
 
     public BigInteger g, p, q; // description of the group and public-key h=g^s
     public int securityparameter; // security parameter
+    public Group group; // the group generated by g
 
     public ElGamalParams(BigInteger p, BigInteger q, BigInteger g, int securityparameter) {
         this.p = p;
         this.q = q;
         this.g = g;
         this.securityparameter = securityparameter;
+        this.group = new ZpGroup(p, q, g);
+    }
+
+    public ElGamalParams(Group group, int securityparameter) {
+        this.p = group.getModulus();
+        this.q = group.getOrder();
+        this.g = group.getGenerator();
+        this.securityparameter = securityparameter;
+        this.group = group;
     }
 
 
@@ -0,0 +1,123 @@
+package crypto.utils.thresholdElGamal;
+
+import java.math.BigInteger;
+
+/**
+ * Packing of the counters of k candidates into the exponent of a single exponential ElGamal ciphertext.
+ * With B = maxBallots + 1, a vote for candidate 0 encrypts 0 and a vote for candidate c > 0 encrypts B^(c-1):
+ * the product of the ballots encrypts sum count_c B^(c-1), whose base B digits are the counters of the
+ * candidates 1..k-1, while candidate 0 gets the remaining ballots. With two candidates the ballots
+ * encrypt 0 or 1, as in a yes/no election.
+ */
+public class PackedEncoding {
+
+	/** the encoding of a two candidates election: the plaintexts are 0 and 1 */
+	public static final PackedEncoding BINARY = new PackedEncoding(2, 1);
+
+	private static final String CANDIDATES = "candidates=";
+	private static final String MAX_BALLOTS = ";maxBallots=";
+
+	private final int candidates;
+	private final long maxBallots;
+	private final BigInteger base;
+	private final BigInteger[] messages; // the plaintext of a vote for each candidate
+
+	/**
+	 * @param candidates the number of candidates, at least 2
+	 * @param maxBallots the maximum number of ballots counted in the tally
+	 */
+	public PackedEncoding(int candidates, long maxBallots) {
+		if (candidates < 2 || maxBallots < 1)
+			throw new IllegalArgumentException("at least two candidates and one ballot are needed");
+		this.candidates = candidates;
+		this.maxBallots = maxBallots;
+		this.base = BigInteger.valueOf(maxBallots).add(BigInteger.ONE);
+		this.messages = new BigInteger[candidates];
+		messages[0] = BigInteger.ZERO;
+		for (int c = 1; c < candidates; c++) {
+			messages[c] = base.pow(c - 1);
+		}
+	}
+
+	/**
+	 * @param encoding the string representation of an encoding
+	 * @return the parsed encoding
+	 * @throws IllegalArgumentException if the string is not an encoding
+	 */
+	public static PackedEncoding parse(String encoding) {
+		int sep = encoding.indexOf(MAX_BALLOTS);
+		if (!encoding.startsWith(CANDIDATES) || sep < 0)
+			throw new IllegalArgumentException("not a ballot encoding");
+		return new PackedEncoding(Integer.parseInt(encoding.substring(CANDIDATES.length(), sep)),
+				Long.parseLong(encoding.substring(sep + MAX_BALLOTS.length())));
+	}
+
+	public int getCandidates() {
+		return candidates;
+	}
+
+	public long getMaxBallots() {
+		return maxBallots;
+	}
+
+	/**
+	 * @param candidate the chosen candidate, in [0, candidates)
+	 * @return the plaintext of the vote
+	 */
+	public BigInteger encode(int candidate) {
+		return messages[candidate];
+	}
+
+	/**
+	 * @return the plaintexts of the valid votes, indexed by candidate
+	 */
+	public BigInteger[] messages() {
+		return messages.clone();
+	}
+
+	/**
+	 * @param ballots the number of counted ballots
+	 * @return an exclusive upper bound of the plaintext of the tally
+	 */
+	public BigInteger bound(long ballots) {
+		return BigInteger.valueOf(ballots).multiply(messages[candidates - 1]).add(BigInteger.ONE);
+	}
+
+	/**
+	 * The packing is unambiguous only if the plaintext of the tally cannot wrap around the group order
+	 * @param q the order of the group
+	 * @return true if the tally of maxBallots ballots is smaller than q
+	 */
+	public boolean fits(BigInteger q) {
+		return bound(maxBallots).compareTo(q) <= 0;
+	}
+
+	/**
+	 * @param tally the plaintext of the product of the ballots
+	 * @param ballots the number of counted ballots
+	 * @return the number of votes of each candidate
+	 * @throws IllegalArgumentException if the tally is not the sum of that many votes
+	 */
+	public long[] decode(BigInteger tally, long ballots) {
+		if (candidates > 2 && ballots > maxBallots)
+			throw new IllegalArgumentException("more ballots than the encoding can count");
+		long[] counts = new long[candidates];
+		long others = 0;
+		for (int c = 1; c < candidates; c++) {
+			// the last candidate takes the whole quotient, so that two candidates need no base
+			BigInteger digit = c == candidates - 1 ? tally : tally.mod(base);
+			tally = tally.subtract(digit).divide(base);
+			counts[c] = digit.longValueExact();
+			others += counts[c];
+		}
+		if (others > ballots)
+			throw new IllegalArgumentException("the tally exceeds the number of ballots");
+		counts[0] = ballots - others;
+		return counts;
+	}
+
+	@Override
+	public String toString() {
+		return CANDIDATES + candidates + MAX_BALLOTS + maxBallots;
+	}
+}
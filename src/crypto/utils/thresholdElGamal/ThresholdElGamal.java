@@ -1,9 +1,12 @@
 package crypto.utils.thresholdElGamal;
 
 import crypto.utils.DLogParams;
+import crypto.utils.arithmetic.ModAccumulator;
+import crypto.utils.events.CryptoEvent;
+import crypto.utils.group.Group;
+import crypto.utils.random.Randomness;
 
 import java.math.BigInteger;
-import java.security.SecureRandom;
 import java.util.Collection;
 
 import static crypto.utils.DLogParams.SetupDLogParams;
@@ -11,8 +14,6 @@ import static crypto.utils.DLogParams.SetupDLogParams;
 
 public class ThresholdElGamal {
 
-	private static final SecureRandom sc = new SecureRandom();
-
 	/**
 	 * Generate a secret and share it between numOfDecrypters parties using ShamirSecretSharing with
 	 * Lagrange coefficients
@@ -26,32 +27,26 @@ public class ThresholdElGamal {
 
 		ElGamalSK[] sks = new ElGamalSK[numOfDecrypters];
 
-		BigInteger s = new BigInteger(params.securityparameter,sc).mod(params.q);
+		BigInteger s = Randomness.randomBits(params.securityparameter).mod(params.q);
 
-		// obtaining the numOfDecrypters shares
-		BigInteger[] ai = new BigInteger[numOfDecrypters];
+		// the polynomial of degree numOfDecrypters-1 with f(0) = s
+		BigInteger[] coefficients = new BigInteger[numOfDecrypters];
+		coefficients[0] = s;
 		for (int i = 1; i <= numOfDecrypters - 1; i++) {
-			ai[i - 1] = new BigInteger(params.securityparameter,sc).mod(params.q);
+			coefficients[i] = Randomness.randomBits(params.securityparameter).mod(params.q);
 		}
 
-		// construct the secret
+		// construct the secret: sj = f(j), evaluated with Horner's rule
 		for (int j = 0; j < numOfDecrypters; j++) {
-			BigInteger sum = BigInteger.ZERO;
-			BigInteger xj = BigInteger.valueOf(j + 1);
-			for (int i = 1; i < numOfDecrypters; i++) {
-				BigInteger iBig = BigInteger.valueOf(i);
-				BigInteger aixi = ai[i - 1].multiply(xj.modPow(iBig, params.q)).mod(params.q);
-				sum = sum.add(aixi).mod(params.q);
-			}
-			BigInteger sj = s.add(sum).mod(params.q);
-			BigInteger hj = params.g.modPow(sj, params.p);
+			BigInteger sj = DistributedKeyGeneration.EvaluatePolynomial(coefficients, BigInteger.valueOf(j + 1), params.q);
+			BigInteger hj = params.group.exp(params.g, sj);
 			ElGamalPK pkAj = new ElGamalPK(hj, params); // associate the public key to the k participant
 			sks[j] = new ElGamalSK(sj, pkAj); // associate the secret key to the k participant
 		}
 
 		// update the global public key with the common elgamal parameters
 		globalPK.params = params;
-		globalPK.h = params.g.modPow(s, params.p);
+		globalPK.h = params.group.exp(params.g, s);
 
 		return sks; //  secret keys with public keys of the participants
 	}
@@ -71,6 +66,16 @@ public class ThresholdElGamal {
 		return new ElGamalParams(params.p, params.q, params.g, securityparameter);
 	}
 
+	/**
+	 * Setup the Threshold ElGamal parameters over a given prime order group (e.g. an elliptic curve)
+	 *
+	 * @param group the group of the election
+	 * @return the parameters
+	 */
+	public static ElGamalParams SetupParameters(Group group) {
+		return new ElGamalParams(group, group.getOrder().bitLength());
+	}
+
 	/**
 	 * Threshold decryption using contributes
 	 *
@@ -80,24 +85,40 @@ public class ThresholdElGamal {
 	 * @return the plaintext
 	 */
     public static BigInteger Decrypt(ElGamalPK PK, ElGamalCT CT, BigInteger[] W) {
-		BigInteger wprod = BigInteger.ONE;
+		CryptoEvent event = CryptoEvent.start("ThresholdElGamal.Decrypt");
+		ModAccumulator wprod = PK.params.group.newAccumulator();
 		for(int j = 1; j <= W.length; j++){
-			BigInteger lambda = BigInteger.ONE; // λ = 1
-			for(int l = 1; l <= W.length; l++){ // product from λ = 1 and λ != j to num of coefficients
-				if (l != j){
-					// λj = l/(l-j) mod q
-					BigInteger lj = BigInteger.valueOf(l).subtract(BigInteger.valueOf(j)).mod(PK.params.q);
-					BigInteger lambda_l = BigInteger.valueOf(l).multiply(lj.modInverse(PK.params.q)).mod(PK.params.q);
-					lambda = lambda.multiply(lambda_l).mod(PK.params.q);
-				}
-			}
-			BigInteger wjlambda = W[j-1].modPow(lambda, PK.params.p); // wj^(lambdaj) mod p
-			wprod = wprod.multiply(wjlambda).mod(PK.params.p); // product of previous contribute and current
+			BigInteger lambda = LagrangeCoefficient(j, W.length, PK.params.q);
+			BigInteger wjlambda = PK.params.group.exp(W[j-1], lambda); // wj^(lambdaj) mod p
+			wprod.multiply(wjlambda); // product of previous contribute and current
 		}
 
-		return CT.C.multiply(wprod.modInverse(PK.params.p)).mod(PK.params.p); // decrypted message
+		BigInteger M = PK.params.group.multiply(CT.C, PK.params.group.inverse(wprod.get())); // decrypted message
+		event.finish(PK.params.group, PK.params.q.bitLength(), W.length);
+		return M;
     }
 
+	/**
+	 * The Lagrange coefficient of a share at 0, when all the shares 1..n are combined
+	 *
+	 * @param j the index of the share, from 1
+	 * @param n the number of shares
+	 * @param q the order of the group
+	 * @return λj = prod over l != j of l/(l-j) mod q
+	 */
+	public static BigInteger LagrangeCoefficient(int j, int n, BigInteger q) {
+		BigInteger lambda = BigInteger.ONE; // λ = 1
+		for(int l = 1; l <= n; l++){ // product from λ = 1 and λ != j to num of coefficients
+			if (l != j){
+				// λj = l/(l-j) mod q
+				BigInteger lj = BigInteger.valueOf(l).subtract(BigInteger.valueOf(j)).mod(q);
+				BigInteger lambda_l = BigInteger.valueOf(l).multiply(lj.modInverse(q)).mod(q);
+				lambda = lambda.multiply(lambda_l).mod(q);
+			}
+		}
+		return lambda;
+	}
+
 	/**
 	 * Return the product of ciphertexts to use additive homomorphism
 	 *
@@ -107,15 +128,67 @@ public class ThresholdElGamal {
 	 */
 	public static ElGamalCT Homomorphism(ElGamalPK pk, Collection<String> ciphertexts){
 
-		ElGamalCT ct = new ElGamalCT();
+		CryptoEvent event = CryptoEvent.start("ThresholdElGamal.Homomorphism");
+		ModAccumulator C = pk.params.group.newAccumulator();
+		ModAccumulator C2 = pk.params.group.newAccumulator();
 		for(String ciphertext: ciphertexts){
 			ElGamalCT cc = new ElGamalCT(ciphertext);
 
-			ct.C = ct.C.multiply(cc.C).mod(pk.params.p);
-			ct.C2 = ct.C2.multiply(cc.C2).mod(pk.params.p);
+			C.multiply(cc.C);
+			C2.multiply(cc.C2);
+		}
+
+		ElGamalCT product = new ElGamalCT(C.get(), C2.get());
+		event.finish(pk.params.group, 0, ciphertexts.size());
+		return product;
+	}
+
+	/**
+	 * Return the product of ciphertexts to use additive homomorphism, without any parsing
+	 *
+	 * @param pk the public key
+	 * @param ciphertexts the ciphertexts
+	 * @return the product of ciphertexts
+	 */
+	public static ElGamalCT Homomorphism(ElGamalPK pk, Iterable<ElGamalCT> ciphertexts){
+
+		CryptoEvent event = CryptoEvent.start("ThresholdElGamal.Homomorphism");
+		ModAccumulator C = pk.params.group.newAccumulator();
+		ModAccumulator C2 = pk.params.group.newAccumulator();
+		int count = 0;
+		for(ElGamalCT cc: ciphertexts){
+			C.multiply(cc.C);
+			C2.multiply(cc.C2);
+			count++;
+		}
+
+		ElGamalCT product = new ElGamalCT(C.get(), C2.get());
+		event.finish(pk.params.group, 0, count);
+		return product;
+	}
+
+	/**
+	 * Return the product of a batch of ciphertexts stored as two parallel arrays
+	 *
+	 * @param pk the public key
+	 * @param C the first components
+	 * @param C2 the second components
+	 * @param count the number of ciphertexts of the batch
+	 * @return the product of ciphertexts
+	 */
+	public static ElGamalCT Homomorphism(ElGamalPK pk, BigInteger[] C, BigInteger[] C2, int count){
+
+		CryptoEvent event = CryptoEvent.start("ThresholdElGamal.Homomorphism");
+		ModAccumulator accC = pk.params.group.newAccumulator();
+		ModAccumulator accC2 = pk.params.group.newAccumulator();
+		for(int i = 0; i < count; i++){
+			accC.multiply(C[i]);
+			accC2.multiply(C2[i]);
 		}
 
-		return ct;
+		ElGamalCT product = new ElGamalCT(accC.get(), accC2.get());
+		event.finish(pk.params.group, 0, count);
+		return product;
 	}
 
 	/**
@@ -128,9 +201,12 @@ public class ThresholdElGamal {
 	 */
 	public static ElGamalCT EncryptInTheExponent(ElGamalPK PK, BigInteger m, BigInteger r) {
 		// identical to Encrypt except that input is an exponent m and encrypts M=g^m mod p
-		BigInteger M = PK.params.g.modPow(m, PK.params.p); // M=g^m mod p
-		BigInteger C = M.multiply(PK.h.modPow(r, PK.params.p)).mod(PK.params.p);
-		BigInteger C2 = PK.params.g.modPow(r, PK.params.p);
+		CryptoEvent event = CryptoEvent.start("ThresholdElGamal.EncryptInTheExponent");
+		Group group = PK.params.group;
+		BigInteger M = group.exp(PK.params.g, m); // M=g^m mod p
+		BigInteger C = group.multiply(M, group.exp(PK.h, r));
+		BigInteger C2 = group.exp(PK.params.g, r);
+		event.finish(group, PK.params.q.bitLength(), 1); // not the length of m or r, both secret
 		return new ElGamalCT(C, C2);
 	}
 
@@ -139,7 +215,7 @@ public class ThresholdElGamal {
 	 * @return a secure random big integer of secParam bits
 	 */
 	public static BigInteger getR(int secParam){
-		return new BigInteger(secParam, sc);
+		return Randomness.randomBits(secParam);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,413 @@
+package crypto.utils.zkp;
+
+import crypto.utils.group.Group;
+import crypto.utils.random.Randomness;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.ElGamalSK;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Non-interactive (Fiat-Shamir) Chaum-Pedersen proofs of equality of discrete logarithms.
+ *
+ * A vote (C, C2) = (g^m h^r, g^r) is valid if m is one of the valid plaintexts m0..mk-1 (0 or 1 for a yes/no
+ * election), that is if (g, h, C2, C/g^mj) is a Diffie-Hellman tuple for some j: the voter proves the true
+ * branch and simulates the others. The challenge of a vote proof also hashes the signature key of the
+ * voter, so a proof copied into another voter's ballot does not verify; the election is bound by its key h.
+ * A decryption contribute wj = u^sj is valid if (g, hj, u, wj) is a Diffie-Hellman tuple, hj = g^sj being
+ * the public key of the authority.
+ */
+public class ChaumPedersen {
+
+    private static final String VOTE_DOMAIN = "evote-vote-proof";
+    private static final String SHARE_DOMAIN = "evote-decryption-share-proof";
+    private static final int BATCH_WEIGHT_BITS = 128; // soundness error of the batch test is 2^-128
+    private static final BigInteger[] BINARY = {BigInteger.ZERO, BigInteger.ONE}; // the plaintexts of a yes/no vote
+
+    /**
+     * Prove that a ciphertext encrypts 0 or 1
+     * @param pk the ElGamal public key
+     * @param voter the signature public key h of the voter casting the ballot
+     * @param ct the ciphertext, EncryptInTheExponent(pk, m, r)
+     * @param m the vote, 0 or 1
+     * @param r the randomness of the encryption
+     * @return the proof
+     */
+    public static VoteProof ProveVote(ElGamalPK pk, BigInteger voter, ElGamalCT ct, BigInteger m, BigInteger r) {
+        int real = m.intValue();
+        if (real != 0 && real != 1)
+            throw new IllegalArgumentException("the vote must be 0 or 1");
+        return ProveVote(pk, voter, ct, BINARY, real, r);
+    }
+
+    /**
+     * Prove that a ciphertext encrypts one of the valid plaintexts of a ballot
+     * @param pk the ElGamal public key
+     * @param voter the signature public key h of the voter casting the ballot
+     * @param ct the ciphertext, EncryptInTheExponent(pk, messages[choice], r)
+     * @param messages the valid plaintexts
+     * @param choice the index of the encrypted plaintext
+     * @param r the randomness of the encryption
+     * @return the proof, with one branch per valid plaintext
+     */
+    public static VoteProof ProveVote(ElGamalPK pk, BigInteger voter, ElGamalCT ct, BigInteger[] messages, int choice, BigInteger r) {
+        Group group = pk.params.group;
+        BigInteger q = group.getOrder();
+        BigInteger g = pk.params.g;
+        int k = messages.length;
+        if (choice < 0 || choice >= k)
+            throw new IllegalArgumentException("the choice must be one of the " + k + " valid plaintexts");
+
+        BigInteger[] A = new BigInteger[k], B = new BigInteger[k], c = new BigInteger[k], z = new BigInteger[k];
+
+        // simulated branches: choose challenge and response, then derive the commitments
+        BigInteger fakeChallenges = BigInteger.ZERO;
+        for (int j = 0; j < k; j++) {
+            if (j == choice)
+                continue;
+            c[j] = Randomness.randomBelow(q);
+            z[j] = Randomness.randomBelow(q);
+            fakeChallenges = fakeChallenges.add(c[j]);
+            BigInteger negC = q.subtract(c[j]);
+            A[j] = group.multiply(group.exp(g, z[j]), group.exp(ct.C2, negC)); // g^z / C2^c
+            B[j] = group.multiply(group.exp(pk.h, z[j]), group.exp(shift(group, g, ct.C, messages[j]), negC)); // h^z / (C/g^mj)^c
+        }
+
+        // real branch: commit to w
+        BigInteger w = Randomness.randomBelow(q);
+        A[choice] = group.exp(g, w);
+        B[choice] = group.exp(pk.h, w);
+
+        BigInteger challenge = voteChallenge(pk, voter, ct, A, B);
+        c[choice] = challenge.subtract(fakeChallenges).mod(q);
+        z[choice] = w.add(c[choice].multiply(r)).mod(q);
+
+        return new VoteProof(A, B, c, z);
+    }
+
+    /**
+     * Verify a single vote proof
+     * @param pk the ElGamal public key
+     * @param voter the signature public key h of the voter of the ballot
+     * @param ct the ciphertext
+     * @param proof the proof
+     * @return true if the ciphertext encrypts 0 or 1
+     */
+    public static boolean VerifyVote(ElGamalPK pk, BigInteger voter, ElGamalCT ct, VoteProof proof) {
+        return VerifyVote(pk, BINARY, voter, ct, proof);
+    }
+
+    /**
+     * Verify a single vote proof
+     * @param pk the ElGamal public key
+     * @param messages the valid plaintexts
+     * @param voter the signature public key h of the voter of the ballot
+     * @param ct the ciphertext
+     * @param proof the proof
+     * @return true if the ciphertext encrypts one of the valid plaintexts
+     */
+    public static boolean VerifyVote(ElGamalPK pk, BigInteger[] messages, BigInteger voter, ElGamalCT ct, VoteProof proof) {
+        Group group = pk.params.group;
+        BigInteger g = pk.params.g;
+        if (!wellFormed(group, messages, ct, proof) || !challengeMatches(pk, voter, ct, proof))
+            return false;
+
+        // g^zj = Aj C2^cj, h^zj = Bj (C/g^mj)^cj
+        for (int j = 0; j < messages.length; j++) {
+            if (!group.exp(g, proof.z[j]).equals(group.multiply(proof.A[j], group.exp(ct.C2, proof.c[j])))
+                    || !group.exp(pk.h, proof.z[j]).equals(group.multiply(proof.B[j], group.exp(shift(group, g, ct.C, messages[j]), proof.c[j]))))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Verify many vote proofs at once. The two equations of every branch j are combined with random
+     * weights dA, dB into a single equation
+     * g^sum(dA zj + dB mj cj) h^sum(dB zj) = prod Aj^dA Bj^dB C2^(dA cj) C^(dB cj)
+     * checked with one multi-exponentiation of short exponents. A single invalid proof makes it fail except with probability 2^-128.
+     *
+     * @param pk the ElGamal public key
+     * @param messages the valid plaintexts
+     * @param voters the signature public key h of the voter of each ciphertext
+     * @param cts the ciphertexts
+     * @param proofs the proofs, one per ciphertext
+     * @param from the first index of the batch
+     * @param to the index after the last one of the batch
+     * @return true if all the proofs of the batch are valid
+     */
+    public static boolean BatchVerifyVotes(ElGamalPK pk, BigInteger[] messages, BigInteger[] voters, ElGamalCT[] cts, VoteProof[] proofs, int from, int to) {
+        Group group = pk.params.group;
+        BigInteger q = group.getOrder();
+        int n = to - from;
+        if (n <= 0)
+            return true;
+        if (n == 1)
+            return VerifyVote(pk, messages, voters[from], cts[from], proofs[from]);
+
+        int branches = messages.length;
+        BigInteger[] bases = new BigInteger[(2 * branches + 2) * n];
+        BigInteger[] exponents = new BigInteger[bases.length];
+        BigInteger gExp = BigInteger.ZERO, hExp = BigInteger.ZERO;
+        int k = 0;
+        for (int i = from; i < to; i++) {
+            ElGamalCT ct = cts[i];
+            VoteProof p = proofs[i];
+            if (!wellFormed(group, messages, ct, p) || !challengeMatches(pk, voters[i], ct, p))
+                return false;
+            BigInteger c2Exp = BigInteger.ZERO, cExp = BigInteger.ZERO;
+            for (int j = 0; j < branches; j++) {
+                BigInteger dA = Randomness.randomBits(BATCH_WEIGHT_BITS), dB = Randomness.randomBits(BATCH_WEIGHT_BITS);
+                gExp = gExp.add(dA.multiply(p.z[j])).add(dB.multiply(messages[j]).multiply(p.c[j]));
+                hExp = hExp.add(dB.multiply(p.z[j]));
+                c2Exp = c2Exp.add(dA.multiply(p.c[j]));
+                cExp = cExp.add(dB.multiply(p.c[j]));
+
+                // the exponents of the right side are left unreduced: short exponents make the multi-exponentiation cheaper
+                bases[k] = p.A[j];  exponents[k++] = dA;
+                bases[k] = p.B[j];  exponents[k++] = dB;
+            }
+            bases[k] = ct.C2;  exponents[k++] = c2Exp;
+            bases[k] = ct.C;   exponents[k++] = cExp;
+        }
+        BigInteger left = group.multiply(group.exp(pk.params.g, gExp.mod(q)), group.exp(pk.h, hExp.mod(q)));
+        return left.equals(group.multiExp(bases, exponents));
+    }
+
+    /**
+     * Verify many proofs that the votes encrypt 0 or 1 at once
+     * @see #BatchVerifyVotes(ElGamalPK, BigInteger[], BigInteger[], ElGamalCT[], VoteProof[], int, int)
+     */
+    public static boolean BatchVerifyVotes(ElGamalPK pk, BigInteger[] voters, ElGamalCT[] cts, VoteProof[] proofs, int from, int to) {
+        return BatchVerifyVotes(pk, BINARY, voters, cts, proofs, from, to);
+    }
+
+    /**
+     * Verify many vote proofs, locating the invalid ones: the whole batch is checked at once,
+     * and only a failing batch is split in halves until the invalid proofs are isolated
+     *
+     * @param pk the ElGamal public key
+     * @param messages the valid plaintexts
+     * @param voters the signature public key h of the voter of each ciphertext
+     * @param cts the ciphertexts
+     * @param proofs the proofs, one per ciphertext
+     * @return the validity of each proof
+     */
+    public static boolean[] VerifyVotes(ElGamalPK pk, BigInteger[] messages, BigInteger[] voters, ElGamalCT[] cts, VoteProof[] proofs) {
+        boolean[] valid = new boolean[cts.length];
+        verifyRange(pk, messages, voters, cts, proofs, 0, cts.length, valid);
+        return valid;
+    }
+
+    /**
+     * Verify many proofs that the votes encrypt 0 or 1, locating the invalid ones
+     * @see #VerifyVotes(ElGamalPK, BigInteger[], BigInteger[], ElGamalCT[], VoteProof[])
+     */
+    public static boolean[] VerifyVotes(ElGamalPK pk, BigInteger[] voters, ElGamalCT[] cts, VoteProof[] proofs) {
+        return VerifyVotes(pk, BINARY, voters, cts, proofs);
+    }
+
+    private static void verifyRange(ElGamalPK pk, BigInteger[] messages, BigInteger[] voters, ElGamalCT[] cts, VoteProof[] proofs, int from, int to, boolean[] valid) {
+        if (from >= to)
+            return;
+        if (BatchVerifyVotes(pk, messages, voters, cts, proofs, from, to)) {
+            for (int i = from; i < to; i++) {
+                valid[i] = true;
+            }
+        } else if (to - from > 1) {
+            int mid = (from + to) >>> 1;
+            verifyRange(pk, messages, voters, cts, proofs, from, mid, valid);
+            verifyRange(pk, messages, voters, cts, proofs, mid, to, valid);
+        }
+    }
+
+    /**
+     * Prove that a decryption contribute has been computed with the secret share of the authority
+     * @param skj the ElGamal secret share of the authority, with its public key hj = g^sj
+     * @param u the second component of the ciphertext being decrypted
+     * @param wj the decryption contribute u^sj
+     * @return the proof
+     */
+    public static DecryptionShareProof ProveDecryptionShare(ElGamalSK skj, BigInteger u, BigInteger wj) {
+        ElGamalPK pkj = skj.getPK();
+        Group group = pkj.params.group;
+        BigInteger q = group.getOrder();
+
+        BigInteger w = Randomness.randomBelow(q);
+        BigInteger a1 = group.exp(pkj.params.g, w);
+        BigInteger a2 = group.exp(u, w);
+        BigInteger c = shareChallenge(pkj, u, wj, a1, a2);
+        BigInteger z = w.add(c.multiply(skj.getS())).mod(q);
+        return new DecryptionShareProof(a1, a2, z, pkj.h);
+    }
+
+    /**
+     * Verify a single decryption contribute proof: g^z = a1 hj^c and u^z = a2 wj^c
+     * @param pkj the public key of the authority
+     * @param u the second component of the ciphertext being decrypted
+     * @param wj the decryption contribute
+     * @param proof the proof
+     * @return true if wj = u^sj
+     */
+    public static boolean VerifyDecryptionShare(ElGamalPK pkj, BigInteger u, BigInteger wj, DecryptionShareProof proof) {
+        Group group = pkj.params.group;
+        if (!group.isElement(u) || !wellFormed(group, pkj, wj, proof))
+            return false;
+        BigInteger c = shareChallenge(pkj, u, wj, proof.a1, proof.a2);
+        return group.exp(pkj.params.g, proof.z).equals(group.multiply(proof.a1, group.exp(pkj.h, c)))
+                && group.exp(u, proof.z).equals(group.multiply(proof.a2, group.exp(wj, c)));
+    }
+
+    /**
+     * Verify the decryption contributes of many authorities on the same ciphertext at once:
+     * with random weights d1, d2 per authority all the equations become
+     * g^sum(d1 z) u^sum(d2 z) = prod a1^d1 hj^(d1 c) a2^d2 wj^(d2 c),
+     * a single multi-exponentiation whatever the number of authorities
+     *
+     * @param pks the public keys of the authorities
+     * @param u the second component of the ciphertext being decrypted
+     * @param W the decryption contributes, one per authority
+     * @param proofs the proofs, one per authority
+     * @return true if all the contributes are valid
+     */
+    public static boolean BatchVerifyDecryptionShares(ElGamalPK[] pks, BigInteger u, BigInteger[] W, DecryptionShareProof[] proofs) {
+        int n = pks.length;
+        if (n == 0)
+            return true;
+        if (n == 1)
+            return VerifyDecryptionShare(pks[0], u, W[0], proofs[0]);
+
+        Group group = pks[0].params.group;
+        BigInteger q = group.getOrder();
+        if (!group.isElement(u))
+            return false;
+        BigInteger[] bases = new BigInteger[4 * n];
+        BigInteger[] exponents = new BigInteger[4 * n];
+        BigInteger gExp = BigInteger.ZERO, uExp = BigInteger.ZERO;
+        int k = 0;
+        for (int j = 0; j < n; j++) {
+            DecryptionShareProof p = proofs[j];
+            if (p == null || !wellFormed(group, pks[j], W[j], p))
+                return false;
+            BigInteger c = shareChallenge(pks[j], u, W[j], p.a1, p.a2);
+            BigInteger d1 = Randomness.randomBits(BATCH_WEIGHT_BITS), d2 = Randomness.randomBits(BATCH_WEIGHT_BITS);
+            gExp = gExp.add(d1.multiply(p.z));
+            uExp = uExp.add(d2.multiply(p.z));
+
+            bases[k] = p.a1;      exponents[k++] = d1;
+            bases[k] = pks[j].h;  exponents[k++] = d1.multiply(c);
+            bases[k] = p.a2;      exponents[k++] = d2;
+            bases[k] = W[j];      exponents[k++] = d2.multiply(c);
+        }
+        BigInteger left = group.multiply(group.exp(pks[0].params.g, gExp.mod(q)), group.exp(u, uExp.mod(q)));
+        return left.equals(group.multiExp(bases, exponents));
+    }
+
+    /**
+     * Verify the decryption contributes of many authorities: the batch is checked at once and the
+     * contributes are verified one by one only if the batch fails
+     *
+     * @return the validity of each contribute
+     */
+    public static boolean[] VerifyDecryptionShares(ElGamalPK[] pks, BigInteger u, BigInteger[] W, DecryptionShareProof[] proofs) {
+        boolean[] valid = new boolean[pks.length];
+        if (BatchVerifyDecryptionShares(pks, u, W, proofs)) {
+            Arrays.fill(valid, true);
+        } else {
+            for (int j = 0; j < pks.length; j++) {
+                valid[j] = proofs[j] != null && VerifyDecryptionShare(pks[j], u, W[j], proofs[j]);
+            }
+        }
+        return valid;
+    }
+
+    private static boolean wellFormed(Group group, ElGamalPK pkj, BigInteger wj, DecryptionShareProof p) {
+        if (p.z.signum() < 0 || p.z.compareTo(group.getOrder()) >= 0)
+            return false;
+        if (p.hj != null && !p.hj.equals(pkj.h)) // made with the key of another authority
+            return false;
+        for (BigInteger e : new BigInteger[]{pkj.h, wj, p.a1, p.a2}) {
+            if (!group.isElement(e))
+                return false;
+        }
+        return true;
+    }
+
+    private static BigInteger shareChallenge(ElGamalPK pkj, BigInteger u, BigInteger wj, BigInteger a1, BigInteger a2) {
+        return hash(SHARE_DOMAIN, pkj.params.group.getOrder(), pkj.params.g, pkj.h, u, wj, a1, a2);
+    }
+
+    /**
+     * @return C / g^m
+     */
+    private static BigInteger shift(Group group, BigInteger g, BigInteger C, BigInteger m) {
+        return m.signum() == 0 ? C : group.multiply(C, group.inverse(group.exp(g, m)));
+    }
+
+    /**
+     * The small exponents batch test is sound only if all the values are in the prime order group
+     */
+    private static boolean wellFormed(Group group, BigInteger[] messages, ElGamalCT ct, VoteProof p) {
+        if (p.branches() != messages.length)
+            return false;
+        BigInteger q = group.getOrder();
+        for (int j = 0; j < messages.length; j++) {
+            for (BigInteger s : new BigInteger[]{p.c[j], p.z[j]}) {
+                if (s.signum() < 0 || s.compareTo(q) >= 0)
+                    return false;
+            }
+            if (!group.isElement(p.A[j]) || !group.isElement(p.B[j]))
+                return false;
+        }
+        return group.isElement(ct.C) && group.isElement(ct.C2);
+    }
+
+    private static boolean challengeMatches(ElGamalPK pk, BigInteger voter, ElGamalCT ct, VoteProof p) {
+        BigInteger q = pk.params.group.getOrder();
+        BigInteger sum = BigInteger.ZERO;
+        for (BigInteger cj : p.c) {
+            sum = sum.add(cj);
+        }
+        return sum.mod(q).equals(voteChallenge(pk, voter, ct, p.A, p.B));
+    }
+
+    /**
+     * The challenge hashes the key, the voter, the ciphertext and the commitments A0, B0, A1, B1, ...
+     */
+    private static BigInteger voteChallenge(ElGamalPK pk, BigInteger voter, ElGamalCT ct, BigInteger[] A, BigInteger[] B) {
+        BigInteger[] values = new BigInteger[5 + 2 * A.length];
+        values[0] = pk.params.g;
+        values[1] = pk.h;
+        values[2] = voter;
+        values[3] = ct.C;
+        values[4] = ct.C2;
+        for (int j = 0; j < A.length; j++) {
+            values[5 + 2 * j] = A[j];
+            values[6 + 2 * j] = B[j];
+        }
+        return hash(VOTE_DOMAIN, pk.params.group.getOrder(), values);
+    }
+
+    /**
+     * Fiat-Shamir challenge: SHA-256 of the domain and of the length prefixed values, reduced modulo q
+     */
+    static BigInteger hash(String domain, BigInteger q, BigInteger... values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(domain.getBytes(StandardCharsets.UTF_8));
+            for (BigInteger v : values) {
+                byte[] bytes = v.toByteArray();
+                digest.update(new byte[]{(byte) (bytes.length >>> 8), (byte) bytes.length});
+                digest.update(bytes);
+            }
+            return new BigInteger(1, digest.digest()).mod(q);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
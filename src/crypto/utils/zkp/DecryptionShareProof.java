@@ -0,0 +1,46 @@
+package crypto.utils.zkp;
+
+import java.math.BigInteger;
+
+/**
+ * A Chaum-Pedersen proof that a decryption contribute wj = u^sj uses the same secret sj as the
+ * public key hj = g^sj of the authority. The challenge c = H(g, hj, u, wj, a1, a2) is recomputed by the verifier.
+ * The proof names hj, so an auditor reading the published contribute can verify it without the keys
+ * of the authorities; the verifier still checks it against the key it expects.
+ */
+public class DecryptionShareProof {
+    public final BigInteger a1, a2; // commitments g^w and u^w
+    public final BigInteger z; // response w + c*sj
+    public final BigInteger hj; // public key of the authority, null in proofs that do not name it
+
+    public DecryptionShareProof(BigInteger a1, BigInteger a2, BigInteger z, BigInteger hj) {
+        this.a1 = a1;
+        this.a2 = a2;
+        this.z = z;
+        this.hj = hj;
+    }
+
+    public DecryptionShareProof(BigInteger a1, BigInteger a2, BigInteger z) {
+        this(a1, a2, z, null);
+    }
+
+    /**
+     * Construct a proof from its string representation
+     * @param proof string in the format {a1=..;a2=..;z=..;hj=..}, hj is optional
+     * @throws IllegalArgumentException if the string is not a proof
+     */
+    public DecryptionShareProof(String proof) {
+        String[] splits = proof.split("([;=}])");
+        if (!proof.startsWith("{a1=") || splits.length < 6)
+            throw new IllegalArgumentException("not a decryption share proof");
+        this.a1 = new BigInteger(splits[1]);
+        this.a2 = new BigInteger(splits[3]);
+        this.z = new BigInteger(splits[5]);
+        this.hj = splits.length >= 8 && splits[6].equals("hj") ? new BigInteger(splits[7]) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "{a1=" + a1 + ";a2=" + a2 + ";z=" + z + (hj == null ? "" : ";hj=" + hj) + '}';
+    }
+}
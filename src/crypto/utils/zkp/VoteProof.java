@@ -0,0 +1,80 @@
+package crypto.utils.zkp;
+
+import java.math.BigInteger;
+
+/**
+ * A disjunctive Chaum-Pedersen proof that an exponential ElGamal ciphertext encrypts one of the
+ * valid plaintexts m0..mk-1 of a ballot (0 or 1 for a yes/no election).
+ * (Aj,Bj,cj,zj) is the transcript of the branch "m = mj": one of them is real and the others
+ * simulated, and the sum of the cj is the Fiat-Shamir challenge.
+ */
+public class VoteProof {
+    public final BigInteger[] A, B; // commitments
+    public final BigInteger[] c; // challenges of the branches
+    public final BigInteger[] z; // responses of the branches
+
+    public VoteProof(BigInteger[] A, BigInteger[] B, BigInteger[] c, BigInteger[] z) {
+        if (A.length < 2 || B.length != A.length || c.length != A.length || z.length != A.length)
+            throw new IllegalArgumentException("a vote proof needs the same number (at least 2) of commitments, challenges and responses");
+        this.A = A;
+        this.B = B;
+        this.c = c;
+        this.z = z;
+    }
+
+    public VoteProof(BigInteger A0, BigInteger B0, BigInteger A1, BigInteger B1,
+                     BigInteger c0, BigInteger c1, BigInteger z0, BigInteger z1) {
+        this(new BigInteger[]{A0, A1}, new BigInteger[]{B0, B1}, new BigInteger[]{c0, c1}, new BigInteger[]{z0, z1});
+    }
+
+    /**
+     * Construct a proof from its string representation
+     * @param proof string in the format {A0=..;B0=..;A1=..;B1=..;...;c0=..;c1=..;...;z0=..;z1=..;...}
+     * @throws IllegalArgumentException if the string is not a proof
+     */
+    public VoteProof(String proof) {
+        String[] splits = proof.split("([;=}])");
+        if (!proof.startsWith("{A0=") || splits.length < 16 || splits.length % 8 != 0)
+            throw new IllegalArgumentException("not a vote proof");
+        int k = splits.length / 8;
+        this.A = new BigInteger[k];
+        this.B = new BigInteger[k];
+        this.c = new BigInteger[k];
+        this.z = new BigInteger[k];
+        for (int j = 0; j < k; j++) {
+            A[j] = field(splits, 4 * j, "A" + j);
+            B[j] = field(splits, 4 * j + 2, "B" + j);
+            c[j] = field(splits, 4 * k + 2 * j, "c" + j);
+            z[j] = field(splits, 6 * k + 2 * j, "z" + j);
+        }
+    }
+
+    /**
+     * @return the number of branches, that is of valid plaintexts
+     */
+    public int branches() {
+        return A.length;
+    }
+
+    private static BigInteger field(String[] splits, int i, String name) {
+        String key = i == 0 ? splits[0].substring(1) : splits[i];
+        if (!key.equals(name))
+            throw new IllegalArgumentException("not a vote proof, expected " + name);
+        return new BigInteger(splits[i + 1]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int j = 0; j < A.length; j++) {
+            sb.append('A').append(j).append('=').append(A[j]).append(";B").append(j).append('=').append(B[j]).append(';');
+        }
+        for (int j = 0; j < c.length; j++) {
+            sb.append('c').append(j).append('=').append(c[j]).append(';');
+        }
+        for (int j = 0; j < z.length; j++) {
+            sb.append('z').append(j).append('=').append(z[j]).append(j == z.length - 1 ? '}' : ';');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,48 @@
+import VoteChain.ShardedVoteChainTest;
+import VoteChain.VoteChainSnapshotTest;
+import VoteChain.events.ChainEventPublisherTest;
+import VoteChain.hosting.ElectionHostTest;
+import VoteChain.replication.ReplicatedNodeTest;
+import VoteChain.scheduler.ChainSchedulerTest;
+import crypto.utils.UtilsTest;
+import crypto.utils.arithmetic.ModArithmeticTest;
+import crypto.utils.group.EllipticCurveGroupTest;
+import crypto.utils.random.DeterministicNonceTest;
+import crypto.utils.thresholdElGamal.DiscreteLogTest;
+import crypto.utils.zkp.ChaumPedersenTest;
+import testutil.TestRunner;
+
+import java.util.List;
+
+/**
+ * Runs all the tests. They need nothing but the JDK:
+ * <pre>
+ * javac -d out $(find src test -name '*.java')
+ * java -cp out AllTests
+ * </pre>
+ * Each test class can also be run alone through its main method.
+ */
+public class AllTests {
+
+    public static void main(String[] args) {
+        List<TestRunner> tests = List.of(
+                ModArithmeticTest.tests(),
+                UtilsTest.tests(),
+                DeterministicNonceTest.tests(),
+                EllipticCurveGroupTest.tests(),
+                ChaumPedersenTest.tests(),
+                DiscreteLogTest.tests(),
+                ChainSchedulerTest.tests(),
+                ElectionHostTest.tests(),
+                ShardedVoteChainTest.tests(),
+                VoteChainSnapshotTest.tests(),
+                ReplicatedNodeTest.tests(),
+                ChainEventPublisherTest.tests());
+        int failed = 0;
+        for (TestRunner runner : tests) {
+            failed += runner.run();
+        }
+        System.out.println(failed == 0 ? "All tests passed" : failed + " tests failed");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,175 @@
+package VoteChain;
+
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.Utils;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import testutil.TestElection;
+import testutil.TestRunner;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Tests of an election split among shards, with the ballots submitted from many threads
+ */
+public class ShardedVoteChainTest {
+
+    private static final int VOTERS = 30, SHARDS = 3, THREADS = 4;
+    private static TestElection election;
+
+    public static TestRunner tests() {
+        return new TestRunner("ShardedVoteChainTest")
+                .add("setup", () -> election = new TestElection(VOTERS, 2))
+                .add("partition", ShardedVoteChainTest::partition)
+                .add("concurrentBallots", ShardedVoteChainTest::concurrentBallots)
+                .add("stopRacingBallots", ShardedVoteChainTest::stopRacingBallots);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    private static ShardedVoteChain open() throws Exception {
+        Path directory = Files.createTempDirectory("sharded");
+        ShardedVoteChain sharded = new ShardedVoteChain(directory.resolve("VotingBlockchain.txt").toString(), SHARDS);
+        sharded.setBallotEncoding(election.encoding, election.pkA);
+        Utils.Pair<SchnorrPK, SchnorrSig> genesis = election.sign(election.pkA.getH().toString());
+        sharded.insertGenesisBlock(election.pkA, genesis.t, genesis.u);
+        List<List<BigInteger>> partition = sharded.partition(election.voterKeys);
+        for (int i = 0; i < SHARDS; i++) {
+            Utils.Pair<SchnorrPK, SchnorrSig> registry = election.sign(partition.get(i).toString());
+            sharded.insertPKTransactions(i, registry.t, registry.u, partition.get(i));
+        }
+        Utils.Pair<SchnorrPK, SchnorrSig> start = election.sign(VoteChain.START_VOTING_MESSAGE);
+        sharded.insertStartTransaction(start.t, start.u, VoteChain.START_VOTING_MESSAGE);
+        return sharded;
+    }
+
+    private static void stop(ShardedVoteChain sharded, Utils.Pair<SchnorrPK, SchnorrSig> stop) throws Exception {
+        sharded.insertStopTransaction(stop.t, stop.u, VoteChain.STOP_VOTING_MESSAGE);
+    }
+
+    private static long[] tally(ShardedVoteChain sharded) throws Exception {
+        ElGamalCT total = sharded.countVotes(election.pkA);
+        BigInteger[] W = new BigInteger[TestElection.AUTHORITIES];
+        for (int j = 0; j < W.length; j++) {
+            W[j] = election.authorities.get(j).computeWj(total, election.pkA);
+        }
+        return sharded.decodeTally(election.pkA, sharded.decryptVotes(election.pkA, total, W));
+    }
+
+    private static void partition() throws Exception {
+        ShardedVoteChain sharded = new ShardedVoteChain(Files.createTempDirectory("sharded").resolve("p.txt").toString(), SHARDS);
+        try {
+            List<List<BigInteger>> partition = sharded.partition(election.voterKeys);
+            int voters = 0;
+            for (int i = 0; i < SHARDS; i++) {
+                for (BigInteger key : partition.get(i)) {
+                    assertEquals(i, sharded.shardOf(key), "shard of a voter of partition " + i);
+                    assertTrue(sharded.getShardOf(key) == sharded.getShard(i), "chain of the shard");
+                }
+                voters += partition.get(i).size();
+            }
+            assertEquals(VOTERS, voters, "every voter in one partition");
+        } finally {
+            sharded.close();
+        }
+    }
+
+    /**
+     * The ballots are appended from many threads, one at a time and in batches, and the merged tally
+     * counts each of them once
+     */
+    private static void concurrentBallots() throws Exception {
+        ShardedVoteChain sharded = open();
+        ExecutorService submitters = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Ballot> ballots = election.ballots();
+            List<Future<Integer>> accepted = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                accepted.add(submitters.submit(() -> {
+                    List<Ballot> mine = new ArrayList<>();
+                    for (int i = thread; i < ballots.size(); i += THREADS) {
+                        mine.add(ballots.get(i));
+                    }
+                    if (thread % 2 == 0)
+                        return sharded.insertVoteTransactions(election.pkA, mine);
+                    int n = 0;
+                    for (Ballot b : mine) {
+                        n += sharded.insertVoteTransaction(election.pkA, b.pkSig, b.sig, b.encrVote, b.proof) ? 1 : 0;
+                    }
+                    return n;
+                }));
+            }
+            int total = 0;
+            for (Future<Integer> f : accepted) {
+                total += f.get(60, TimeUnit.SECONDS);
+            }
+            assertEquals(VOTERS, total, "accepted ballots");
+            stop(sharded, election.sign(VoteChain.STOP_VOTING_MESSAGE));
+            assertEquals((long) VOTERS, sharded.getCountedBallots(), "counted ballots");
+            assertEquals(Arrays.toString(election.expected(VOTERS)), Arrays.toString(tally(sharded)), "merged tally");
+        } finally {
+            submitters.shutdown();
+            sharded.close();
+        }
+    }
+
+    /**
+     * The stop of the voting races with the ballots: every ballot reported as accepted is counted,
+     * and the rejected ones are not
+     */
+    private static void stopRacingBallots() throws Exception {
+        ShardedVoteChain sharded = open();
+        ExecutorService submitters = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Ballot> ballots = election.ballots();
+            Utils.Pair<SchnorrPK, SchnorrSig> stop = election.sign(VoteChain.STOP_VOTING_MESSAGE);
+            AtomicInteger next = new AtomicInteger();
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(submitters.submit(() -> {
+                    long[] votes = new long[election.encoding.getCandidates()];
+                    for (int i; (i = next.getAndIncrement()) < ballots.size(); ) {
+                        Ballot b = ballots.get(i);
+                        if (sharded.insertVoteTransaction(election.pkA, b.pkSig, b.sig, b.encrVote, b.proof))
+                            votes[i % votes.length]++;
+                    }
+                    return votes;
+                }));
+            }
+            while (next.get() < VOTERS / 3) {
+                Thread.sleep(1);
+            }
+            stop(sharded, stop);
+            long[] expected = new long[election.encoding.getCandidates()];
+            long accepted = 0;
+            for (Future<long[]> f : results) {
+                long[] votes = f.get(60, TimeUnit.SECONDS);
+                for (int c = 0; c < votes.length; c++) {
+                    expected[c] += votes[c];
+                    accepted += votes[c];
+                }
+            }
+            assertEquals(accepted, sharded.getCountedBallots(), "counted ballots");
+            assertEquals(Arrays.toString(expected), Arrays.toString(tally(sharded)), "merged tally of the accepted ballots");
+        } finally {
+            submitters.shutdown();
+            sharded.close();
+        }
+    }
+}
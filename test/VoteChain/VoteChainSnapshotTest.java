@@ -0,0 +1,67 @@
+package VoteChain;
+
+import testutil.TestElection;
+import testutil.TestRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertThrows;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Tests of the restart of a chain from its snapshots
+ */
+public class VoteChainSnapshotTest {
+
+    private static final int VOTERS = 10, INTERVAL = 4;
+    private static TestElection election;
+
+    public static TestRunner tests() {
+        return new TestRunner("VoteChainSnapshotTest")
+                .add("setup", () -> election = new TestElection(VOTERS, 3))
+                .add("invalidInterval", VoteChainSnapshotTest::invalidInterval)
+                .add("restore", VoteChainSnapshotTest::restore);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    private static void invalidInterval() throws Exception {
+        VoteChain chain = new VoteChain(Files.createTempDirectory("snapshots").resolve("i.txt").toString());
+        Path directory = Files.createTempDirectory("snapshots");
+        assertThrows(IllegalArgumentException.class, () -> chain.enableSnapshots(directory, 0), "interval 0");
+        assertThrows(IllegalArgumentException.class, () -> chain.enableSnapshots(directory, -1), "negative interval");
+    }
+
+    /**
+     * The chain is restored from a snapshot of its last block, with no block to replay, and goes on
+     * with the ballot encoding and the last block of the snapshot
+     */
+    private static void restore() throws Exception {
+        Path directory = Files.createTempDirectory("snapshots");
+        String file = directory.resolve("VotingBlockchain.txt").toString();
+        VoteChain chain = new VoteChain(file);
+        chain.enableSnapshots(directory.resolve("snapshots"), INTERVAL);
+        election.open(chain);
+        List<Ballot> ballots = election.ballots();
+        for (Ballot b : ballots.subList(0, VOTERS - 1)) {
+            assertTrue(chain.insertVoteTransaction(election.pkA, b.pkSig, b.sig, b.encrVote, b.proof), "ballot accepted");
+        }
+        chain.closeSnapshots();
+        assertEquals(0L, chain.getHeight() % INTERVAL, "snapshot at the last block");
+
+        VoteChain restored = VoteChain.restore(file, directory.resolve("snapshots"));
+        assertEquals(chain.getHeight(), restored.getHeight(), "height");
+        assertEquals(chain.getLastBlock().getHash(), restored.getLastBlock().getHash(), "last block");
+        assertEquals(election.encoding.toString(), restored.getBallotEncoding().toString(), "ballot encoding");
+
+        Ballot last = ballots.get(VOTERS - 1);
+        assertTrue(restored.insertVoteTransaction(election.pkA, last.pkSig, last.sig, last.encrVote, last.proof), "ballot after the restart");
+        assertEquals(Arrays.toString(election.expected(VOTERS)), Arrays.toString(election.tally(restored)), "tally");
+    }
+}
@@ -0,0 +1,200 @@
+package VoteChain.events;
+
+import VoteChain.Ballot;
+import VoteChain.VoteChain;
+import testutil.TestElection;
+import testutil.TestRunner;
+
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Tests of the delivery of the chain events: order, resumption from the chain file, back pressure and completion
+ */
+public class ChainEventPublisherTest {
+
+    private static final int VOTERS = 10;
+    private static TestElection election;
+    private static List<Ballot> ballots;
+
+    public static TestRunner tests() {
+        return new TestRunner("ChainEventPublisherTest")
+                .add("setup", () -> {
+                    election = new TestElection(VOTERS, 2);
+                    ballots = election.ballots();
+                })
+                .add("liveEventsInOrder", ChainEventPublisherTest::liveEventsInOrder)
+                .add("resumeFromTheChainFile", ChainEventPublisherTest::resumeFromTheChainFile)
+                .add("demand", ChainEventPublisherTest::demand)
+                .add("dropOnOverflow", ChainEventPublisherTest::dropOnOverflow)
+                .add("closeCompletesAfterTheBufferedEvents", ChainEventPublisherTest::closeCompletesAfterTheBufferedEvents);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    /**
+     * Collects the events, requesting a given number of them at subscription
+     */
+    private static class Collector implements Flow.Subscriber<ChainEvent> {
+        final List<ChainEvent> events = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch completed = new CountDownLatch(1);
+        final long initialRequest;
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        Collector(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0)
+                subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(ChainEvent item) {
+            assertTrue(item != null, "null event delivered");
+            events.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        boolean await(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (events.size() < count) {
+                if (System.nanoTime() > deadline)
+                    return false;
+                Thread.sleep(5);
+            }
+            return true;
+        }
+
+        void assertHeights(long from, long to) {
+            assertEquals(null, error, "error delivered");
+            assertEquals(to - from, (long) events.size(), "events delivered");
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(from + i, events.get(i).height, "height of event " + i);
+            }
+        }
+    }
+
+    private static VoteChain chain() throws Exception {
+        return new VoteChain(Files.createTempDirectory("events").resolve("chain.txt").toString());
+    }
+
+    private static void vote(VoteChain chain, int from, int to) throws Exception {
+        for (Ballot b : ballots.subList(from, to)) {
+            assertTrue(chain.insertVoteTransaction(election.pkA, b.pkSig, b.sig, b.encrVote, b.proof), "ballot accepted");
+        }
+    }
+
+    private static void liveEventsInOrder() throws Exception {
+        VoteChain chain = chain();
+        Collector collector = new Collector(Long.MAX_VALUE);
+        chain.getEventPublisher().subscribe(collector, -1, ChainEventPublisher.DEFAULT_CAPACITY, ChainEventPublisher.Overflow.BLOCK);
+        election.open(chain);
+        vote(chain, 0, VOTERS);
+        assertTrue(collector.await((int) chain.getHeight()), "all the blocks published");
+        collector.assertHeights(0, chain.getHeight());
+        assertEquals(ChainEvent.Kind.REGISTRATION, collector.events.get(1).kind, "kind of the registration");
+        assertEquals(ChainEvent.Kind.VOTING_STARTED, collector.events.get(2).kind, "kind of the start");
+        assertEquals(ChainEvent.Kind.BALLOT, collector.events.get(3).kind, "kind of a ballot");
+        for (int i = 1; i < collector.events.size(); i++) {
+            assertEquals(collector.events.get(i - 1).hash, collector.events.get(i).previousHash, "link of event " + i);
+        }
+    }
+
+    /**
+     * The blocks appended before the publisher existed are read from the chain file, then the subscriber
+     * goes on with the live events
+     */
+    private static void resumeFromTheChainFile() throws Exception {
+        VoteChain chain = chain();
+        election.open(chain);
+        vote(chain, 0, VOTERS / 2);
+        long before = chain.getHeight();
+        Collector collector = new Collector(Long.MAX_VALUE);
+        chain.getEventPublisher().subscribe(collector, 0, ChainEventPublisher.DEFAULT_CAPACITY, ChainEventPublisher.Overflow.DROP);
+        vote(chain, VOTERS / 2, VOTERS);
+        assertTrue(chain.getHeight() > before, "blocks appended after the subscription");
+        assertTrue(collector.await((int) chain.getHeight()), "history and live events");
+        collector.assertHeights(0, chain.getHeight());
+
+        Collector late = new Collector(Long.MAX_VALUE);
+        chain.getEventPublisher().subscribe(late, 2, ChainEventPublisher.DEFAULT_CAPACITY, ChainEventPublisher.Overflow.DROP);
+        assertTrue(late.await((int) chain.getHeight() - 2), "history from height 2");
+        late.assertHeights(2, chain.getHeight());
+    }
+
+    private static void demand() throws Exception {
+        VoteChain chain = chain();
+        election.open(chain);
+        Collector collector = new Collector(0);
+        chain.getEventPublisher().subscribe(collector, 0, ChainEventPublisher.DEFAULT_CAPACITY, ChainEventPublisher.Overflow.BLOCK);
+        Thread.sleep(50);
+        assertEquals(0, collector.events.size(), "no event without demand");
+        collector.subscription.request(2);
+        assertTrue(collector.await(2), "two events requested");
+        Thread.sleep(50);
+        assertEquals(2, collector.events.size(), "no more than the demand");
+        collector.subscription.request(1);
+        assertTrue(collector.await(3), "third event requested");
+        collector.assertHeights(0, 3);
+    }
+
+    private static void dropOnOverflow() throws Exception {
+        VoteChain chain = chain();
+        ChainEventPublisher publisher = chain.getEventPublisher();
+        Collector collector = new Collector(0);
+        publisher.subscribe(collector, -1, 2, ChainEventPublisher.Overflow.DROP);
+        election.open(chain);
+        vote(chain, 0, 3);
+        ChainEventPublisher.EventSubscription subscription = (ChainEventPublisher.EventSubscription) collector.subscription;
+        assertEquals(chain.getHeight() - 2, subscription.getDropped(), "events beyond the buffer dropped");
+        subscription.request(Long.MAX_VALUE);
+        assertTrue(collector.await(2), "buffered events delivered");
+        collector.assertHeights(0, 2);
+        vote(chain, 3, 4);
+        assertTrue(collector.await(3), "live events after the gap");
+        assertEquals(chain.getHeight() - 1, collector.events.get(2).height, "the next event follows the gap");
+    }
+
+    private static void closeCompletesAfterTheBufferedEvents() throws Exception {
+        VoteChain chain = chain();
+        ChainEventPublisher publisher = chain.getEventPublisher();
+        Collector collector = new Collector(0);
+        publisher.subscribe(collector, -1, ChainEventPublisher.DEFAULT_CAPACITY, ChainEventPublisher.Overflow.BLOCK);
+        election.open(chain);
+        publisher.close();
+        assertEquals(1L, collector.completed.getCount(), "not completed before the buffered events are requested");
+        collector.subscription.request(Long.MAX_VALUE);
+        assertTrue(collector.completed.await(30, TimeUnit.SECONDS), "completed");
+        collector.assertHeights(0, chain.getHeight());
+
+        Collector afterClose = new Collector(Long.MAX_VALUE);
+        publisher.subscribe(afterClose);
+        assertTrue(afterClose.completed.await(30, TimeUnit.SECONDS), "a subscriber after close is completed at once");
+        assertEquals(0, afterClose.events.size(), "no event after close");
+    }
+}
@@ -0,0 +1,150 @@
+package VoteChain.hosting;
+
+import VoteChain.Ballot;
+import testutil.TestElection;
+import testutil.TestRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertFalse;
+import static testutil.Assert.assertThrows;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Tests of the verification and append of the ballots of elections hosted together
+ */
+public class ElectionHostTest {
+
+    private static final int VOTERS = 24;
+    private static TestElection election;
+
+    public static TestRunner tests() {
+        return new TestRunner("ElectionHostTest")
+                .add("setup", () -> election = new TestElection(VOTERS, 3))
+                .add("ballotsOfTwoElections", ElectionHostTest::ballotsOfTwoElections)
+                .add("malformedBallotDoesNotStopTheVerifier", ElectionHostTest::malformedBallotDoesNotStopTheVerifier)
+                .add("quota", ElectionHostTest::quota)
+                .add("submitAfterClose", ElectionHostTest::submitAfterClose);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    private static ElectionHost.Election open(ElectionHost host, String id, int quota) throws Exception {
+        ElectionHost.Election hosted = host.createElection(id, election.pkA, election.encoding, quota);
+        host.append(hosted, chain -> {
+            election.open(chain);
+            return null;
+        }).get(30, TimeUnit.SECONDS);
+        return hosted;
+    }
+
+    private static void ballotsOfTwoElections() throws Exception {
+        Path directory = Files.createTempDirectory("election-host");
+        ElectionHost host = new ElectionHost(directory, 2);
+        try {
+            ElectionHost.Election first = open(host, "first", ElectionHost.DEFAULT_QUOTA);
+            ElectionHost.Election second = open(host, "second", ElectionHost.DEFAULT_QUOTA);
+            List<Ballot> ballots = election.ballots();
+            List<CompletableFuture<Boolean>> results = new ArrayList<>();
+            for (Ballot ballot : ballots) {
+                results.add(host.submit(first, ballot));
+            }
+            for (Ballot ballot : ballots.subList(0, VOTERS / 2)) {
+                results.add(host.submit(second, ballot));
+            }
+            for (CompletableFuture<Boolean> result : results) {
+                assertTrue(result.get(60, TimeUnit.SECONDS), "valid ballot appended");
+            }
+            // a second ballot of the same voter is rejected
+            assertFalse(host.submit(first, election.ballot(0, 1)).get(30, TimeUnit.SECONDS), "second ballot of a voter");
+            assertEquals((long) VOTERS, first.getAccepted(), "accepted by the first election");
+            assertEquals(1L, first.getRejected(), "rejected by the first election");
+            assertEquals((long) VOTERS / 2, second.getAccepted(), "accepted by the second election");
+
+            long[] firstTally = host.append(first, election::tally).get(30, TimeUnit.SECONDS);
+            long[] secondTally = host.append(second, election::tally).get(30, TimeUnit.SECONDS);
+            assertEquals(Arrays.toString(election.expected(VOTERS)), Arrays.toString(firstTally), "tally of the first election");
+            assertEquals(Arrays.toString(election.expected(VOTERS / 2)), Arrays.toString(secondTally), "tally of the second election");
+        } finally {
+            host.close();
+        }
+    }
+
+    private static void malformedBallotDoesNotStopTheVerifier() throws Exception {
+        Path directory = Files.createTempDirectory("election-host");
+        ElectionHost host = new ElectionHost(directory, 1);
+        try {
+            ElectionHost.Election hosted = open(host, "malformed", ElectionHost.DEFAULT_QUOTA);
+            Ballot valid = election.ballot(3, 0);
+            Ballot malformed = new Ballot(null, valid.sig, valid.encrVote, valid.proof); // no voter key
+            for (int i = 0; i < 2; i++) {
+                CompletableFuture<Boolean> failed = host.submit(hosted, malformed);
+                assertThrows(ExecutionException.class, () -> failed.get(30, TimeUnit.SECONDS), "malformed ballot " + i);
+            }
+            assertTrue(host.submit(hosted, valid).get(30, TimeUnit.SECONDS), "the single verifier is still running");
+            assertTrue(hosted.toString().contains("pending=0"), "no ballot left pending: " + hosted);
+        } finally {
+            host.close();
+        }
+    }
+
+    private static void quota() throws Exception {
+        Path directory = Files.createTempDirectory("election-host");
+        ElectionHost host = new ElectionHost(directory, 1);
+        try {
+            int quota = 4;
+            ElectionHost.Election hosted = open(host, "quota", quota);
+            // the block writer is held, so no ballot leaves the quota until the gate opens
+            CountDownLatch gate = new CountDownLatch(1);
+            CompletableFuture<Object> held = host.append(hosted, chain -> {
+                gate.await();
+                return null;
+            });
+            List<CompletableFuture<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < quota + 3; i++) {
+                results.add(host.submit(hosted, election.ballot(i, 0)));
+            }
+            assertEquals(3L, hosted.getOverQuota(), "ballots over the quota");
+            gate.countDown();
+            held.get(30, TimeUnit.SECONDS);
+            for (int i = 0; i < results.size(); i++) {
+                if (i < quota) {
+                    assertTrue(results.get(i).get(30, TimeUnit.SECONDS), "ballot " + i + " within the quota");
+                } else {
+                    CompletableFuture<Boolean> refused = results.get(i);
+                    ExecutionException e = assertThrows(ExecutionException.class, refused::get, "ballot " + i + " over the quota");
+                    assertTrue(e.getCause() instanceof RejectedExecutionException, "refused with a RejectedExecutionException");
+                }
+            }
+            // the slots are free again once the ballots are appended
+            assertTrue(host.submit(hosted, election.ballot(quota, 0)).get(30, TimeUnit.SECONDS), "ballot after the quota is freed");
+        } finally {
+            host.close();
+        }
+    }
+
+    private static void submitAfterClose() throws Exception {
+        Path directory = Files.createTempDirectory("election-host");
+        ElectionHost host = new ElectionHost(directory, 1);
+        ElectionHost.Election hosted = open(host, "closed", ElectionHost.DEFAULT_QUOTA);
+        host.close();
+        CompletableFuture<Boolean> late = host.submit(hosted, election.ballot(0, 0));
+        ExecutionException e = assertThrows(ExecutionException.class, late::get, "ballot after close");
+        assertTrue(e.getCause() instanceof RejectedExecutionException, "rejected after close");
+        CompletableFuture<Object> action = host.append(hosted, chain -> null);
+        assertThrows(ExecutionException.class, action::get, "action after close");
+        assertTrue(hosted.toString().contains("pending=0"), "the refused ballot is not pending: " + hosted);
+    }
+}
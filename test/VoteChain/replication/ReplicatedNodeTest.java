@@ -0,0 +1,167 @@
+package VoteChain.replication;
+
+import VoteChain.Ballot;
+import VoteChain.VoteChain;
+import testutil.TestElection;
+import testutil.TestRunner;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertThrows;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Tests of the replication of a chain from the leader to its followers
+ */
+public class ReplicatedNodeTest {
+
+    private static final int NODES = 3, VOTERS = 40;
+    private static TestElection election;
+
+    public static TestRunner tests() {
+        return new TestRunner("ReplicatedNodeTest")
+                .add("setup", () -> election = new TestElection(VOTERS, 2))
+                .add("followersCopyTheLeader", ReplicatedNodeTest::followersCopyTheLeader)
+                .add("lostAppendsAreSentAgain", ReplicatedNodeTest::lostAppendsAreSentAgain)
+                .add("onlyTheLeaderTakesVotes", ReplicatedNodeTest::onlyTheLeaderTakesVotes);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    /**
+     * Drops the first APPEND messages to a node without telling the sender, as a lossy network would
+     */
+    private static class LossyTransport implements Transport {
+        private final Transport transport;
+        private final int lossyNode;
+        private final AtomicInteger drops;
+
+        LossyTransport(Transport transport, int lossyNode, int drops) {
+            this.transport = transport;
+            this.lossyNode = lossyNode;
+            this.drops = new AtomicInteger(drops);
+        }
+
+        @Override
+        public void send(int to, ReplicationMessage message) throws IOException {
+            if (to == lossyNode && message.type == ReplicationMessage.Type.APPEND && drops.getAndDecrement() > 0)
+                return;
+            transport.send(to, message);
+        }
+
+        @Override
+        public ReplicationMessage receive() throws InterruptedException {
+            return transport.receive();
+        }
+
+        @Override
+        public void close() throws IOException {
+            transport.close();
+        }
+    }
+
+    private static List<VoteChain> chains(Path directory) {
+        List<VoteChain> chains = new ArrayList<>(NODES);
+        for (int i = 0; i < NODES; i++) {
+            chains.add(new VoteChain(file(directory, i).toString()));
+        }
+        return chains;
+    }
+
+    private static Path file(Path directory, int node) {
+        return directory.resolve("node" + node + ".txt");
+    }
+
+    private static boolean sameBlocks(Path directory, int follower) throws IOException {
+        return Files.readString(file(directory, 0)).equals(Files.readString(file(directory, follower)));
+    }
+
+    private static boolean awaitHeight(VoteChain chain, long height) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (chain.getHeight() < height) {
+            if (System.nanoTime() > deadline)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static void close(ReplicatedNode[] nodes) throws IOException {
+        for (ReplicatedNode node : nodes) {
+            node.close();
+        }
+    }
+
+    private static void followersCopyTheLeader() throws Exception {
+        Path directory = Files.createTempDirectory("replication");
+        List<VoteChain> chains = chains(directory);
+        ReplicatedNode[] nodes = ReplicatedNode.inMemoryCluster(chains);
+        try {
+            VoteChain leader = chains.get(0);
+            election.open(leader);
+            List<Ballot> ballots = election.ballots();
+            int accepted = 0;
+            for (int i = 0; i < ballots.size(); i += 8) {
+                accepted += nodes[0].submitVotes(election.pkA, ballots.subList(i, Math.min(i + 8, ballots.size())), 30, TimeUnit.SECONDS);
+            }
+            assertEquals(VOTERS, accepted, "accepted ballots");
+            assertTrue(nodes[0].getCommitHeight() >= leader.getHeight(), "ballots committed by a majority");
+            for (int i = 1; i < NODES; i++) {
+                assertTrue(awaitHeight(chains.get(i), leader.getHeight()), "follower " + i + " reaches the leader");
+                assertTrue(sameBlocks(directory, i), "follower " + i + " has the same blocks");
+            }
+        } finally {
+            close(nodes);
+        }
+    }
+
+    /**
+     * The APPEND messages lost on the way are sent again once the window of the follower times out
+     */
+    private static void lostAppendsAreSentAgain() throws Exception {
+        Path directory = Files.createTempDirectory("replication");
+        List<VoteChain> chains = chains(directory);
+        InMemoryTransport[] network = InMemoryTransport.network(NODES);
+        ReplicatedNode[] nodes = new ReplicatedNode[NODES];
+        for (int i = 0; i < NODES; i++) {
+            Transport transport = i == 0 ? new LossyTransport(network[0], 1, 10) : network[i];
+            nodes[i] = new ReplicatedNode(i, 0, NODES, chains.get(i), transport, 4, 2, 50);
+        }
+        try {
+            VoteChain leader = chains.get(0);
+            election.open(leader);
+            for (Ballot b : election.ballots()) {
+                leader.insertVoteTransaction(election.pkA, b.pkSig, b.sig, b.encrVote, b.proof);
+            }
+            assertTrue(awaitHeight(chains.get(1), leader.getHeight()), "the lossy follower catches up: "
+                    + chains.get(1).getHeight() + " of " + leader.getHeight());
+            assertTrue(sameBlocks(directory, 1), "the lossy follower has the same blocks");
+            assertTrue(nodes[0].getMetrics().counter("replication.resends").get() > 0, "windows sent again");
+            assertTrue(awaitHeight(chains.get(2), leader.getHeight()), "the other follower is not slowed down");
+        } finally {
+            close(nodes);
+        }
+    }
+
+    private static void onlyTheLeaderTakesVotes() throws Exception {
+        Path directory = Files.createTempDirectory("replication");
+        List<VoteChain> chains = chains(directory);
+        ReplicatedNode[] nodes = ReplicatedNode.inMemoryCluster(chains);
+        try {
+            assertTrue(nodes[0].isLeader() && !nodes[1].isLeader(), "node 0 leads");
+            assertThrows(IllegalStateException.class,
+                    () -> nodes[1].submitVotes(election.pkA, List.of(election.ballot(0, 0)), 1, TimeUnit.SECONDS), "votes sent to a follower");
+        } finally {
+            close(nodes);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package VoteChain.scheduler;
+
+import testutil.TestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertThrows;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Tests of the ordering of the lanes and of the close of the scheduler
+ */
+public class ChainSchedulerTest {
+
+    public static TestRunner tests() {
+        return new TestRunner("ChainSchedulerTest")
+                .add("laneOrderPerChain", ChainSchedulerTest::laneOrderPerChain)
+                .add("failingActionCompletesExceptionally", ChainSchedulerTest::failingActionCompletesExceptionally)
+                .add("closeRunsQueuedActions", ChainSchedulerTest::closeRunsQueuedActions)
+                .add("submitRacingClose", ChainSchedulerTest::submitRacingClose);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    private static CompletableFuture<Object> record(ChainScheduler scheduler, ChainScheduler.Lane lane, Object chain, List<String> order, String name) {
+        return scheduler.submit(lane, chain, () -> {
+            order.add(name);
+            return null;
+        });
+    }
+
+    /**
+     * A lifecycle action runs after the ballots of its chain queued before it, before those queued
+     * after it, and without waiting for the ballots of the other chains
+     */
+    private static void laneOrderPerChain() throws Exception {
+        ChainScheduler scheduler = new ChainScheduler("test-scheduler");
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        Object a = "A", b = "B", c = "C";
+        CountDownLatch gate = new CountDownLatch(1);
+        scheduler.submit(ChainScheduler.Lane.BALLOT, b, () -> {
+            gate.await(); // holds the sequencer until everything is queued
+            order.add("B-first");
+            return null;
+        });
+        for (int i = 0; i < 20; i++) {
+            record(scheduler, ChainScheduler.Lane.BALLOT, b, order, "B" + i);
+            record(scheduler, ChainScheduler.Lane.BALLOT, a, order, "A" + i);
+        }
+        record(scheduler, ChainScheduler.Lane.LIFECYCLE, a, order, "STOP-A");
+        record(scheduler, ChainScheduler.Lane.LIFECYCLE, c, order, "STOP-C");
+        for (int i = 20; i < 25; i++) {
+            record(scheduler, ChainScheduler.Lane.BALLOT, a, order, "A" + i);
+        }
+        gate.countDown();
+        scheduler.close();
+
+        assertEquals(1 + 25 + 20 + 2, order.size(), "actions run");
+        int stopA = order.indexOf("STOP-A");
+        assertTrue(order.indexOf("A19") < stopA, "the ballots of A queued before its stop run first: " + order);
+        assertTrue(order.indexOf("A20") > stopA, "the ballots of A queued after its stop run after it: " + order);
+        assertTrue(order.indexOf("B10") > stopA, "the stop of A does not wait for the ballots of B: " + order);
+        assertTrue(order.indexOf("STOP-C") < order.indexOf("A0"), "the stop of C overtakes all the ballots: " + order);
+        for (int i = 1; i < 25; i++) {
+            assertTrue(order.indexOf("A" + (i - 1)) < order.indexOf("A" + i), "the ballots of A keep their order: " + order);
+        }
+        assertEquals(0, scheduler.getDepth(ChainScheduler.Lane.BALLOT), "ballot lane drained");
+        assertEquals(0, scheduler.getDepth(ChainScheduler.Lane.LIFECYCLE), "lifecycle lane drained");
+    }
+
+    private static void failingActionCompletesExceptionally() throws Exception {
+        ChainScheduler scheduler = new ChainScheduler("test-scheduler");
+        CompletableFuture<Object> failed = scheduler.submit(ChainScheduler.Lane.BALLOT, "A", () -> {
+            throw new IllegalStateException("append failed");
+        });
+        CompletableFuture<String> next = scheduler.submit(ChainScheduler.Lane.BALLOT, "A", () -> "next");
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS), "failing action");
+        assertTrue(e.getCause() instanceof IllegalStateException, "the cause is the exception of the action");
+        assertEquals("next", next.get(5, TimeUnit.SECONDS), "the sequencer goes on after a failure");
+        scheduler.close();
+    }
+
+    private static void closeRunsQueuedActions() throws Exception {
+        ChainScheduler scheduler = new ChainScheduler("test-scheduler");
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int n = i;
+            results.add(scheduler.submit(i % 10 == 0 ? ChainScheduler.Lane.LIFECYCLE : ChainScheduler.Lane.BALLOT, "chain" + i % 3, () -> n));
+        }
+        scheduler.close();
+        for (int i = 0; i < results.size(); i++) {
+            assertTrue(results.get(i).isDone() && results.get(i).get() == i, "action " + i + " run before close returns");
+        }
+        CompletableFuture<Integer> late = scheduler.submit(ChainScheduler.Lane.BALLOT, "chain0", () -> 0);
+        ExecutionException e = assertThrows(ExecutionException.class, late::get, "action after close");
+        assertTrue(e.getCause() instanceof RejectedExecutionException, "rejected after close");
+    }
+
+    /**
+     * Every action submitted while the scheduler is closing is either run or rejected, never left pending
+     */
+    private static void submitRacingClose() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            ChainScheduler scheduler = new ChainScheduler("test-scheduler");
+            List<CompletableFuture<Object>> all = Collections.synchronizedList(new ArrayList<>());
+            Thread[] submitters = new Thread[4];
+            for (int t = 0; t < submitters.length; t++) {
+                submitters[t] = new Thread(() -> {
+                    for (int i = 0; i < 300; i++) {
+                        all.add(scheduler.submit(ChainScheduler.Lane.BALLOT, "chain", () -> null));
+                    }
+                });
+                submitters[t].start();
+            }
+            Thread.sleep(round % 3);
+            scheduler.close();
+            for (Thread t : submitters) {
+                t.join();
+            }
+            for (CompletableFuture<Object> f : all) {
+                assertTrue(f.isDone(), "round " + round + ": an action is neither run nor rejected");
+            }
+        }
+    }
+}
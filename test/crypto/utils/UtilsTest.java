@@ -0,0 +1,87 @@
+package crypto.utils;
+
+import testutil.TestRunner;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertThrows;
+
+/**
+ * Tests of the Jacobi symbol against Euler's criterion
+ */
+public class UtilsTest {
+
+    private static final Random random = new Random(6979L);
+
+    public static TestRunner tests() {
+        return new TestRunner("UtilsTest")
+                .add("jacobiIsEulerCriterionForPrimes", UtilsTest::jacobiIsEulerCriterionForPrimes)
+                .add("jacobiIsMultiplicativeInTheModulus", UtilsTest::jacobiIsMultiplicativeInTheModulus)
+                .add("jacobiOfNonCoprimeValues", UtilsTest::jacobiOfNonCoprimeValues)
+                .add("jacobiRejectsEvenModulus", UtilsTest::jacobiRejectsEvenModulus)
+                .add("isqr", UtilsTest::isqr);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    /**
+     * @return a^((p-1)/2) mod p as 1, -1 or 0
+     */
+    private static int euler(BigInteger a, BigInteger p) {
+        BigInteger e = a.modPow(p.subtract(BigInteger.ONE).shiftRight(1), p);
+        return e.equals(BigInteger.ONE) ? 1 : e.signum() == 0 ? 0 : -1;
+    }
+
+    private static void jacobiIsEulerCriterionForPrimes() {
+        // below 63 bits the reduction ends on machine words, above it stays on BigIntegers
+        for (int bits : new int[]{5, 17, 31, 62, 63, 64, 127, 256, 1024}) {
+            BigInteger p = BigInteger.probablePrime(bits, random);
+            for (int i = 0; i < 100; i++) {
+                BigInteger a = new BigInteger(bits + 8, random);
+                if (i % 3 == 0)
+                    a = a.negate();
+                assertEquals(euler(a, p), Utils.jacobi(a, p), "(" + a + "/" + p + ")");
+            }
+            assertEquals(0, Utils.jacobi(p, p), "(p/p)");
+            assertEquals(1, Utils.jacobi(BigInteger.ONE, p), "(1/p)");
+        }
+    }
+
+    private static void jacobiIsMultiplicativeInTheModulus() {
+        for (int bits : new int[]{16, 31, 40, 200}) {
+            BigInteger p = BigInteger.probablePrime(bits, random), q = BigInteger.probablePrime(bits + 3, random);
+            BigInteger n = p.multiply(q);
+            for (int i = 0; i < 100; i++) {
+                BigInteger a = new BigInteger(2 * bits, random);
+                assertEquals(euler(a, p) * euler(a, q), Utils.jacobi(a, n), "(" + a + "/" + p + "*" + q + ")");
+            }
+        }
+    }
+
+    private static void jacobiOfNonCoprimeValues() {
+        BigInteger n = BigInteger.valueOf(3 * 5 * 7 * 11);
+        assertEquals(0, Utils.jacobi(BigInteger.valueOf(21), n), "(21/1155)");
+        assertEquals(0, Utils.jacobi(BigInteger.ZERO, n), "(0/1155)");
+        assertEquals(1, Utils.jacobi(BigInteger.ZERO, BigInteger.ONE), "(0/1)");
+    }
+
+    private static void jacobiRejectsEvenModulus() {
+        assertThrows(IllegalArgumentException.class, () -> Utils.jacobi(BigInteger.ONE, BigInteger.valueOf(10)), "even modulus");
+        assertThrows(IllegalArgumentException.class, () -> Utils.jacobi(BigInteger.ONE, BigInteger.valueOf(-3)), "negative modulus");
+    }
+
+    private static void isqr() {
+        BigInteger p = BigInteger.valueOf(23);
+        for (int x = 0; x < 23; x++) {
+            boolean residue = false;
+            for (int y = 1; y < 23; y++) {
+                residue |= y * y % 23 == x;
+            }
+            assertEquals(residue ? 1 : 0, Utils.isqr(BigInteger.valueOf(x), p), x + " mod 23");
+        }
+    }
+}
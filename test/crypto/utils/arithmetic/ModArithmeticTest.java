@@ -0,0 +1,116 @@
+package crypto.utils.arithmetic;
+
+import testutil.TestRunner;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Differential tests of the Montgomery backend against the BigInteger reference backend
+ */
+public class ModArithmeticTest {
+
+    private static final int[] BITS = {3, 63, 64, 65, 127, 128, 129, 255, 256, 257, 521, 1024, 2047, 2048, 3072};
+    private static final Random random = new Random(20261019L);
+
+    public static TestRunner tests() {
+        return new TestRunner("ModArithmeticTest")
+                .add("randomProducts", ModArithmeticTest::randomProducts)
+                .add("edgeFactors", ModArithmeticTest::edgeFactors)
+                .add("unreducedFactors", ModArithmeticTest::unreducedFactors)
+                .add("reset", ModArithmeticTest::reset)
+                .add("limbsRoundTrip", ModArithmeticTest::limbsRoundTrip)
+                .add("evenModulusFallsBack", ModArithmeticTest::evenModulusFallsBack);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    /**
+     * @return a random odd modulus of exactly the given bits
+     */
+    private static BigInteger oddModulus(int bits) {
+        return new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+    }
+
+    private static void randomProducts() {
+        for (int bits : BITS) {
+            BigInteger prime = bits <= 1024 ? BigInteger.probablePrime(bits, random) : oddModulus(bits);
+            for (BigInteger m : new BigInteger[]{oddModulus(bits), prime}) {
+                ModAccumulator montgomery = new MontgomeryArithmetic(m).newAccumulator();
+                ModAccumulator reference = new BigIntegerArithmetic(m).newAccumulator();
+                for (int i = 0; i < 200; i++) {
+                    BigInteger factor = new BigInteger(bits, random).mod(m);
+                    montgomery.multiply(factor);
+                    reference.multiply(factor);
+                    if (i % 17 == 0)
+                        assertEquals(reference.get(), montgomery.get(), bits + " bits, after " + (i + 1) + " factors");
+                }
+                assertEquals(reference.get(), montgomery.get(), bits + " bits, final product");
+                BigInteger a = new BigInteger(bits, random).mod(m), b = new BigInteger(bits, random).mod(m);
+                assertEquals(a.multiply(b).mod(m), new MontgomeryArithmetic(m).multiply(a, b), bits + " bits, single product");
+            }
+        }
+    }
+
+    private static void edgeFactors() {
+        for (int bits : BITS) {
+            BigInteger m = oddModulus(bits);
+            BigInteger[] factors = {BigInteger.ONE, m.subtract(BigInteger.ONE), m.subtract(BigInteger.TWO),
+                    BigInteger.ONE.shiftLeft(bits - 1), BigInteger.ONE.shiftLeft(64).mod(m), BigInteger.TWO};
+            MontgomeryArithmetic arithmetic = new MontgomeryArithmetic(m);
+            for (BigInteger a : factors) {
+                for (BigInteger b : factors) {
+                    assertEquals(a.multiply(b).mod(m), arithmetic.multiply(a, b), bits + " bits, " + a + " * " + b);
+                }
+            }
+            ModAccumulator acc = arithmetic.newAccumulator();
+            acc.multiply(BigInteger.ZERO);
+            acc.multiply(m.subtract(BigInteger.ONE));
+            assertEquals(BigInteger.ZERO, acc.get(), bits + " bits, product with zero");
+        }
+    }
+
+    private static void unreducedFactors() {
+        for (int bits : BITS) {
+            BigInteger m = oddModulus(bits);
+            BigInteger big = new BigInteger(bits + 70, random);
+            BigInteger a = new BigInteger(bits, random);
+            assertEquals(big.multiply(a).mod(m), new MontgomeryArithmetic(m).multiply(big, a), bits + " bits, factor larger than the modulus");
+            assertEquals(m.mod(m), new MontgomeryArithmetic(m).multiply(m, a), bits + " bits, factor equal to the modulus");
+        }
+    }
+
+    private static void reset() {
+        BigInteger m = oddModulus(256);
+        ModAccumulator acc = new MontgomeryArithmetic(m).newAccumulator();
+        assertEquals(BigInteger.ONE, acc.get(), "a new accumulator holds 1");
+        acc.multiply(new BigInteger(255, random));
+        acc.reset();
+        assertEquals(BigInteger.ONE, acc.get(), "a reset accumulator holds 1");
+        BigInteger x = new BigInteger(255, random);
+        acc.multiply(x);
+        assertEquals(x.mod(m), acc.get(), "the accumulator restarts from 1");
+    }
+
+    private static void limbsRoundTrip() {
+        for (int bits : BITS) {
+            BigInteger x = new BigInteger(bits, random);
+            long[] limbs = new long[(bits + 63) / 64];
+            MontgomeryArithmetic.toLimbs(x, limbs);
+            assertEquals(x, MontgomeryArithmetic.fromLimbs(limbs), bits + " bits round trip");
+        }
+    }
+
+    private static void evenModulusFallsBack() {
+        BigInteger even = oddModulus(128).add(BigInteger.ONE);
+        ModArithmetic arithmetic = ModArithmetic.create(even);
+        assertTrue(arithmetic instanceof BigIntegerArithmetic, "an even modulus uses the reference backend");
+        BigInteger a = new BigInteger(127, random), b = new BigInteger(127, random);
+        assertEquals(a.multiply(b).mod(even), arithmetic.multiply(a, b), "even modulus product");
+    }
+}
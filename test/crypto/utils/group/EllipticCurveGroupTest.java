@@ -0,0 +1,105 @@
+package crypto.utils.group;
+
+import testutil.TestRunner;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Tests of the scalar multiplications of P-256 against a plain double-and-add of group.multiply
+ */
+public class EllipticCurveGroupTest {
+
+    private static final EllipticCurveGroup group = EllipticCurveGroup.P256;
+    private static final BigInteger n = group.getOrder();
+    private static final Random random = new Random(256L);
+
+    public static TestRunner tests() {
+        return new TestRunner("EllipticCurveGroupTest")
+                .add("generatorMultiples", EllipticCurveGroupTest::generatorMultiples)
+                .add("variableBaseMultiples", EllipticCurveGroupTest::variableBaseMultiples)
+                .add("precomputedBase", EllipticCurveGroupTest::precomputedBase)
+                .add("edgeScalars", EllipticCurveGroupTest::edgeScalars)
+                .add("knownMultiple", EllipticCurveGroupTest::knownMultiple);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    /**
+     * @return k * P with the group law alone, from the most significant bit
+     */
+    private static BigInteger reference(BigInteger P, BigInteger k) {
+        BigInteger R = group.getIdentity();
+        k = k.mod(n);
+        for (int i = k.bitLength() - 1; i >= 0; i--) {
+            R = group.multiply(R, R);
+            if (k.testBit(i))
+                R = group.multiply(R, P);
+        }
+        return R;
+    }
+
+    private static BigInteger[] scalars() {
+        BigInteger[] k = new BigInteger[24];
+        for (int i = 0; i < k.length; i++) {
+            k[i] = new BigInteger(n.bitLength(), random).mod(n);
+        }
+        k[0] = k[0].setBit(0);
+        k[1] = k[1].clearBit(0);
+        k[2] = BigInteger.valueOf(random.nextInt(1 << 20));
+        return k;
+    }
+
+    private static void generatorMultiples() {
+        BigInteger g = group.getGenerator();
+        for (BigInteger k : scalars()) {
+            assertEquals(reference(g, k), group.exp(g, k), "k * G, k = " + k);
+        }
+    }
+
+    private static void variableBaseMultiples() {
+        BigInteger P = group.exp(group.getGenerator(), new BigInteger(255, random));
+        for (BigInteger k : scalars()) {
+            assertEquals(reference(P, k), group.exp(P, k), "k * P, k = " + k);
+        }
+    }
+
+    private static void precomputedBase() {
+        BigInteger P = group.exp(group.getGenerator(), new BigInteger(255, random));
+        Group.FixedBase table = group.precompute(P);
+        for (BigInteger k : scalars()) {
+            assertEquals(group.exp(P, k), table.exp(k), "k * P with the table, k = " + k);
+        }
+    }
+
+    private static void edgeScalars() {
+        BigInteger g = group.getGenerator();
+        BigInteger P = group.exp(g, BigInteger.valueOf(987654321));
+        BigInteger[] edges = {BigInteger.ZERO, BigInteger.ONE, BigInteger.TWO, BigInteger.valueOf(15), BigInteger.valueOf(16),
+                BigInteger.valueOf(17), n.subtract(BigInteger.ONE), n.subtract(BigInteger.TWO), n, n.add(BigInteger.ONE),
+                BigInteger.ONE.shiftLeft(255), BigInteger.ONE.negate()};
+        for (BigInteger base : new BigInteger[]{g, P}) {
+            for (BigInteger k : edges) {
+                assertEquals(reference(base, k), group.exp(base, k), "k * P, k = " + k);
+            }
+            assertEquals(group.getIdentity(), group.exp(base, n), "n * P is the identity");
+            assertEquals(group.inverse(base), group.exp(base, n.subtract(BigInteger.ONE)), "(n-1) * P = -P");
+        }
+        assertEquals(group.getIdentity(), group.exp(group.getIdentity(), BigInteger.TEN), "k * O");
+    }
+
+    // the public key of the P-256 vectors of RFC 6979 (A.2.5)
+    private static void knownMultiple() {
+        BigInteger x = new BigInteger("C9AFA9D845BA75166B5C215767B1D6934E50C3DB36E89B127B8A622B120F6721", 16);
+        BigInteger Ux = new BigInteger("60FED4BA255A9D31C961EB74C6356D68C049B8923B61FA6CE669622E60F29FB6", 16);
+        BigInteger Uy = new BigInteger("7903FE1008B8BC99A41AE9E95628BC64F2F1B20C2D7E9F5177A3C294D4462299", 16);
+        BigInteger encoded = BigInteger.valueOf(Uy.testBit(0) ? 3 : 2).shiftLeft(8 * 32).or(Ux);
+        assertEquals(encoded, group.exp(group.getGenerator(), x), "public key of the RFC 6979 vectors");
+        assertTrue(group.isElement(encoded), "the public key is on the curve");
+    }
+}
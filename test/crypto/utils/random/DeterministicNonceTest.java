@@ -0,0 +1,64 @@
+package crypto.utils.random;
+
+import testutil.TestRunner;
+
+import java.math.BigInteger;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertFalse;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Known answer tests of the nonces from RFC 6979 (appendix A), all with HMAC-SHA256 and SHA-256
+ */
+public class DeterministicNonceTest {
+
+    public static TestRunner tests() {
+        return new TestRunner("DeterministicNonceTest")
+                .add("detailedExampleK163", DeterministicNonceTest::detailedExampleK163)
+                .add("dsa1024", DeterministicNonceTest::dsa1024)
+                .add("ecdsaP256", DeterministicNonceTest::ecdsaP256)
+                .add("nonceDependsOnKeyAndMessage", DeterministicNonceTest::nonceDependsOnKeyAndMessage);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    private static BigInteger hex(String value) {
+        return new BigInteger(value, 16);
+    }
+
+    // A.1: the order is 163 bits, so bits2int drops the low bits of the hash and the first candidate is rejected
+    private static void detailedExampleK163() {
+        BigInteger q = hex("4000000000000000000020108A2E0CC0D99F8A5EF");
+        BigInteger x = hex("09A4D6792295A7F730FC3F2B49CBC0F62E862272F");
+        assertEquals(hex("23AF4074C90A02B3FE61D286D5C87F425E6BDD81B"), DeterministicNonce.generate(q, x, "sample"), "k for \"sample\"");
+    }
+
+    // A.2.1: DSA, 1024 bits, the 160 bit order is shorter than the hash
+    private static void dsa1024() {
+        BigInteger q = hex("996F967F6C8E388D9E28D01E205FBA957A5698B1");
+        BigInteger x = hex("411602CB19A6CCC34494D79D98EF1E7ED5AF25F7");
+        assertEquals(hex("519BA0546D0C39202A7D34D7DFA5E760B318BCFB"), DeterministicNonce.generate(q, x, "sample"), "k for \"sample\"");
+        assertEquals(hex("5A67592E8128E03A417B0484410FB72C0B630E1A"), DeterministicNonce.generate(q, x, "test"), "k for \"test\"");
+    }
+
+    // A.2.5: ECDSA on P-256, the group of the elliptic curve elections
+    private static void ecdsaP256() {
+        BigInteger q = hex("FFFFFFFF00000000FFFFFFFFFFFFFFFFBCE6FAADA7179E84F3B9CAC2FC632551");
+        BigInteger x = hex("C9AFA9D845BA75166B5C215767B1D6934E50C3DB36E89B127B8A622B120F6721");
+        assertEquals(hex("A6E3C57DD01ABE90086538398355DD4C3B17AA873382B0F24D6129493D8AAD60"), DeterministicNonce.generate(q, x, "sample"), "k for \"sample\"");
+        assertEquals(hex("D16B6AE827F17175E040871A1C7EC3500192C4C92677336EC2537ACAEE0008E0"), DeterministicNonce.generate(q, x, "test"), "k for \"test\"");
+    }
+
+    private static void nonceDependsOnKeyAndMessage() {
+        BigInteger q = hex("FFFFFFFF00000000FFFFFFFFFFFFFFFFBCE6FAADA7179E84F3B9CAC2FC632551");
+        BigInteger x = BigInteger.valueOf(123456789);
+        BigInteger k = DeterministicNonce.generate(q, x, "ballot");
+        assertEquals(k, DeterministicNonce.generate(q, x, "ballot"), "same key and message");
+        assertFalse(k.equals(DeterministicNonce.generate(q, x, "ballot2")), "different message");
+        assertFalse(k.equals(DeterministicNonce.generate(q, x.add(BigInteger.ONE), "ballot")), "different key");
+        assertTrue(k.signum() > 0 && k.compareTo(q) < 0, "k in [1, q)");
+    }
+}
@@ -0,0 +1,105 @@
+package crypto.utils.thresholdElGamal;
+
+import crypto.utils.group.Group;
+import crypto.utils.group.Groups;
+import crypto.utils.group.ZpGroup;
+import testutil.TestRunner;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static testutil.Assert.assertEquals;
+
+/**
+ * Tests of the baby-step giant-step decoding of the tallies
+ */
+public class DiscreteLogTest {
+
+    private static final Random random = new Random(42L);
+
+    public static TestRunner tests() {
+        return new TestRunner("DiscreteLogTest")
+                .add("p256", () -> solveAll(Groups.byName("P-256"), BigInteger.valueOf(100_000)))
+                .add("zpSmallGenerator", () -> solveAll(safePrimeGroup(), BigInteger.valueOf(100_000)))
+                .add("smallBounds", DiscreteLogTest::smallBounds)
+                .add("tableReusedForManyValues", DiscreteLogTest::tableReusedForManyValues)
+                .add("packedTally", DiscreteLogTest::packedTally);
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    /**
+     * @return the subgroup of the quadratic residues of Zp*, p = 2q+1, generated by 4 = 2^2: the powers of
+     * a small generator share their low bits, which the table hash must not depend on
+     */
+    private static Group safePrimeGroup() {
+        BigInteger q, p;
+        do {
+            q = BigInteger.probablePrime(160, random);
+            p = q.shiftLeft(1).add(BigInteger.ONE);
+        } while (!p.isProbablePrime(40));
+        return new ZpGroup(p, q, BigInteger.valueOf(4));
+    }
+
+    private static void solveAll(Group group, BigInteger bound) {
+        BigInteger g = group.getGenerator();
+        DiscreteLog dlog = new DiscreteLog(group, g, bound);
+        BigInteger last = bound.subtract(BigInteger.ONE);
+        BigInteger[] xs = {BigInteger.ZERO, BigInteger.ONE, BigInteger.TWO, BigInteger.valueOf(316), BigInteger.valueOf(317),
+                last.subtract(BigInteger.ONE), last, new BigInteger(bound.bitLength(), random).mod(bound)};
+        for (BigInteger x : xs) {
+            assertEquals(x, dlog.solve(group.exp(g, x), bound), group.getName() + ": log of g^" + x);
+        }
+        assertEquals(BigInteger.ONE.negate(), dlog.solve(group.exp(g, bound), bound), group.getName() + ": log equal to the bound");
+        assertEquals(BigInteger.ONE.negate(), dlog.solve(group.exp(g, bound.multiply(BigInteger.valueOf(7))), bound), group.getName() + ": log beyond the bound");
+    }
+
+    private static void smallBounds() {
+        Group group = Groups.byName("P-256");
+        BigInteger g = group.getGenerator();
+        for (int bound = 1; bound <= 20; bound++) {
+            BigInteger b = BigInteger.valueOf(bound);
+            for (int x = 0; x < bound; x++) {
+                assertEquals(BigInteger.valueOf(x), DiscreteLog.Solve(group, g, group.exp(g, BigInteger.valueOf(x)), b), "log of g^" + x + " below " + bound);
+            }
+            assertEquals(BigInteger.ONE.negate(), DiscreteLog.Solve(group, g, group.exp(g, b), b), "log of g^" + bound + " below " + bound);
+        }
+    }
+
+    private static void tableReusedForManyValues() {
+        Group group = Groups.byName("P-256");
+        BigInteger g = group.getGenerator(), bound = BigInteger.valueOf(5000);
+        DiscreteLog dlog = new DiscreteLog(group, g, bound);
+        for (int i = 0; i < 50; i++) {
+            BigInteger x = BigInteger.valueOf(random.nextInt(5000));
+            assertEquals(x, dlog.solve(group.exp(g, x), bound), "log of g^" + x);
+        }
+    }
+
+    // the tally of an election with 3 candidates and 40 voters, decoded from the product of the ballots
+    private static void packedTally() {
+        Group group = Groups.byName("P-256");
+        ElGamalParams params = ThresholdElGamal.SetupParameters(group);
+        ElGamalPK pk = new ElGamalPK();
+        ElGamalSK[] sks = ThresholdElGamal.LagrangeShamirSecretSharing(params, 3, pk);
+        PackedEncoding encoding = new PackedEncoding(3, 40);
+        long[] expected = new long[3];
+        ElGamalCT[] ballots = new ElGamalCT[40];
+        for (int i = 0; i < ballots.length; i++) {
+            int candidate = random.nextInt(3);
+            expected[candidate]++;
+            ballots[i] = ThresholdElGamal.EncryptInTheExponent(pk, encoding.encode(candidate), ThresholdElGamal.getR(params.securityparameter));
+        }
+        ElGamalCT total = ThresholdElGamal.Homomorphism(pk, Arrays.asList(ballots));
+        BigInteger[] W = new BigInteger[sks.length];
+        for (int j = 0; j < sks.length; j++) {
+            W[j] = group.exp(total.C2, sks[j].getS());
+        }
+        BigInteger gm = ThresholdElGamal.Decrypt(pk, total, W);
+        BigInteger packed = DiscreteLog.Solve(group, params.g, gm, encoding.encode(2).multiply(BigInteger.valueOf(40)).add(BigInteger.ONE));
+        assertEquals(Arrays.toString(expected), Arrays.toString(encoding.decode(packed, 40)), "decoded tally");
+    }
+}
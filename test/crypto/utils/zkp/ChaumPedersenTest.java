@@ -0,0 +1,211 @@
+package crypto.utils.zkp;
+
+import crypto.utils.group.Groups;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.ElGamalParams;
+import crypto.utils.thresholdElGamal.ElGamalSK;
+import crypto.utils.thresholdElGamal.ThresholdElGamal;
+import testutil.TestRunner;
+
+import java.math.BigInteger;
+
+import static testutil.Assert.assertEquals;
+import static testutil.Assert.assertFalse;
+import static testutil.Assert.assertThrows;
+import static testutil.Assert.assertTrue;
+
+/**
+ * Tests of the vote and decryption share proofs, valid and tampered, on P-256 and on a Zp* group
+ */
+public class ChaumPedersenTest {
+
+    private static final int AUTHORITIES = 3;
+
+    /**
+     * The keys of an election on a group
+     */
+    private static class Keys {
+        final ElGamalPK pk = new ElGamalPK();
+        final ElGamalSK[] sks;
+        final BigInteger voter, otherVoter; // signature keys h of two voters
+
+        Keys(ElGamalParams params) {
+            sks = ThresholdElGamal.LagrangeShamirSecretSharing(params, AUTHORITIES, pk);
+            voter = params.group.exp(params.g, BigInteger.valueOf(1234567));
+            otherVoter = params.group.exp(params.g, BigInteger.valueOf(7654321));
+        }
+
+        BigInteger r() {
+            return ThresholdElGamal.getR(pk.params.securityparameter);
+        }
+    }
+
+    private static Keys p256, zp;
+
+    public static TestRunner tests() {
+        TestRunner runner = new TestRunner("ChaumPedersenTest")
+                .add("setup", () -> {
+                    p256 = new Keys(ThresholdElGamal.SetupParameters(Groups.byName("P-256")));
+                    zp = new Keys(ThresholdElGamal.SetupParameters(256));
+                });
+        for (String name : new String[]{"P-256", "Zp"}) {
+            runner.add("binaryVoteProof[" + name + "]", () -> binaryVoteProof(keys(name)))
+                    .add("tamperedVoteProof[" + name + "]", () -> tamperedVoteProof(keys(name)))
+                    .add("multiCandidateVoteProof[" + name + "]", () -> multiCandidateVoteProof(keys(name)))
+                    .add("batchVoteProofs[" + name + "]", () -> batchVoteProofs(keys(name)))
+                    .add("decryptionShareProofs[" + name + "]", () -> decryptionShareProofs(keys(name)))
+                    .add("tamperedDecryptionShareProofs[" + name + "]", () -> tamperedDecryptionShareProofs(keys(name)));
+        }
+        return runner;
+    }
+
+    public static void main(String[] args) {
+        tests().runAndExit();
+    }
+
+    private static Keys keys(String name) {
+        return name.equals("P-256") ? p256 : zp;
+    }
+
+    private static void binaryVoteProof(Keys k) {
+        for (int m = 0; m <= 1; m++) {
+            BigInteger r = k.r();
+            ElGamalCT ct = ThresholdElGamal.EncryptInTheExponent(k.pk, BigInteger.valueOf(m), r);
+            VoteProof proof = ChaumPedersen.ProveVote(k.pk, k.voter, ct, BigInteger.valueOf(m), r);
+            assertTrue(ChaumPedersen.VerifyVote(k.pk, k.voter, ct, proof), "proof of a vote for " + m);
+            assertTrue(ChaumPedersen.VerifyVote(k.pk, k.voter, ct, new VoteProof(proof.toString())), "proof parsed back, vote " + m);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> ChaumPedersen.ProveVote(k.pk, k.voter, new ElGamalCT(), BigInteger.TWO, k.r()), "a vote of 2 is not binary");
+    }
+
+    private static void tamperedVoteProof(Keys k) {
+        BigInteger r = k.r();
+        ElGamalCT ct = ThresholdElGamal.EncryptInTheExponent(k.pk, BigInteger.ONE, r);
+        VoteProof proof = ChaumPedersen.ProveVote(k.pk, k.voter, ct, BigInteger.ONE, r);
+        BigInteger q = k.pk.params.q;
+
+        // the proof is bound to the voter: it cannot be replayed with another voter's signature
+        assertFalse(ChaumPedersen.VerifyVote(k.pk, k.otherVoter, ct, proof), "proof replayed by another voter");
+
+        // a different ciphertext, e.g. the vote re-randomized or doubled
+        ElGamalCT doubled = new ElGamalCT(k.pk.params.group.multiply(ct.C, ct.C), k.pk.params.group.multiply(ct.C2, ct.C2));
+        assertFalse(ChaumPedersen.VerifyVote(k.pk, k.voter, doubled, proof), "proof of another ciphertext");
+
+        BigInteger[] z = proof.z.clone();
+        z[0] = z[0].add(BigInteger.ONE).mod(q);
+        assertFalse(ChaumPedersen.VerifyVote(k.pk, k.voter, ct, new VoteProof(proof.A, proof.B, proof.c, z)), "response changed");
+
+        BigInteger[] c = proof.c.clone();
+        c[0] = c[0].add(BigInteger.ONE).mod(q);
+        c[1] = c[1].subtract(BigInteger.ONE).mod(q); // the challenges still sum to the hash
+        assertFalse(ChaumPedersen.VerifyVote(k.pk, k.voter, ct, new VoteProof(proof.A, proof.B, c, proof.z)), "challenges moved between branches");
+
+        BigInteger[] outOfRange = proof.z.clone();
+        outOfRange[1] = outOfRange[1].add(q);
+        assertFalse(ChaumPedersen.VerifyVote(k.pk, k.voter, ct, new VoteProof(proof.A, proof.B, proof.c, outOfRange)), "response not reduced");
+
+        // a ciphertext of 2 proven with the branches of 0 and 1
+        BigInteger r2 = k.r();
+        ElGamalCT two = ThresholdElGamal.EncryptInTheExponent(k.pk, BigInteger.TWO, r2);
+        VoteProof forged = ChaumPedersen.ProveVote(k.pk, k.voter, two, new BigInteger[]{BigInteger.ZERO, BigInteger.ONE}, 1, r2);
+        assertFalse(ChaumPedersen.VerifyVote(k.pk, k.voter, two, forged), "proof of a vote for 2");
+    }
+
+    private static void multiCandidateVoteProof(Keys k) {
+        BigInteger[] messages = {BigInteger.ONE, BigInteger.valueOf(11), BigInteger.valueOf(121), BigInteger.valueOf(1331)};
+        for (int choice = 0; choice < messages.length; choice++) {
+            BigInteger r = k.r();
+            ElGamalCT ct = ThresholdElGamal.EncryptInTheExponent(k.pk, messages[choice], r);
+            VoteProof proof = ChaumPedersen.ProveVote(k.pk, k.voter, ct, messages, choice, r);
+            assertEquals(messages.length, proof.branches(), "one branch per candidate");
+            assertTrue(ChaumPedersen.VerifyVote(k.pk, messages, k.voter, ct, proof), "vote for candidate " + choice);
+            assertFalse(ChaumPedersen.VerifyVote(k.pk, k.voter, ct, proof), "checked against the binary plaintexts");
+        }
+    }
+
+    private static void batchVoteProofs(Keys k) {
+        int n = 12, forged = 7;
+        BigInteger[] voters = new BigInteger[n];
+        ElGamalCT[] cts = new ElGamalCT[n];
+        VoteProof[] proofs = new VoteProof[n];
+        for (int i = 0; i < n; i++) {
+            BigInteger r = k.r(), m = BigInteger.valueOf(i % 2);
+            voters[i] = k.pk.params.group.exp(k.pk.params.g, BigInteger.valueOf(1000 + i));
+            cts[i] = ThresholdElGamal.EncryptInTheExponent(k.pk, m, r);
+            proofs[i] = ChaumPedersen.ProveVote(k.pk, voters[i], cts[i], m, r);
+        }
+        assertTrue(ChaumPedersen.BatchVerifyVotes(k.pk, voters, cts, proofs, 0, n), "batch of valid proofs");
+
+        voters[forged] = k.otherVoter;
+        assertFalse(ChaumPedersen.BatchVerifyVotes(k.pk, voters, cts, proofs, 0, n), "batch with a forged proof");
+        boolean[] valid = ChaumPedersen.VerifyVotes(k.pk, voters, cts, proofs);
+        for (int i = 0; i < n; i++) {
+            assertEquals(i != forged, valid[i], "validity of proof " + i);
+        }
+    }
+
+    private static BigInteger[] shares(Keys k, ElGamalCT ct) {
+        BigInteger[] W = new BigInteger[AUTHORITIES];
+        for (int j = 0; j < AUTHORITIES; j++) {
+            W[j] = k.pk.params.group.exp(ct.C2, k.sks[j].getS());
+        }
+        return W;
+    }
+
+    private static ElGamalPK[] authorityKeys(Keys k) {
+        ElGamalPK[] pks = new ElGamalPK[AUTHORITIES];
+        for (int j = 0; j < AUTHORITIES; j++) {
+            pks[j] = k.sks[j].getPK();
+        }
+        return pks;
+    }
+
+    private static void decryptionShareProofs(Keys k) {
+        BigInteger m = BigInteger.valueOf(5);
+        ElGamalCT ct = ThresholdElGamal.EncryptInTheExponent(k.pk, m, k.r());
+        BigInteger[] W = shares(k, ct);
+        DecryptionShareProof[] proofs = new DecryptionShareProof[AUTHORITIES];
+        for (int j = 0; j < AUTHORITIES; j++) {
+            proofs[j] = ChaumPedersen.ProveDecryptionShare(k.sks[j], ct.C2, W[j]);
+            assertTrue(ChaumPedersen.VerifyDecryptionShare(k.sks[j].getPK(), ct.C2, W[j], proofs[j]), "share " + j);
+            assertTrue(ChaumPedersen.VerifyDecryptionShare(k.sks[j].getPK(), ct.C2, W[j], new DecryptionShareProof(proofs[j].toString())), "share " + j + " parsed back");
+        }
+        assertTrue(ChaumPedersen.BatchVerifyDecryptionShares(authorityKeys(k), ct.C2, W, proofs), "batch of valid shares");
+        assertEquals(k.pk.params.group.exp(k.pk.params.g, m), ThresholdElGamal.Decrypt(k.pk, ct, W), "the shares decrypt g^m");
+    }
+
+    private static void tamperedDecryptionShareProofs(Keys k) {
+        ElGamalCT ct = ThresholdElGamal.EncryptInTheExponent(k.pk, BigInteger.valueOf(3), k.r());
+        BigInteger[] W = shares(k, ct);
+        DecryptionShareProof[] proofs = new DecryptionShareProof[AUTHORITIES];
+        for (int j = 0; j < AUTHORITIES; j++) {
+            proofs[j] = ChaumPedersen.ProveDecryptionShare(k.sks[j], ct.C2, W[j]);
+        }
+        ElGamalPK[] pks = authorityKeys(k);
+
+        // a share that would change the tally
+        BigInteger wrong = k.pk.params.group.multiply(W[1], k.pk.params.g);
+        assertFalse(ChaumPedersen.VerifyDecryptionShare(pks[1], ct.C2, wrong, proofs[1]), "share changed");
+        BigInteger[] forgedW = W.clone();
+        forgedW[1] = wrong;
+        assertFalse(ChaumPedersen.BatchVerifyDecryptionShares(pks, ct.C2, forgedW, proofs), "batch with a changed share");
+        boolean[] valid = ChaumPedersen.VerifyDecryptionShares(pks, ct.C2, forgedW, proofs);
+        assertTrue(valid[0] && !valid[1] && valid[2], "only the changed share is invalid");
+
+        // the proof of an authority checked against the key of another one, and the key it names
+        assertFalse(ChaumPedersen.VerifyDecryptionShare(pks[0], ct.C2, W[1], proofs[1]), "proof of another authority");
+        DecryptionShareProof renamed = new DecryptionShareProof(proofs[0].a1, proofs[0].a2, proofs[0].z, pks[2].h);
+        assertFalse(ChaumPedersen.VerifyDecryptionShare(pks[0], ct.C2, W[0], renamed), "proof naming another key");
+
+        // the proof of a share of another ciphertext
+        ElGamalCT other = ThresholdElGamal.EncryptInTheExponent(k.pk, BigInteger.valueOf(3), k.r());
+        BigInteger otherW = k.pk.params.group.exp(other.C2, k.sks[0].getS());
+        assertFalse(ChaumPedersen.VerifyDecryptionShare(pks[0], other.C2, otherW, proofs[0]), "proof of another ciphertext");
+
+        BigInteger q = k.pk.params.q;
+        DecryptionShareProof changed = new DecryptionShareProof(proofs[0].a1, proofs[0].a2, proofs[0].z.add(BigInteger.ONE).mod(q), proofs[0].hj);
+        assertFalse(ChaumPedersen.VerifyDecryptionShare(pks[0], ct.C2, W[0], changed), "response changed");
+    }
+}
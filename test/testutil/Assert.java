@@ -0,0 +1,47 @@
+package testutil;
+
+import java.util.Objects;
+
+/**
+ * The checks of the tests: a failed check throws an AssertionError with its message
+ */
+public class Assert {
+
+    private Assert() {
+    }
+
+    public static void assertTrue(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    public static void assertFalse(boolean condition, String message) {
+        assertTrue(!condition, message);
+    }
+
+    public static void assertEquals(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual))
+            throw new AssertionError(message + ": expected " + expected + ", got " + actual);
+    }
+
+    /**
+     * A test, run by TestRunner
+     */
+    public interface Test {
+        void run() throws Exception;
+    }
+
+    /**
+     * Check that a test throws an exception of the given type
+     */
+    public static <T extends Throwable> T assertThrows(Class<T> type, Test test, String message) {
+        try {
+            test.run();
+        } catch (Throwable t) {
+            if (type.isInstance(t))
+                return type.cast(t);
+            throw new AssertionError(message + ": expected " + type.getSimpleName() + ", got " + t, t);
+        }
+        throw new AssertionError(message + ": expected " + type.getSimpleName() + ", nothing thrown");
+    }
+}
@@ -0,0 +1,127 @@
+package testutil;
+
+import VoteChain.Ballot;
+import VoteChain.VoteChain;
+import VotingEntities.Authority;
+import VotingEntities.Voter;
+import app.EVoteApp;
+import crypto.utils.DLogParams;
+import crypto.utils.Schnorr.SchnorrPK;
+import crypto.utils.Schnorr.SchnorrSig;
+import crypto.utils.Utils;
+import crypto.utils.group.Group;
+import crypto.utils.group.Groups;
+import crypto.utils.thresholdElGamal.ElGamalCT;
+import crypto.utils.thresholdElGamal.ElGamalPK;
+import crypto.utils.thresholdElGamal.ElGamalParams;
+import crypto.utils.thresholdElGamal.ElGamalSK;
+import crypto.utils.thresholdElGamal.PackedEncoding;
+import crypto.utils.thresholdElGamal.ThresholdElGamal;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A small election on P-256 for the tests of the chain: three authorities, their keys and joint
+ * signatures, and the voters with their ballots prepared in advance
+ */
+public class TestElection {
+
+    public static final int AUTHORITIES = 3;
+
+    public final Group group = Groups.byName("P-256");
+    public final List<Authority> authorities;
+    public final List<SchnorrPK> pkSigAj = new ArrayList<>(AUTHORITIES);
+    public final ElGamalPK pkA = new ElGamalPK();
+    public final PackedEncoding encoding;
+    public final List<Voter> voters;
+    public final List<BigInteger> voterKeys;
+
+    /**
+     * @param voterCount the number of voters
+     * @param candidates the number of candidates
+     */
+    public TestElection(int voterCount, int candidates) {
+        int securityParameter = group.getOrder().bitLength();
+        DLogParams signatureParams = new DLogParams(group);
+        authorities = EVoteApp.authoritiesCreator(AUTHORITIES, signatureParams);
+        ElGamalParams params = ThresholdElGamal.SetupParameters(group);
+        ElGamalSK[] skAj = ThresholdElGamal.LagrangeShamirSecretSharing(params, AUTHORITIES, pkA);
+        for (int i = 0; i < AUTHORITIES; i++) {
+            authorities.get(i).setElGamalPair(skAj[i].getPK(), skAj[i]);
+            authorities.get(i).generateSignPair(securityParameter);
+            pkSigAj.add(authorities.get(i).getPk());
+        }
+        voters = EVoteApp.votersCreator(voterCount, signatureParams, securityParameter);
+        voterKeys = voters.stream().map(v -> v.getPKSig().getH()).collect(Collectors.toList());
+        encoding = new PackedEncoding(candidates, voterCount);
+    }
+
+    /**
+     * @return the joint signature of the authorities on a message
+     */
+    public Utils.Pair<SchnorrPK, SchnorrSig> sign(String message) {
+        return EVoteApp.authoritiesCreateJointSignature(AUTHORITIES, authorities, pkSigAj, message);
+    }
+
+    /**
+     * @return the ballot of a voter for a candidate
+     */
+    public Ballot ballot(int voter, int candidate) {
+        return voters.get(voter).prepareBallot(encoding, pkA, candidate);
+    }
+
+    /**
+     * @return the ballots of all the voters, voter i voting for candidate i % candidates
+     */
+    public List<Ballot> ballots() {
+        List<Ballot> ballots = new ArrayList<>(voters.size());
+        for (int i = 0; i < voters.size(); i++) {
+            ballots.add(ballot(i, i % encoding.getCandidates()));
+        }
+        return ballots;
+    }
+
+    /**
+     * Append the genesis block, the voter registry and the start of the voting to an empty chain
+     */
+    public void open(VoteChain chain) throws IOException, NoSuchAlgorithmException {
+        chain.setBallotEncoding(encoding, pkA);
+        Utils.Pair<SchnorrPK, SchnorrSig> genesis = sign(pkA.getH().toString());
+        chain.insertGenesisBlock(pkA, genesis.t, genesis.u);
+        Utils.Pair<SchnorrPK, SchnorrSig> registry = sign(voterKeys.toString());
+        chain.insertPKTransactions(registry.t, registry.u, voterKeys);
+        Utils.Pair<SchnorrPK, SchnorrSig> start = sign(VoteChain.START_VOTING_MESSAGE);
+        chain.insertStartTransaction(start.t, start.u, VoteChain.START_VOTING_MESSAGE);
+    }
+
+    /**
+     * Close the voting of a chain and decrypt its tally with the shares of all the authorities
+     * @return the votes of each candidate
+     */
+    public long[] tally(VoteChain chain) throws IOException, NoSuchAlgorithmException {
+        Utils.Pair<SchnorrPK, SchnorrSig> stop = sign(VoteChain.STOP_VOTING_MESSAGE);
+        chain.insertStopTransaction(stop.t, stop.u, VoteChain.STOP_VOTING_MESSAGE);
+        ElGamalCT total = chain.countVotes(pkA);
+        BigInteger[] W = new BigInteger[AUTHORITIES];
+        for (int j = 0; j < AUTHORITIES; j++) {
+            W[j] = authorities.get(j).computeWj(total, pkA);
+        }
+        return chain.decodeTally(pkA, chain.decryptVotes(pkA, total, W));
+    }
+
+    /**
+     * @return the votes of each candidate when the first voters cast the ballots returned by ballots()
+     */
+    public long[] expected(int voterCount) {
+        long[] votes = new long[encoding.getCandidates()];
+        for (int i = 0; i < voterCount; i++) {
+            votes[i % votes.length]++;
+        }
+        return votes;
+    }
+}
@@ -0,0 +1,50 @@
+package testutil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs the tests of a test class one by one, printing the outcome of each of them
+ */
+public class TestRunner {
+
+    private final String name;
+    private final Map<String, Assert.Test> tests = new LinkedHashMap<>();
+
+    public TestRunner(String name) {
+        this.name = name;
+    }
+
+    public TestRunner add(String test, Assert.Test body) {
+        tests.put(test, body);
+        return this;
+    }
+
+    /**
+     * Run all the tests, also after a failure
+     * @return the number of failed tests
+     */
+    public int run() {
+        int failed = 0;
+        for (Map.Entry<String, Assert.Test> test : tests.entrySet()) {
+            long start = System.nanoTime();
+            try {
+                test.getValue().run();
+                System.out.printf("  ok    %s.%s (%d ms)%n", name, test.getKey(), (System.nanoTime() - start) / 1_000_000);
+            } catch (Throwable t) {
+                failed++;
+                System.out.printf("  FAIL  %s.%s: %s%n", name, test.getKey(), t);
+                t.printStackTrace(System.out);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Run all the tests from a main method, exiting with status 1 if any failed
+     */
+    public void runAndExit() {
+        if (run() > 0)
+            System.exit(1);
+    }
+}